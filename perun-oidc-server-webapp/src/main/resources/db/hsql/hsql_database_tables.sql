@@ -5,6 +5,7 @@
 CREATE TABLE IF NOT EXISTS access_token (
 	id BIGINT GENERATED BY DEFAULT AS IDENTITY(START WITH 1) PRIMARY KEY,
 	token_value VARCHAR(4096),
+	token_hash VARCHAR(64),
 	expiration TIMESTAMP,
 	token_type VARCHAR(256),
 	refresh_token_id BIGINT,
@@ -44,7 +45,9 @@ CREATE TABLE IF NOT EXISTS authentication_holder (
 	user_auth_id BIGINT,
 	approved BOOLEAN,
 	redirect_uri VARCHAR(2048),
-	client_id VARCHAR(256)
+	client_id VARCHAR(256),
+	user_name VARCHAR(1024),
+	authentication_data LONGVARCHAR
 );
 
 CREATE TABLE IF NOT EXISTS authentication_holder_authority (
@@ -208,6 +211,7 @@ CREATE TABLE IF NOT EXISTS client_claims_redirect_uri (
 CREATE TABLE IF NOT EXISTS refresh_token (
 	id BIGINT GENERATED BY DEFAULT AS IDENTITY(START WITH 1) PRIMARY KEY,
 	token_value VARCHAR(4096),
+	token_hash VARCHAR(64),
 	expiration TIMESTAMP,
 	auth_holder_id BIGINT,
 	client_id BIGINT
@@ -301,3 +305,21 @@ CREATE TABLE IF NOT EXISTS device_code_request_parameter (
 	param VARCHAR(2048),
 	val VARCHAR(2048)
 );
+
+CREATE TABLE IF NOT EXISTS shared_cache (
+	cache_key VARCHAR(255) PRIMARY KEY,
+	cache_value LONGVARCHAR,
+	expires_at TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS revoked_access_token (
+	id BIGINT GENERATED BY DEFAULT AS IDENTITY(START WITH 1) PRIMARY KEY,
+	token_hash VARCHAR(64) NOT NULL,
+	expiration TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS client_change (
+	id BIGINT GENERATED BY DEFAULT AS IDENTITY(START WITH 1) PRIMARY KEY,
+	client_id VARCHAR(256) NOT NULL,
+	changed_at TIMESTAMP NOT NULL
+);
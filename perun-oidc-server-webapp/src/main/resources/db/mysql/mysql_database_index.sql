@@ -3,10 +3,20 @@
 --
 
 CREATE INDEX at_tv_idx ON access_token(token_value(767));
+CREATE INDEX at_th_idx ON access_token(token_hash);
 CREATE INDEX ts_oi_idx ON token_scope(owner_id);
 CREATE INDEX at_exp_idx ON access_token(expiration);
+CREATE INDEX rf_exp_idx ON refresh_token(expiration);
+CREATE INDEX ac_exp_idx ON authorization_code(expiration);
+CREATE INDEX dc_exp_idx ON device_code(expiration);
+CREATE INDEX as_td_idx ON approved_site(timeout_date);
+CREATE INDEX rat_exp_idx ON revoked_access_token(expiration);
+CREATE INDEX cc_ca_idx ON client_change(changed_at);
+CREATE INDEX sc_ea_idx ON shared_cache(expires_at);
+CREATE INDEX ah_un_idx ON authentication_holder(user_name(255));
 CREATE INDEX rf_ahi_idx ON refresh_token(auth_holder_id);
 CREATE INDEX rf_tv_idx ON refresh_token(token_value(105));
+CREATE INDEX rf_th_idx ON refresh_token(token_hash);
 CREATE INDEX cd_ci_idx ON client_details(client_id);
 CREATE INDEX at_ahi_idx ON access_token(auth_holder_id);
 CREATE INDEX aha_oi_idx ON authentication_holder_authority(owner_id);
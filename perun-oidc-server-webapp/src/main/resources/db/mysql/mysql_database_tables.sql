@@ -5,6 +5,7 @@
 CREATE TABLE IF NOT EXISTS access_token (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
     token_value VARCHAR(4096),
+    token_hash VARCHAR(64),
     expiration TIMESTAMP NULL,
     token_type VARCHAR(256),
     refresh_token_id BIGINT,
@@ -43,7 +44,9 @@ CREATE TABLE IF NOT EXISTS authentication_holder (
     user_auth_id BIGINT,
     approved BOOLEAN,
     redirect_uri VARCHAR(2048),
-    client_id VARCHAR(256)
+    client_id VARCHAR(256),
+    user_name VARCHAR(1024),
+    authentication_data MEDIUMTEXT
 );
 
 CREATE TABLE IF NOT EXISTS authentication_holder_authority (
@@ -207,6 +210,7 @@ CREATE TABLE IF NOT EXISTS client_claims_redirect_uri (
 CREATE TABLE IF NOT EXISTS refresh_token (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
     token_value VARCHAR(4096),
+    token_hash VARCHAR(64),
     expiration TIMESTAMP NULL,
     auth_holder_id BIGINT,
     client_id BIGINT
@@ -301,6 +305,24 @@ CREATE TABLE IF NOT EXISTS device_code_request_parameter (
     val VARCHAR(2048)
 );
 
+CREATE TABLE IF NOT EXISTS shared_cache (
+    cache_key VARCHAR(255) PRIMARY KEY,
+    cache_value LONGTEXT,
+    expires_at TIMESTAMP(3) NULL
+);
+
+CREATE TABLE IF NOT EXISTS revoked_access_token (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    token_hash VARCHAR(64) NOT NULL,
+    expiration TIMESTAMP NULL
+);
+
+CREATE TABLE IF NOT EXISTS client_change (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    client_id VARCHAR(256) NOT NULL,
+    changed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
 alter table access_token
     add constraint access_token_authentication_holder_id_fk
         foreign key (auth_holder_id) references authentication_holder (id)
@@ -0,0 +1,43 @@
+CREATE TABLE IF NOT EXISTS shared_cache (
+    cache_key VARCHAR(255) PRIMARY KEY,
+    cache_value LONGTEXT,
+    expires_at TIMESTAMP(3) NULL
+);
+CREATE INDEX sc_ea_idx ON shared_cache(expires_at);
+
+CREATE INDEX rf_exp_idx ON refresh_token(expiration);
+CREATE INDEX ac_exp_idx ON authorization_code(expiration);
+CREATE INDEX dc_exp_idx ON device_code(expiration);
+CREATE INDEX as_td_idx ON approved_site(timeout_date);
+
+ALTER TABLE access_token ADD COLUMN token_hash VARCHAR(64);
+ALTER TABLE refresh_token ADD COLUMN token_hash VARCHAR(64);
+
+-- backfill digests of existing tokens, for large tables repeat with "WHERE token_hash IS NULL LIMIT 10000"
+UPDATE access_token SET token_hash = SHA2(token_value, 256) WHERE token_hash IS NULL;
+UPDATE refresh_token SET token_hash = SHA2(token_value, 256) WHERE token_hash IS NULL;
+
+CREATE INDEX at_th_idx ON access_token(token_hash);
+CREATE INDEX rf_th_idx ON refresh_token(token_hash);
+
+CREATE TABLE IF NOT EXISTS revoked_access_token (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    token_hash VARCHAR(64) NOT NULL,
+    expiration TIMESTAMP NULL
+);
+
+CREATE INDEX rat_exp_idx ON revoked_access_token(expiration);
+
+CREATE TABLE IF NOT EXISTS client_change (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    client_id VARCHAR(256) NOT NULL,
+    changed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+CREATE INDEX cc_ca_idx ON client_change(changed_at);
+
+-- compact storage of authentication holders
+ALTER TABLE authentication_holder ADD COLUMN authentication_data MEDIUMTEXT;
+ALTER TABLE authentication_holder ADD COLUMN user_name VARCHAR(1024);
+UPDATE authentication_holder h JOIN saved_user_auth s ON s.id = h.user_auth_id SET h.user_name = s.name
+    WHERE h.user_name IS NULL;
+CREATE INDEX ah_un_idx ON authentication_holder(user_name(255));
@@ -3,10 +3,20 @@
 --
 
 CREATE INDEX IF NOT EXISTS at_tv_idx ON access_token(token_value);
+CREATE INDEX IF NOT EXISTS at_th_idx ON access_token(token_hash);
 CREATE INDEX IF NOT EXISTS ts_oi_idx ON token_scope(owner_id);
 CREATE INDEX IF NOT EXISTS at_exp_idx ON access_token(expiration);
+CREATE INDEX IF NOT EXISTS rf_exp_idx ON refresh_token(expiration);
+CREATE INDEX IF NOT EXISTS ac_exp_idx ON authorization_code(expiration);
+CREATE INDEX IF NOT EXISTS dc_exp_idx ON device_code(expiration);
+CREATE INDEX IF NOT EXISTS as_td_idx ON approved_site(timeout_date);
+CREATE INDEX IF NOT EXISTS rat_exp_idx ON revoked_access_token(expiration);
+CREATE INDEX IF NOT EXISTS cc_ca_idx ON client_change(changed_at);
+CREATE INDEX IF NOT EXISTS sc_ea_idx ON shared_cache(expires_at);
+CREATE INDEX IF NOT EXISTS ah_un_idx ON authentication_holder(user_name);
 CREATE INDEX IF NOT EXISTS rf_ahi_idx ON refresh_token(auth_holder_id);
 CREATE INDEX IF NOT EXISTS rf_tv_idx ON refresh_token(token_value);
+CREATE INDEX IF NOT EXISTS rf_th_idx ON refresh_token(token_hash);
 CREATE INDEX IF NOT EXISTS cd_ci_idx ON client_details(client_id);
 CREATE INDEX IF NOT EXISTS at_ahi_idx ON access_token(auth_holder_id);
 CREATE INDEX IF NOT EXISTS aha_oi_idx ON authentication_holder_authority(owner_id);
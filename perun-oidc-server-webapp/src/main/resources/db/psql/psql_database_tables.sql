@@ -5,6 +5,7 @@
 CREATE TABLE IF NOT EXISTS access_token (
     id BIGSERIAL PRIMARY KEY,
     token_value VARCHAR(4096),
+    token_hash VARCHAR(64),
     expiration TIMESTAMP,
     token_type VARCHAR(256),
     refresh_token_id BIGINT,
@@ -44,7 +45,9 @@ CREATE TABLE IF NOT EXISTS authentication_holder (
     user_auth_id BIGINT,
     approved BOOLEAN,
     redirect_uri VARCHAR(2048),
-    client_id VARCHAR(256)
+    client_id VARCHAR(256),
+    user_name VARCHAR(1024),
+    authentication_data TEXT
 );
 
 CREATE TABLE IF NOT EXISTS authentication_holder_authority (
@@ -208,6 +211,7 @@ CREATE TABLE IF NOT EXISTS client_claims_redirect_uri (
 CREATE TABLE IF NOT EXISTS refresh_token (
     id BIGSERIAL PRIMARY KEY,
     token_value VARCHAR(4096),
+    token_hash VARCHAR(64),
     expiration TIMESTAMP,
     auth_holder_id BIGINT,
     client_id BIGINT
@@ -302,6 +306,24 @@ CREATE TABLE IF NOT EXISTS device_code_request_parameter (
     val VARCHAR(2048)
 );
 
+CREATE TABLE IF NOT EXISTS shared_cache (
+    cache_key VARCHAR(255) PRIMARY KEY,
+    cache_value TEXT,
+    expires_at TIMESTAMP NULL
+);
+
+CREATE TABLE IF NOT EXISTS revoked_access_token (
+    id BIGSERIAL PRIMARY KEY,
+    token_hash VARCHAR(64) NOT NULL,
+    expiration TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS client_change (
+    id BIGSERIAL PRIMARY KEY,
+    client_id VARCHAR(256) NOT NULL,
+    changed_at TIMESTAMP NOT NULL
+);
+
 alter table access_token
     add constraint access_token_authentication_holder_id_fk
         foreign key (auth_holder_id) references authentication_holder (id)
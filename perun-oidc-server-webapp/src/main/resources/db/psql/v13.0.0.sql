@@ -0,0 +1,43 @@
+CREATE TABLE IF NOT EXISTS shared_cache (
+    cache_key VARCHAR(255) PRIMARY KEY,
+    cache_value TEXT,
+    expires_at TIMESTAMP NULL
+);
+CREATE INDEX IF NOT EXISTS sc_ea_idx ON shared_cache(expires_at);
+
+CREATE INDEX IF NOT EXISTS rf_exp_idx ON refresh_token(expiration);
+CREATE INDEX IF NOT EXISTS ac_exp_idx ON authorization_code(expiration);
+CREATE INDEX IF NOT EXISTS dc_exp_idx ON device_code(expiration);
+CREATE INDEX IF NOT EXISTS as_td_idx ON approved_site(timeout_date);
+
+ALTER TABLE access_token ADD COLUMN IF NOT EXISTS token_hash VARCHAR(64);
+ALTER TABLE refresh_token ADD COLUMN IF NOT EXISTS token_hash VARCHAR(64);
+
+-- backfill digests of existing tokens (requires PostgreSQL 11+)
+UPDATE access_token SET token_hash = encode(sha256(convert_to(token_value, 'UTF8')), 'hex') WHERE token_hash IS NULL;
+UPDATE refresh_token SET token_hash = encode(sha256(convert_to(token_value, 'UTF8')), 'hex') WHERE token_hash IS NULL;
+
+CREATE INDEX IF NOT EXISTS at_th_idx ON access_token(token_hash);
+CREATE INDEX IF NOT EXISTS rf_th_idx ON refresh_token(token_hash);
+
+CREATE TABLE IF NOT EXISTS revoked_access_token (
+    id BIGSERIAL PRIMARY KEY,
+    token_hash VARCHAR(64) NOT NULL,
+    expiration TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS rat_exp_idx ON revoked_access_token(expiration);
+
+CREATE TABLE IF NOT EXISTS client_change (
+    id BIGSERIAL PRIMARY KEY,
+    client_id VARCHAR(256) NOT NULL,
+    changed_at TIMESTAMP NOT NULL
+);
+CREATE INDEX IF NOT EXISTS cc_ca_idx ON client_change(changed_at);
+
+-- compact storage of authentication holders
+ALTER TABLE authentication_holder ADD COLUMN IF NOT EXISTS authentication_data TEXT;
+ALTER TABLE authentication_holder ADD COLUMN IF NOT EXISTS user_name VARCHAR(1024);
+UPDATE authentication_holder SET user_name = (SELECT s.name FROM saved_user_auth s WHERE s.id = user_auth_id)
+    WHERE user_name IS NULL AND user_auth_id IS NOT NULL;
+CREATE INDEX IF NOT EXISTS ah_un_idx ON authentication_holder(user_name);
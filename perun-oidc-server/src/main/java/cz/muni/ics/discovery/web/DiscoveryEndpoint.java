@@ -21,6 +21,8 @@ import com.google.common.base.Function;
 import com.google.common.base.Strings;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.nimbusds.jose.Algorithm;
 import com.nimbusds.jose.JWSAlgorithm;
 import cz.muni.ics.discovery.util.WebfingerURLNormalizer;
@@ -35,15 +37,22 @@ import cz.muni.ics.openid.connect.config.ConfigurationPropertiesBean;
 import cz.muni.ics.openid.connect.model.UserInfo;
 import cz.muni.ics.openid.connect.service.UserInfoService;
 import cz.muni.ics.openid.connect.view.HttpCodeView;
-import cz.muni.ics.openid.connect.view.JsonEntityView;
 import cz.muni.ics.openid.connect.web.endpoint.DynamicClientRegistrationEndpoint;
 import cz.muni.ics.openid.connect.web.endpoint.EndSessionEndpoint;
 import cz.muni.ics.openid.connect.web.endpoint.JWKSetPublishingEndpoint;
 import cz.muni.ics.openid.connect.web.endpoint.UserInfoEndpoint;
+import cz.muni.ics.util.PrecomputedJsonResponse;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -70,6 +79,7 @@ public class DiscoveryEndpoint {
 	public static final String OPENID_CONFIGURATION_URL = WELL_KNOWN_URL + "/openid-configuration";
 	public static final String WEBFINGER_URL = WELL_KNOWN_URL + "/webfinger";
 	private static final String ISSUER_STRING = "http://openid.net/specs/connect/1.0/issuer";
+	private static final long PROVIDER_CONFIGURATION_CHECK_INTERVAL_MS = TimeUnit.SECONDS.toMillis(10);
 
 	private final ConfigurationPropertiesBean config;
 	private final SystemScopeService scopeService;
@@ -80,6 +90,12 @@ public class DiscoveryEndpoint {
 	// used to map JWA algorithms objects to strings
 	private final Function<Algorithm, String> toAlgorithmName = alg -> alg == null ? null : alg.getName();
 
+	private final Gson gson = new GsonBuilder().serializeNulls().create();
+	// the inputs change rarely (the scope registry itself is reloaded once a minute), so they are not collected
+	// for every request
+	private final PrecomputedJsonResponse providerConfiguration = new PrecomputedJsonResponse(
+			PROVIDER_CONFIGURATION_CHECK_INTERVAL_MS);
+
 	@Autowired
 	public DiscoveryEndpoint(UserInfoService userService, ConfigurationPropertiesBean config,
 							 SystemScopeService scopeService, JWTSigningAndValidationService signService,
@@ -138,8 +154,22 @@ public class DiscoveryEndpoint {
 		return null;
 	}
 
+	/**
+	 * Serve the provider configuration. The document is serialized once and rebuilt only when the supported
+	 * scopes, encryption algorithms or the issuer change. The changes are checked at most once per ten seconds.
+	 */
 	@RequestMapping("/" + OPENID_CONFIGURATION_URL)
-	public String providerConfiguration(Model model) {
+	public void providerConfiguration(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		Supplier<List<Object>> fingerprint = () -> Arrays.asList(
+				config.getIssuer(),
+				scopeService.toStrings(scopeService.getUnrestricted()),
+				encService.getAllEncryptionAlgsSupported(),
+				encService.getAllEncryptionEncsSupported());
+
+		providerConfiguration.write(fingerprint, () -> gson.toJson(buildProviderConfiguration()), request, response);
+	}
+
+	private Map<String, Object> buildProviderConfiguration() {
 
 		/*
 		    issuer
@@ -346,9 +376,7 @@ public class DiscoveryEndpoint {
 
 		m.put("device_authorization_endpoint", config.getIssuer(false) + DeviceEndpoint.ENDPOINT_URL);
 
-		model.addAttribute(JsonEntityView.ENTITY, m);
-
-		return JsonEntityView.VIEWNAME;
+		return m;
 	}
 
 }
@@ -20,104 +20,295 @@
  */
 package cz.muni.ics.jwt.signer.service.impl;
 
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import com.google.common.util.concurrent.UncheckedExecutionException;
-import com.google.gson.JsonParseException;
+import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.jwk.JWKSet;
 import cz.muni.ics.jose.keystore.JWKSetKeyStore;
 import cz.muni.ics.jwt.encryption.service.JWTEncryptionAndDecryptionService;
 import cz.muni.ics.jwt.encryption.service.impl.DefaultJWTEncryptionAndDecryptionService;
 import cz.muni.ics.jwt.signer.service.JWTSigningAndValidationService;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.http.client.HttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClientException;
+import org.springframework.util.StringUtils;
 import org.springframework.web.client.RestTemplate;
 
 /**
  * Creates a caching map of JOSE signers/validators and encrypters/decryptors
  * keyed on the JWK Set URI. Dynamically loads JWK Sets to create the services.
  *
+ * Each JWK Set is fetched once and both the validator and the encrypter are built from it. Only the first
+ * request for the URI waits for the fetch, the JWK Set is then refreshed in the background before it gets
+ * stale, so the callers are served from the cache. Refresh interval follows the max-age of the Cache-Control
+ * response header (bounded, 1 hour by default) and the refresh is made as a conditional request when the
+ * server has provided the ETag. Failed refreshes are retried with exponential backoff, the last successfully
+ * fetched keys are used meanwhile (at most for {@link #MAX_STALE_MILLIS} after the last successful fetch). When
+ * there are no keys to fall back to, the failure is remembered only for {@link #FAILED_FETCH_TTL_MILLIS}, so
+ * a broken URI is not requested by every caller, but its keys are fetched again shortly after it is fixed.
+ *
  * @author jricher
  */
 @Service
 @Slf4j
 public class JWKSetCacheService {
 
-	private final LoadingCache<String, JWTSigningAndValidationService> validators;
-	private final LoadingCache<String, JWTEncryptionAndDecryptionService> encrypters;
+	static final long DEFAULT_REFRESH_MILLIS = TimeUnit.HOURS.toMillis(1);
+	static final long MIN_REFRESH_MILLIS = TimeUnit.MINUTES.toMillis(1);
+	static final long MAX_REFRESH_MILLIS = TimeUnit.HOURS.toMillis(6);
+	static final long MAX_STALE_MILLIS = TimeUnit.HOURS.toMillis(24);
+	static final long INITIAL_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(10);
+	static final long MAX_BACKOFF_MILLIS = TimeUnit.HOURS.toMillis(1);
+	static final long FAILED_FETCH_TTL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+	private static final Pattern MAX_AGE = Pattern.compile("max-age\\s*=\\s*(\\d+)");
+
+	private final RestTemplate restTemplate;
+	private final Executor refreshExecutor;
+	private final Ticker ticker;
+	private final Cache<String, JwksEntry> entries;
+	private final Cache<String, Boolean> failedFetches;
+	private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
 
 	public JWKSetCacheService() {
-		this.validators = CacheBuilder.newBuilder()
-				.expireAfterWrite(1, TimeUnit.HOURS) // expires 1 hour after fetch
+		this(new RestTemplate(new HttpComponentsClientHttpRequestFactory(
+				HttpClientBuilder.create().useSystemProperties().build())),
+				Executors.newSingleThreadExecutor(r -> {
+					Thread t = new Thread(r, "jwks-refresh");
+					t.setDaemon(true);
+					return t;
+				}), Ticker.systemTicker());
+	}
+
+	JWKSetCacheService(RestTemplate restTemplate, Executor refreshExecutor, Ticker ticker) {
+		this.restTemplate = restTemplate;
+		this.refreshExecutor = refreshExecutor;
+		this.ticker = ticker;
+		this.entries = CacheBuilder.newBuilder()
+				.expireAfterAccess(1, TimeUnit.DAYS) // drop URIs not used anymore
 				.maximumSize(100)
-				.build(new JWKSetVerifierFetcher(HttpClientBuilder.create().useSystemProperties().build()));
-		this.encrypters = CacheBuilder.newBuilder()
-				.expireAfterWrite(1, TimeUnit.HOURS) // expires 1 hour after fetch
+				.ticker(ticker)
+				.build();
+		this.failedFetches = CacheBuilder.newBuilder()
+				.expireAfterWrite(FAILED_FETCH_TTL_MILLIS, TimeUnit.MILLISECONDS)
 				.maximumSize(100)
-				.build(new JWKSetEncryptorFetcher(HttpClientBuilder.create().useSystemProperties().build()));
+				.ticker(ticker)
+				.build();
 	}
 
 	public JWTSigningAndValidationService getValidator(String jwksUri) {
-		try {
-			return validators.get(jwksUri);
-		} catch (UncheckedExecutionException | ExecutionException e) {
-			log.warn("Couldn't load JWK Set from {}: {}", jwksUri, e.getMessage());
+		JwksEntry entry = getEntry(jwksUri);
+		return entry != null ? entry.validator : null;
+	}
+
+	public JWTEncryptionAndDecryptionService getEncrypter(String jwksUri) {
+		JwksEntry entry = getEntry(jwksUri);
+		return entry != null ? entry.encrypter : null;
+	}
+
+	@PreDestroy
+	public void destroy() {
+		if (refreshExecutor instanceof ExecutorService) {
+			((ExecutorService) refreshExecutor).shutdownNow();
+		}
+	}
+
+	private JwksEntry getEntry(String jwksUri) {
+		if (!StringUtils.hasText(jwksUri)) {
 			return null;
 		}
+
+		long now = currentTimeMillis();
+		JwksEntry entry = entries.getIfPresent(jwksUri);
+		if (entry != null && entry.isExpired(now)) {
+			entries.invalidate(jwksUri);
+			entry = null;
+		}
+
+		if (entry == null) {
+			if (failedFetches.getIfPresent(jwksUri) != null) {
+				return null;
+			}
+			try {
+				// concurrent requests for the same URI wait for the single fetch, failures are not cached
+				entry = entries.get(jwksUri, () -> fetch(jwksUri, null));
+			} catch (UncheckedExecutionException | ExecutionException e) {
+				failedFetches.put(jwksUri, Boolean.TRUE);
+				log.warn("Couldn't load JWK Set from {}, next attempt in {}ms: {}", jwksUri,
+						FAILED_FETCH_TTL_MILLIS, e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+				return null;
+			}
+			failedFetches.invalidate(jwksUri);
+		} else if (entry.nextFetch <= now) {
+			scheduleRefresh(jwksUri, entry);
+		}
+
+		return entry;
 	}
 
-	public JWTEncryptionAndDecryptionService getEncrypter(String jwksUri) {
+	private void scheduleRefresh(String jwksUri, JwksEntry entry) {
+		if (!refreshing.add(jwksUri)) {
+			return;
+		}
+
 		try {
-			return encrypters.get(jwksUri);
-		} catch (UncheckedExecutionException | ExecutionException e) {
-			log.warn("Couldn't load JWK Set from {}: {}", jwksUri, e.getMessage());
-			return null;
+			refreshExecutor.execute(() -> {
+				try {
+					entries.put(jwksUri, refresh(jwksUri, entry));
+				} finally {
+					refreshing.remove(jwksUri);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			refreshing.remove(jwksUri);
+			log.warn("Couldn't schedule refresh of JWK Set from {}", jwksUri);
+		}
+	}
+
+	/**
+	 * Refresh the cached JWK Set. Never throws, on failure the previous keys are kept and the next attempt is
+	 * postponed.
+	 *
+	 * @param jwksUri URI of the JWK Set.
+	 * @param previous Currently cached entry.
+	 * @return New entry.
+	 */
+	private JwksEntry refresh(String jwksUri, JwksEntry previous) {
+		try {
+			return fetch(jwksUri, previous);
+		} catch (Exception e) {
+			int failures = previous.failures + 1;
+			long backoff = Math.min(INITIAL_BACKOFF_MILLIS << Math.min(failures - 1, 20), MAX_BACKOFF_MILLIS);
+			log.warn("Couldn't refresh JWK Set from {} ({} failures in a row, next attempt in {}ms): {}",
+					jwksUri, failures, backoff, e.getMessage());
+			return previous.failed(failures, currentTimeMillis() + backoff);
 		}
 	}
 
-	private static class JWKSetVerifierFetcher extends CacheLoader<String, JWTSigningAndValidationService> {
-		private final RestTemplate restTemplate;
+	/**
+	 * Fetch the JWK Set.
+	 *
+	 * @param jwksUri URI of the JWK Set.
+	 * @param previous Currently cached entry, NULL if there is none.
+	 * @return New entry.
+	 * @throws Exception When the JWK Set couldn't be fetched or parsed.
+	 */
+	private JwksEntry fetch(String jwksUri, JwksEntry previous) throws Exception {
+		long now = currentTimeMillis();
+		HttpHeaders requestHeaders = new HttpHeaders();
+		if (previous != null && previous.etag != null) {
+			requestHeaders.setIfNoneMatch(previous.etag);
+		}
+		ResponseEntity<String> response = restTemplate.exchange(jwksUri, HttpMethod.GET,
+				new HttpEntity<>(requestHeaders), String.class);
+		long nextFetch = now + getRefreshMillis(response.getHeaders());
 
-		JWKSetVerifierFetcher(HttpClient httpClient) {
-			HttpComponentsClientHttpRequestFactory httpFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
-			this.restTemplate = new RestTemplate(httpFactory);
+		if (response.getStatusCode() == HttpStatus.NOT_MODIFIED && previous != null) {
+			log.debug("JWK Set from {} not modified", jwksUri);
+			return previous.revalidated(now, nextFetch);
 		}
 
-		@Override
-		public JWTSigningAndValidationService load(String key) throws Exception {
-			String jsonString = restTemplate.getForObject(key, String.class);
-			JWKSet jwkSet = JWKSet.parse(jsonString);
-			JWKSetKeyStore keyStore = new JWKSetKeyStore(jwkSet);
-			return new DefaultJWTSigningAndValidationService(keyStore);
+		JWKSet jwkSet = JWKSet.parse(response.getBody());
+		String etag = response.getHeaders().getETag();
+		log.debug("JWK Set fetched from {}", jwksUri);
+		return new JwksEntry(jwkSet, etag, now, nextFetch, 0);
+	}
+
+	private long currentTimeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(ticker.read());
+	}
+
+	static long getRefreshMillis(HttpHeaders headers) {
+		String cacheControl = headers.getCacheControl();
+		if (cacheControl != null) {
+			Matcher matcher = MAX_AGE.matcher(cacheControl);
+			if (matcher.find()) {
+				try {
+					long maxAge = TimeUnit.SECONDS.toMillis(Long.parseLong(matcher.group(1)));
+					return Math.max(MIN_REFRESH_MILLIS, Math.min(maxAge, MAX_REFRESH_MILLIS));
+				} catch (NumberFormatException e) {
+					return DEFAULT_REFRESH_MILLIS;
+				}
+			} else if (cacheControl.contains("no-cache") || cacheControl.contains("no-store")) {
+				return MIN_REFRESH_MILLIS;
+			}
 		}
+		return DEFAULT_REFRESH_MILLIS;
 	}
 
-	private static class JWKSetEncryptorFetcher extends CacheLoader<String, JWTEncryptionAndDecryptionService> {
-		private final RestTemplate restTemplate;
+	/**
+	 * Successfully fetched JWK Set with the services built from it.
+	 */
+	private static class JwksEntry {
 
-		public JWKSetEncryptorFetcher(HttpClient httpClient) {
-			HttpComponentsClientHttpRequestFactory httpFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
-			this.restTemplate = new RestTemplate(httpFactory);
+		private final JWKSet jwkSet;
+		private final String etag;
+		private final long fetchedAt;
+		private final long nextFetch;
+		private final int failures;
+		private final JWTSigningAndValidationService validator;
+		private final JWTEncryptionAndDecryptionService encrypter;
+
+		private JwksEntry(JWKSet jwkSet, String etag, long fetchedAt, long nextFetch, int failures) {
+			this(jwkSet, etag, fetchedAt, nextFetch, failures, buildValidator(jwkSet), buildEncrypter(jwkSet));
+		}
+
+		private JwksEntry(JWKSet jwkSet, String etag, long fetchedAt, long nextFetch, int failures,
+						  JWTSigningAndValidationService validator, JWTEncryptionAndDecryptionService encrypter)
+		{
+			this.jwkSet = jwkSet;
+			this.etag = etag;
+			this.fetchedAt = fetchedAt;
+			this.nextFetch = nextFetch;
+			this.failures = failures;
+			this.validator = validator;
+			this.encrypter = encrypter;
+		}
+
+		private JwksEntry revalidated(long now, long nextFetch) {
+			return new JwksEntry(jwkSet, etag, now, nextFetch, 0, validator, encrypter);
+		}
+
+		private JwksEntry failed(int failures, long nextFetch) {
+			return new JwksEntry(jwkSet, etag, fetchedAt, nextFetch, failures, validator, encrypter);
+		}
+
+		private boolean isExpired(long now) {
+			return now - fetchedAt > MAX_STALE_MILLIS;
 		}
 
-		@Override
-		public JWTEncryptionAndDecryptionService load(String key) throws Exception {
+		private static JWTSigningAndValidationService buildValidator(JWKSet jwkSet) {
+			return new DefaultJWTSigningAndValidationService(new JWKSetKeyStore(jwkSet));
+		}
+
+		private static JWTEncryptionAndDecryptionService buildEncrypter(JWKSet jwkSet) {
 			try {
-				String jsonString = restTemplate.getForObject(key, String.class);
-				JWKSet jwkSet = JWKSet.parse(jsonString);
-				JWKSetKeyStore keyStore = new JWKSetKeyStore(jwkSet);
-				return new DefaultJWTEncryptionAndDecryptionService(keyStore);
-			} catch (JsonParseException | RestClientException e) {
-				throw new IllegalArgumentException("Unable to load JWK Set");
+				return new DefaultJWTEncryptionAndDecryptionService(new JWKSetKeyStore(jwkSet));
+			} catch (JOSEException e) {
+				log.warn("Couldn't build encrypter from JWK Set: {}", e.getMessage());
+				return null;
 			}
 		}
+
 	}
 
 }
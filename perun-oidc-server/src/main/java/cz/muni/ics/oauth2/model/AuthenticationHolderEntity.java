@@ -20,6 +20,7 @@ package cz.muni.ics.oauth2.model;
 import static cz.muni.ics.oauth2.model.AuthenticationHolderEntity.QUERY_ALL;
 import static cz.muni.ics.oauth2.model.AuthenticationHolderEntity.QUERY_GET_UNUSED;
 
+import cz.muni.ics.oauth2.model.convert.OAuth2AuthenticationStringConverter;
 import cz.muni.ics.oauth2.model.convert.SerializableStringConverter;
 import cz.muni.ics.oauth2.model.convert.SimpleGrantedAuthorityStringConverter;
 import java.io.Serializable;
@@ -114,7 +115,9 @@ public class AuthenticationHolderEntity {
 	@CascadeOnDelete
 	private Set<String> responseTypes;
 
-	@ElementCollection(fetch = FetchType.EAGER)
+	// the maps are the largest part of a holder in the separate tables and empty for the compact holders,
+	// so they are fetched only when needed
+	@ElementCollection(fetch = FetchType.LAZY)
 	@CollectionTable(name = "authentication_holder_extension", joinColumns = @JoinColumn(name = "owner_id"))
 	@Column(name = "val")
 	@MapKeyColumn(name = "extension")
@@ -125,13 +128,22 @@ public class AuthenticationHolderEntity {
 	@Column(name = "client_id")
 	private String clientId;
 
+	// name of the user, kept in its own column so the holders can be searched by the user in both storages
+	@Column(name = "user_name")
+	private String userName;
+
+	// whole authentication in the compact storage, NULL for the holders stored in the separate tables
+	@Column(name = "authentication_data")
+	@Convert(converter = OAuth2AuthenticationStringConverter.class)
+	private OAuth2Authentication compactAuthentication;
+
 	@ElementCollection(fetch = FetchType.EAGER)
 	@CollectionTable(name = "authentication_holder_scope", joinColumns = @JoinColumn(name = "owner_id"))
 	@Column(name = "scope")
 	@CascadeOnDelete
 	private Set<String> scope;
 
-	@ElementCollection(fetch = FetchType.EAGER)
+	@ElementCollection(fetch = FetchType.LAZY)
 	@CollectionTable(name = "authentication_holder_request_parameter", joinColumns = @JoinColumn(name = "owner_id"))
 	@Column(name = "val")
 	@MapKeyColumn(name = "param")
@@ -140,11 +152,58 @@ public class AuthenticationHolderEntity {
 
 	@Transient
 	public OAuth2Authentication getAuthentication() {
+		if (compactAuthentication != null) {
+			return compactAuthentication;
+		}
 		// TODO: memoize this
 		return new OAuth2Authentication(createOAuth2Request(), getUserAuth());
 	}
 
+	public SavedUserAuthentication getUserAuth() {
+		if (userAuth == null && compactAuthentication != null
+				&& compactAuthentication.getUserAuthentication() instanceof SavedUserAuthentication)
+		{
+			return (SavedUserAuthentication) compactAuthentication.getUserAuthentication();
+		}
+		return userAuth;
+	}
+
+	public void setUserAuth(SavedUserAuthentication userAuth) {
+		this.userAuth = userAuth;
+		this.userName = userAuth != null ? userAuth.getName() : null;
+	}
+
+	/**
+	 * Move the authentication into the compact storage - a single column of the holder row instead of the rows
+	 * in the collection tables and the saved user authentication. Client ID, user name, redirect URI and the
+	 * approval stay in their own columns.
+	 */
+	public void compact() {
+		if (compactAuthentication != null) {
+			return;
+		}
+
+		OAuth2Authentication authentication = getAuthentication();
+		SavedUserAuthentication user = authentication.getUserAuthentication() != null
+				? new SavedUserAuthentication(authentication.getUserAuthentication()) : null;
+		this.compactAuthentication = new OAuth2Authentication(authentication.getOAuth2Request(), user);
+		this.userName = user != null ? user.getName() : null;
+		this.userAuth = null;
+		this.authorities = null;
+		this.resourceIds = null;
+		this.responseTypes = null;
+		this.extensions = null;
+		this.scope = null;
+		this.requestParameters = null;
+	}
+
+	public boolean isCompact() {
+		return compactAuthentication != null;
+	}
+
 	public void setAuthentication(OAuth2Authentication authentication) {
+		this.compactAuthentication = null;
+
 		// pull apart the request and save its bits
 		OAuth2Request o2Request = authentication.getOAuth2Request();
 		setAuthorities(convertToSetOrNull((Set<GrantedAuthority>) o2Request.getAuthorities()));
@@ -158,9 +217,9 @@ public class AuthenticationHolderEntity {
 		setApproved(o2Request.isApproved());
 
 		if (authentication.getUserAuthentication() != null) {
-			this.userAuth = new SavedUserAuthentication(authentication.getUserAuthentication());
+			setUserAuth(new SavedUserAuthentication(authentication.getUserAuthentication()));
 		} else {
-			this.userAuth = null;
+			setUserAuth(null);
 		}
 	}
 
@@ -0,0 +1,65 @@
+package cz.muni.ics.oauth2.model;
+
+import java.util.Date;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Record of the change (create, update, delete) of the client. Used to invalidate cached clients on all nodes of
+ * the cluster, records are purged after a while.
+ */
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+@NoArgsConstructor
+@AllArgsConstructor
+// DB ANNOTATIONS
+@Entity
+@Table(name = "client_change")
+@NamedQueries({
+	@NamedQuery(name = ClientChangeEntity.QUERY_AFTER_ID,
+				query = "SELECT c FROM ClientChangeEntity c " +
+						"WHERE c.id > :" + ClientChangeEntity.PARAM_ID + " ORDER BY c.id"),
+	@NamedQuery(name = ClientChangeEntity.QUERY_MAX_ID,
+				query = "SELECT MAX(c.id) FROM ClientChangeEntity c")
+})
+public class ClientChangeEntity {
+
+	public static final String QUERY_AFTER_ID = "ClientChangeEntity.getAfterId";
+	public static final String QUERY_MAX_ID = "ClientChangeEntity.getMaxId";
+
+	public static final String PARAM_ID = "id";
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Column(name = "id")
+	private Long id;
+
+	@Column(name = "client_id")
+	private String clientId;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "changed_at")
+	private Date changedAt;
+
+	public ClientChangeEntity(String clientId, Date changedAt) {
+		this.clientId = clientId;
+		this.changedAt = changedAt;
+	}
+
+}
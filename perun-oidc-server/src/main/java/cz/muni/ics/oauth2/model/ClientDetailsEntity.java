@@ -320,6 +320,71 @@ public class ClientDetailsEntity implements ClientDetails {
 	@Column(name = "jurisdiction")
 	private String jurisdiction;
 
+	/**
+	 * Create a copy of the client. Collections are copied, so modifications of the copy do not affect the original.
+	 *
+	 * @param other Client to be copied.
+	 */
+	public ClientDetailsEntity(ClientDetailsEntity other) {
+		this.id = other.id;
+		this.clientName = other.clientName;
+		this.clientDescription = other.clientDescription;
+		this.clientId = other.clientId;
+		this.clientSecret = other.clientSecret;
+		this.redirectUris = copyOf(other.redirectUris);
+		this.clientUri = other.clientUri;
+		this.contacts = copyOf(other.contacts);
+		this.tosUri = other.tosUri;
+		this.tokenEndpointAuthMethod = other.tokenEndpointAuthMethod;
+		this.scope = copyOf(other.scope);
+		this.grantTypes = copyOf(other.grantTypes);
+		this.responseTypes = copyOf(other.responseTypes);
+		this.policyUri = other.policyUri;
+		this.jwksUri = other.jwksUri;
+		this.jwks = other.jwks;
+		this.softwareId = other.softwareId;
+		this.softwareVersion = other.softwareVersion;
+		this.applicationType = other.applicationType;
+		this.sectorIdentifierUri = other.sectorIdentifierUri;
+		this.subjectType = other.subjectType;
+		this.requestObjectSigningAlg = other.requestObjectSigningAlg;
+		this.userInfoSignedResponseAlg = other.userInfoSignedResponseAlg;
+		this.userInfoEncryptedResponseAlg = other.userInfoEncryptedResponseAlg;
+		this.userInfoEncryptedResponseEnc = other.userInfoEncryptedResponseEnc;
+		this.idTokenSignedResponseAlg = other.idTokenSignedResponseAlg;
+		this.idTokenEncryptedResponseAlg = other.idTokenEncryptedResponseAlg;
+		this.idTokenEncryptedResponseEnc = other.idTokenEncryptedResponseEnc;
+		this.tokenEndpointAuthSigningAlg = other.tokenEndpointAuthSigningAlg;
+		this.defaultMaxAge = other.defaultMaxAge;
+		this.requireAuthTime = other.requireAuthTime;
+		this.defaultACRvalues = copyOf(other.defaultACRvalues);
+		this.initiateLoginUri = other.initiateLoginUri;
+		this.postLogoutRedirectUris = copyOf(other.postLogoutRedirectUris);
+		this.requestUris = copyOf(other.requestUris);
+		this.authorities = copyOf(other.authorities);
+		this.accessTokenValiditySeconds = other.accessTokenValiditySeconds;
+		this.refreshTokenValiditySeconds = other.refreshTokenValiditySeconds;
+		this.resourceIds = copyOf(other.resourceIds);
+		this.reuseRefreshToken = other.reuseRefreshToken;
+		this.dynamicallyRegistered = other.dynamicallyRegistered;
+		this.allowIntrospection = other.allowIntrospection;
+		this.idTokenValiditySeconds = other.idTokenValiditySeconds;
+		this.createdAt = other.createdAt != null ? new Date(other.createdAt.getTime()) : null;
+		this.clearAccessTokensOnRefresh = other.clearAccessTokensOnRefresh;
+		this.deviceCodeValiditySeconds = other.deviceCodeValiditySeconds;
+		this.claimsRedirectUris = copyOf(other.claimsRedirectUris);
+		this.softwareStatement = other.softwareStatement;
+		this.codeChallengeMethod = other.codeChallengeMethod;
+		this.additionalInformation = other.additionalInformation != null
+				? new HashMap<>(other.additionalInformation) : null;
+		this.acceptedTos = other.acceptedTos;
+		this.jurisdiction = other.jurisdiction;
+	}
+
+	private static <T> Set<T> copyOf(Set<T> set) {
+		return set != null ? new HashSet<>(set) : null;
+	}
+
 	@Override
 	public String getClientId() {
 		return clientId;
@@ -25,14 +25,18 @@ import static cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity.PARAM_CLIENT;
 import static cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity.PARAM_DATE;
 import static cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity.PARAM_NAME;
 import static cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity.PARAM_REFRESH_TOKEN;
+import static cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity.PARAM_TOKEN_HASH;
 import static cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity.PARAM_TOKEN_VALUE;
 import static cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity.QUERY_ALL;
 import static cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity.QUERY_BY_APPROVED_SITE;
 import static cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity.QUERY_BY_CLIENT;
 import static cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity.QUERY_BY_NAME;
 import static cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity.QUERY_BY_REFRESH_TOKEN;
+import static cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity.QUERY_BY_TOKEN_HASH;
 import static cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity.QUERY_BY_TOKEN_VALUE;
+import static cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity.QUERY_BY_TOKEN_VALUE_WITHOUT_HASH;
 import static cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity.QUERY_EXPIRED_BY_DATE;
+import static cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity.QUERY_VALID_BY_DATE;
 
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
@@ -91,6 +95,9 @@ import org.springframework.security.oauth2.common.OAuth2RefreshToken;
 	@NamedQuery(name = QUERY_EXPIRED_BY_DATE,
 				query = "SELECT a FROM OAuth2AccessTokenEntity a " +
 						"WHERE a.expiration <= :" + PARAM_DATE),
+	@NamedQuery(name = QUERY_VALID_BY_DATE,
+				query = "SELECT a FROM OAuth2AccessTokenEntity a " +
+						"WHERE a.expiration > :" + PARAM_DATE + " ORDER BY a.expiration DESC"),
 	@NamedQuery(name = QUERY_BY_REFRESH_TOKEN,
 				query = "SELECT a FROM OAuth2AccessTokenEntity a " +
 						"WHERE a.refreshToken = :" + PARAM_REFRESH_TOKEN),
@@ -100,12 +107,18 @@ import org.springframework.security.oauth2.common.OAuth2RefreshToken;
 	@NamedQuery(name = QUERY_BY_TOKEN_VALUE,
 				query = "SELECT a FROM OAuth2AccessTokenEntity a " +
 						"WHERE a.jwtValue = :" + PARAM_TOKEN_VALUE),
+	@NamedQuery(name = QUERY_BY_TOKEN_VALUE_WITHOUT_HASH,
+				query = "SELECT a FROM OAuth2AccessTokenEntity a " +
+						"WHERE a.tokenHash IS NULL AND a.jwtValue = :" + PARAM_TOKEN_VALUE),
+	@NamedQuery(name = QUERY_BY_TOKEN_HASH,
+				query = "SELECT a FROM OAuth2AccessTokenEntity a " +
+						"WHERE a.tokenHash = :" + PARAM_TOKEN_HASH),
 	@NamedQuery(name = QUERY_BY_APPROVED_SITE,
 				query = "SELECT a FROM OAuth2AccessTokenEntity a " +
 						"WHERE a.approvedSite = :" + PARAM_APPROVED_SITE),
 	@NamedQuery(name = QUERY_BY_NAME,
 				query = "SELECT r FROM OAuth2AccessTokenEntity r " +
-						"WHERE r.authenticationHolder.userAuth.name = :" + PARAM_NAME)
+						"WHERE r.authenticationHolder.userName = :" + PARAM_NAME)
 })
 @JsonSerialize(using = OAuth2AccessTokenJackson2Serializer.class)
 @JsonDeserialize(using = OAuth2AccessTokenJackson2Deserializer.class)
@@ -113,14 +126,18 @@ public class OAuth2AccessTokenEntity implements OAuth2AccessToken {
 
 	public static final String QUERY_BY_APPROVED_SITE = "OAuth2AccessTokenEntity.getByApprovedSite";
 	public static final String QUERY_BY_TOKEN_VALUE = "OAuth2AccessTokenEntity.getByTokenValue";
+	public static final String QUERY_BY_TOKEN_VALUE_WITHOUT_HASH = "OAuth2AccessTokenEntity.getByTokenValueWithoutHash";
+	public static final String QUERY_BY_TOKEN_HASH = "OAuth2AccessTokenEntity.getByTokenHash";
 	public static final String QUERY_BY_CLIENT = "OAuth2AccessTokenEntity.getByClient";
 	public static final String QUERY_BY_REFRESH_TOKEN = "OAuth2AccessTokenEntity.getByRefreshToken";
 	public static final String QUERY_EXPIRED_BY_DATE = "OAuth2AccessTokenEntity.getAllExpiredByDate";
+	public static final String QUERY_VALID_BY_DATE = "OAuth2AccessTokenEntity.getAllValidByDate";
 	public static final String QUERY_ALL = "OAuth2AccessTokenEntity.getAll";
 	public static final String QUERY_BY_RESOURCE_SET = "OAuth2AccessTokenEntity.getByResourceSet";
 	public static final String QUERY_BY_NAME = "OAuth2AccessTokenEntity.getByName";
 
 	public static final String PARAM_TOKEN_VALUE = "tokenValue";
+	public static final String PARAM_TOKEN_HASH = "tokenHash";
 	public static final String PARAM_CLIENT = "client";
 	public static final String PARAM_REFRESH_TOKEN = "refreshToken";
 	public static final String PARAM_DATE = "date";
@@ -148,6 +165,9 @@ public class OAuth2AccessTokenEntity implements OAuth2AccessToken {
 	@Convert(converter = JWTStringConverter.class)
 	private JWT jwtValue;
 
+	@Column(name = "token_hash")
+	private String tokenHash;
+
 	@Temporal(TemporalType.TIMESTAMP)
 	@Column(name = "expiration")
 	private Date expiration;
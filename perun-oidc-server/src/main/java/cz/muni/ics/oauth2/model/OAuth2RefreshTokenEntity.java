@@ -23,11 +23,14 @@ package cz.muni.ics.oauth2.model;
 import static cz.muni.ics.oauth2.model.OAuth2RefreshTokenEntity.PARAM_CLIENT;
 import static cz.muni.ics.oauth2.model.OAuth2RefreshTokenEntity.PARAM_DATE;
 import static cz.muni.ics.oauth2.model.OAuth2RefreshTokenEntity.PARAM_NAME;
+import static cz.muni.ics.oauth2.model.OAuth2RefreshTokenEntity.PARAM_TOKEN_HASH;
 import static cz.muni.ics.oauth2.model.OAuth2RefreshTokenEntity.PARAM_TOKEN_VALUE;
 import static cz.muni.ics.oauth2.model.OAuth2RefreshTokenEntity.QUERY_ALL;
 import static cz.muni.ics.oauth2.model.OAuth2RefreshTokenEntity.QUERY_BY_CLIENT;
 import static cz.muni.ics.oauth2.model.OAuth2RefreshTokenEntity.QUERY_BY_NAME;
+import static cz.muni.ics.oauth2.model.OAuth2RefreshTokenEntity.QUERY_BY_TOKEN_HASH;
 import static cz.muni.ics.oauth2.model.OAuth2RefreshTokenEntity.QUERY_BY_TOKEN_VALUE;
+import static cz.muni.ics.oauth2.model.OAuth2RefreshTokenEntity.QUERY_BY_TOKEN_VALUE_WITHOUT_HASH;
 import static cz.muni.ics.oauth2.model.OAuth2RefreshTokenEntity.QUERY_EXPIRED_BY_DATE;
 
 import com.nimbusds.jwt.JWT;
@@ -81,19 +84,28 @@ import org.springframework.security.oauth2.common.OAuth2RefreshToken;
 		@NamedQuery(name = QUERY_BY_TOKEN_VALUE,
 				query = "SELECT r FROM OAuth2RefreshTokenEntity r " +
 						"WHERE r.jwt = :" + PARAM_TOKEN_VALUE),
+		@NamedQuery(name = QUERY_BY_TOKEN_VALUE_WITHOUT_HASH,
+				query = "SELECT r FROM OAuth2RefreshTokenEntity r " +
+						"WHERE r.tokenHash IS NULL AND r.jwt = :" + PARAM_TOKEN_VALUE),
+		@NamedQuery(name = QUERY_BY_TOKEN_HASH,
+				query = "SELECT r FROM OAuth2RefreshTokenEntity r " +
+						"WHERE r.tokenHash = :" + PARAM_TOKEN_HASH),
 		@NamedQuery(name = QUERY_BY_NAME,
 				query = "SELECT r FROM OAuth2RefreshTokenEntity r " +
-						"WHERE r.authenticationHolder.userAuth.name = :" + PARAM_NAME)
+						"WHERE r.authenticationHolder.userName = :" + PARAM_NAME)
 })
 public class OAuth2RefreshTokenEntity implements OAuth2RefreshToken {
 
 	public static final String QUERY_BY_TOKEN_VALUE = "OAuth2RefreshTokenEntity.getByTokenValue";
+	public static final String QUERY_BY_TOKEN_VALUE_WITHOUT_HASH = "OAuth2RefreshTokenEntity.getByTokenValueWithoutHash";
+	public static final String QUERY_BY_TOKEN_HASH = "OAuth2RefreshTokenEntity.getByTokenHash";
 	public static final String QUERY_BY_CLIENT = "OAuth2RefreshTokenEntity.getByClient";
 	public static final String QUERY_EXPIRED_BY_DATE = "OAuth2RefreshTokenEntity.getAllExpiredByDate";
 	public static final String QUERY_ALL = "OAuth2RefreshTokenEntity.getAll";
 	public static final String QUERY_BY_NAME = "OAuth2RefreshTokenEntity.getByName";
 
 	public static final String PARAM_TOKEN_VALUE = "tokenValue";
+	public static final String PARAM_TOKEN_HASH = "tokenHash";
 	public static final String PARAM_CLIENT = "client";
 	public static final String PARAM_DATE = "date";
 	public static final String PARAM_NAME = "name";
@@ -116,6 +128,9 @@ public class OAuth2RefreshTokenEntity implements OAuth2RefreshToken {
 	@Convert(converter = JWTStringConverter.class)
 	private JWT jwt;
 
+	@Column(name = "token_hash")
+	private String tokenHash;
+
 	@Temporal(TemporalType.TIMESTAMP)
 	@Column(name = "expiration")
 	private Date expiration;
@@ -0,0 +1,62 @@
+package cz.muni.ics.oauth2.model;
+
+import java.util.Date;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Record of access token revoked before its expiration. Kept only until the expiration of the token, used for
+ * the validation of self-contained access tokens without looking them up in the database.
+ */
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+@NoArgsConstructor
+@AllArgsConstructor
+// DB ANNOTATIONS
+@Entity
+@Table(name = "revoked_access_token")
+@NamedQueries({
+	@NamedQuery(name = RevokedAccessTokenEntity.QUERY_NOT_EXPIRED,
+				query = "SELECT r FROM RevokedAccessTokenEntity r " +
+						"WHERE r.expiration IS NULL OR r.expiration > :" + RevokedAccessTokenEntity.PARAM_DATE)
+})
+public class RevokedAccessTokenEntity {
+
+	public static final String QUERY_NOT_EXPIRED = "RevokedAccessTokenEntity.getNotExpired";
+
+	public static final String PARAM_DATE = "date";
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Column(name = "id")
+	private Long id;
+
+	@Column(name = "token_hash")
+	private String tokenHash;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "expiration")
+	private Date expiration;
+
+	public RevokedAccessTokenEntity(String tokenHash, Date expiration) {
+		this.tokenHash = tokenHash;
+		this.expiration = expiration;
+	}
+
+}
@@ -0,0 +1,213 @@
+package cz.muni.ics.oauth2.model.convert;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import cz.muni.ics.oauth2.model.SamlAuthenticationDetails;
+import cz.muni.ics.oauth2.model.SavedUserAuthentication;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.util.StringUtils;
+
+/**
+ * Translates the whole OAuth2Authentication (request and the saved user authentication including the SAML
+ * details) into a single JSON string, used by the compact storage of the authentication holders.
+ *
+ * The JSON carries the version of the format in the "v" field, so the format can be changed while the rows
+ * written by the older versions are still readable. Extension values are stored the same way as in the
+ * separate table (see {@link SerializableStringConverter}).
+ */
+@Converter
+@Slf4j
+public class OAuth2AuthenticationStringConverter implements AttributeConverter<OAuth2Authentication, String> {
+
+	public static final int VERSION = 1;
+
+	private static final String V = "v";
+	private static final String REQUEST = "req";
+	private static final String USER = "user";
+	private static final String CLIENT_ID = "clientId";
+	private static final String APPROVED = "approved";
+	private static final String REDIRECT_URI = "redirectUri";
+	private static final String SCOPE = "scope";
+	private static final String RESOURCE_IDS = "resourceIds";
+	private static final String RESPONSE_TYPES = "responseTypes";
+	private static final String AUTHORITIES = "authorities";
+	private static final String REQUEST_PARAMETERS = "requestParameters";
+	private static final String EXTENSIONS = "extensions";
+	private static final String NAME = "name";
+	private static final String AUTHENTICATED = "authenticated";
+	private static final String ACR = "acr";
+	private static final String AUTH_TIME = "authTime";
+	private static final String DETAILS = "details";
+
+	private final SerializableStringConverter extensionConverter = new SerializableStringConverter();
+
+	@Override
+	public String convertToDatabaseColumn(OAuth2Authentication attribute) {
+		if (attribute == null) {
+			return null;
+		}
+
+		JsonObject json = new JsonObject();
+		json.addProperty(V, VERSION);
+		json.add(REQUEST, serializeRequest(attribute.getOAuth2Request()));
+		if (attribute.getUserAuthentication() != null) {
+			json.add(USER, serializeUser(new SavedUserAuthentication(attribute.getUserAuthentication())));
+		}
+		return json.toString();
+	}
+
+	@Override
+	public OAuth2Authentication convertToEntityAttribute(String dbData) {
+		if (!StringUtils.hasText(dbData)) {
+			return null;
+		}
+
+		JsonObject json = JsonParser.parseString(dbData).getAsJsonObject();
+		int version = json.has(V) ? json.get(V).getAsInt() : -1;
+		if (version != VERSION) {
+			log.error("Unsupported version of stored authentication: {}, authentication not loaded", version);
+			return null;
+		}
+
+		OAuth2Request request = deserializeRequest(json.getAsJsonObject(REQUEST));
+		SavedUserAuthentication user = json.has(USER) ? deserializeUser(json.getAsJsonObject(USER)) : null;
+		return new OAuth2Authentication(request, user);
+	}
+
+	private JsonObject serializeRequest(OAuth2Request request) {
+		JsonObject json = new JsonObject();
+		json.addProperty(CLIENT_ID, request.getClientId());
+		json.addProperty(APPROVED, request.isApproved());
+		json.addProperty(REDIRECT_URI, request.getRedirectUri());
+		addStrings(json, SCOPE, request.getScope());
+		addStrings(json, RESOURCE_IDS, request.getResourceIds());
+		addStrings(json, RESPONSE_TYPES, request.getResponseTypes());
+		addAuthorities(json, request.getAuthorities());
+		if (request.getRequestParameters() != null) {
+			JsonObject params = new JsonObject();
+			request.getRequestParameters().forEach(params::addProperty);
+			json.add(REQUEST_PARAMETERS, params);
+		}
+		if (request.getExtensions() != null) {
+			JsonObject extensions = new JsonObject();
+			for (Map.Entry<String, Serializable> e : request.getExtensions().entrySet()) {
+				String value = extensionConverter.convertToDatabaseColumn(e.getValue());
+				if (value != null) {
+					extensions.addProperty(e.getKey(), value);
+				}
+			}
+			json.add(EXTENSIONS, extensions);
+		}
+		return json;
+	}
+
+	private OAuth2Request deserializeRequest(JsonObject json) {
+		Map<String, String> requestParameters = null;
+		if (json.has(REQUEST_PARAMETERS)) {
+			requestParameters = new HashMap<>();
+			for (Map.Entry<String, JsonElement> e : json.getAsJsonObject(REQUEST_PARAMETERS).entrySet()) {
+				requestParameters.put(e.getKey(), getStringOrNull(e.getValue()));
+			}
+		}
+		Map<String, Serializable> extensions = null;
+		if (json.has(EXTENSIONS)) {
+			extensions = new HashMap<>();
+			for (Map.Entry<String, JsonElement> e : json.getAsJsonObject(EXTENSIONS).entrySet()) {
+				extensions.put(e.getKey(), extensionConverter.convertToEntityAttribute(getStringOrNull(e.getValue())));
+			}
+		}
+
+		return new OAuth2Request(requestParameters, getStringOrNull(json.get(CLIENT_ID)), getAuthorities(json),
+				json.has(APPROVED) && json.get(APPROVED).getAsBoolean(), getStrings(json, SCOPE),
+				getStrings(json, RESOURCE_IDS), getStringOrNull(json.get(REDIRECT_URI)),
+				getStrings(json, RESPONSE_TYPES), extensions);
+	}
+
+	private JsonObject serializeUser(SavedUserAuthentication user) {
+		JsonObject json = new JsonObject();
+		json.addProperty(NAME, user.getName());
+		json.addProperty(AUTHENTICATED, user.isAuthenticated());
+		json.addProperty(ACR, user.getAcr());
+		json.addProperty(AUTH_TIME, user.getAuthTime());
+		addAuthorities(json, user.getAuthorities());
+		String details = SamlAuthenticationDetails.serialize(user.getAuthenticationDetails());
+		if (details != null) {
+			json.add(DETAILS, JsonParser.parseString(details));
+		}
+		return json;
+	}
+
+	private SavedUserAuthentication deserializeUser(JsonObject json) {
+		SavedUserAuthentication user = new SavedUserAuthentication();
+		user.setName(getStringOrNull(json.get(NAME)));
+		user.setAuthenticated(json.has(AUTHENTICATED) && json.get(AUTHENTICATED).getAsBoolean());
+		user.setAcr(getStringOrNull(json.get(ACR)));
+		JsonElement authTime = json.get(AUTH_TIME);
+		user.setAuthTime(authTime != null && !authTime.isJsonNull() ? authTime.getAsLong() : null);
+		Set<GrantedAuthority> authorities = getAuthorities(json);
+		user.setAuthorities(authorities != null ? authorities : new HashSet<>());
+		if (json.has(DETAILS)) {
+			user.setAuthenticationDetails(SamlAuthenticationDetails.deserialize(json.get(DETAILS).toString()));
+		}
+		return user;
+	}
+
+	private void addStrings(JsonObject json, String key, Collection<String> values) {
+		if (values == null) {
+			return;
+		}
+		JsonArray array = new JsonArray();
+		values.forEach(array::add);
+		json.add(key, array);
+	}
+
+	private void addAuthorities(JsonObject json, Collection<? extends GrantedAuthority> authorities) {
+		if (authorities == null) {
+			return;
+		}
+		JsonArray array = new JsonArray();
+		authorities.stream().map(GrantedAuthority::getAuthority).forEach(array::add);
+		json.add(AUTHORITIES, array);
+	}
+
+	private Set<String> getStrings(JsonObject json, String key) {
+		if (!json.has(key) || !json.get(key).isJsonArray()) {
+			return null;
+		}
+		Set<String> values = new HashSet<>();
+		json.getAsJsonArray(key).forEach(e -> values.add(getStringOrNull(e)));
+		return values;
+	}
+
+	private Set<GrantedAuthority> getAuthorities(JsonObject json) {
+		Set<String> values = getStrings(json, AUTHORITIES);
+		if (values == null) {
+			return null;
+		}
+		Set<GrantedAuthority> authorities = new HashSet<>();
+		values.forEach(v -> authorities.add(new SimpleGrantedAuthority(v)));
+		return authorities;
+	}
+
+	private String getStringOrNull(JsonElement element) {
+		if (element != null && element.isJsonPrimitive()) {
+			return element.getAsString();
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,18 @@
+package cz.muni.ics.oauth2.repository;
+
+import cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity;
+
+/**
+ * Records revocations of access tokens removed by the repository, so the tokens validated without the database
+ * lookup can be rejected.
+ */
+public interface AccessTokenRevocationRecorder {
+
+	/**
+	 * Record revocation of the token. Called in the transaction removing the token.
+	 *
+	 * @param token Revoked token.
+	 */
+	void revoke(OAuth2AccessTokenEntity token);
+
+}
@@ -0,0 +1,15 @@
+package cz.muni.ics.oauth2.repository;
+
+/**
+ * Records changes of clients made by the repository, so the cached copies of the clients can be dropped.
+ */
+public interface ClientChangeRecorder {
+
+	/**
+	 * Record the change of the client. Called in the transaction changing the client.
+	 *
+	 * @param clientId Identifier of the changed client.
+	 */
+	void recordChange(String clientId);
+
+}
@@ -63,6 +63,11 @@ public interface OAuth2TokenRepository {
 
 	Set<OAuth2AccessTokenEntity> getAllExpiredAccessTokens(PageCriteria pageCriteria);
 
+	/**
+	 * Get not yet expired access tokens, the ones expiring last first.
+	 */
+	Set<OAuth2AccessTokenEntity> getAllValidAccessTokens(PageCriteria pageCriteria);
+
 	Set<OAuth2RefreshTokenEntity> getAllExpiredRefreshTokens();
 
 	Set<OAuth2RefreshTokenEntity> getAllExpiredRefreshTokens(PageCriteria pageCriteria);
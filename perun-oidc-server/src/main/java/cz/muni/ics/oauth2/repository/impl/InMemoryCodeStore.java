@@ -0,0 +1,187 @@
+package cz.muni.ics.oauth2.repository.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import cz.muni.ics.data.PageCriteria;
+import cz.muni.ics.oauth2.model.AuthorizationCodeEntity;
+import cz.muni.ics.oauth2.model.DeviceCode;
+import cz.muni.ics.oauth2.repository.AuthorizationCodeRepository;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory store of the short-lived codes (authorization codes and device codes), used instead of the JPA
+ * repositories to keep the high-churn rows out of the database. Codes (and their authentication holders) live
+ * only in the memory of the node which has issued them, so the store is suitable only for single node
+ * deployments or deployments routing the whole flow of the client to the same node.
+ *
+ * Codes are removed once consumed, when they expire (authorization codes) or after the TTL passes (all codes),
+ * whichever comes first. The TTL has to be longer than the validity of the codes. The scheduled clear tasks work
+ * on the database tables only and are not needed for the codes in this store.
+ */
+public class InMemoryCodeStore {
+
+	private final boolean enabled;
+	private final AuthorizationCodes authorizationCodes;
+	private final DeviceCodes deviceCodes;
+
+	public InMemoryCodeStore(boolean enabled, long maxSize, long ttlSeconds) {
+		this.enabled = enabled;
+		this.authorizationCodes = new AuthorizationCodes(maxSize, ttlSeconds);
+		this.deviceCodes = new DeviceCodes(maxSize, ttlSeconds);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public AuthorizationCodeRepository getAuthorizationCodeRepository() {
+		return authorizationCodes;
+	}
+
+	public DeviceCodeRepository getDeviceCodeRepository() {
+		return deviceCodes;
+	}
+
+	public long getAuthorizationCodesCount() {
+		return authorizationCodes.codes.size();
+	}
+
+	public long getDeviceCodesCount() {
+		return deviceCodes.codes.size();
+	}
+
+	private static boolean isExpired(Date expiration, Date now) {
+		return expiration != null && !expiration.after(now);
+	}
+
+	private static class AuthorizationCodes implements AuthorizationCodeRepository {
+
+		private final AtomicLong ids = new AtomicLong();
+		private final Cache<String, AuthorizationCodeEntity> codes;
+
+		private AuthorizationCodes(long maxSize, long ttlSeconds) {
+			this.codes = CacheBuilder.newBuilder()
+					.maximumSize(maxSize)
+					.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+					.build();
+		}
+
+		@Override
+		public AuthorizationCodeEntity save(AuthorizationCodeEntity authorizationCode) {
+			if (authorizationCode.getId() == null) {
+				authorizationCode.setId(ids.incrementAndGet());
+			}
+			codes.put(authorizationCode.getCode(), authorizationCode);
+			return authorizationCode;
+		}
+
+		@Override
+		public AuthorizationCodeEntity getByCode(String code) {
+			AuthorizationCodeEntity found = codes.getIfPresent(code);
+			if (found != null && isExpired(found.getExpiration(), new Date())) {
+				codes.invalidate(code);
+				return null;
+			}
+			return found;
+		}
+
+		@Override
+		public void remove(AuthorizationCodeEntity authorizationCodeEntity) {
+			codes.invalidate(authorizationCodeEntity.getCode());
+		}
+
+		@Override
+		public Collection<AuthorizationCodeEntity> getExpiredCodes() {
+			Date now = new Date();
+			return codes.asMap().values().stream()
+					.filter(code -> isExpired(code.getExpiration(), now))
+					.collect(Collectors.toList());
+		}
+
+		@Override
+		public Collection<AuthorizationCodeEntity> getExpiredCodes(PageCriteria pageCriteria) {
+			return getExpiredCodes().stream()
+					.skip((long) pageCriteria.getPageNumber() * pageCriteria.getPageSize())
+					.limit(pageCriteria.getPageSize())
+					.collect(Collectors.toList());
+		}
+
+	}
+
+	private static class DeviceCodes implements DeviceCodeRepository {
+
+		private final AtomicLong ids = new AtomicLong();
+		private final Cache<Long, DeviceCode> codes;
+		private final Map<String, Long> byDeviceCode = new ConcurrentHashMap<>();
+		private final Map<String, Long> byUserCode = new ConcurrentHashMap<>();
+
+		private DeviceCodes(long maxSize, long ttlSeconds) {
+			this.codes = CacheBuilder.newBuilder()
+					.maximumSize(maxSize)
+					.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+					.<Long, DeviceCode>removalListener(this::removeIndexes)
+					.build();
+		}
+
+		@Override
+		public DeviceCode getById(Long id) {
+			return id != null ? codes.getIfPresent(id) : null;
+		}
+
+		@Override
+		public DeviceCode getByDeviceCode(String deviceCode) {
+			// expired device codes are still returned, so the client gets the expired_token error
+			return getById(byDeviceCode.get(deviceCode));
+		}
+
+		@Override
+		public DeviceCode getByUserCode(String userCode) {
+			return getById(byUserCode.get(userCode));
+		}
+
+		@Override
+		public void remove(DeviceCode scope) {
+			if (scope.getId() != null) {
+				codes.invalidate(scope.getId());
+			}
+		}
+
+		@Override
+		public DeviceCode save(DeviceCode scope) {
+			if (scope.getId() == null) {
+				scope.setId(ids.incrementAndGet());
+			}
+			byDeviceCode.put(scope.getDeviceCode(), scope.getId());
+			byUserCode.put(scope.getUserCode(), scope.getId());
+			codes.put(scope.getId(), scope);
+			return scope;
+		}
+
+		@Override
+		public Collection<DeviceCode> getExpiredCodes() {
+			Date now = new Date();
+			return codes.asMap().values().stream()
+					.filter(code -> isExpired(code.getExpiration(), now))
+					.collect(Collectors.toList());
+		}
+
+		private void removeIndexes(RemovalNotification<Long, DeviceCode> notification) {
+			// replaced on each save, the indexes still point to the same id then
+			DeviceCode code = notification.getValue();
+			if (notification.getCause() != RemovalCause.REPLACED && code != null) {
+				byDeviceCode.remove(code.getDeviceCode(), notification.getKey());
+				byUserCode.remove(code.getUserCode(), notification.getKey());
+			}
+		}
+
+	}
+
+}
@@ -21,11 +21,13 @@ import cz.muni.ics.data.DefaultPageCriteria;
 import cz.muni.ics.data.PageCriteria;
 import cz.muni.ics.oauth2.model.AuthenticationHolderEntity;
 import cz.muni.ics.oauth2.repository.AuthenticationHolderRepository;
+import cz.muni.ics.openid.connect.config.ConfigurationPropertiesBean;
 import cz.muni.ics.util.jpa.JpaUtil;
 import java.util.List;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.TypedQuery;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -38,6 +40,9 @@ public class JpaAuthenticationHolderRepository implements AuthenticationHolderRe
 	@PersistenceContext(unitName="defaultPersistenceUnit")
 	private EntityManager manager;
 
+	@Autowired(required = false)
+	private ConfigurationPropertiesBean config;
+
 	@Override
 	public List<AuthenticationHolderEntity> getAll() {
 		TypedQuery<AuthenticationHolderEntity> query = manager.createNamedQuery(AuthenticationHolderEntity.QUERY_ALL, AuthenticationHolderEntity.class);
@@ -63,6 +68,10 @@ public class JpaAuthenticationHolderRepository implements AuthenticationHolderRe
 	@Override
 	@Transactional(value="defaultTransactionManager")
 	public AuthenticationHolderEntity save(AuthenticationHolderEntity a) {
+		if (a.getId() == null && config != null && config.isCompactAuthenticationHolders()) {
+			// new holder - one row instead of the rows in the collection tables
+			a.compact();
+		}
 		return JpaUtil.saveOrUpdate(manager, a);
 	}
 
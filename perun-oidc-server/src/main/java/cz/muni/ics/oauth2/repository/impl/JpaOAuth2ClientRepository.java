@@ -18,12 +18,15 @@
 package cz.muni.ics.oauth2.repository.impl;
 
 import cz.muni.ics.oauth2.model.ClientDetailsEntity;
+import cz.muni.ics.oauth2.repository.ClientChangeRecorder;
 import cz.muni.ics.oauth2.repository.OAuth2ClientRepository;
 import cz.muni.ics.util.jpa.JpaUtil;
 import java.util.Collection;
+import java.util.Objects;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.TypedQuery;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -38,6 +41,9 @@ public class JpaOAuth2ClientRepository implements OAuth2ClientRepository {
 	@PersistenceContext(unitName="defaultPersistenceUnit")
 	private EntityManager manager;
 
+	@Autowired(required = false)
+	private ClientChangeRecorder clientChangeRecorder;
+
 	public JpaOAuth2ClientRepository() {
 
 	}
@@ -66,6 +72,7 @@ public class JpaOAuth2ClientRepository implements OAuth2ClientRepository {
 	 */
 	@Override
 	public ClientDetailsEntity saveClient(ClientDetailsEntity client) {
+		recordChange(client.getClientId());
 		return JpaUtil.saveOrUpdate(manager, client);
 	}
 
@@ -76,6 +83,7 @@ public class JpaOAuth2ClientRepository implements OAuth2ClientRepository {
 	public void deleteClient(ClientDetailsEntity client) {
 		ClientDetailsEntity found = getById(client.getId());
 		if (found != null) {
+			recordChange(found.getClientId());
 			manager.remove(found);
 		} else {
 			throw new IllegalArgumentException("Client not found: " + client);
@@ -87,6 +95,11 @@ public class JpaOAuth2ClientRepository implements OAuth2ClientRepository {
 		// sanity check
 		client.setId(id);
 
+		ClientDetailsEntity found = getById(id);
+		if (found != null && !Objects.equals(found.getClientId(), client.getClientId())) {
+			recordChange(found.getClientId());
+		}
+		recordChange(client.getClientId());
 		return JpaUtil.saveOrUpdate(manager, client);
 	}
 
@@ -96,4 +109,10 @@ public class JpaOAuth2ClientRepository implements OAuth2ClientRepository {
 		return query.getResultList();
 	}
 
+	private void recordChange(String clientId) {
+		if (clientChangeRecorder != null) {
+			clientChangeRecorder.recordChange(clientId);
+		}
+	}
+
 }
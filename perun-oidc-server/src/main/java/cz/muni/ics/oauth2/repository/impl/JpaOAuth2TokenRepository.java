@@ -24,8 +24,10 @@ import cz.muni.ics.data.PageCriteria;
 import cz.muni.ics.oauth2.model.ClientDetailsEntity;
 import cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity;
 import cz.muni.ics.oauth2.model.OAuth2RefreshTokenEntity;
+import cz.muni.ics.oauth2.repository.AccessTokenRevocationRecorder;
 import cz.muni.ics.oauth2.repository.OAuth2TokenRepository;
 import cz.muni.ics.openid.connect.model.ApprovedSite;
+import cz.muni.ics.util.TokenHashUtils;
 import cz.muni.ics.util.jpa.JpaUtil;
 import java.text.ParseException;
 import java.util.ArrayList;
@@ -42,8 +44,11 @@ import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaDelete;
 import javax.persistence.criteria.Root;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Repository
 @Slf4j
@@ -54,6 +59,16 @@ public class JpaOAuth2TokenRepository implements OAuth2TokenRepository {
 	@PersistenceContext(unitName="defaultPersistenceUnit")
 	private EntityManager manager;
 
+	@Autowired(required = false)
+	private AccessTokenRevocationRecorder revocationRecorder;
+
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
 	@Override
 	public Set<OAuth2AccessTokenEntity> getAllAccessTokens() {
 		TypedQuery<OAuth2AccessTokenEntity> query = manager.createNamedQuery(OAuth2AccessTokenEntity.QUERY_ALL, OAuth2AccessTokenEntity.class);
@@ -69,14 +84,32 @@ public class JpaOAuth2TokenRepository implements OAuth2TokenRepository {
 
 	@Override
 	public OAuth2AccessTokenEntity getAccessTokenByValue(String accessTokenValue) {
-		try {
-			JWT jwt = JWTParser.parse(accessTokenValue);
-			TypedQuery<OAuth2AccessTokenEntity> query = manager.createNamedQuery(OAuth2AccessTokenEntity.QUERY_BY_TOKEN_VALUE, OAuth2AccessTokenEntity.class);
-			query.setParameter(OAuth2AccessTokenEntity.PARAM_TOKEN_VALUE, jwt);
-			return JpaUtil.getSingleResult(query.getResultList());
-		} catch (ParseException e) {
+		if (accessTokenValue == null) {
 			return null;
 		}
+		String tokenHash = TokenHashUtils.hash(accessTokenValue);
+		TypedQuery<OAuth2AccessTokenEntity> query = manager.createNamedQuery(OAuth2AccessTokenEntity.QUERY_BY_TOKEN_HASH, OAuth2AccessTokenEntity.class);
+		query.setParameter(OAuth2AccessTokenEntity.PARAM_TOKEN_HASH, tokenHash);
+		List<OAuth2AccessTokenEntity> tokens = new ArrayList<>(query.getResultList());
+		// guard against (practically impossible) collisions of the digest
+		tokens.removeIf(token -> !accessTokenValue.equals(token.getValue()));
+		OAuth2AccessTokenEntity found = JpaUtil.getSingleResult(tokens);
+		if (found == null) {
+			// token stored without the digest, e.g. by a node of the previous version during a rolling upgrade
+			JWT jwt = parseJwt(accessTokenValue);
+			if (jwt == null) {
+				return null;
+			}
+			TypedQuery<OAuth2AccessTokenEntity> valueQuery = manager.createNamedQuery(OAuth2AccessTokenEntity.QUERY_BY_TOKEN_VALUE_WITHOUT_HASH, OAuth2AccessTokenEntity.class);
+			valueQuery.setParameter(OAuth2AccessTokenEntity.PARAM_TOKEN_VALUE, jwt);
+			found = JpaUtil.getSingleResult(valueQuery.getResultList());
+			if (found != null) {
+				Long id = found.getId();
+				backfillTokenHash(() -> manager.find(OAuth2AccessTokenEntity.class, id).setTokenHash(tokenHash));
+				found.setTokenHash(tokenHash);
+			}
+		}
+		return found;
 	}
 
 	@Override
@@ -87,6 +120,9 @@ public class JpaOAuth2TokenRepository implements OAuth2TokenRepository {
 	@Override
 	@Transactional(value="defaultTransactionManager")
 	public OAuth2AccessTokenEntity saveAccessToken(OAuth2AccessTokenEntity token) {
+		if (token.getJwtValue() != null) {
+			token.setTokenHash(TokenHashUtils.hash(token.getValue()));
+		}
 		return JpaUtil.saveOrUpdate(manager, token);
 	}
 
@@ -96,6 +132,9 @@ public class JpaOAuth2TokenRepository implements OAuth2TokenRepository {
 		OAuth2AccessTokenEntity found = getAccessTokenById(accessToken.getId());
 		if (found != null) {
 			manager.remove(found);
+			if (revocationRecorder != null) {
+				revocationRecorder.revoke(found);
+			}
 		} else {
 			throw new IllegalArgumentException("Access token not found: " + accessToken);
 		}
@@ -114,14 +153,32 @@ public class JpaOAuth2TokenRepository implements OAuth2TokenRepository {
 
 	@Override
 	public OAuth2RefreshTokenEntity getRefreshTokenByValue(String refreshTokenValue) {
-		try {
-			JWT jwt = JWTParser.parse(refreshTokenValue);
-			TypedQuery<OAuth2RefreshTokenEntity> query = manager.createNamedQuery(OAuth2RefreshTokenEntity.QUERY_BY_TOKEN_VALUE, OAuth2RefreshTokenEntity.class);
-			query.setParameter(OAuth2RefreshTokenEntity.PARAM_TOKEN_VALUE, jwt);
-			return JpaUtil.getSingleResult(query.getResultList());
-		} catch (ParseException e) {
+		if (refreshTokenValue == null) {
 			return null;
 		}
+		String tokenHash = TokenHashUtils.hash(refreshTokenValue);
+		TypedQuery<OAuth2RefreshTokenEntity> query = manager.createNamedQuery(OAuth2RefreshTokenEntity.QUERY_BY_TOKEN_HASH, OAuth2RefreshTokenEntity.class);
+		query.setParameter(OAuth2RefreshTokenEntity.PARAM_TOKEN_HASH, tokenHash);
+		List<OAuth2RefreshTokenEntity> tokens = new ArrayList<>(query.getResultList());
+		// guard against (practically impossible) collisions of the digest
+		tokens.removeIf(token -> !refreshTokenValue.equals(token.getValue()));
+		OAuth2RefreshTokenEntity found = JpaUtil.getSingleResult(tokens);
+		if (found == null) {
+			// token stored without the digest, e.g. by a node of the previous version during a rolling upgrade
+			JWT jwt = parseJwt(refreshTokenValue);
+			if (jwt == null) {
+				return null;
+			}
+			TypedQuery<OAuth2RefreshTokenEntity> valueQuery = manager.createNamedQuery(OAuth2RefreshTokenEntity.QUERY_BY_TOKEN_VALUE_WITHOUT_HASH, OAuth2RefreshTokenEntity.class);
+			valueQuery.setParameter(OAuth2RefreshTokenEntity.PARAM_TOKEN_VALUE, jwt);
+			found = JpaUtil.getSingleResult(valueQuery.getResultList());
+			if (found != null) {
+				Long id = found.getId();
+				backfillTokenHash(() -> manager.find(OAuth2RefreshTokenEntity.class, id).setTokenHash(tokenHash));
+				found.setTokenHash(tokenHash);
+			}
+		}
+		return found;
 	}
 
 	@Override
@@ -132,6 +189,9 @@ public class JpaOAuth2TokenRepository implements OAuth2TokenRepository {
 	@Override
 	@Transactional(value="defaultTransactionManager")
 	public OAuth2RefreshTokenEntity saveRefreshToken(OAuth2RefreshTokenEntity refreshToken) {
+		if (refreshToken.getJwt() != null) {
+			refreshToken.setTokenHash(TokenHashUtils.hash(refreshToken.getValue()));
+		}
 		return JpaUtil.saveOrUpdate(manager, refreshToken);
 	}
 
@@ -208,6 +268,13 @@ public class JpaOAuth2TokenRepository implements OAuth2TokenRepository {
 		return new LinkedHashSet<>(JpaUtil.getResultPage(query, pageCriteria));
 	}
 
+	@Override
+	public Set<OAuth2AccessTokenEntity> getAllValidAccessTokens(PageCriteria pageCriteria) {
+		TypedQuery<OAuth2AccessTokenEntity> query = manager.createNamedQuery(OAuth2AccessTokenEntity.QUERY_VALID_BY_DATE, OAuth2AccessTokenEntity.class);
+		query.setParameter(OAuth2AccessTokenEntity.PARAM_DATE, new Date());
+		return new LinkedHashSet<>(JpaUtil.getResultPage(query, pageCriteria));
+	}
+
 	@Override
 	public Set<OAuth2RefreshTokenEntity> getAllExpiredRefreshTokens() {
 		DefaultPageCriteria pageCriteria = new DefaultPageCriteria(0, MAXEXPIREDRESULTS);
@@ -272,4 +339,20 @@ public class JpaOAuth2TokenRepository implements OAuth2TokenRepository {
 		return accessTokens;
 	}
 
+	private JWT parseJwt(String tokenValue) {
+		try {
+			return JWTParser.parse(tokenValue);
+		} catch (ParseException e) {
+			return null;
+		}
+	}
+
+	private void backfillTokenHash(Runnable update) {
+		try {
+			transactionTemplate.executeWithoutResult(status -> update.run());
+		} catch (RuntimeException e) {
+			log.warn("Failed to store the digest of a token found by its value", e);
+		}
+	}
+
 }
@@ -15,6 +15,7 @@
  *******************************************************************************/
 package cz.muni.ics.oauth2.service;
 
+import com.nimbusds.jwt.JWTClaimsSet;
 import cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity;
 import cz.muni.ics.oauth2.model.OAuth2RefreshTokenEntity;
 import cz.muni.ics.openid.connect.model.UserInfo;
@@ -64,4 +65,14 @@ public interface IntrospectionResultAssembler {
 	 */
 	Map<String, Object> assembleFrom(OAuth2RefreshTokenEntity token, Set<String> introspectionRequesterScopes);
 
+	/**
+	 * Assemble a token introspection result from the claims of the self-contained access token. Values stored
+	 * only in the database (username, acr, auth_time) are not available.
+	 *
+	 * @param claims the claims of the validated access token
+	 * @param introspectionRequesterScopes the scopes the client is authorized for
+	 * @return the token introspection result
+	 */
+	Map<String, Object> assembleFrom(JWTClaimsSet claims, Set<String> introspectionRequesterScopes);
+
 }
@@ -0,0 +1,146 @@
+package cz.muni.ics.oauth2.service.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity;
+import cz.muni.ics.util.TokenHashUtils;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+/**
+ * Bounded in-memory cache of access tokens, used to avoid querying the database (and lazy loading the
+ * authentication holder) on each request authenticated by the access token. Entries are keyed by the SHA-256
+ * hash of the token value and are never served after the expiration of the token.
+ *
+ * Tokens removed from the database (revoked, cleared on refresh or together with the client) are recorded by
+ * the {@link AccessTokenRevocationList}, which is consulted on each cache hit. Removal made on this node is
+ * honoured immediately, removal made on other node of the cluster after at most the sync interval of the list.
+ */
+@Slf4j
+public class AccessTokenCache {
+
+	private final boolean enabled;
+	private final Cache<String, CachedAccessToken> cache;
+	private final AccessTokenRevocationList revocationList;
+
+	public AccessTokenCache(boolean enabled, long maxSize, long ttlSeconds, AccessTokenRevocationList revocationList) {
+		if (enabled && (revocationList == null || !revocationList.isEnabled())) {
+			throw new IllegalArgumentException("Access token cache requires enabled revocation list");
+		}
+		this.enabled = enabled;
+		this.revocationList = revocationList;
+		this.cache = CacheBuilder.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+				.recordStats()
+				.build();
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Get cached token.
+	 *
+	 * @param tokenValue Value of the access token.
+	 * @return Cached token, NULL if not cached, expired or revoked.
+	 */
+	public CachedAccessToken get(String tokenValue) {
+		if (!enabled || tokenValue == null) {
+			return null;
+		}
+
+		String key = hash(tokenValue);
+		CachedAccessToken cached = cache.getIfPresent(key);
+		if (cached == null) {
+			return null;
+		} else if (cached.isExpired()) {
+			cache.invalidate(key);
+			return null;
+		} else if (revocationList.isRevokedHash(key)) {
+			log.debug("Cached access token has been revoked, dropping it");
+			cache.invalidate(key);
+			return null;
+		}
+		return cached;
+	}
+
+	/**
+	 * Store token in the cache. Token without authentication is not cached.
+	 *
+	 * @param token Token to be cached.
+	 */
+	public void put(OAuth2AccessTokenEntity token) {
+		if (!enabled || token == null || token.getValue() == null || token.isExpired()
+				|| token.getAuthenticationHolder() == null)
+		{
+			return;
+		}
+
+		// resolve the authentication now, so it is not loaded lazily outside of the persistence context
+		OAuth2Authentication authentication = token.getAuthenticationHolder().getAuthentication();
+		if (authentication == null) {
+			return;
+		}
+		cache.put(hash(token.getValue()), new CachedAccessToken(token, authentication));
+	}
+
+	/**
+	 * Remove token from the cache on this node. Other nodes learn about the removal from the revocation list.
+	 *
+	 * @param tokenValue Value of the access token.
+	 */
+	public void invalidate(String tokenValue) {
+		if (!enabled || tokenValue == null) {
+			return;
+		}
+
+		cache.invalidate(hash(tokenValue));
+	}
+
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	public long getSize() {
+		return cache.size();
+	}
+
+	private String hash(String tokenValue) {
+		return TokenHashUtils.hash(tokenValue);
+	}
+
+	/**
+	 * Cached access token together with its resolved authentication.
+	 */
+	public static class CachedAccessToken {
+
+		private final OAuth2AccessTokenEntity token;
+		private final OAuth2Authentication authentication;
+		private final Date expiration;
+
+		CachedAccessToken(OAuth2AccessTokenEntity token, OAuth2Authentication authentication) {
+			this.token = token;
+			this.authentication = authentication;
+			this.expiration = token.getExpiration();
+		}
+
+		public OAuth2AccessTokenEntity getToken() {
+			return token;
+		}
+
+		public OAuth2Authentication getAuthentication() {
+			return authentication;
+		}
+
+		public boolean isExpired() {
+			return expiration != null && expiration.before(new Date());
+		}
+
+	}
+
+}
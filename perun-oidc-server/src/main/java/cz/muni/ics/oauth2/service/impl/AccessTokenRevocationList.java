@@ -0,0 +1,139 @@
+package cz.muni.ics.oauth2.service.impl;
+
+import cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity;
+import cz.muni.ics.oauth2.model.RevokedAccessTokenEntity;
+import cz.muni.ics.oauth2.repository.AccessTokenRevocationRecorder;
+import cz.muni.ics.util.TokenHashUtils;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
+import javax.persistence.TypedQuery;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory list of access tokens revoked before their expiration, identified by the SHA-256 hash of the value.
+ *
+ * Each revocation is stored in the database (in the transaction removing the token), so it is visible to all
+ * nodes of the cluster. Each node reloads the not yet expired revocations at most once per sync interval, so
+ * revocation made on other node is honoured after at most the sync interval. Entries are dropped from memory
+ * after the expiration of the revoked token, expired records are purged from the database by
+ * {@link cz.muni.ics.oidc.server.CustomClearTasks}.
+ */
+@Slf4j
+public class AccessTokenRevocationList implements AccessTokenRevocationRecorder {
+
+	@PersistenceContext(unitName = "defaultPersistenceUnit")
+	private EntityManager manager;
+
+	private final boolean enabled;
+	private final long syncIntervalMillis;
+
+	// token hash -> expiration of the token in millis
+	private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+
+	private volatile long lastSync = 0L;
+
+	public AccessTokenRevocationList(boolean enabled, long syncIntervalSeconds) {
+		this.enabled = enabled;
+		this.syncIntervalMillis = TimeUnit.SECONDS.toMillis(syncIntervalSeconds);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Record revocation of the token. Has to be called in the transaction removing the token. Already expired
+	 * tokens are not recorded.
+	 *
+	 * @param token Revoked token.
+	 */
+	@Override
+	public void revoke(OAuth2AccessTokenEntity token) {
+		if (!enabled || token == null || token.getJwtValue() == null || token.isExpired()) {
+			return;
+		}
+
+		String hash = TokenHashUtils.hash(token.getValue());
+		manager.persist(new RevokedAccessTokenEntity(hash, token.getExpiration()));
+		revoked.put(hash, expirationMillis(token.getExpiration()));
+	}
+
+	/**
+	 * Check if the token has been revoked. Synchronizes the list with the database when the sync interval has
+	 * passed since the last synchronization.
+	 *
+	 * @param tokenValue Value of the access token.
+	 * @return TRUE if token has been revoked, FALSE otherwise.
+	 */
+	public boolean isRevoked(String tokenValue) {
+		if (tokenValue == null) {
+			return false;
+		}
+
+		return isRevokedHash(TokenHashUtils.hash(tokenValue));
+	}
+
+	/**
+	 * Check if the token has been revoked, same as {@link #isRevoked(String)}.
+	 *
+	 * @param tokenHash SHA-256 hash of the access token value.
+	 * @return TRUE if token has been revoked, FALSE otherwise.
+	 */
+	public boolean isRevokedHash(String tokenHash) {
+		if (!enabled || tokenHash == null) {
+			return false;
+		}
+
+		syncIfNeeded();
+		Long expiration = revoked.get(tokenHash);
+		return expiration != null && expiration > System.currentTimeMillis();
+	}
+
+	public int getSize() {
+		return revoked.size();
+	}
+
+	private void syncIfNeeded() {
+		long now = System.currentTimeMillis();
+		if (now - lastSync < syncIntervalMillis) {
+			return;
+		}
+
+		synchronized (this) {
+			if (now - lastSync < syncIntervalMillis) {
+				return;
+			}
+			lastSync = now;
+			sync(now);
+		}
+	}
+
+	private void sync(long now) {
+		try {
+			TypedQuery<RevokedAccessTokenEntity> query = manager.createNamedQuery(
+					RevokedAccessTokenEntity.QUERY_NOT_EXPIRED, RevokedAccessTokenEntity.class);
+			query.setParameter(RevokedAccessTokenEntity.PARAM_DATE, new Date(now));
+			List<RevokedAccessTokenEntity> records = query.getResultList();
+			for (RevokedAccessTokenEntity record : records) {
+				revoked.put(record.getTokenHash(), expirationMillis(record.getExpiration()));
+			}
+		} catch (PersistenceException e) {
+			// keep the entries loaded so far, the sync is repeated after the interval
+			log.warn("Could not synchronize revoked access tokens", e);
+		}
+
+		revoked.values().removeIf(expiration -> expiration <= now);
+		log.debug("Revoked access tokens synchronized, {} entries", revoked.size());
+	}
+
+	private long expirationMillis(Date expiration) {
+		return expiration != null ? expiration.getTime() : Long.MAX_VALUE;
+	}
+
+}
@@ -0,0 +1,172 @@
+package cz.muni.ics.oauth2.service.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import cz.muni.ics.oauth2.model.ClientChangeEntity;
+import cz.muni.ics.oauth2.model.ClientDetailsEntity;
+import cz.muni.ics.oauth2.repository.ClientChangeRecorder;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
+import javax.persistence.TypedQuery;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Read-through in-memory cache of clients keyed by the client_id. The cache holds a snapshot of the client and
+ * each caller gets its own copy, so modifications made by the caller never leak into the cache.
+ *
+ * Each change of the client is recorded in the client_change table (in the transaction of the change). Each node
+ * polls the table at most once per poll interval and drops the changed clients from its cache. Entries also
+ * expire after the TTL, which bounds the staleness of clients modified directly in the database.
+ */
+@Slf4j
+public class ClientDetailsCache implements ClientChangeRecorder {
+
+	@PersistenceContext(unitName = "defaultPersistenceUnit")
+	private EntityManager manager;
+
+	private final boolean enabled;
+	private final long pollIntervalMillis;
+	private final Cache<String, ClientDetailsEntity> cache;
+
+	// incremented on each invalidation, client loaded before the invalidation is not cached
+	private final AtomicLong generation = new AtomicLong();
+
+	private volatile long lastPoll = 0L;
+	private volatile Long lastChangeId = null;
+
+	public ClientDetailsCache(boolean enabled, long maxSize, long ttlSeconds, long pollIntervalSeconds) {
+		this.enabled = enabled;
+		this.pollIntervalMillis = TimeUnit.SECONDS.toMillis(pollIntervalSeconds);
+		this.cache = CacheBuilder.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+				.recordStats()
+				.build();
+	}
+
+	public ClientDetailsCache(boolean enabled, long maxSize, long ttlSeconds, long pollIntervalSeconds,
+							  EntityManager manager)
+	{
+		this(enabled, maxSize, ttlSeconds, pollIntervalSeconds);
+		this.manager = manager;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Get the client, load it by the loader when not cached.
+	 *
+	 * @param clientId Identifier of the client.
+	 * @param loader Function loading the client from the database.
+	 * @return Copy of the client, NULL if client does not exist.
+	 */
+	public ClientDetailsEntity get(String clientId, Function<String, ClientDetailsEntity> loader) {
+		if (!enabled || clientId == null) {
+			return loader.apply(clientId);
+		}
+
+		pollChangesIfNeeded();
+		ClientDetailsEntity cached = cache.getIfPresent(clientId);
+		if (cached == null) {
+			long loadGeneration = generation.get();
+			ClientDetailsEntity loaded = loader.apply(clientId);
+			if (loaded == null) {
+				return null;
+			}
+			cached = new ClientDetailsEntity(loaded);
+			if (loadGeneration == generation.get()) {
+				cache.put(clientId, cached);
+			}
+		}
+		return new ClientDetailsEntity(cached);
+	}
+
+	/**
+	 * Record the change of the client, so other nodes drop it from their caches. Has to be called in the
+	 * transaction changing the client.
+	 *
+	 * @param clientId Identifier of the changed client.
+	 */
+	@Override
+	public void recordChange(String clientId) {
+		if (clientId == null) {
+			return;
+		}
+
+		// recorded even if the cache is disabled on this node, other nodes might have it enabled
+		manager.persist(new ClientChangeEntity(clientId, new Date()));
+	}
+
+	/**
+	 * Remove the client from the cache on this node. Should be called after the change has been committed.
+	 *
+	 * @param clientId Identifier of the client.
+	 */
+	public void invalidate(String clientId) {
+		if (!enabled || clientId == null) {
+			return;
+		}
+
+		generation.incrementAndGet();
+		cache.invalidate(clientId);
+	}
+
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	public long getSize() {
+		return cache.size();
+	}
+
+	private void pollChangesIfNeeded() {
+		long now = System.currentTimeMillis();
+		if (now - lastPoll < pollIntervalMillis) {
+			return;
+		}
+
+		synchronized (this) {
+			if (now - lastPoll < pollIntervalMillis) {
+				return;
+			}
+			lastPoll = now;
+			pollChanges();
+		}
+	}
+
+	private void pollChanges() {
+		try {
+			if (lastChangeId == null) {
+				// nothing cached yet, older changes are not relevant
+				Long maxId = manager.createNamedQuery(ClientChangeEntity.QUERY_MAX_ID, Long.class).getSingleResult();
+				lastChangeId = maxId != null ? maxId : 0L;
+				return;
+			}
+
+			TypedQuery<ClientChangeEntity> query = manager.createNamedQuery(ClientChangeEntity.QUERY_AFTER_ID,
+					ClientChangeEntity.class);
+			query.setParameter(ClientChangeEntity.PARAM_ID, lastChangeId);
+			List<ClientChangeEntity> changes = query.getResultList();
+			for (ClientChangeEntity change : changes) {
+				invalidate(change.getClientId());
+				lastChangeId = change.getId();
+			}
+			if (!changes.isEmpty()) {
+				log.debug("Dropped {} changed clients from the cache", changes.size());
+			}
+		} catch (PersistenceException e) {
+			// keep the cached entries, they expire after the TTL anyway
+			log.warn("Could not poll changes of clients", e);
+		}
+	}
+
+}
@@ -22,7 +22,9 @@ import cz.muni.ics.data.AbstractPageOperationTemplate;
 import cz.muni.ics.oauth2.model.AuthenticationHolderEntity;
 import cz.muni.ics.oauth2.model.ClientDetailsEntity;
 import cz.muni.ics.oauth2.model.DeviceCode;
+import cz.muni.ics.oauth2.repository.AuthenticationHolderRepository;
 import cz.muni.ics.oauth2.repository.impl.DeviceCodeRepository;
+import cz.muni.ics.oauth2.repository.impl.InMemoryCodeStore;
 import cz.muni.ics.oauth2.service.DeviceCodeService;
 import cz.muni.ics.oidc.saml.ExtendedOAuth2Exception;
 import cz.muni.ics.oidc.saml.SamlAuthenticationExceptionAuthenticationToken;
@@ -31,6 +33,8 @@ import java.util.Date;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import javax.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.oauth2.common.util.RandomValueStringGenerator;
 import org.springframework.security.oauth2.provider.ClientDetails;
@@ -43,13 +47,28 @@ import org.springframework.transaction.annotation.Transactional;
  *
  */
 @Service("defaultDeviceCodeService")
+@Slf4j
 public class DefaultDeviceCodeService implements DeviceCodeService {
 
 	@Autowired
 	private DeviceCodeRepository repository;
 
+	@Autowired
+	private AuthenticationHolderRepository authenticationHolderRepository;
+
+	@Autowired(required = false)
+	private InMemoryCodeStore codeStore;
+
 	private final RandomValueStringGenerator randomGenerator = new RandomValueStringGenerator();
 
+	@PostConstruct
+	public void init() {
+		if (isInMemory()) {
+			log.info("Device codes are kept in memory");
+			repository = codeStore.getDeviceCodeRepository();
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see cz.muni.ics.oauth2.service.DeviceCodeService#save(cz.muni.ics.oauth2.model.DeviceCode)
 	 */
@@ -93,6 +112,9 @@ public class DefaultDeviceCodeService implements DeviceCodeService {
 
 		AuthenticationHolderEntity authHolder = new AuthenticationHolderEntity();
 		authHolder.setAuthentication(auth);
+		if (!isInMemory()) {
+			authHolder = authenticationHolderRepository.save(authHolder);
+		}
 
 		found.setAuthenticationHolder(authHolder);
 
@@ -163,4 +185,8 @@ public class DefaultDeviceCodeService implements DeviceCodeService {
 		deviceCode.setError(exc);
 		repository.save(deviceCode);
 	}
+
+	private boolean isInMemory() {
+		return codeStore != null && codeStore.isEnabled();
+	}
 }
@@ -37,6 +37,8 @@ import org.springframework.util.StringUtils;
 
 import java.sql.Timestamp;
 import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -126,6 +128,37 @@ public class DefaultIntrospectionResultAssembler implements IntrospectionResultA
 		return result;
 	}
 
+	@Override
+	public Map<String, Object> assembleFrom(JWTClaimsSet claims, Set<String> introspectionRequesterScopes) {
+		Set<String> tokenScopes = new HashSet<>();
+		String clientId = null;
+		try {
+			String scopeClaim = claims.getStringClaim(SCOPE);
+			if (StringUtils.hasText(scopeClaim)) {
+				tokenScopes.addAll(Arrays.asList(scopeClaim.split(SCOPE_SEPARATOR)));
+			}
+			clientId = claims.getStringClaim("azp");
+		} catch (ParseException e) {
+			log.warn("Caught exception while introspecting token and parsing claims '{}'", claims, e);
+		}
+
+		Set<String> scopes = Sets.intersection(introspectionRequesterScopes, tokenScopes);
+		String scope = Joiner.on(SCOPE_SEPARATOR).join(scopes);
+		Date expiration = claims.getExpirationTime();
+		Long exp = (expiration != null) ? expiration.getTime() / 1000L : null;
+
+		Map<String, Object> result = assemble(scope, exp, null, clientId, OAuth2AccessToken.BEARER_TYPE, null, null);
+		fillDataFromClaims(claims, result);
+
+		if (expiration != null && expiration.after(new Date())) {
+			result.put(ACTIVE, true);
+		} else {
+			result.clear();
+			result.put(ACTIVE, false);
+		}
+		return result;
+	}
+
 	private Map<String, Object> assemble(String scope,
 										 Long exp,
 										 String username,
@@ -163,30 +196,34 @@ public class DefaultIntrospectionResultAssembler implements IntrospectionResultA
 		try {
 			JWTClaimsSet atClaimsSet = atJwt.getJWTClaimsSet();
 			if (atClaimsSet != null) {
-				if (atClaimsSet.getIssueTime() != null) {
-					result.put(IAT, atClaimsSet.getIssueTime().getTime() / 1000L);
-				}
-				if (atClaimsSet.getNotBeforeTime() != null) {
-					result.put(NBF, atClaimsSet.getNotBeforeTime().getTime() / 1000L);
-				}
-				if (StringUtils.hasText(atClaimsSet.getSubject())) {
-					result.put(SUB, atClaimsSet.getSubject());
-				}
-				if (atClaimsSet.getAudience() != null) {
-					result.put(AUD, atClaimsSet.getAudience());
-				}
-				if (StringUtils.hasText(atClaimsSet.getIssuer())) {
-					result.put(ISS, atClaimsSet.getIssuer());
-				}
-				if (StringUtils.hasText(atClaimsSet.getJWTID())) {
-					result.put(JTI, atClaimsSet.getJWTID());
-				}
+				fillDataFromClaims(atClaimsSet, result);
 			}
 		} catch (ParseException e) {
 			log.warn("Caught exception while introspecting token and parsing JWT value '{}'", atJwt, e);
 		}
 	}
 
+	private void fillDataFromClaims(JWTClaimsSet atClaimsSet, Map<String, Object> result) {
+		if (atClaimsSet.getIssueTime() != null) {
+			result.put(IAT, atClaimsSet.getIssueTime().getTime() / 1000L);
+		}
+		if (atClaimsSet.getNotBeforeTime() != null) {
+			result.put(NBF, atClaimsSet.getNotBeforeTime().getTime() / 1000L);
+		}
+		if (StringUtils.hasText(atClaimsSet.getSubject())) {
+			result.put(SUB, atClaimsSet.getSubject());
+		}
+		if (atClaimsSet.getAudience() != null) {
+			result.put(AUD, atClaimsSet.getAudience());
+		}
+		if (StringUtils.hasText(atClaimsSet.getIssuer())) {
+			result.put(ISS, atClaimsSet.getIssuer());
+		}
+		if (StringUtils.hasText(atClaimsSet.getJWTID())) {
+			result.put(JTI, atClaimsSet.getJWTID());
+		}
+	}
+
 	private void fillAcrAndAuthTime(SavedUserAuthentication savedUserAuthentication, Map<String, Object> result) {
 		if (StringUtils.hasText(savedUserAuthentication.getAcr())) {
 			result.put(ACR, savedUserAuthentication.getAcr());
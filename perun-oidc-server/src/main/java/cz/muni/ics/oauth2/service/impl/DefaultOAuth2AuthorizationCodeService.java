@@ -25,8 +25,10 @@ import cz.muni.ics.oauth2.model.AuthenticationHolderEntity;
 import cz.muni.ics.oauth2.model.AuthorizationCodeEntity;
 import cz.muni.ics.oauth2.repository.AuthenticationHolderRepository;
 import cz.muni.ics.oauth2.repository.AuthorizationCodeRepository;
+import cz.muni.ics.oauth2.repository.impl.InMemoryCodeStore;
 import java.util.Collection;
 import java.util.Date;
+import javax.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
@@ -53,10 +55,21 @@ public class DefaultOAuth2AuthorizationCodeService implements AuthorizationCodeS
 	@Autowired
 	private AuthenticationHolderRepository authenticationHolderRepository;
 
+	@Autowired(required = false)
+	private InMemoryCodeStore codeStore;
+
 	private int authCodeExpirationSeconds = 60 * 5; // expire in 5 minutes by default
 
 	private final RandomValueStringGenerator generator = new RandomValueStringGenerator(22);
 
+	@PostConstruct
+	public void init() {
+		if (isInMemory()) {
+			log.info("Authorization codes are kept in memory");
+			repository = codeStore.getAuthorizationCodeRepository();
+		}
+	}
+
 	/**
 	 * Generate a random authorization code and create an AuthorizationCodeEntity,
 	 * which will be stored in the repository.
@@ -73,7 +86,9 @@ public class DefaultOAuth2AuthorizationCodeService implements AuthorizationCodeS
 		// attach the authorization so that we can look it up later
 		AuthenticationHolderEntity authHolder = new AuthenticationHolderEntity();
 		authHolder.setAuthentication(authentication);
-		authHolder = authenticationHolderRepository.save(authHolder);
+		if (!isInMemory()) {
+			authHolder = authenticationHolderRepository.save(authHolder);
+		}
 
 		// set the auth code to expire
 		Date expiration = new Date(System.currentTimeMillis() + (getAuthCodeExpirationSeconds() * 1000L));
@@ -129,6 +144,10 @@ public class DefaultOAuth2AuthorizationCodeService implements AuthorizationCodeS
 		}.execute();
 	}
 
+	private boolean isInMemory() {
+		return codeStore != null && codeStore.isEnabled();
+	}
+
 	/**
 	 * @return the repository
 	 */
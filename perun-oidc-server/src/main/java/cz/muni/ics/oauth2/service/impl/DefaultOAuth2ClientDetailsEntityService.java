@@ -69,6 +69,9 @@ public class DefaultOAuth2ClientDetailsEntityService implements ClientDetailsEnt
 	@Autowired
 	private OAuth2TokenRepository tokenRepository;
 
+	@Autowired(required = false)
+	private ClientDetailsCache clientDetailsCache;
+
 	@Autowired
 	private ApprovedSiteService approvedSiteService;
 
@@ -127,7 +130,9 @@ public class DefaultOAuth2ClientDetailsEntityService implements ClientDetailsEnt
 		checkSectorIdentifierUri(client);
 
 		ensureNoReservedScopes(client);
-		return clientRepository.saveClient(client);
+		ClientDetailsEntity saved = clientRepository.saveClient(client);
+		invalidateCachedClient(client.getClientId());
+		return saved;
 	}
 
 	/**
@@ -315,7 +320,9 @@ public class DefaultOAuth2ClientDetailsEntityService implements ClientDetailsEnt
 	@Override
 	public ClientDetailsEntity loadClientByClientId(String clientId) throws OAuth2Exception, IllegalArgumentException {
 		if (!Strings.isNullOrEmpty(clientId)) {
-			ClientDetailsEntity client = clientRepository.getClientByClientId(clientId);
+			ClientDetailsEntity client = clientDetailsCache != null
+					? clientDetailsCache.get(clientId, clientRepository::getClientByClientId)
+					: clientRepository.getClientByClientId(clientId);
 			if (client == null) {
 				throw new InvalidClientException("Client with id " + clientId + " was not found");
 			}
@@ -351,6 +358,7 @@ public class DefaultOAuth2ClientDetailsEntityService implements ClientDetailsEnt
 
 		// take care of the client itself
 		clientRepository.deleteClient(client);
+		invalidateCachedClient(client.getClientId());
 	}
 
 	/**
@@ -392,7 +400,10 @@ public class DefaultOAuth2ClientDetailsEntityService implements ClientDetailsEnt
 			// make sure a client doesn't get any special system scopes
 			ensureNoReservedScopes(newClient);
 
-			return clientRepository.updateClient(oldClient.getId(), newClient);
+			ClientDetailsEntity updated = clientRepository.updateClient(oldClient.getId(), newClient);
+			invalidateCachedClient(oldClient.getClientId());
+			invalidateCachedClient(newClient.getClientId());
+			return updated;
 		}
 		throw new IllegalArgumentException("Neither old client or new client can be null!");
 	}
@@ -428,6 +439,12 @@ public class DefaultOAuth2ClientDetailsEntityService implements ClientDetailsEnt
 		return client;
 	}
 
+	private void invalidateCachedClient(String clientId) {
+		if (clientDetailsCache != null) {
+			clientDetailsCache.invalidate(clientId);
+		}
+	}
+
 	/**
 	 * Utility class to load a sector identifier's set of authorized redirect URIs.
 	 *
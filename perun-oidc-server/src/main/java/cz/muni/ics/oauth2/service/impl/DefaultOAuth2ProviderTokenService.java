@@ -106,6 +106,12 @@ public class DefaultOAuth2ProviderTokenService implements OAuth2TokenEntityServi
 	@Autowired
 	private ConfigurationPropertiesBean configBean;
 
+	@Autowired(required = false)
+	private AccessTokenCache accessTokenCache;
+
+	@Autowired(required = false)
+	private SelfContainedAccessTokenValidator selfContainedTokenValidator;
+
 	@Override
 	public Set<OAuth2AccessTokenEntity> getAllAccessTokensForUser(String userName) {
 		return tokenRepository.getAccessTokensByUserName(userName);
@@ -402,7 +408,18 @@ public class DefaultOAuth2ProviderTokenService implements OAuth2TokenEntityServi
 
 	@Override
 	public OAuth2Authentication loadAuthentication(String accessTokenValue) throws AuthenticationException {
-		OAuth2AccessTokenEntity accessToken = clearExpiredAccessToken(tokenRepository.getAccessTokenByValue(accessTokenValue));
+		if (selfContainedTokenValidator != null) {
+			// rejects expired and revoked tokens without the database, the authentication itself is not part
+			// of the token and is still taken from the cache or the database
+			selfContainedTokenValidator.validate(accessTokenValue);
+		}
+
+		AccessTokenCache.CachedAccessToken cached = getCachedAccessToken(accessTokenValue);
+		if (cached != null) {
+			return cached.getAuthentication();
+		}
+
+		OAuth2AccessTokenEntity accessToken = loadAccessToken(accessTokenValue);
 
 		if (accessToken == null) {
 			throw new InvalidTokenException("Invalid access token: " + accessTokenValue);
@@ -417,7 +434,12 @@ public class DefaultOAuth2ProviderTokenService implements OAuth2TokenEntityServi
 	 */
 	@Override
 	public OAuth2AccessTokenEntity readAccessToken(String accessTokenValue) throws AuthenticationException {
-		OAuth2AccessTokenEntity accessToken = clearExpiredAccessToken(tokenRepository.getAccessTokenByValue(accessTokenValue));
+		AccessTokenCache.CachedAccessToken cached = getCachedAccessToken(accessTokenValue);
+		if (cached != null) {
+			return cached.getToken();
+		}
+
+		OAuth2AccessTokenEntity accessToken = loadAccessToken(accessTokenValue);
 		if (accessToken == null) {
 			throw new InvalidTokenException("Access token for value " + accessTokenValue + " was not found");
 		} else {
@@ -425,6 +447,23 @@ public class DefaultOAuth2ProviderTokenService implements OAuth2TokenEntityServi
 		}
 	}
 
+	private AccessTokenCache.CachedAccessToken getCachedAccessToken(String accessTokenValue) {
+		if (accessTokenCache == null) {
+			return null;
+		}
+
+		return accessTokenCache.get(accessTokenValue);
+	}
+
+	private OAuth2AccessTokenEntity loadAccessToken(String accessTokenValue) {
+		OAuth2AccessTokenEntity accessToken = clearExpiredAccessToken(tokenRepository.getAccessTokenByValue(accessTokenValue));
+		if (accessToken != null && accessTokenCache != null) {
+			accessTokenCache.put(accessToken);
+		}
+
+		return accessToken;
+	}
+
 	/**
 	 * Get an access token by its authentication object.
 	 */
@@ -465,6 +504,9 @@ public class DefaultOAuth2ProviderTokenService implements OAuth2TokenEntityServi
 	@Transactional(value="defaultTransactionManager")
 	public void revokeAccessToken(OAuth2AccessTokenEntity accessToken) {
 		tokenRepository.removeAccessToken(accessToken);
+		if (accessTokenCache != null) {
+			accessTokenCache.invalidate(accessToken.getValue());
+		}
 	}
 
 	@Override
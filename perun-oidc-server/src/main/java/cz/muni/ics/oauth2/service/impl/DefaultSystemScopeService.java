@@ -24,26 +24,59 @@ import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.base.Strings;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.Sets;
 import cz.muni.ics.oauth2.model.SystemScope;
 import cz.muni.ics.oauth2.repository.SystemScopeRepository;
 import cz.muni.ics.oauth2.service.SystemScopeService;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 /**
+ * Scopes are served from the in-memory registry - an immutable snapshot of all scopes with the lookup by value
+ * and precomputed default, restricted and unrestricted sets. The registry is reloaded after each save or removal
+ * on this node and in the background once the refresh interval passes, so changes made on other nodes (or directly
+ * in the database) are picked up shortly after the refresh interval. Requests are served from the current snapshot
+ * while it is being reloaded, and it is kept when the reload fails. Returned scopes are copies, modifying them does
+ * not affect the registry.
+ *
  * @author jricher
  *
  */
 @Service("defaultSystemScopeService")
+@Slf4j
 public class DefaultSystemScopeService implements SystemScopeService {
 
+	private static final long REGISTRY_REFRESH_INTERVAL_MS = TimeUnit.SECONDS.toMillis(60);
+	private static final String REGISTRY_KEY = "scopes";
+
 	@Autowired
 	private SystemScopeRepository repository;
 
+	private final AtomicLong registryVersion = new AtomicLong();
+	private final ExecutorService registryRefreshExecutor = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "scope-registry-refresh");
+		t.setDaemon(true);
+		return t;
+	});
+	private final LoadingCache<String, ScopeRegistry> registry = CacheBuilder.newBuilder()
+			.refreshAfterWrite(REGISTRY_REFRESH_INTERVAL_MS, TimeUnit.MILLISECONDS)
+			.build(CacheLoader.asyncReloading(CacheLoader.from(this::loadRegistry), registryRefreshExecutor));
+
 	private final Predicate<SystemScope> isDefault = new Predicate<SystemScope>() {
 		@Override
 		public boolean apply(SystemScope input) {
@@ -99,7 +132,7 @@ public class DefaultSystemScopeService implements SystemScopeService {
 	 */
 	@Override
 	public Set<SystemScope> getAll() {
-		return repository.getAll();
+		return copyAll(getRegistry().all);
 	}
 
 	/* (non-Javadoc)
@@ -115,7 +148,7 @@ public class DefaultSystemScopeService implements SystemScopeService {
 	 */
 	@Override
 	public SystemScope getByValue(String value) {
-		return repository.getByValue(value);
+		return value != null ? copy(getRegistry().byValue.get(value)) : null;
 	}
 
 	/* (non-Javadoc)
@@ -124,7 +157,7 @@ public class DefaultSystemScopeService implements SystemScopeService {
 	@Override
 	public void remove(SystemScope scope) {
 		repository.remove(scope);
-
+		reloadRegistry();
 	}
 
 	/* (non-Javadoc)
@@ -133,7 +166,9 @@ public class DefaultSystemScopeService implements SystemScopeService {
 	@Override
 	public SystemScope save(SystemScope scope) {
 		if (!isReserved.apply(scope)) { // don't allow saving of reserved scopes
-			return repository.save(scope);
+			SystemScope saved = repository.save(scope);
+			reloadRegistry();
+			return saved;
 		} else {
 			return null;
 		}
@@ -188,7 +223,7 @@ public class DefaultSystemScopeService implements SystemScopeService {
 
 	@Override
 	public Set<SystemScope> getDefaults() {
-		return Sets.filter(getAll(), isDefault);
+		return copyAll(getRegistry().defaults);
 	}
 
 
@@ -199,12 +234,12 @@ public class DefaultSystemScopeService implements SystemScopeService {
 
 	@Override
 	public Set<SystemScope> getRestricted() {
-		return Sets.filter(getAll(), isRestricted);
+		return copyAll(getRegistry().restricted);
 	}
 
 	@Override
 	public Set<SystemScope> getUnrestricted() {
-		return Sets.filter(getAll(), Predicates.not(isRestricted));
+		return copyAll(getRegistry().unrestricted);
 	}
 
 	@Override
@@ -217,4 +252,71 @@ public class DefaultSystemScopeService implements SystemScopeService {
 		return Sets.filter(scopes, Predicates.not(isReserved));
 	}
 
+	@PreDestroy
+	public void destroy() {
+		registryRefreshExecutor.shutdownNow();
+	}
+
+	private ScopeRegistry getRegistry() {
+		return registry.getUnchecked(REGISTRY_KEY);
+	}
+
+	private void reloadRegistry() {
+		registry.put(REGISTRY_KEY, loadRegistry());
+	}
+
+	private ScopeRegistry loadRegistry() {
+		Set<SystemScope> all = repository.getAll();
+		ScopeRegistry loaded = new ScopeRegistry(registryVersion.incrementAndGet(), all != null ? all : Collections.emptySet());
+		log.debug("Scope registry version {} loaded with {} scopes", loaded.version, loaded.all.size());
+		return loaded;
+	}
+
+	private static SystemScope copy(SystemScope scope) {
+		if (scope == null) {
+			return null;
+		}
+		return new SystemScope(scope.getId(), scope.getValue(), scope.getDescription(), scope.getIcon(),
+				scope.isDefaultScope(), scope.isRestricted());
+	}
+
+	private static Set<SystemScope> copyAll(Set<SystemScope> scopes) {
+		Set<SystemScope> copies = new LinkedHashSet<>();
+		for (SystemScope scope : scopes) {
+			copies.add(copy(scope));
+		}
+		return copies;
+	}
+
+	/**
+	 * Immutable snapshot of all scopes.
+	 */
+	private final class ScopeRegistry {
+
+		private final long version;
+		private final Set<SystemScope> all;
+		private final Map<String, SystemScope> byValue;
+		private final Set<SystemScope> defaults;
+		private final Set<SystemScope> restricted;
+		private final Set<SystemScope> unrestricted;
+
+		private ScopeRegistry(long version, Set<SystemScope> scopes) {
+			this.version = version;
+			// detached from the entities of the persistence context
+			this.all = Collections.unmodifiableSet(copyAll(scopes));
+			Map<String, SystemScope> values = new HashMap<>();
+			for (SystemScope scope : all) {
+				if (scope != null && scope.getValue() != null) {
+					values.put(scope.getValue(), scope);
+				}
+			}
+			this.byValue = Collections.unmodifiableMap(values);
+			this.defaults = Collections.unmodifiableSet(new LinkedHashSet<>(Sets.filter(all, isDefault)));
+			this.restricted = Collections.unmodifiableSet(new LinkedHashSet<>(Sets.filter(all, isRestricted)));
+			this.unrestricted = Collections.unmodifiableSet(
+					new LinkedHashSet<>(Sets.filter(all, Predicates.not(isRestricted))));
+		}
+
+	}
+
 }
@@ -0,0 +1,103 @@
+package cz.muni.ics.oauth2.service.impl;
+
+import static cz.muni.ics.oauth2.service.IntrospectionResultAssembler.SCOPE;
+
+import com.nimbusds.jwt.JWT;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.JWTParser;
+import com.nimbusds.jwt.SignedJWT;
+import cz.muni.ics.jwt.signer.service.JWTSigningAndValidationService;
+import cz.muni.ics.openid.connect.config.ConfigurationPropertiesBean;
+import java.text.ParseException;
+import java.util.Date;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.util.StringUtils;
+
+/**
+ * Validates access tokens issued by this server without looking them up in the database. Access tokens are
+ * signed JWTs, so verification of the signature, issuer and expiration is sufficient to trust the claims,
+ * revocations are checked against the in-memory {@link AccessTokenRevocationList}.
+ *
+ * Only tokens carrying the claims of access tokens (scope, azp, jti) are accepted, so ID tokens and refresh
+ * tokens signed by the same keys are not mistaken for access tokens.
+ */
+@Slf4j
+public class SelfContainedAccessTokenValidator {
+
+	public static final String AZP = "azp";
+
+	private final boolean enabled;
+	private final JWTSigningAndValidationService jwtService;
+	private final ConfigurationPropertiesBean configBean;
+	private final AccessTokenRevocationList revocationList;
+
+	public SelfContainedAccessTokenValidator(boolean enabled,
+											 JWTSigningAndValidationService jwtService,
+											 ConfigurationPropertiesBean configBean,
+											 AccessTokenRevocationList revocationList)
+	{
+		this.enabled = enabled;
+		this.jwtService = jwtService;
+		this.configBean = configBean;
+		this.revocationList = revocationList;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Validate the access token.
+	 *
+	 * @param tokenValue Value of the access token.
+	 * @return Claims of the valid token, NULL if the token cannot be validated without the database (i.e. it is
+	 * not a signed access token issued by this server, or it is signed by a key not available anymore).
+	 * @throws InvalidTokenException Token is a valid access token issued by this server, but it has expired or
+	 * has been revoked.
+	 */
+	public JWTClaimsSet validate(String tokenValue) throws InvalidTokenException {
+		if (!enabled || !StringUtils.hasText(tokenValue)) {
+			return null;
+		}
+
+		SignedJWT jwt;
+		JWTClaimsSet claims;
+		try {
+			JWT parsed = JWTParser.parse(tokenValue);
+			if (!(parsed instanceof SignedJWT)) {
+				return null;
+			}
+			jwt = (SignedJWT) parsed;
+			claims = jwt.getJWTClaimsSet();
+		} catch (ParseException e) {
+			return null;
+		}
+
+		if (!isAccessToken(claims) || !jwtService.validateSignature(jwt)) {
+			return null;
+		}
+
+		if (claims.getExpirationTime().before(new Date())) {
+			throw new InvalidTokenException("Access token expired: " + claims.getJWTID());
+		} else if (revocationList != null && revocationList.isRevoked(tokenValue)) {
+			throw new InvalidTokenException("Access token revoked: " + claims.getJWTID());
+		}
+
+		log.trace("Access token {} validated without the database", claims.getJWTID());
+		return claims;
+	}
+
+	private boolean isAccessToken(JWTClaimsSet claims) {
+		try {
+			return configBean.getIssuer().equals(claims.getIssuer())
+					&& claims.getExpirationTime() != null
+					&& StringUtils.hasText(claims.getJWTID())
+					&& StringUtils.hasText(claims.getStringClaim(AZP))
+					&& claims.getStringClaim(SCOPE) != null;
+		} catch (ParseException e) {
+			return false;
+		}
+	}
+
+}
@@ -18,12 +18,14 @@
 package cz.muni.ics.oauth2.web.endpoint;
 
 import com.google.common.collect.ImmutableMap;
+import com.nimbusds.jwt.JWTClaimsSet;
 import cz.muni.ics.oauth2.model.ClientDetailsEntity;
 import cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity;
 import cz.muni.ics.oauth2.model.OAuth2RefreshTokenEntity;
 import cz.muni.ics.oauth2.service.ClientDetailsEntityService;
 import cz.muni.ics.oauth2.service.IntrospectionResultAssembler;
 import cz.muni.ics.oauth2.service.OAuth2TokenEntityService;
+import cz.muni.ics.oauth2.service.impl.SelfContainedAccessTokenValidator;
 import cz.muni.ics.oauth2.web.AuthenticationUtilities;
 import cz.muni.ics.openid.connect.model.UserInfo;
 import cz.muni.ics.openid.connect.service.UserInfoService;
@@ -58,6 +60,8 @@ public class IntrospectionEndpoint {
 	private final ClientDetailsEntityService clientService;
 	private final IntrospectionResultAssembler introspectionResultAssembler;
 
+	private SelfContainedAccessTokenValidator selfContainedTokenValidator;
+
 	@Autowired
 	public IntrospectionEndpoint(OAuth2TokenEntityService tokenServices,
 								 ClientDetailsEntityService clientService,
@@ -68,6 +72,11 @@ public class IntrospectionEndpoint {
 		this.introspectionResultAssembler = introspectionResultAssembler;
 	}
 
+	@Autowired(required = false)
+	public void setSelfContainedTokenValidator(SelfContainedAccessTokenValidator selfContainedTokenValidator) {
+		this.selfContainedTokenValidator = selfContainedTokenValidator;
+	}
+
 	@RequestMapping("/" + URL)
 	public String introspect(@RequestParam(PARAM_TOKEN) String token,
 							 @RequestParam(value = PARAM_TOKEN_TYPE_HINT, required = false) String tokenTypeHint,
@@ -139,6 +148,18 @@ public class IntrospectionEndpoint {
 	}
 
 	private Map<String, Object> introspectAccessToken(String token, Set<String> callerScopes) {
+		if (selfContainedTokenValidator != null) {
+			try {
+				JWTClaimsSet claims = selfContainedTokenValidator.validate(token);
+				if (claims != null) {
+					return introspectionResultAssembler.assembleFrom(claims, callerScopes);
+				}
+			} catch (InvalidTokenException e) {
+				// our access token, but expired or revoked - no need to look for it in the database
+				return introspectUnknownToken();
+			}
+		}
+
 		try {
 			// check access tokens first (includes ID tokens)
 			OAuth2AccessTokenEntity accessToken = tokenServices.readAccessToken(token);
@@ -0,0 +1,25 @@
+package cz.muni.ics.oidc.exceptions;
+
+/**
+ * Thrown when a call to the backend (i.e. Perun RPC or LDAP) is refused without being made, because the backend
+ * is considered unavailable or overloaded.
+ */
+public class BackendUnavailableException extends RuntimeException {
+
+	public BackendUnavailableException() {
+		super();
+	}
+
+	public BackendUnavailableException(String s) {
+		super(s);
+	}
+
+	public BackendUnavailableException(String s, Throwable throwable) {
+		super(s, throwable);
+	}
+
+	public BackendUnavailableException(Throwable throwable) {
+		super(throwable);
+	}
+
+}
@@ -0,0 +1,193 @@
+package cz.muni.ics.oidc.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Writer passing submitted items to the consumer in batches from a background thread, so the submitting
+ * (request) thread does not wait for the write. Items are held in a bounded queue, when the queue is full,
+ * the item is either dropped immediately or the submitting thread waits for the free space at most for
+ * configured time (see {@link OverflowPolicy}).
+ */
+@Slf4j
+public class AsyncBatchWriter<T> {
+
+	private static final long POLL_TIMEOUT_MS = 1000L;
+	private static final long STATS_LOG_INTERVAL_MS = TimeUnit.MINUTES.toMillis(5);
+
+	public enum OverflowPolicy {
+		/** Drop the item when the queue is full. */
+		DROP,
+		/** Wait for the free space in the queue, drop the item if the space is not available in time. */
+		BLOCK
+	}
+
+	private final String name;
+	private final int batchSize;
+	private final OverflowPolicy overflowPolicy;
+	private final long blockTimeoutMs;
+	private final Consumer<List<T>> batchConsumer;
+	private final BlockingQueue<T> queue;
+	private final Thread worker;
+
+	private final AtomicLong submittedCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong writtenCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+	private final AtomicLong batchesCount = new AtomicLong();
+
+	private volatile boolean running = true;
+	private long lastStatsLog = System.currentTimeMillis();
+
+	public AsyncBatchWriter(String name, int capacity, int batchSize, OverflowPolicy overflowPolicy,
+							long blockTimeoutMs, Consumer<List<T>> batchConsumer)
+	{
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Queue capacity must be greater than 0");
+		} else if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be greater than 0");
+		}
+		this.name = name;
+		this.batchSize = batchSize;
+		this.overflowPolicy = overflowPolicy;
+		this.blockTimeoutMs = blockTimeoutMs;
+		this.batchConsumer = batchConsumer;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+
+		this.worker = new Thread(this::run, name + "-writer");
+		this.worker.setDaemon(true);
+		this.worker.start();
+		log.info("{} - writer started with queue capacity {}, batch size {}, overflow policy {}",
+				name, capacity, batchSize, overflowPolicy);
+	}
+
+	/**
+	 * Submit item to be written.
+	 *
+	 * @param item Item to be written.
+	 * @return TRUE if item has been queued, FALSE if it has been dropped.
+	 */
+	public boolean submit(T item) {
+		if (item == null) {
+			return false;
+		}
+
+		boolean queued = false;
+		if (running) {
+			if (overflowPolicy == OverflowPolicy.BLOCK) {
+				try {
+					queued = queue.offer(item, blockTimeoutMs, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			} else {
+				queued = queue.offer(item);
+			}
+		}
+
+		if (queued) {
+			submittedCount.incrementAndGet();
+		} else {
+			long dropped = droppedCount.incrementAndGet();
+			log.debug("{} - queue full, item dropped ({} dropped in total)", name, dropped);
+		}
+		return queued;
+	}
+
+	/**
+	 * Stop accepting new items and wait for the worker to write the already queued items.
+	 *
+	 * @param timeoutMs Max time to wait for the worker.
+	 */
+	public void shutdown(long timeoutMs) {
+		// the worker notices the flag after the current poll timeout, it is not interrupted so the write
+		// in progress is not broken
+		running = false;
+		try {
+			worker.join(timeoutMs);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (!queue.isEmpty()) {
+			log.warn("{} - writer stopped with {} items not written", name, queue.size());
+		}
+	}
+
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	public long getSubmittedCount() {
+		return submittedCount.get();
+	}
+
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	public long getWrittenCount() {
+		return writtenCount.get();
+	}
+
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	public long getBatchesCount() {
+		return batchesCount.get();
+	}
+
+	private void run() {
+		while (running || !queue.isEmpty()) {
+			List<T> batch = new ArrayList<>(batchSize);
+			try {
+				T first = running ? queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS) : queue.poll();
+				if (first != null) {
+					batch.add(first);
+					queue.drainTo(batch, batchSize - 1);
+				}
+			} catch (InterruptedException e) {
+				log.warn("{} - writer interrupted, stopping", name);
+				Thread.currentThread().interrupt();
+				running = false;
+			}
+
+			if (!batch.isEmpty()) {
+				write(batch);
+			}
+			logStats();
+		}
+		log.info("{} - writer stopped", name);
+	}
+
+	private void write(List<T> batch) {
+		long start = System.currentTimeMillis();
+		try {
+			batchConsumer.accept(batch);
+			writtenCount.addAndGet(batch.size());
+			log.debug("{} - written batch of {} items in {}ms", name, batch.size(), System.currentTimeMillis() - start);
+		} catch (RuntimeException e) {
+			long failed = failedCount.addAndGet(batch.size());
+			log.warn("{} - failed to write batch, {} items lost ({} lost in total)", name, batch.size(), failed, e);
+		}
+		batchesCount.incrementAndGet();
+	}
+
+	private void logStats() {
+		long now = System.currentTimeMillis();
+		if (now - lastStatsLog < STATS_LOG_INTERVAL_MS) {
+			return;
+		}
+		lastStatsLog = now;
+		log.info("{} - queue depth: {}, submitted: {}, dropped: {}, written: {}, failed: {}, batches: {}", name,
+				queue.size(), submittedCount.get(), droppedCount.get(), writtenCount.get(), failedCount.get(),
+				batchesCount.get());
+	}
+
+}
@@ -1,136 +1,264 @@
 package cz.muni.ics.oidc.server;
 
+import cz.muni.ics.oauth2.model.AuthenticationHolderEntity;
 import cz.muni.ics.oauth2.model.AuthorizationCodeEntity;
 import cz.muni.ics.oauth2.model.DeviceCode;
 import cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity;
 import cz.muni.ics.oauth2.model.OAuth2RefreshTokenEntity;
-import java.time.Instant;
+import cz.muni.ics.oauth2.model.RevokedAccessTokenEntity;
+import cz.muni.ics.oauth2.model.SavedUserAuthentication;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
 import javax.persistence.Query;
-import javax.persistence.QueryTimeoutException;
+import javax.persistence.TypedQuery;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
 
+/**
+ * Purges expired and orphaned entries from the database. Entries are deleted in batches of limited size, each
+ * batch in its own short transaction, so the tables are not locked for long and each batch makes a progress
+ * even if the whole purge does not finish in the given time.
+ */
+@Slf4j
 @Repository
 public class CustomClearTasks {
 
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private static final String PARAM_IDS = "ids";
+    private static final String PARAM_CURSOR = "cursor";
+
+    // changes of clients are needed only until all nodes have polled them
+    private static final long CLIENT_CHANGES_RETENTION_MS = TimeUnit.DAYS.toMillis(1);
+
     @PersistenceContext(unitName = "defaultPersistenceUnit")
     private EntityManager manager;
 
+    private final TransactionTemplate transactionTemplate;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    // id of the last checked authentication holder, the next run continues from here
+    private volatile long orphanedAuthHoldersCursor = 0L;
+
+    @Autowired
+    public CustomClearTasks(@Qualifier("defaultTransactionManager") PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
     public int clearExpiredTokens(long timeout) {
         int count = 0;
         count += this.clearExpiredAccessTokens(timeout);
         count += this.clearExpiredRefreshTokens(timeout);
         count += this.clearOrphanedAuthHolders(timeout);
+        count += this.clearExpiredRevokedAccessTokens(timeout);
+        count += this.clearOldClientChanges(timeout);
         return count;
     }
 
     int clearExpiredAccessTokens(long timeout) {
-        manager.flush();
-        manager.clear();
-        int count = 0;
-        Query query1 = manager.createQuery("DELETE FROM OAuth2AccessTokenEntity a " +
-                "WHERE a.expiration <= :" + OAuth2AccessTokenEntity.PARAM_DATE);
-        query1.setParameter(OAuth2AccessTokenEntity.PARAM_DATE, new Date());
-        if (timeout > 0) {
-            query1.setHint("javax.persistence.query.timeout", timeout);
-        }
-        try {
-            count += query1.executeUpdate();
-        } catch (QueryTimeoutException e) {
-            // this is OK
-        }
-        return count;
+        Date now = new Date();
+        return deleteInBatches("access_token", timeout,
+                max -> selectIds("SELECT a.id FROM OAuth2AccessTokenEntity a WHERE a.expiration <= :"
+                        + OAuth2AccessTokenEntity.PARAM_DATE + " ORDER BY a.id", OAuth2AccessTokenEntity.PARAM_DATE,
+                        now, timeout, max),
+                ids -> deleteIds("DELETE FROM OAuth2AccessTokenEntity a WHERE a.id IN :" + PARAM_IDS, ids, timeout));
     }
 
     int clearExpiredRefreshTokens(long timeout) {
-        manager.flush();
-        manager.clear();
-        int count = 0;
-        Query query2 = manager.createQuery("DELETE FROM OAuth2RefreshTokenEntity r " +
-                "WHERE r.expiration <= :" + OAuth2RefreshTokenEntity.PARAM_DATE);
-        query2.setParameter(OAuth2RefreshTokenEntity.PARAM_DATE, new Date());
-        if (timeout > 0) {
-            query2.setHint("javax.persistence.query.timeout", timeout);
-        }
-        try {
-            count += query2.executeUpdate();
-        } catch (QueryTimeoutException e) {
-            // this is OK
-        }
-        return count;
+        Date now = new Date();
+        return deleteInBatches("refresh_token", timeout,
+                max -> selectIds("SELECT r.id FROM OAuth2RefreshTokenEntity r WHERE r.expiration <= :"
+                        + OAuth2RefreshTokenEntity.PARAM_DATE + " ORDER BY r.id", OAuth2RefreshTokenEntity.PARAM_DATE,
+                        now, timeout, max),
+                ids -> deleteIds("DELETE FROM OAuth2RefreshTokenEntity r WHERE r.id IN :" + PARAM_IDS, ids, timeout));
+    }
+
+    int clearExpiredRevokedAccessTokens(long timeout) {
+        Date now = new Date();
+        return deleteInBatches("revoked_access_token", timeout,
+                max -> selectIds("SELECT r.id FROM RevokedAccessTokenEntity r WHERE r.expiration <= :"
+                        + RevokedAccessTokenEntity.PARAM_DATE + " ORDER BY r.id", RevokedAccessTokenEntity.PARAM_DATE,
+                        now, timeout, max),
+                ids -> deleteIds("DELETE FROM RevokedAccessTokenEntity r WHERE r.id IN :" + PARAM_IDS, ids, timeout));
+    }
+
+    int clearOldClientChanges(long timeout) {
+        Date threshold = new Date(System.currentTimeMillis() - CLIENT_CHANGES_RETENTION_MS);
+        return deleteInBatches("client_change", timeout,
+                max -> selectIds("SELECT c.id FROM ClientChangeEntity c WHERE c.changedAt <= :date ORDER BY c.id",
+                        "date", threshold, timeout, max),
+                ids -> deleteIds("DELETE FROM ClientChangeEntity c WHERE c.id IN :" + PARAM_IDS, ids, timeout));
     }
 
     int clearOrphanedAuthHolders(long timeout) {
-        manager.flush();
-        manager.clear();
-        int count = 0;
-        Query query3 = manager.createQuery("DELETE FROM AuthenticationHolderEntity a " +
-                "WHERE a.id NOT IN (SELECT t.authenticationHolder.id FROM OAuth2AccessTokenEntity t) AND " +
-                "a.id NOT IN (SELECT r.authenticationHolder.id FROM OAuth2RefreshTokenEntity r) AND " +
-                "a.id NOT IN (SELECT c.authenticationHolder.id FROM AuthorizationCodeEntity c)");
-        if (timeout > 0) {
-            query3.setHint("javax.persistence.query.timeout", timeout);
-        }
-        try {
-            count += query3.executeUpdate();
-        } catch (QueryTimeoutException e) {
-            // this is OK
-        }
+        int count = deleteInBatches("authentication_holder", timeout,
+                max -> {
+                    List<Long> ids = selectIds("SELECT a.id FROM AuthenticationHolderEntity a " +
+                            "WHERE a.id > :" + PARAM_CURSOR + " " +
+                            "AND NOT EXISTS (SELECT t.id FROM OAuth2AccessTokenEntity t WHERE t.authenticationHolder.id = a.id) " +
+                            "AND NOT EXISTS (SELECT r.id FROM OAuth2RefreshTokenEntity r WHERE r.authenticationHolder.id = a.id) " +
+                            "AND NOT EXISTS (SELECT c.id FROM AuthorizationCodeEntity c WHERE c.authenticationHolder.id = a.id) " +
+                            "ORDER BY a.id", PARAM_CURSOR, orphanedAuthHoldersCursor, timeout, max);
+                    if (ids.isEmpty()) {
+                        // reached the end of the table, start from the beginning in the next run
+                        orphanedAuthHoldersCursor = 0L;
+                    } else {
+                        orphanedAuthHoldersCursor = ids.get(ids.size() - 1);
+                    }
+                    return ids;
+                },
+                ids -> deleteIds("DELETE FROM AuthenticationHolderEntity a WHERE a.id IN :" + PARAM_IDS, ids, timeout));
+        log.debug("authentication_holder - orphans checked up to id {}", orphanedAuthHoldersCursor);
         return count;
     }
 
     public int clearExpiredSites(long timeout) {
-        manager.flush();
-        manager.clear();
+        Date now = new Date();
+        return deleteInBatches("approved_site", timeout,
+                max -> selectIds("SELECT a.id FROM ApprovedSite a WHERE a.timeoutDate <= :date ORDER BY a.id",
+                        "date", now, timeout, max),
+                ids -> deleteIds("DELETE FROM ApprovedSite a WHERE a.id IN :" + PARAM_IDS, ids, timeout));
+    }
+
+    public int clearExpiredAuthorizationCodes(long timeout) {
+        Date now = new Date();
+        return deleteInBatches("authorization_code", timeout,
+                max -> selectIds("SELECT a.id FROM AuthorizationCodeEntity a WHERE a.expiration <= :"
+                        + AuthorizationCodeEntity.PARAM_DATE + " ORDER BY a.id", AuthorizationCodeEntity.PARAM_DATE,
+                        now, timeout, max),
+                ids -> deleteIds("DELETE FROM AuthorizationCodeEntity a WHERE a.id IN :" + PARAM_IDS, ids, timeout));
+    }
+
+    public int clearExpiredDeviceCodes(long timeout) {
+        Date now = new Date();
+        return deleteInBatches("device_code", timeout,
+                max -> selectIds("SELECT d.id FROM DeviceCode d WHERE d.expiration <= :" + DeviceCode.PARAM_DATE
+                        + " ORDER BY d.id", DeviceCode.PARAM_DATE, now, timeout, max),
+                ids -> deleteIds("DELETE FROM DeviceCode d WHERE d.id IN :" + PARAM_IDS, ids, timeout));
+    }
+
+    /**
+     * Move authentication holders stored in the collection tables into the compact storage (single column), in
+     * batches until there is nothing left or the time limit is reached. Saved user authentications of the moved
+     * holders are deleted.
+     *
+     * @param timeout Time limit in milliseconds, no new batch is started after it has passed. Zero or less
+     *                means no limit.
+     * @return Number of moved holders.
+     */
+    public int compactAuthHolders(long timeout) {
+        long start = System.currentTimeMillis();
         int count = 0;
-        Query query = manager.createQuery("DELETE FROM ApprovedSite a WHERE a.timeoutDate <= :date");
-        query.setParameter("date", new Date());
-        if (timeout > 0) {
-            query.setHint("javax.persistence.query.timeout", timeout);
-        }
+        int batches = 0;
         try {
-            count += query.executeUpdate();
-        } catch (QueryTimeoutException e) {
-            // this is OK
+            while (timeout <= 0 || System.currentTimeMillis() - start < timeout) {
+                Integer compacted = transactionTemplate.execute(status -> {
+                    TypedQuery<AuthenticationHolderEntity> query = manager.createQuery(
+                            "SELECT a FROM AuthenticationHolderEntity a WHERE a.compactAuthentication IS NULL " +
+                            "ORDER BY a.id", AuthenticationHolderEntity.class);
+                    query.setMaxResults(batchSize);
+                    List<AuthenticationHolderEntity> holders = query.getResultList();
+                    List<SavedUserAuthentication> userAuths = new ArrayList<>();
+                    for (AuthenticationHolderEntity holder : holders) {
+                        SavedUserAuthentication userAuth = holder.getUserAuth();
+                        holder.compact();
+                        if (userAuth != null) {
+                            userAuths.add(userAuth);
+                        }
+                    }
+                    // holders must stop referencing the user authentications before those are deleted
+                    manager.flush();
+                    userAuths.forEach(manager::remove);
+                    return holders.isEmpty() ? -1 : holders.size();
+                });
+                if (compacted == null || compacted < 0) {
+                    break;
+                }
+                count += compacted;
+                batches++;
+            }
+        } catch (PersistenceException | TransactionException e) {
+            log.warn("authentication_holder - compaction interrupted after {} batches, moved {} records", batches,
+                    count, e);
+            return count;
         }
+        log.debug("authentication_holder - moved {} records to compact storage in {} batches, took {}ms", count,
+                batches, System.currentTimeMillis() - start);
         return count;
     }
 
-    public int clearExpiredAuthorizationCodes(long timeout) {
-        manager.flush();
-        manager.clear();
+    /**
+     * Delete entries in batches until there is nothing left to delete or the time limit is reached.
+     *
+     * @param table Name of the table (used for logging).
+     * @param timeout Time limit in milliseconds, no new batch is started after it has passed. Zero or less
+     *                means no limit.
+     * @param selectBatch Function selecting IDs of at most given number of entries to be deleted.
+     * @param deleteBatch Function deleting the entries with given IDs.
+     * @return Number of deleted entries.
+     */
+    private int deleteInBatches(String table, long timeout, Function<Integer, List<Long>> selectBatch,
+                                Function<List<Long>, Integer> deleteBatch)
+    {
+        long start = System.currentTimeMillis();
         int count = 0;
-        Query query = manager.createQuery("DELETE FROM AuthorizationCodeEntity a " +
-                "WHERE a.expiration <= :" + AuthorizationCodeEntity.PARAM_DATE);
-        query.setParameter(AuthorizationCodeEntity.PARAM_DATE, new Date());
-        if (timeout > 0) {
-            query.setHint("javax.persistence.query.timeout", timeout);
-        }
+        int batches = 0;
         try {
-            count += query.executeUpdate();
-        } catch (QueryTimeoutException e) {
-            // this is OK
+            while (timeout <= 0 || System.currentTimeMillis() - start < timeout) {
+                Integer deleted = transactionTemplate.execute(status -> {
+                    List<Long> ids = selectBatch.apply(batchSize);
+                    return ids.isEmpty() ? -1 : deleteBatch.apply(ids);
+                });
+                if (deleted == null || deleted < 0) {
+                    break;
+                }
+                count += deleted;
+                batches++;
+            }
+        } catch (PersistenceException | TransactionException e) {
+            log.warn("{} - purge interrupted after {} batches, deleted {} records", table, batches, count, e);
+            return count;
         }
+        log.debug("{} - deleted {} records in {} batches, took {}ms", table, count, batches,
+                System.currentTimeMillis() - start);
         return count;
     }
 
-    public int clearExpiredDeviceCodes(long timeout) {
-        manager.flush();
-        manager.clear();
-        int count = 0;
-        Query query = manager.createQuery("DELETE FROM DeviceCode d WHERE d.expiration <= :" + DeviceCode.PARAM_DATE);
-        query.setParameter(DeviceCode.PARAM_DATE, new Date());
+    private List<Long> selectIds(String jpql, String paramName, Object paramValue, long timeout, int maxResults) {
+        TypedQuery<Long> query = manager.createQuery(jpql, Long.class);
+        query.setParameter(paramName, paramValue);
+        query.setMaxResults(maxResults);
         if (timeout > 0) {
             query.setHint("javax.persistence.query.timeout", timeout);
         }
-        try {
-            count += query.executeUpdate();
-        } catch (QueryTimeoutException e) {
-            // this is OK
+        return query.getResultList();
+    }
+
+    private int deleteIds(String jpql, List<Long> ids, long timeout) {
+        Query query = manager.createQuery(jpql);
+        query.setParameter(PARAM_IDS, ids);
+        if (timeout > 0) {
+            query.setHint("javax.persistence.query.timeout", timeout);
         }
-        return count;
+        return query.executeUpdate();
     }
 
 }
@@ -1,5 +1,7 @@
 package cz.muni.ics.oidc.server;
 
+import cz.muni.ics.oidc.server.cache.JdbcSharedCacheTier;
+import cz.muni.ics.openid.connect.config.ConfigurationPropertiesBean;
 import java.util.concurrent.TimeUnit;
 import javax.sql.DataSource;
 import lombok.extern.slf4j.Slf4j;
@@ -14,7 +16,6 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
-import org.springframework.transaction.annotation.Transactional;
 
 /**
  * A custom scheduler for tasks with usage of ShedLock.
@@ -31,13 +32,19 @@ public class CustomTaskScheduler {
 
 	private final CustomClearTasks customClearTasks;
 	private final DataSource dataSource;
+	private final ConfigurationPropertiesBean config;
+	private final JdbcSharedCacheTier sharedCacheTier;
 
 	@Autowired
 	public CustomTaskScheduler(CustomClearTasks customClearTasks,
-							   @Qualifier("dataSource") DataSource dataSource)
+							   @Qualifier("dataSource") DataSource dataSource,
+							   ConfigurationPropertiesBean config,
+							   JdbcSharedCacheTier sharedCacheTier)
 	{
 		this.customClearTasks = customClearTasks;
 		this.dataSource = dataSource;
+		this.config = config;
+		this.sharedCacheTier = sharedCacheTier;
 	}
 
 	@Bean
@@ -45,7 +52,6 @@ public class CustomTaskScheduler {
 		return new JdbcTemplateLockProvider(this.dataSource);
 	}
 
-	@Transactional(value = "defaultTransactionManager")
 	@Scheduled(fixedDelay = 60 * ONE_MINUTE, initialDelay = ONE_MINUTE)
 	@SchedulerLock(name = "clearExpiredSites", lockAtMostFor = "3590s", lockAtLeastFor = "3590s")
 	public void clearExpiredSites() {
@@ -60,7 +66,6 @@ public class CustomTaskScheduler {
 		log.info("clearExpiredSites took {}ms, deleted {} records", execution, count);
 	}
 
-	@Transactional(value = "defaultTransactionManager")
 	@Scheduled(fixedDelay = 60 * ONE_MINUTE, initialDelay = 12 * ONE_MINUTE)
 	@SchedulerLock(name = "clearExpiredTokens", lockAtMostFor = "3590s", lockAtLeastFor = "3590s")
 	public void clearExpiredTokens() {
@@ -75,7 +80,6 @@ public class CustomTaskScheduler {
 		log.info("clearExpiredTokens took {}ms, deleted {} records", execution, count);
 	}
 
-	@Transactional(value = "defaultTransactionManager")
 	@Scheduled(fixedDelay = 60 * ONE_MINUTE, initialDelay = 24 * ONE_MINUTE)
 	@SchedulerLock(name = "clearExpiredAuthorizationCodes", lockAtMostFor = "3590s", lockAtLeastFor = "3590s")
 	public void clearExpiredAuthorizationCodes() {
@@ -90,7 +94,6 @@ public class CustomTaskScheduler {
 		log.info("clearExpiredAuthorizationCodes took {}ms, deleted {} records", execution, count);
 	}
 
-	@Transactional(value = "defaultTransactionManager")
 	@Scheduled(fixedDelay = 60 * ONE_MINUTE, initialDelay = 36 * ONE_MINUTE)
 	@SchedulerLock(name = "clearExpiredDeviceCodes", lockAtMostFor = "3590s", lockAtLeastFor = "3590s")
 	public void clearExpiredDeviceCodes() {
@@ -105,4 +108,35 @@ public class CustomTaskScheduler {
 		log.info("clearExpiredDeviceCodes took {}ms, deleted {} records", execution, count);
 	}
 
+	@Scheduled(fixedDelay = 60 * ONE_MINUTE, initialDelay = 42 * ONE_MINUTE)
+	@SchedulerLock(name = "clearExpiredSharedCache", lockAtMostFor = "3590s", lockAtLeastFor = "3590s")
+	public void clearExpiredSharedCache() {
+		try {
+			LockAssert.assertLocked();
+		} catch (IllegalArgumentException e) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		int count = this.sharedCacheTier.clearExpired(TimeUnit.MINUTES.toMillis(15));
+		long execution = System.currentTimeMillis() - start;
+		log.info("clearExpiredSharedCache took {}ms, deleted {} records", execution, count);
+	}
+
+	@Scheduled(fixedDelay = 60 * ONE_MINUTE, initialDelay = 48 * ONE_MINUTE)
+	@SchedulerLock(name = "compactAuthHolders", lockAtMostFor = "3590s", lockAtLeastFor = "3590s")
+	public void compactAuthHolders() {
+		if (!config.isCompactAuthenticationHolders()) {
+			return;
+		}
+		try {
+			LockAssert.assertLocked();
+		} catch (IllegalArgumentException e) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		int count = this.customClearTasks.compactAuthHolders(TimeUnit.MINUTES.toMillis(15));
+		long execution = System.currentTimeMillis() - start;
+		log.info("compactAuthHolders took {}ms, moved {} records", execution, count);
+	}
+
 }
@@ -0,0 +1,267 @@
+package cz.muni.ics.oidc.server;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Executor running independent calls (i.e. to Perun RPC) concurrently. Results are always returned in the order
+ * of the input items, so the callers can merge them exactly as in the sequential processing.
+ *
+ * Number of concurrently running calls is bounded by the configured concurrency. Virtual threads are used when
+ * the runtime supports them and usage is enabled, otherwise a dedicated pool of platform threads is created.
+ * Calls made from within already running task of the same executor are executed in the calling thread to prevent
+ * pool exhaustion.
+ */
+@Slf4j
+public class ParallelCallsExecutor implements DisposableBean {
+
+	private final String name;
+	private final int maxConcurrency;
+	private final long callTimeoutMs;
+	private final ExecutorService executorService;
+	private final Semaphore permits;
+	private final boolean virtualThreads;
+	// marks the threads running a call of this executor, other executors are free to fan out from them
+	private final ThreadLocal<Boolean> inWorker = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+	private final AtomicLong fanOutsCount = new AtomicLong();
+	private final AtomicLong tasksCount = new AtomicLong();
+	private final AtomicLong timeoutsCount = new AtomicLong();
+	private final AtomicInteger maxFanOutWidth = new AtomicInteger();
+
+	public ParallelCallsExecutor(String name, int maxConcurrency, long callTimeoutMs, boolean useVirtualThreads) {
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("Max concurrency must be greater than 0");
+		} else if (callTimeoutMs <= 0) {
+			throw new IllegalArgumentException("Call timeout must be greater than 0ms");
+		}
+		this.name = name;
+		this.maxConcurrency = maxConcurrency;
+		this.callTimeoutMs = callTimeoutMs;
+		this.permits = new Semaphore(maxConcurrency);
+
+		ExecutorService service = null;
+		if (useVirtualThreads) {
+			service = createVirtualThreadsExecutor();
+		}
+		this.virtualThreads = service != null;
+		if (service == null) {
+			service = createPlatformThreadsExecutor();
+		}
+		this.executorService = service;
+		log.info("{} - initialized with max concurrency {}, call timeout {}ms, virtual threads: {}",
+				name, maxConcurrency, callTimeoutMs, virtualThreads);
+	}
+
+	/**
+	 * Apply the function on each item concurrently. Fails when any of the calls does not finish in the call timeout.
+	 *
+	 * @param items Items to be processed.
+	 * @param function Function to be called for each item.
+	 * @param <T> Type of items.
+	 * @param <R> Type of results.
+	 * @return List of results in the same order as the items have been provided.
+	 * @see #map(Collection, Function, Function)
+	 */
+	public <T, R> List<R> map(Collection<T> items, Function<T, R> function) {
+		return map(items, function, null);
+	}
+
+	/**
+	 * Apply the function on each item concurrently. Each call is limited by the call timeout on its own, measured
+	 * from the moment the call has started. Call which has not finished in time is cancelled and its result is
+	 * replaced by the value returned from the timeout handler, the other calls are not affected. Without the handler,
+	 * all calls are cancelled and the processing fails. Calls made from a call of this executor run one by one in the
+	 * calling thread, they are limited by the timeout of the enclosing call.
+	 *
+	 * @param items Items to be processed.
+	 * @param function Function to be called for each item.
+	 * @param onTimeout Function providing the result for the item whose call has not finished in time, or null.
+	 * @param <T> Type of items.
+	 * @param <R> Type of results.
+	 * @return List of results in the same order as the items have been provided.
+	 */
+	public <T, R> List<R> map(Collection<T> items, Function<T, R> function, Function<T, R> onTimeout) {
+		List<R> results = new ArrayList<>();
+		if (items == null || items.isEmpty()) {
+			return results;
+		}
+
+		if (inWorker.get()) {
+			for (T item: items) {
+				results.add(function.apply(item));
+			}
+			return results;
+		}
+
+		if (items.size() > 1) {
+			recordFanOut(items.size());
+		}
+		Map<String, String> mdcContext = MDC.getCopyOfContextMap();
+		List<T> itemsList = new ArrayList<>(items);
+		List<AtomicLong> starts = new ArrayList<>();
+		List<Future<R>> futures = new ArrayList<>();
+		for (T item: itemsList) {
+			AtomicLong started = new AtomicLong();
+			starts.add(started);
+			futures.add(executorService.submit(() -> runTask(item, function, mdcContext, started)));
+		}
+
+		try {
+			for (int i = 0; i < futures.size(); i++) {
+				Future<R> future = futures.get(i);
+				try {
+					results.add(awaitCall(future, starts.get(i)));
+				} catch (TimeoutException e) {
+					timeoutsCount.incrementAndGet();
+					future.cancel(true);
+					if (onTimeout == null) {
+						throw new RuntimeException(name + " - calls did not finish in " + callTimeoutMs + "ms", e);
+					}
+					results.add(onTimeout.apply(itemsList.get(i)));
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(name + " - interrupted while waiting for calls to finish", e);
+		} catch (ExecutionException | CancellationException e) {
+			Throwable cause = e.getCause() != null ? e.getCause() : e;
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException(name + " - call has failed", cause);
+		} finally {
+			// no-op for the finished calls, stops the rest when the processing has failed
+			cancelAll(futures);
+		}
+
+		return results;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	public long getFanOutsCount() {
+		return fanOutsCount.get();
+	}
+
+	public long getTasksCount() {
+		return tasksCount.get();
+	}
+
+	public long getTimeoutsCount() {
+		return timeoutsCount.get();
+	}
+
+	public int getMaxFanOutWidth() {
+		return maxFanOutWidth.get();
+	}
+
+	public double getAverageFanOutWidth() {
+		long fanOuts = fanOutsCount.get();
+		return fanOuts == 0 ? 0 : (double) tasksCount.get() / fanOuts;
+	}
+
+	@Override
+	public void destroy() {
+		executorService.shutdownNow();
+	}
+
+	private <R> R awaitCall(Future<R> future, AtomicLong started)
+			throws InterruptedException, ExecutionException, TimeoutException
+	{
+		while (true) {
+			long start = started.get();
+			// call waiting for a permit has not started yet, its timeout is not running
+			long remaining = start == 0L ? callTimeoutMs : start + callTimeoutMs - System.currentTimeMillis();
+			try {
+				return future.get(Math.max(remaining, 0L), TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				if (start != 0L) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	private <T, R> R runTask(T item, Function<T, R> function, Map<String, String> mdcContext, AtomicLong started)
+			throws InterruptedException
+	{
+		permits.acquire();
+		started.set(System.currentTimeMillis());
+		inWorker.set(Boolean.TRUE);
+		if (mdcContext != null) {
+			MDC.setContextMap(mdcContext);
+		}
+		try {
+			return function.apply(item);
+		} finally {
+			MDC.clear();
+			inWorker.set(Boolean.FALSE);
+			permits.release();
+		}
+	}
+
+	private void recordFanOut(int width) {
+		fanOutsCount.incrementAndGet();
+		tasksCount.addAndGet(width);
+		maxFanOutWidth.accumulateAndGet(width, Math::max);
+		log.trace("{} - fanning out {} calls", name, width);
+	}
+
+	private void cancelAll(List<? extends Future<?>> futures) {
+		futures.forEach(f -> f.cancel(true));
+	}
+
+	private ExecutorService createVirtualThreadsExecutor() {
+		try {
+			Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (Exception e) {
+			log.debug("{} - virtual threads are not available in this runtime", name);
+			return null;
+		}
+	}
+
+	private ExecutorService createPlatformThreadsExecutor() {
+		AtomicInteger counter = new AtomicInteger();
+		ThreadFactory threadFactory = r -> {
+			Thread t = new Thread(r, name + '-' + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), threadFactory);
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+}
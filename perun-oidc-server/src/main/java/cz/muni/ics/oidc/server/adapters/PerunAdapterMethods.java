@@ -47,6 +47,16 @@ public interface PerunAdapterMethods {
 	 */
 	Map<String, PerunAttributeValue> getUserAttributeValues(Long userId, Collection<String> attrsToFetch);
 
+	/**
+	 * Fetch attribute values for multiple users at once
+	 *
+	 * @param userIds Ids of the users for whom the attribute values are being fetch
+	 * @param attrsToFetch List of Strings representing attribute values to fetch
+	 * @return Map of userId:(Map of attrName:PerunAttributeValue), users not found are not present in the map
+	 */
+	Map<Long, Map<String, PerunAttributeValue>> getUserAttributeValues(Collection<Long> userIds,
+																	   Collection<String> attrsToFetch);
+
 	/**
 	 * Fetch user attribute value
 	 *
@@ -223,6 +233,16 @@ public interface PerunAdapterMethods {
 	 */
 	Map<String, PerunAttributeValue> getGroupAttributeValues(Long groupId, Collection<String> attrsToFetch);
 
+	/**
+	 * Fetch attribute values for multiple groups at once
+	 *
+	 * @param groupIds Ids of the groups for which the attribute values are being fetch
+	 * @param attrsToFetch List of Strings representing attribute values to fetch
+	 * @return Map of groupId:(Map of attrName:PerunAttributeValue), groups not found are not present in the map
+	 */
+	Map<Long, Map<String, PerunAttributeValue>> getGroupAttributeValues(Collection<Long> groupIds,
+																		Collection<String> attrsToFetch);
+
 	/**
 	 * Fetch group attribute value
 	 *
@@ -0,0 +1,255 @@
+package cz.muni.ics.oidc.server.adapters.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import cz.muni.ics.oidc.models.Facility;
+import cz.muni.ics.oidc.models.PerunAttributeValue;
+import cz.muni.ics.oidc.server.cache.SharedCacheTier;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.StringUtils;
+
+/**
+ * Adapter caching facility-scoped lookups (facility by client_id, facility attribute values). Facility
+ * configuration changes rarely, but it is read on each login by the filters and endpoints.
+ *
+ * Entries are cached in a bounded in-process tier and, if configured, in a tier shared among all nodes of
+ * the cluster. Both tiers expire entries after configured TTL, so changes made in Perun are picked up after
+ * at most the TTL.
+ *
+ * @see SharedCacheTier
+ */
+@Slf4j
+public class FacilityCachingPerunAdapter extends PerunAdapterImpl {
+
+    private static final String FACILITY_KEY_PREFIX = "facility:client:";
+    private static final String FACILITY_ATTRS_KEY_PREFIX = "facility:attrs:";
+
+    private static final String ID = "id";
+    private static final String NAME = "name";
+    private static final String DESCRIPTION = "description";
+    private static final String ATTR_NAME = "attrName";
+    private static final String TYPE = "type";
+    private static final String VALUE = "value";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final long ttlMillis;
+    private final Cache<String, Facility> facilitiesCache;
+    private final Cache<String, Optional<PerunAttributeValue>> facilityAttrsCache;
+
+    private SharedCacheTier sharedCacheTier;
+
+    private final AtomicLong sharedHits = new AtomicLong();
+    private final AtomicLong sharedMisses = new AtomicLong();
+
+    public FacilityCachingPerunAdapter(long ttlSeconds, long maxEntries) {
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.facilitiesCache = CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        this.facilityAttrsCache = CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public void setSharedCacheTier(SharedCacheTier sharedCacheTier) {
+        this.sharedCacheTier = sharedCacheTier;
+    }
+
+    @Override
+    public Facility getFacilityByClientId(String clientId) {
+        if (!StringUtils.hasText(clientId)) {
+            return super.getFacilityByClientId(clientId);
+        }
+
+        Facility facility = facilitiesCache.getIfPresent(clientId);
+        if (facility != null) {
+            return facility;
+        }
+
+        String key = FACILITY_KEY_PREFIX + clientId;
+        facility = deserializeFacility(getShared(key));
+        if (facility == null) {
+            facility = super.getFacilityByClientId(clientId);
+            if (facility == null) {
+                return null;
+            }
+            putShared(key, serializeFacility(facility));
+        }
+
+        facilitiesCache.put(clientId, facility);
+        return facility;
+    }
+
+    @Override
+    public Map<String, PerunAttributeValue> getFacilityAttributeValues(Long facilityId, Collection<String> attrsToFetch) {
+        if (facilityId == null || attrsToFetch == null || attrsToFetch.isEmpty()) {
+            return super.getFacilityAttributeValues(facilityId, attrsToFetch);
+        }
+
+        Map<String, PerunAttributeValue> result = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (String attr : attrsToFetch) {
+            Optional<PerunAttributeValue> cached = getCachedFacilityAttribute(facilityId, attr);
+            if (cached == null) {
+                missing.add(attr);
+            } else {
+                cached.ifPresent(value -> result.put(attr, value));
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            log.trace("Fetching facility attributes {} for facility {}", missing, facilityId);
+            Map<String, PerunAttributeValue> fetched = super.getFacilityAttributeValues(facilityId, missing);
+            if (fetched == null) {
+                fetched = Collections.emptyMap();
+            }
+            for (String attr : missing) {
+                PerunAttributeValue value = fetched.get(attr);
+                cacheFacilityAttribute(facilityId, attr, value);
+                if (value != null) {
+                    result.put(attr, value);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public PerunAttributeValue getFacilityAttributeValue(Long facilityId, String attrToFetch) {
+        if (facilityId == null || attrToFetch == null) {
+            return super.getFacilityAttributeValue(facilityId, attrToFetch);
+        }
+
+        return getFacilityAttributeValues(facilityId, Collections.singleton(attrToFetch)).get(attrToFetch);
+    }
+
+    public CacheStats getFacilitiesCacheStats() {
+        return facilitiesCache.stats();
+    }
+
+    public CacheStats getFacilityAttrsCacheStats() {
+        return facilityAttrsCache.stats();
+    }
+
+    public long getSharedHits() {
+        return sharedHits.get();
+    }
+
+    public long getSharedMisses() {
+        return sharedMisses.get();
+    }
+
+    private Optional<PerunAttributeValue> getCachedFacilityAttribute(Long facilityId, String attr) {
+        String localKey = facilityId.toString() + ':' + attr;
+        Optional<PerunAttributeValue> cached = facilityAttrsCache.getIfPresent(localKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        String shared = getShared(FACILITY_ATTRS_KEY_PREFIX + localKey);
+        if (shared == null) {
+            return null;
+        }
+
+        cached = Optional.ofNullable(deserializeAttributeValue(shared));
+        facilityAttrsCache.put(localKey, cached);
+        return cached;
+    }
+
+    private void cacheFacilityAttribute(Long facilityId, String attr, PerunAttributeValue value) {
+        String localKey = facilityId.toString() + ':' + attr;
+        facilityAttrsCache.put(localKey, Optional.ofNullable(value));
+        putShared(FACILITY_ATTRS_KEY_PREFIX + localKey, serializeAttributeValue(value));
+    }
+
+    private String getShared(String key) {
+        if (sharedCacheTier == null) {
+            return null;
+        }
+
+        String value = sharedCacheTier.get(key);
+        if (value == null) {
+            sharedMisses.incrementAndGet();
+        } else {
+            sharedHits.incrementAndGet();
+        }
+        return value;
+    }
+
+    private void putShared(String key, String value) {
+        if (sharedCacheTier != null && value != null) {
+            sharedCacheTier.put(key, value, ttlMillis);
+        }
+    }
+
+    private String serializeFacility(Facility facility) {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put(ID, facility.getId());
+        node.put(NAME, facility.getName());
+        node.put(DESCRIPTION, facility.getDescription());
+        return node.toString();
+    }
+
+    private Facility deserializeFacility(String serialized) {
+        if (serialized == null) {
+            return null;
+        }
+
+        try {
+            JsonNode node = mapper.readTree(serialized);
+            return new Facility(node.get(ID).asLong(), node.path(NAME).asText(null),
+                    node.path(DESCRIPTION).asText(null));
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.warn("Could not deserialize facility '{}' from shared cache", serialized, e);
+            return null;
+        }
+    }
+
+    private String serializeAttributeValue(PerunAttributeValue value) {
+        if (value == null) {
+            return "null";
+        }
+
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put(ATTR_NAME, value.getAttrName());
+        node.put(TYPE, value.getType());
+        node.set(VALUE, value.valueAsJson());
+        return node.toString();
+    }
+
+    private PerunAttributeValue deserializeAttributeValue(String serialized) {
+        try {
+            JsonNode node = mapper.readTree(serialized);
+            if (node == null || node.isNull()) {
+                return null;
+            }
+            return new PerunAttributeValue(node.path(ATTR_NAME).asText(null), node.get(TYPE).asText(),
+                    node.get(VALUE));
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.warn("Could not deserialize attribute value '{}' from shared cache", serialized, e);
+            return null;
+        }
+    }
+
+}
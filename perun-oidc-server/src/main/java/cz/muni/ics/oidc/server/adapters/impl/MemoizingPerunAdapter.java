@@ -0,0 +1,170 @@
+package cz.muni.ics.oidc.server.adapters.impl;
+
+import cz.muni.ics.oidc.server.adapters.PerunAdapter;
+import cz.muni.ics.oidc.server.adapters.PerunAdapterMethods;
+import cz.muni.ics.oidc.server.adapters.PerunAdapterMethodsRpc;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.EqualsAndHashCode;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Short-lived view of the adapter which remembers results of the calls. Calls of the same method with equal
+ * arguments are executed only once, the other callers get the remembered result. Covers the calls made directly
+ * on this adapter as well as the calls on {@link #getAdapterFallback()} and {@link #getAdapterRpc()}.
+ *
+ * Results are never invalidated, so the view has to be used only for a single unit of work (e.g. building one
+ * user info) and thrown away. Collections returned by the view are copies, so callers can modify them without
+ * affecting the remembered results. Failed calls and writes are not remembered.
+ */
+@Slf4j
+public class MemoizingPerunAdapter extends PerunAdapterImpl {
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong savedCalls = new AtomicLong();
+
+    public MemoizingPerunAdapter(PerunAdapter delegate) {
+        this.setAdapterPrimary(memoize(delegate, PerunAdapterMethods.class));
+        this.setCallFallback(false); // the delegate already handles the fallback
+        this.setAdapterFallback(memoize(delegate.getAdapterFallback(), PerunAdapterMethods.class));
+        this.setAdapterRpc(memoize(delegate.getAdapterRpc(), PerunAdapterMethodsRpc.class));
+        this.setAdapterLdap(delegate.getAdapterLdap());
+    }
+
+    /**
+     * @return Number of calls made through the view.
+     */
+    public long getCallsCount() {
+        return calls.get();
+    }
+
+    /**
+     * @return Number of calls answered by the remembered result instead of calling the adapter.
+     */
+    public long getSavedCallsCount() {
+        return savedCalls.get();
+    }
+
+    private <T> T memoize(T target, Class<T> iface) {
+        if (target == null) {
+            return null;
+        }
+        Map<CallKey, CompletableFuture<Object>> results = new ConcurrentHashMap<>();
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class || !isReadOnly(method)) {
+                return invoke(target, method, args);
+            }
+            return call(results, target, method, args);
+        };
+        return iface.cast(Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[] { iface }, handler));
+    }
+
+    private Object call(Map<CallKey, CompletableFuture<Object>> results, Object target, Method method,
+                        Object[] args) throws Throwable
+    {
+        calls.incrementAndGet();
+        CallKey key = new CallKey(method, args == null ? Collections.emptyList() : Arrays.asList(args));
+
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        CompletableFuture<Object> existing = results.putIfAbsent(key, result);
+        if (existing != null) {
+            savedCalls.incrementAndGet();
+            log.trace("{} - using remembered result", method.getName());
+            try {
+                return copy(existing.join());
+            } catch (CompletionException e) {
+                throw e.getCause();
+            }
+        }
+
+        try {
+            Object value = invoke(target, method, args);
+            result.complete(value);
+            return copy(value);
+        } catch (Throwable e) {
+            results.remove(key, result);
+            result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static boolean isReadOnly(Method method) {
+        // writes (e.g. setUserAttribute) always go through
+        return method.getReturnType() != void.class && !method.getName().startsWith("set");
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Object copy(Object value) {
+        if (value instanceof Set) {
+            return new LinkedHashSet<>((Set<?>) value);
+        } else if (value instanceof List) {
+            return new ArrayList<>((List<?>) value);
+        } else if (value instanceof Map) {
+            return new LinkedHashMap<>((Map<?, ?>) value);
+        }
+        return value;
+    }
+
+    /**
+     * Totals of the calls made through many short-lived views.
+     */
+    public static class Stats {
+
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong savedCalls = new AtomicLong();
+
+        public void record(MemoizingPerunAdapter adapter) {
+            calls.addAndGet(adapter.getCallsCount());
+            savedCalls.addAndGet(adapter.getSavedCallsCount());
+        }
+
+        public long getCalls() {
+            return calls.get();
+        }
+
+        public long getSavedCalls() {
+            return savedCalls.get();
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{calls=" + calls.get() + ", savedCalls=" + savedCalls.get() + '}';
+        }
+
+    }
+
+    @EqualsAndHashCode
+    private static class CallKey {
+
+        private final Method method;
+        private final List<Object> args;
+
+        private CallKey(Method method, List<Object> args) {
+            this.method = method;
+            this.args = args;
+        }
+
+    }
+
+}
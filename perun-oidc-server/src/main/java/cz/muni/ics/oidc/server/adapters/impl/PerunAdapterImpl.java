@@ -7,6 +7,8 @@ import cz.muni.ics.oidc.models.PerunUser;
 import cz.muni.ics.oidc.models.Resource;
 import cz.muni.ics.oidc.models.Vo;
 import cz.muni.ics.oidc.server.adapters.PerunAdapter;
+import cz.muni.ics.oidc.server.adapters.PerunAdapterMethods;
+import cz.muni.ics.oidc.server.adapters.PerunAdapterMethodsRpc;
 import cz.muni.ics.oidc.server.connectors.Affiliation;
 import java.util.Collection;
 import java.util.List;
@@ -21,6 +23,73 @@ import java.util.Set;
  */
 public class PerunAdapterImpl extends PerunAdapter {
 
+    private PerunAdapterResilience resilience;
+
+    // built when the adapters or the resilience are set, so the getters do not need any locking
+    private volatile PerunAdapterMethods guardedPrimary;
+    private volatile PerunAdapterMethods guardedFallback;
+    private volatile PerunAdapterMethodsRpc guardedRpc;
+
+    /**
+     * Guard the calls of the adapters by circuit breakers and bulkheads, routing the calls of the primary adapter
+     * to the fallback one when the primary backend is unavailable. Has no effect if the resilience is disabled.
+     *
+     * @param resilience Resilience configuration.
+     */
+    public void setResilience(PerunAdapterResilience resilience) {
+        this.resilience = (resilience != null && resilience.isEnabled()) ? resilience : null;
+        buildGuardedAdapters();
+    }
+
+    @Override
+    public PerunAdapterMethods getAdapterPrimary() {
+        PerunAdapterMethods guarded = guardedPrimary;
+        return guarded != null ? guarded : super.getAdapterPrimary();
+    }
+
+    @Override
+    public PerunAdapterMethods getAdapterFallback() {
+        PerunAdapterMethods guarded = guardedFallback;
+        return guarded != null ? guarded : super.getAdapterFallback();
+    }
+
+    @Override
+    public PerunAdapterMethodsRpc getAdapterRpc() {
+        PerunAdapterMethodsRpc guarded = guardedRpc;
+        return guarded != null ? guarded : super.getAdapterRpc();
+    }
+
+    @Override
+    public void setAdapterPrimary(PerunAdapterMethods adapterPrimary) {
+        super.setAdapterPrimary(adapterPrimary);
+        buildGuardedAdapters();
+    }
+
+    @Override
+    public void setAdapterFallback(PerunAdapterMethods adapterFallback) {
+        super.setAdapterFallback(adapterFallback);
+        // routing of the primary adapter depends on the fallback one
+        buildGuardedAdapters();
+    }
+
+    @Override
+    public void setAdapterRpc(PerunAdapterMethodsRpc adapterRpc) {
+        super.setAdapterRpc(adapterRpc);
+        buildGuardedAdapters();
+    }
+
+    private synchronized void buildGuardedAdapters() {
+        if (resilience == null) {
+            guardedPrimary = null;
+            guardedFallback = null;
+            guardedRpc = null;
+            return;
+        }
+        guardedPrimary = resilience.routed(super.getAdapterPrimary(), super.getAdapterFallback());
+        guardedFallback = resilience.guarded(super.getAdapterFallback(), PerunAdapterMethods.class);
+        guardedRpc = resilience.guarded(super.getAdapterRpc(), PerunAdapterMethodsRpc.class);
+    }
+
     @Override
     public PerunUser getPreauthenticatedUserId(String extLogin, String extSourceName) {
         try {
@@ -144,6 +213,20 @@ public class PerunAdapterImpl extends PerunAdapter {
         }
     }
 
+    @Override
+    public Map<Long, Map<String, PerunAttributeValue>> getUserAttributeValues(Collection<Long> userIds,
+                                                                              Collection<String> attrsToFetch) {
+        try {
+            return this.getAdapterPrimary().getUserAttributeValues(userIds, attrsToFetch);
+        } catch (UnsupportedOperationException e) {
+            if (this.isCallFallback()) {
+                return this.getAdapterFallback().getUserAttributeValues(userIds, attrsToFetch);
+            } else {
+                throw e;
+            }
+        }
+    }
+
     @Override
     public PerunAttributeValue getUserAttributeValue(PerunUser user, String attrToFetch) {
         return this.getUserAttributeValue(user.getId(), attrToFetch);
@@ -252,6 +335,20 @@ public class PerunAdapterImpl extends PerunAdapter {
         }
     }
 
+    @Override
+    public Map<Long, Map<String, PerunAttributeValue>> getGroupAttributeValues(Collection<Long> groupIds,
+                                                                               Collection<String> attrsToFetch) {
+        try {
+            return this.getAdapterPrimary().getGroupAttributeValues(groupIds, attrsToFetch);
+        } catch (UnsupportedOperationException e) {
+            if (this.isCallFallback()) {
+                return this.getAdapterFallback().getGroupAttributeValues(groupIds, attrsToFetch);
+            } else {
+                throw e;
+            }
+        }
+    }
+
     @Override
     public PerunAttributeValue getGroupAttributeValue(Group group, String attrToFetch) {
         return this.getGroupAttributeValue(group.getId(), attrToFetch);
@@ -49,12 +49,15 @@ import cz.muni.ics.oidc.server.adapters.PerunAdapterMethodsLdap;
 import cz.muni.ics.oidc.server.connectors.Affiliation;
 import cz.muni.ics.oidc.server.connectors.PerunConnectorLdap;
 import java.io.IOException;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -267,6 +270,50 @@ public class PerunAdapterLdap extends PerunAdapterWithMappingServices implements
 		return getAttributeValues(dnPrefix, attrsToFetch, PerunEntityType.USER);
 	}
 
+	@Override
+	public Map<Long, Map<String, PerunAttributeValue>> getUserAttributeValues(Collection<Long> userIds,
+																			  Collection<String> attrsToFetch) {
+		Map<Long, Map<String, PerunAttributeValue>> res = new LinkedHashMap<>();
+		if (userIds == null || userIds.isEmpty()) {
+			return res;
+		}
+
+		Set<AttributeMapping> mappings = this.getMappingsForAttrNames(PerunEntityType.USER, attrsToFetch);
+		Set<String> attrNames = new HashSet<>(Arrays.asList(this.getAttributesFromMappings(mappings)));
+		if (attrNames.isEmpty()) {
+			userIds.forEach(id -> res.put(id, new HashMap<>()));
+			return res;
+		}
+		attrNames.add(PERUN_USER_ID);
+		String[] attributes = attrNames.toArray(new String[] {});
+
+		Set<Long> uniqueIds = new LinkedHashSet<>(userIds);
+		FilterBuilder[] partialFilters = new FilterBuilder[uniqueIds.size()];
+		int i = 0;
+		for (Long id: uniqueIds) {
+			partialFilters[i++] = equal(PERUN_USER_ID, String.valueOf(id));
+		}
+		FilterBuilder filter = and(equal(OBJECT_CLASS, PERUN_USER), or(partialFilters));
+
+		EntryMapper<Map<String, PerunAttributeValue>> valuesMapper = attrValueMapper(mappings);
+		EntryMapper<Map.Entry<Long, Map<String, PerunAttributeValue>>> mapper = e -> {
+			if (!checkHasAttributes(e, new String[] { PERUN_USER_ID })) {
+				return null;
+			}
+
+			Long id = Long.valueOf(e.get(PERUN_USER_ID).getString());
+			return new AbstractMap.SimpleImmutableEntry<>(id, valuesMapper.map(e));
+		};
+
+		List<Map.Entry<Long, Map<String, PerunAttributeValue>>> entries =
+				connectorLdap.search(OU_PEOPLE, filter, SearchScope.ONELEVEL, attributes, mapper);
+		entries.stream()
+				.filter(Objects::nonNull)
+				.forEach(entry -> res.put(entry.getKey(), entry.getValue()));
+
+		return res;
+	}
+
 	@Override
 	public PerunAttributeValue getUserAttributeValue(PerunUser user, String attrToFetch) {
 		return this.getUserAttributeValue(user.getId(), attrToFetch);
@@ -336,6 +383,50 @@ public class PerunAdapterLdap extends PerunAdapterWithMappingServices implements
 		return getAttributeValues(dnPrefix, attrsToFetch, PerunEntityType.GROUP);
 	}
 
+	@Override
+	public Map<Long, Map<String, PerunAttributeValue>> getGroupAttributeValues(Collection<Long> groupIds,
+																			   Collection<String> attrsToFetch) {
+		Map<Long, Map<String, PerunAttributeValue>> res = new LinkedHashMap<>();
+		if (groupIds == null || groupIds.isEmpty()) {
+			return res;
+		}
+
+		Set<AttributeMapping> mappings = this.getMappingsForAttrNames(PerunEntityType.GROUP, attrsToFetch);
+		Set<String> attrNames = new HashSet<>(Arrays.asList(this.getAttributesFromMappings(mappings)));
+		if (attrNames.isEmpty()) {
+			groupIds.forEach(id -> res.put(id, new HashMap<>()));
+			return res;
+		}
+		attrNames.add(PERUN_GROUP_ID);
+		String[] attributes = attrNames.toArray(new String[] {});
+
+		Set<Long> uniqueIds = new LinkedHashSet<>(groupIds);
+		FilterBuilder[] partialFilters = new FilterBuilder[uniqueIds.size()];
+		int i = 0;
+		for (Long id: uniqueIds) {
+			partialFilters[i++] = equal(PERUN_GROUP_ID, String.valueOf(id));
+		}
+		FilterBuilder filter = and(equal(OBJECT_CLASS, PERUN_GROUP), or(partialFilters));
+
+		EntryMapper<Map<String, PerunAttributeValue>> valuesMapper = attrValueMapper(mappings);
+		EntryMapper<Map.Entry<Long, Map<String, PerunAttributeValue>>> mapper = e -> {
+			if (!checkHasAttributes(e, new String[] { PERUN_GROUP_ID })) {
+				return null;
+			}
+
+			Long id = Long.valueOf(e.get(PERUN_GROUP_ID).getString());
+			return new AbstractMap.SimpleImmutableEntry<>(id, valuesMapper.map(e));
+		};
+
+		List<Map.Entry<Long, Map<String, PerunAttributeValue>>> entries =
+				connectorLdap.search(null, filter, SearchScope.SUBTREE, attributes, mapper);
+		entries.stream()
+				.filter(Objects::nonNull)
+				.forEach(entry -> res.put(entry.getKey(), entry.getValue()));
+
+		return res;
+	}
+
 	@Override
 	public PerunAttributeValue getGroupAttributeValue(Group group, String attrToFetch) {
 		return this.getGroupAttributeValue(group.getId(), attrToFetch);
@@ -0,0 +1,571 @@
+package cz.muni.ics.oidc.server.adapters.impl;
+
+import cz.muni.ics.oidc.exceptions.BackendUnavailableException;
+import cz.muni.ics.oidc.server.adapters.PerunAdapterMethods;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.directory.ldap.client.api.exception.InvalidConnectionException;
+import org.apache.directory.ldap.client.api.exception.LdapConnectionTimeOutException;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Protects the adapter from slow or failing backends (Perun RPC, LDAP). Each backend gets a {@link BackendGuard}
+ * consisting of:
+ * <ul>
+ *     <li>circuit breaker - after configured number of consecutive failures the calls are refused for configured
+ *     time, then a single trial call decides whether the backend is usable again,</li>
+ *     <li>bulkhead - limits the number of concurrent calls, calls waiting for too long are refused,</li>
+ *     <li>latency percentiles - computed from the recent calls, used for hedging and monitoring.</li>
+ * </ul>
+ *
+ * Calls of the primary adapter refused by the guard or failed due to the backend are routed to the fallback
+ * adapter. If hedging is enabled, calls of the primary adapter taking longer than its 95th percentile (but at
+ * least the configured min delay) are also sent to the fallback adapter and the first successful result is used.
+ * Hedging uses at most two threads per allowed concurrent call, when all of them are busy the call is made without
+ * hedging.
+ * Only transport errors and timeouts (see {@link #isBackendFailure(Throwable)}) are counted as backend failures,
+ * other exceptions are passed to the caller as they are.
+ *
+ * @see PerunAdapterImpl#setResilience(PerunAdapterResilience)
+ */
+@Slf4j
+public class PerunAdapterResilience implements DisposableBean {
+
+    private final boolean enabled;
+    private final int failureThreshold;
+    private final long openDurationMs;
+    private final int maxConcurrentCalls;
+    private final long maxWaitMs;
+    private final boolean hedging;
+    private final int hedgingMinSamples;
+    private final long hedgingMinDelayMicros;
+    private final int latencyWindow;
+
+    private final Map<Object, BackendGuard> guards = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final ExecutorService hedgingExecutor;
+    private final AtomicLong hedgedCalls = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong hedgingSkipped = new AtomicLong();
+
+    public PerunAdapterResilience(boolean enabled, int failureThreshold, long openDurationMs, int maxConcurrentCalls,
+                                  long maxWaitMs, boolean hedging, int hedgingMinSamples, long hedgingMinDelayMs,
+                                  int latencyWindow)
+    {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("Failure threshold must be greater than 0");
+        } else if (maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("Max concurrent calls must be greater than 0");
+        } else if (latencyWindow < 1) {
+            throw new IllegalArgumentException("Latency window must be greater than 0");
+        }
+        this.enabled = enabled;
+        this.failureThreshold = failureThreshold;
+        this.openDurationMs = openDurationMs;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.maxWaitMs = maxWaitMs;
+        this.hedging = hedging;
+        this.hedgingMinSamples = hedgingMinSamples;
+        this.hedgingMinDelayMicros = TimeUnit.MILLISECONDS.toMicros(Math.max(hedgingMinDelayMs, 0L));
+        this.latencyWindow = latencyWindow;
+        this.hedgingExecutor = (enabled && hedging) ? createHedgingExecutor(2 * maxConcurrentCalls) : null;
+        if (!enabled) {
+            log.info("disabled");
+            return;
+        }
+        log.info("initialized with failure threshold {}, open duration {}ms, max concurrent calls {} (wait {}ms), "
+                + "hedging: {} (min delay {}ms)", failureThreshold, openDurationMs, maxConcurrentCalls, maxWaitMs,
+                hedging, hedgingMinDelayMs);
+    }
+
+    /**
+     * Wrap the primary adapter, routing the calls to the fallback adapter when the primary one is unavailable.
+     *
+     * @param primary Primary adapter.
+     * @param fallback Fallback adapter, can be null.
+     * @return Guarded primary adapter.
+     */
+    public PerunAdapterMethods routed(PerunAdapterMethods primary, PerunAdapterMethods fallback) {
+        if (primary == null) {
+            return null;
+        } else if (fallback == null || fallback == primary) {
+            return guarded(primary, PerunAdapterMethods.class);
+        }
+        BackendGuard primaryGuard = getGuard(primary);
+        BackendGuard fallbackGuard = getGuard(fallback);
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return invoke(primary, method, args);
+            }
+            return callRouted(primary, primaryGuard, fallback, fallbackGuard, method, args);
+        };
+        return proxy(PerunAdapterMethods.class, handler);
+    }
+
+    /**
+     * Wrap the adapter, guarding the calls without any routing.
+     *
+     * @param target Adapter.
+     * @param iface Interface of the adapter to be exposed.
+     * @return Guarded adapter.
+     */
+    public <T> T guarded(T target, Class<T> iface) {
+        if (target == null) {
+            return null;
+        }
+        BackendGuard guard = getGuard(target);
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return invoke(target, method, args);
+            }
+            return guard.call(target, method, args);
+        };
+        return proxy(iface, handler);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public List<BackendGuard> getGuards() {
+        synchronized (guards) {
+            return new ArrayList<>(guards.values());
+        }
+    }
+
+    public long getHedgedCalls() {
+        return hedgedCalls.get();
+    }
+
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    public long getHedgingSkipped() {
+        return hedgingSkipped.get();
+    }
+
+    public void logStats() {
+        for (BackendGuard guard : getGuards()) {
+            log.info("{} - state: {}, calls: {}, failures: {}, refused: {}, latency p50/p95/p99: {}/{}/{}us",
+                    guard.getName(), guard.getState(), guard.getCalls(), guard.getFailures(), guard.getRefused(),
+                    guard.getLatencyPercentileMicros(50), guard.getLatencyPercentileMicros(95),
+                    guard.getLatencyPercentileMicros(99));
+        }
+        if (hedgingExecutor != null) {
+            log.info("hedged calls: {}, won by fallback: {}, skipped due to busy threads: {}", hedgedCalls.get(),
+                    hedgeWins.get(), hedgingSkipped.get());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (hedgingExecutor != null) {
+            hedgingExecutor.shutdownNow();
+        }
+    }
+
+    private BackendGuard getGuard(Object target) {
+        return guards.computeIfAbsent(target, t -> new BackendGuard(t.getClass().getSimpleName(), failureThreshold,
+                openDurationMs, maxConcurrentCalls, maxWaitMs, latencyWindow));
+    }
+
+    private Object callRouted(Object primary, BackendGuard primaryGuard, Object fallback, BackendGuard fallbackGuard,
+                              Method method, Object[] args) throws Throwable
+    {
+        if (hedgingExecutor != null && primaryGuard.getSamplesCount() >= hedgingMinSamples
+                && fallbackGuard.isCallable())
+        {
+            return callHedged(primary, primaryGuard, fallback, fallbackGuard, method, args);
+        }
+        return callWithFailover(primary, primaryGuard, fallback, fallbackGuard, method, args);
+    }
+
+    private Object callWithFailover(Object primary, BackendGuard primaryGuard, Object fallback,
+                                    BackendGuard fallbackGuard, Method method, Object[] args) throws Throwable
+    {
+        try {
+            return primaryGuard.call(primary, method, args);
+        } catch (Throwable e) {
+            return callFallback(primaryGuard, fallback, fallbackGuard, method, args, e);
+        }
+    }
+
+    private Object callFallback(BackendGuard primaryGuard, Object fallback, BackendGuard fallbackGuard, Method method,
+                                Object[] args, Throwable primaryError) throws Throwable
+    {
+        if (!isBackendFailure(primaryError)) {
+            throw primaryError;
+        }
+        log.debug("{} - {} not available ({}), calling {}", method.getName(), primaryGuard.getName(),
+                primaryError.getMessage(), fallbackGuard.getName());
+        try {
+            return fallbackGuard.call(fallback, method, args);
+        } catch (Throwable fallbackError) {
+            fallbackError.addSuppressed(primaryError);
+            throw fallbackError;
+        }
+    }
+
+    private Object callHedged(Object primary, BackendGuard primaryGuard, Object fallback, BackendGuard fallbackGuard,
+                              Method method, Object[] args) throws Throwable
+    {
+        long delayMicros = Math.max(primaryGuard.getLatencyPercentileMicros(95), hedgingMinDelayMicros);
+        CompletableFuture<Object> primaryCall;
+        try {
+            primaryCall = submit(() -> primaryGuard.call(primary, method, args));
+        } catch (RejectedExecutionException e) {
+            hedgingSkipped.incrementAndGet();
+            return callWithFailover(primary, primaryGuard, fallback, fallbackGuard, method, args);
+        }
+        try {
+            return primaryCall.get(delayMicros, TimeUnit.MICROSECONDS);
+        } catch (ExecutionException e) {
+            // failed before the fallback has been called, fail over as without hedging
+            return callFallback(primaryGuard, fallback, fallbackGuard, method, args, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BackendUnavailableException("interrupted while waiting for " + primaryGuard.getName(), e);
+        } catch (TimeoutException e) {
+            // primary is slower than usual, continue with the fallback as well
+        }
+
+        CompletableFuture<Object> fallbackCall;
+        try {
+            fallbackCall = submit(() -> fallbackGuard.call(fallback, method, args));
+        } catch (RejectedExecutionException e) {
+            hedgingSkipped.incrementAndGet();
+            return awaitPrimary(primaryCall, primaryGuard, fallback, fallbackGuard, method, args);
+        }
+        hedgedCalls.incrementAndGet();
+        log.debug("{} - {} slower than {}us, calling {} as well", method.getName(), primaryGuard.getName(),
+                delayMicros, fallbackGuard.getName());
+
+        CompletableFuture<Object> first = new CompletableFuture<>();
+        AtomicInteger failed = new AtomicInteger();
+        primaryCall.whenComplete((value, error) -> {
+            if (error == null) {
+                first.complete(value);
+            } else if (failed.incrementAndGet() == 2) {
+                first.completeExceptionally(error);
+            }
+        });
+        fallbackCall.whenComplete((value, error) -> {
+            if (error == null) {
+                if (first.complete(value)) {
+                    hedgeWins.incrementAndGet();
+                }
+            } else if (failed.incrementAndGet() == 2) {
+                first.completeExceptionally(primaryCall.handle((v, primaryError) -> primaryError).join());
+            }
+        });
+
+        // both backends have been tried, the error is not routed to the fallback again
+        try {
+            return first.join();
+        } catch (CompletionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private Object awaitPrimary(CompletableFuture<Object> primaryCall, BackendGuard primaryGuard, Object fallback,
+                                BackendGuard fallbackGuard, Method method, Object[] args) throws Throwable
+    {
+        try {
+            return primaryCall.get();
+        } catch (ExecutionException e) {
+            return callFallback(primaryGuard, fallback, fallbackGuard, method, args, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BackendUnavailableException("interrupted while waiting for " + primaryGuard.getName(), e);
+        }
+    }
+
+    private CompletableFuture<Object> submit(ThrowingCall call) {
+        Map<String, String> mdcContext = MDC.getCopyOfContextMap();
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        hedgingExecutor.execute(() -> {
+            if (mdcContext != null) {
+                MDC.setContextMap(mdcContext);
+            }
+            try {
+                future.complete(call.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                MDC.clear();
+            }
+        });
+        return future;
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        while (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    /**
+     * Decide whether the exception means the backend is unavailable - it cannot be reached, does not respond in
+     * time or fails on its side (HTTP 5xx). The exception can be wrapped by the adapter or the connector.
+     */
+    static boolean isBackendFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof BackendUnavailableException
+                    || cause instanceof ResourceAccessException
+                    || cause instanceof HttpServerErrorException
+                    || cause instanceof InvalidConnectionException
+                    || cause instanceof LdapConnectionTimeOutException)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static <T> T proxy(Class<T> iface, InvocationHandler handler) {
+        return iface.cast(Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[] { iface }, handler));
+    }
+
+    private static ExecutorService createHedgingExecutor(int maxThreads) {
+        // no queue, the call is rejected when all threads are busy and it is made without hedging
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(0, maxThreads, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread t = new Thread(r, "perun-adapter-hedging-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @FunctionalInterface
+    private interface ThrowingCall {
+        Object call() throws Throwable;
+    }
+
+    /**
+     * Circuit breaker, bulkhead and latency statistics of a single backend.
+     */
+    public static class BackendGuard {
+
+        public enum State { CLOSED, OPEN, HALF_OPEN }
+
+        private final String name;
+        private final int failureThreshold;
+        private final long openDurationNanos;
+        private final Semaphore bulkhead;
+        private final long maxWaitMs;
+
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final AtomicBoolean trialRunning = new AtomicBoolean();
+        private volatile long openedAt;
+        private volatile boolean open;
+
+        // latencies of the recent calls in microseconds, sorted copy is refreshed after every tenth of the window
+        private final long[] latencies;
+        private final int sortInterval;
+        private int latenciesIndex;
+        private int latenciesCount;
+        private int unsortedCount;
+        private volatile long[] sortedLatencies;
+
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong refused = new AtomicLong();
+
+        BackendGuard(String name, int failureThreshold, long openDurationMs, int maxConcurrentCalls, long maxWaitMs,
+                     int latencyWindow)
+        {
+            this.name = name;
+            this.failureThreshold = failureThreshold;
+            this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMs);
+            this.bulkhead = new Semaphore(maxConcurrentCalls);
+            this.maxWaitMs = maxWaitMs;
+            this.latencies = new long[latencyWindow];
+            this.sortInterval = Math.max(1, latencyWindow / 10);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public State getState() {
+            if (!open) {
+                return State.CLOSED;
+            } else if (System.nanoTime() - openedAt < openDurationNanos) {
+                return State.OPEN;
+            }
+            return State.HALF_OPEN;
+        }
+
+        public long getCalls() {
+            return calls.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        public long getRefused() {
+            return refused.get();
+        }
+
+        public int getAvailablePermits() {
+            return bulkhead.availablePermits();
+        }
+
+        public synchronized int getSamplesCount() {
+            return latenciesCount;
+        }
+
+        /**
+         * @param percentile Percentile (0-100).
+         * @return Latency of the recent calls in microseconds, 0 if there are no calls yet.
+         */
+        public long getLatencyPercentileMicros(int percentile) {
+            long[] sorted = getSortedLatencies();
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+
+        private long[] getSortedLatencies() {
+            long[] sorted = sortedLatencies;
+            if (sorted != null) {
+                return sorted;
+            }
+            synchronized (this) {
+                if (sortedLatencies == null) {
+                    sorted = Arrays.copyOf(latencies, latenciesCount);
+                    Arrays.sort(sorted);
+                    sortedLatencies = sorted;
+                }
+                return sortedLatencies;
+            }
+        }
+
+        boolean isCallable() {
+            State state = getState();
+            return state == State.CLOSED || (state == State.HALF_OPEN && !trialRunning.get());
+        }
+
+        Object call(Object target, Method method, Object[] args) throws Throwable {
+            State state = getState();
+            boolean trial = false;
+            if (state == State.OPEN) {
+                refused.incrementAndGet();
+                throw new BackendUnavailableException(name + " - circuit breaker is open");
+            } else if (state == State.HALF_OPEN) {
+                if (!trialRunning.compareAndSet(false, true)) {
+                    refused.incrementAndGet();
+                    throw new BackendUnavailableException(name + " - waiting for the result of the trial call");
+                }
+                trial = true;
+            }
+
+            try {
+                acquire();
+                try {
+                    calls.incrementAndGet();
+                    long start = System.nanoTime();
+                    try {
+                        Object result = invoke(target, method, args);
+                        recordSuccess(start);
+                        return result;
+                    } catch (Throwable e) {
+                        if (isBackendFailure(e)) {
+                            recordFailure(trial);
+                        }
+                        throw e;
+                    }
+                } finally {
+                    bulkhead.release();
+                }
+            } finally {
+                if (trial) {
+                    trialRunning.set(false);
+                }
+            }
+        }
+
+        private void acquire() {
+            boolean acquired;
+            try {
+                acquired = bulkhead.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BackendUnavailableException(name + " - interrupted while waiting for a free slot", e);
+            }
+            if (!acquired) {
+                refused.incrementAndGet();
+                throw new BackendUnavailableException(name + " - too many concurrent calls");
+            }
+        }
+
+        private void recordSuccess(long start) {
+            long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            synchronized (this) {
+                latencies[latenciesIndex] = latencyMicros;
+                latenciesIndex = (latenciesIndex + 1) % latencies.length;
+                latenciesCount = Math.min(latenciesCount + 1, latencies.length);
+                if (++unsortedCount >= sortInterval || latenciesCount < sortInterval) {
+                    sortedLatencies = null;
+                    unsortedCount = 0;
+                }
+            }
+            consecutiveFailures.set(0);
+            if (open) {
+                open = false;
+                log.info("{} - circuit breaker closed", name);
+            }
+        }
+
+        private void recordFailure(boolean trial) {
+            failures.incrementAndGet();
+            if (consecutiveFailures.incrementAndGet() >= failureThreshold || trial) {
+                openedAt = System.nanoTime();
+                if (!open) {
+                    open = true;
+                    log.warn("{} - circuit breaker opened after {} consecutive failures", name,
+                            consecutiveFailures.get());
+                }
+            }
+        }
+
+    }
+
+}
@@ -27,6 +27,7 @@ import cz.muni.ics.oidc.models.Vo;
 import cz.muni.ics.oidc.models.enums.MemberStatus;
 import cz.muni.ics.oidc.models.enums.PerunEntityType;
 import cz.muni.ics.oidc.models.mappers.RpcMapper;
+import cz.muni.ics.oidc.server.ParallelCallsExecutor;
 import cz.muni.ics.oidc.server.adapters.PerunAdapter;
 import cz.muni.ics.oidc.server.adapters.PerunAdapterMethods;
 import cz.muni.ics.oidc.server.adapters.PerunAdapterMethodsRpc;
@@ -39,9 +40,11 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.StringUtils;
@@ -62,6 +65,7 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 	private String oidcCheckMembershipAttr;
 	private String orgUrlAttr;
 	private String affiliationsAttr;
+	private ParallelCallsExecutor parallelCallsExecutor;
 
 	public void setConnectorRpc(PerunConnectorRpc connectorRpc) {
 		this.connectorRpc = connectorRpc;
@@ -79,6 +83,10 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 		this.orgUrlAttr = orgUrlAttr;
 	}
 
+	public void setParallelCallsExecutor(ParallelCallsExecutor parallelCallsExecutor) {
+		this.parallelCallsExecutor = parallelCallsExecutor;
+	}
+
 	public void setAffiliationsAttr(String affiliationsAttr) {
 		this.affiliationsAttr = affiliationsAttr;
 	}
@@ -258,22 +266,27 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 		AttributeMapping orgUrlMapping = new AttributeMapping("orgUrl", orgUrlAttr, "", STRING_TYPE);
 		Set<AttributeMapping> attributeMappings = new HashSet<>(Arrays.asList(affMapping, orgUrlMapping));
 
-		for (UserExtSource ues : userExtSources) {
-			if ("cz.metacentrum.perun.core.impl.ExtSourceIdp".equals(ues.getExtSource().getType())) {
-				Map<String, PerunAttributeValue> uesAttrValues = getUserExtSourceAttributeValues(ues.getId(), attributeMappings);
-
-				long asserted = ues.getLastAccess().getTime() / 1000L;
-
-				String orgUrl = uesAttrValues.get(orgUrlMapping.getIdentifier()).valueAsString();
-				String affs = uesAttrValues.get(affMapping.getIdentifier()).valueAsString();
-				if (affs != null) {
-					for (String aff : affs.split(";")) {
-						String source = ( (orgUrl != null) ? orgUrl : ues.getExtSource().getName() );
-						Affiliation affiliation = new Affiliation(source, aff, asserted);
-						log.debug("found {} from IdP {} with orgURL {} asserted at {}", aff, ues.getExtSource().getName(),
-								orgUrl, asserted);
-						affiliations.add(affiliation);
-					}
+		List<UserExtSource> idpUserExtSources = userExtSources.stream()
+				.filter(ues -> "cz.metacentrum.perun.core.impl.ExtSourceIdp".equals(ues.getExtSource().getType()))
+				.collect(Collectors.toList());
+		List<Map<String, PerunAttributeValue>> uesAttrValuesList = callInParallel(idpUserExtSources,
+				ues -> getUserExtSourceAttributeValues(ues.getId(), attributeMappings));
+
+		for (int i = 0; i < idpUserExtSources.size(); i++) {
+			UserExtSource ues = idpUserExtSources.get(i);
+			Map<String, PerunAttributeValue> uesAttrValues = uesAttrValuesList.get(i);
+
+			long asserted = ues.getLastAccess().getTime() / 1000L;
+
+			String orgUrl = uesAttrValues.get(orgUrlMapping.getIdentifier()).valueAsString();
+			String affs = uesAttrValues.get(affMapping.getIdentifier()).valueAsString();
+			if (affs != null) {
+				for (String aff : affs.split(";")) {
+					String source = ( (orgUrl != null) ? orgUrl : ues.getExtSource().getName() );
+					Affiliation affiliation = new Affiliation(source, aff, asserted);
+					log.debug("found {} from IdP {} with orgURL {} asserted at {}", aff, ues.getExtSource().getName(),
+							orgUrl, asserted);
+					affiliations.add(affiliation);
 				}
 			}
 		}
@@ -289,20 +302,26 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 
 		List<Affiliation> affiliations = new ArrayList<>();
 
-		List<Member> userMembers = getMembersByUser(userId);
-		for (Member member : userMembers) {
-			if (VALID.equals(member.getStatus())) {
-				List<Group> memberGroups = getMemberGroups(member.getId());
-				for (Group group : memberGroups) {
-					PerunAttributeValue attrValue = this.getGroupAttributeValue(group, groupAffiliationsAttr);
-					if (attrValue != null && attrValue.valueAsString() != null) {
-						long linuxTime = System.currentTimeMillis() / 1000L;
-						for (String value : attrValue.valueAsList()) {
-							Affiliation affiliation = new Affiliation(null, value, linuxTime);
-							log.debug("found {} on group {}", value, group.getName());
-							affiliations.add(affiliation);
-						}
-					}
+		List<Member> validMembers = getMembersByUser(userId).stream()
+				.filter(member -> VALID.equals(member.getStatus()))
+				.collect(Collectors.toList());
+		List<Group> memberGroups = callInParallel(validMembers, member -> getMemberGroups(member.getId()))
+				.stream()
+				.flatMap(List::stream)
+				.collect(Collectors.toList());
+		Map<Long, Map<String, PerunAttributeValue>> attrValues = this.getGroupAttributeValues(
+				memberGroups.stream().map(Group::getId).collect(Collectors.toList()),
+				Collections.singletonList(groupAffiliationsAttr));
+
+		for (Group group : memberGroups) {
+			PerunAttributeValue attrValue = attrValues.getOrDefault(group.getId(), Collections.emptyMap())
+					.get(groupAffiliationsAttr);
+			if (attrValue != null && attrValue.valueAsString() != null) {
+				long linuxTime = System.currentTimeMillis() / 1000L;
+				for (String value : attrValue.valueAsList()) {
+					Affiliation affiliation = new Affiliation(null, value, linuxTime);
+					log.debug("found {} on group {}", value, group.getName());
+					affiliations.add(affiliation);
 				}
 			}
 		}
@@ -321,9 +340,10 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 
 		String voShortName = "urn:perun:group:attribute-def:virt:voShortName";
 
-		for (Resource res : resources) {
-			List<Group> groups = getRichGroupsAssignedToResourceWithAttributesByNames(res, Collections.singletonList(voShortName));
+		List<List<Group>> resourcesGroups = callInParallel(resources,
+				res -> getRichGroupsAssignedToResourceWithAttributesByNames(res, Collections.singletonList(voShortName)));
 
+		for (List<Group> groups : resourcesGroups) {
 			for (Group group : groups) {
 				if (group.getAttributeByUrnName(voShortName) != null &&
 						group.getAttributeByUrnName(voShortName).hasNonNull("value")) {
@@ -398,6 +418,33 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 		return extractValues(userAttributes);
 	}
 
+	@Override
+	public Map<Long, Map<String, PerunAttributeValue>> getUserAttributeValues(Collection<Long> userIds,
+																			  Collection<String> attrsToFetch) {
+		if (!this.connectorRpc.isEnabled()) {
+			return new HashMap<>();
+		} else if (userIds == null || userIds.isEmpty()) {
+			return new HashMap<>();
+		}
+
+		Set<AttributeMapping> mappings = this.getUserAttributesMappingService().getMappingsByIdentifiers(attrsToFetch);
+
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("ids", new ArrayList<>(new LinkedHashSet<>(userIds)));
+		JsonNode res = connectorRpc.post(USERS_MANAGER, "getRichUsersWithAttributesByIds", map);
+
+		Map<Long, Map<String, PerunAttributeValue>> result = new LinkedHashMap<>();
+		for (int i = 0; i < res.size(); i++) {
+			JsonNode richUser = res.get(i);
+			PerunUser user = RpcMapper.mapPerunUser(richUser);
+			JsonNode userAttributes = richUser.path("userAttributes");
+			Map<String, PerunAttribute> attributes = RpcMapper.mapAttributes(userAttributes, mappings);
+			result.put(user.getId(), extractValues(attributes));
+		}
+
+		return result;
+	}
+
 	@Override
 	public PerunAttributeValue getUserAttributeValue(PerunUser user, String attrToFetch) {
 		if (!this.connectorRpc.isEnabled()) {
@@ -509,6 +556,28 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 		return extractValues(groupAttributes);
 	}
 
+	@Override
+	public Map<Long, Map<String, PerunAttributeValue>> getGroupAttributeValues(Collection<Long> groupIds,
+																			   Collection<String> attrsToFetch) {
+		if (!this.connectorRpc.isEnabled()) {
+			return new HashMap<>();
+		} else if (groupIds == null || groupIds.isEmpty()) {
+			return new HashMap<>();
+		}
+
+		// RPC has no call fetching attributes of many groups by ids, so the calls are at least made concurrently
+		List<Long> uniqueIds = new ArrayList<>(new LinkedHashSet<>(groupIds));
+		List<Map<String, PerunAttributeValue>> values = callInParallel(uniqueIds,
+				groupId -> this.getGroupAttributeValues(groupId, attrsToFetch));
+
+		Map<Long, Map<String, PerunAttributeValue>> result = new LinkedHashMap<>();
+		for (int i = 0; i < uniqueIds.size(); i++) {
+			result.put(uniqueIds.get(i), values.get(i));
+		}
+
+		return result;
+	}
+
 	@Override
 	public PerunAttributeValue getGroupAttributeValue(Group group, String attrToFetch) {
 		if (!this.connectorRpc.isEnabled()) {
@@ -762,14 +831,24 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 
 		if (null != resourceCapabilitiesAttrName) {
 			List<Resource> resources = this.getAssignedRichResources(facility);
-			for (Resource resource : resources) {
-				PerunAttributeValue attrValue = this.getResourceAttributeValue(resource.getId(), resourceCapabilitiesAttrName);
-
-				List<String> resourceCapabilities = attrValue.valueAsList();
-				if (resourceCapabilities == null || resourceCapabilities.size() == 0) {
-					continue;
+			List<List<String>> resourcesCapabilities = callInParallel(resources,
+					resource -> this.getResourceAttributeValue(resource.getId(), resourceCapabilitiesAttrName).valueAsList());
+			List<Resource> resourcesWithCapabilities = new ArrayList<>();
+			List<List<String>> nonEmptyCapabilities = new ArrayList<>();
+			for (int i = 0; i < resources.size(); i++) {
+				List<String> resourceCapabilities = resourcesCapabilities.get(i);
+				if (resourceCapabilities != null && resourceCapabilities.size() != 0) {
+					resourcesWithCapabilities.add(resources.get(i));
+					nonEmptyCapabilities.add(resourceCapabilities);
 				}
-				List<Group> groups = this.getAssignedGroups(resource.getId());
+			}
+			List<List<Group>> resourcesGroups = callInParallel(resourcesWithCapabilities,
+					resource -> this.getAssignedGroups(resource.getId()));
+
+			for (int i = 0; i < resourcesWithCapabilities.size(); i++) {
+				Resource resource = resourcesWithCapabilities.get(i);
+				List<String> resourceCapabilities = nonEmptyCapabilities.get(i);
+				List<Group> groups = resourcesGroups.get(i);
 				for (Group group : groups) {
 					resourceGroupNames.add(group.getName());
 					String groupName = group.getName();
@@ -952,6 +1031,14 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 		return RpcMapper.mapPerunUser(response);
 	}
 
+	private <T, R> List<R> callInParallel(List<T> items, Function<T, R> call) {
+		if (parallelCallsExecutor != null) {
+			return parallelCallsExecutor.map(items, call);
+		}
+
+		return items.stream().map(call).collect(Collectors.toList());
+	}
+
 	private Member getMemberByUser(Long userId, Long voId) {
 		if (!this.connectorRpc.isEnabled()) {
 			return null;
@@ -0,0 +1,155 @@
+package cz.muni.ics.oidc.server.cache;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.sql.DataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Shared cache tier backed by the table "shared_cache" in the application database. Expired entries are not
+ * returned, but they stay in the table until removed by {@link #clearExpired(long)}.
+ *
+ * @see SharedCacheTier
+ */
+@Slf4j
+public class JdbcSharedCacheTier implements SharedCacheTier {
+
+	public static final int MAX_KEY_LENGTH = 255;
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	private static final String SELECT = "SELECT cache_value FROM shared_cache WHERE cache_key = ? AND expires_at > ?";
+	private static final String UPDATE = "UPDATE shared_cache SET cache_value = ?, expires_at = ? WHERE cache_key = ?";
+	private static final String INSERT = "INSERT INTO shared_cache (cache_key, cache_value, expires_at) VALUES (?, ?, ?)";
+	private static final String DELETE = "DELETE FROM shared_cache WHERE cache_key = ?";
+	private static final String DELETE_BY_PREFIX = "DELETE FROM shared_cache WHERE cache_key LIKE ? ESCAPE '!'";
+	private static final String SELECT_EXPIRED = "SELECT cache_key FROM shared_cache WHERE expires_at <= ?";
+	private static final String DELETE_EXPIRED = "DELETE FROM shared_cache WHERE cache_key = ? AND expires_at <= ?";
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	public JdbcSharedCacheTier(DataSource dataSource) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	@Override
+	public String get(String key) {
+		if (!isValidKey(key)) {
+			return null;
+		}
+
+		try {
+			List<String> values = jdbcTemplate.queryForList(SELECT, String.class, key, now());
+			return values.isEmpty() ? null : values.get(0);
+		} catch (DataAccessException e) {
+			log.warn("Failed to read entry '{}' from shared cache", key, e);
+			return null;
+		}
+	}
+
+	@Override
+	public void put(String key, String value, long ttlMillis) {
+		if (!isValidKey(key)) {
+			log.debug("Key '{}' cannot be stored in shared cache", key);
+			return;
+		}
+
+		Timestamp expiresAt = new Timestamp(System.currentTimeMillis() + ttlMillis);
+		try {
+			int updated = jdbcTemplate.update(UPDATE, value, expiresAt, key);
+			if (updated == 0) {
+				jdbcTemplate.update(INSERT, key, value, expiresAt);
+			}
+		} catch (DataIntegrityViolationException e) {
+			log.debug("Entry '{}' has been concurrently stored in shared cache by other node", key);
+		} catch (DataAccessException e) {
+			log.warn("Failed to store entry '{}' in shared cache", key, e);
+		}
+	}
+
+	@Override
+	public void invalidate(String key) {
+		if (!isValidKey(key)) {
+			return;
+		}
+
+		try {
+			jdbcTemplate.update(DELETE, key);
+		} catch (DataAccessException e) {
+			log.warn("Failed to remove entry '{}' from shared cache", key, e);
+		}
+	}
+
+	@Override
+	public void invalidateByPrefix(String keyPrefix) {
+		// escape character other than backslash, its meaning in string literals differs among databases
+		String pattern = keyPrefix.replace("!", "!!")
+				.replace("%", "!%")
+				.replace("_", "!_") + '%';
+		try {
+			jdbcTemplate.update(DELETE_BY_PREFIX, pattern);
+		} catch (DataAccessException e) {
+			log.warn("Failed to remove entries with prefix '{}' from shared cache", keyPrefix, e);
+		}
+	}
+
+	/**
+	 * Delete expired entries in batches until there is nothing left or the time limit is reached. Entries stored
+	 * again after being selected for deletion are kept.
+	 *
+	 * @param timeout Time limit in milliseconds, no new batch is started after it has passed. Zero or less
+	 *                means no limit.
+	 * @return Number of deleted entries.
+	 */
+	public int clearExpired(long timeout) {
+		long start = System.currentTimeMillis();
+		int count = 0;
+		int batches = 0;
+		try {
+			while (timeout <= 0 || System.currentTimeMillis() - start < timeout) {
+				Timestamp now = now();
+				List<String> keys = jdbcTemplate.query(con -> {
+					PreparedStatement ps = con.prepareStatement(SELECT_EXPIRED);
+					ps.setTimestamp(1, now);
+					ps.setMaxRows(batchSize);
+					return ps;
+				}, (rs, rowNum) -> rs.getString(1));
+				if (keys.isEmpty()) {
+					break;
+				}
+				int[] deleted = jdbcTemplate.batchUpdate(DELETE_EXPIRED, keys.stream()
+						.map(key -> new Object[] { key, now })
+						.collect(Collectors.toList()));
+				for (int rows : deleted) {
+					count += Math.max(rows, 0);
+				}
+				batches++;
+			}
+		} catch (DataAccessException e) {
+			log.warn("shared_cache - purge interrupted after {} batches, deleted {} records", batches, count, e);
+			return count;
+		}
+		log.debug("shared_cache - deleted {} records in {} batches, took {}ms", count, batches,
+				System.currentTimeMillis() - start);
+		return count;
+	}
+
+	private boolean isValidKey(String key) {
+		return key != null && key.length() <= MAX_KEY_LENGTH;
+	}
+
+	private Timestamp now() {
+		return new Timestamp(System.currentTimeMillis());
+	}
+
+}
@@ -0,0 +1,41 @@
+package cz.muni.ics.oidc.server.cache;
+
+/**
+ * Cache tier shared by all nodes of the cluster. Values are stored in serialized (string) form, it is up to the
+ * caller to (de)serialize them. Implementations should never throw, failure of the shared tier has to be handled
+ * as a cache miss.
+ */
+public interface SharedCacheTier {
+
+	/**
+	 * Get value stored under the key.
+	 *
+	 * @param key Key of the entry.
+	 * @return Stored value, NULL if there is no valid (not expired) entry.
+	 */
+	String get(String key);
+
+	/**
+	 * Store value under the key.
+	 *
+	 * @param key Key of the entry.
+	 * @param value Value to be stored.
+	 * @param ttlMillis Time to live of the entry in milliseconds.
+	 */
+	void put(String key, String value, long ttlMillis);
+
+	/**
+	 * Remove entry stored under the key.
+	 *
+	 * @param key Key of the entry.
+	 */
+	void invalidate(String key);
+
+	/**
+	 * Remove all entries with key starting with given prefix.
+	 *
+	 * @param keyPrefix Prefix of the keys.
+	 */
+	void invalidateByPrefix(String keyPrefix);
+
+}
@@ -1,5 +1,6 @@
 package cz.muni.ics.oidc.server.claims;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import cz.muni.ics.oauth2.model.ClientDetailsEntity;
 import cz.muni.ics.oauth2.model.SamlAuthenticationDetails;
 import cz.muni.ics.oidc.models.Facility;
@@ -37,5 +38,7 @@ public class ClaimSourceProduceContext {
 	private Facility facility;
 	private SamlAuthenticationDetails samlAuthenticationDetails;
 	private Set<String> scopes;
+	// values of the custom claims produced so far, complete for the claims declared in dependsOn of the definition
+	private Map<String, JsonNode> producedClaims;
 
 }
@@ -1,7 +1,10 @@
 package cz.muni.ics.oidc.server.claims;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 
@@ -19,6 +22,9 @@ import lombok.extern.slf4j.Slf4j;
  *     <li><b>custom.claim.[claimName].scope</b> - scope that needs to be granted to include the claim</li>
  *     <li><b>custom.claim.[claimName].source.class</b> instance of a class implementing {@link ClaimSource}</li>
  *     <li><b>custom.claim.[claimName].modifier.class</b> instance of a class implementing {@link ClaimModifier}</li>
+ *     <li><b>custom.claim.[claimName].dependsOn</b> - (optional) coma separated list of names of the claims which
+ *     have to be produced before this one, produced values are available via
+ *     {@link ClaimSourceProduceContext#getProducedClaims()}</li>
  * </ul>
  *
  *
@@ -33,15 +39,25 @@ public class PerunCustomClaimDefinition {
 	private final String claim;
 	private final ClaimSource claimSource;
 	private final List<ClaimModifier> claimModifiers = new ArrayList<>();
+	private final Set<String> dependsOn = new LinkedHashSet<>();
 
 	public PerunCustomClaimDefinition(String scope,
 									  String claim,
 									  ClaimSource claimSource,
 									  List<ClaimModifier> claimModifiers) {
+		this(scope, claim, claimSource, claimModifiers, Collections.emptySet());
+	}
+
+	public PerunCustomClaimDefinition(String scope,
+									  String claim,
+									  ClaimSource claimSource,
+									  List<ClaimModifier> claimModifiers,
+									  Set<String> dependsOn) {
 		this.scope = scope;
 		this.claim = claim;
 		this.claimSource = claimSource;
 		this.claimModifiers.addAll(claimModifiers);
+		this.dependsOn.addAll(dependsOn);
 		log.debug("initialized scope '{}' with claim '{}', claimSource '{}' and modifiers '{}", scope, claim,
 				(claimSource != null ? claimSource.getClass().getSimpleName() : "none"),
 				(!claimModifiers.isEmpty() ? claimModifiers.stream()
@@ -66,4 +82,8 @@ public class PerunCustomClaimDefinition {
 		return claimModifiers;
 	}
 
+	public Set<String> getDependsOn() {
+		return dependsOn;
+	}
+
 }
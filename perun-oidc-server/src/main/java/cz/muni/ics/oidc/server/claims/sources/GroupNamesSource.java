@@ -62,10 +62,10 @@ public class GroupNamesSource extends ClaimSource {
 			String uniqueName = g.getUniqueGroupName();
 			if (trimMembers && StringUtils.hasText(uniqueName) && MEMBERS.equals(g.getName())) {
 				uniqueName = uniqueName.replace(':' + MEMBERS, "");
-				g.setUniqueGroupName(uniqueName);
 			}
 
-			idToNameMap.put(g.getId(), g.getUniqueGroupName());
+			// groups are not modified, they can be shared with other claim sources of the same user info
+			idToNameMap.put(g.getId(), uniqueName);
 		});
 
 		log.trace("{} - group ID to group name map: '{}'", getClaimName(), idToNameMap);
@@ -9,9 +9,12 @@ import cz.muni.ics.oidc.server.claims.ClaimSource;
 import cz.muni.ics.oidc.server.claims.ClaimSourceInitContext;
 import cz.muni.ics.oidc.server.claims.ClaimSourceProduceContext;
 import cz.muni.ics.oidc.server.claims.ClaimUtils;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
@@ -64,9 +67,15 @@ public class ResourceAssignedActiveMemberGroupsClaimSource extends ClaimSource {
 
 	protected Set<String> getValuesFromAttribute(Set<Group> userGroups, PerunAdapter perunAdapter) {
 		Set<String> policies = new HashSet<>();
-		for (Group g: userGroups) {
-			PerunAttributeValue policiesAttrValue = perunAdapter.getAdapterFallback()
-					.getGroupAttributeValue(g, groupAttribute);
+		if (userGroups == null || userGroups.isEmpty()) {
+			return policies;
+		}
+
+		Set<Long> groupIds = userGroups.stream().map(Group::getId).collect(Collectors.toSet());
+		Map<Long, Map<String, PerunAttributeValue>> groupsAttrValues = perunAdapter.getAdapterFallback()
+				.getGroupAttributeValues(groupIds, Collections.singletonList(groupAttribute));
+		for (Map<String, PerunAttributeValue> groupAttrValues: groupsAttrValues.values()) {
+			PerunAttributeValue policiesAttrValue = groupAttrValues.get(groupAttribute);
 			if (policiesAttrValue != null && !policiesAttrValue.isNullValue() && policiesAttrValue.valueAsList() != null) {
 				policies.addAll(policiesAttrValue.valueAsList());
 			}
@@ -8,6 +8,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -61,6 +62,8 @@ public abstract class AuthProcFilter {
     private final Set<String> executeForUsers = new HashSet<>();
     private final Set<String> skipForClients = new HashSet<>();
     private final Set<String> skipForUsers = new HashSet<>();
+    private final Set<String> facilityAttrsToPrefetch = new HashSet<>();
+    private final Set<String> userAttrsToPrefetch = new HashSet<>();
 
     private final SamlProperties samlProperties;
 
@@ -90,6 +93,26 @@ public abstract class AuthProcFilter {
         }
     }
 
+    /**
+     * Declare attributes of the facility the filter needs. Called from the constructor, the attributes of all
+     * filters are then fetched in one call and available via
+     * {@link AuthProcFilterCommonVars#getFacilityAttributeValues(java.util.Collection)}.
+     *
+     * @param attrNames Names of the attributes, null values are ignored.
+     */
+    protected void prefetchFacilityAttributes(String... attrNames) {
+        Arrays.stream(attrNames).filter(Objects::nonNull).forEach(facilityAttrsToPrefetch::add);
+    }
+
+    /**
+     * Declare attributes of the user the filter needs. Same as {@link #prefetchFacilityAttributes(String...)}.
+     *
+     * @param attrNames Names of the attributes, null values are ignored.
+     */
+    protected void prefetchUserAttributes(String... attrNames) {
+        Arrays.stream(attrNames).filter(Objects::nonNull).forEach(userAttrsToPrefetch::add);
+    }
+
     protected String getSessionAppliedParamName() {
         return APPLIED + getClass().getSimpleName() + '_' + getFilterName();
     }
@@ -105,6 +128,12 @@ public abstract class AuthProcFilter {
     protected abstract boolean process(HttpServletRequest request, HttpServletResponse response, AuthProcFilterCommonVars params)
             throws IOException;
 
+    /**
+     * Release resources held by the filter (i.e. background threads). Called when the application is shutting down.
+     */
+    public void destroy() {
+    }
+
     public boolean doFilter(HttpServletRequest req, HttpServletResponse res, AuthProcFilterCommonVars params) throws IOException {
         if (!skip(req)) {
             log.trace("{} - executing filter", filterName);
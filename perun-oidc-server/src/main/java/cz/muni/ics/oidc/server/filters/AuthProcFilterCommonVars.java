@@ -2,19 +2,61 @@ package cz.muni.ics.oidc.server.filters;
 
 import cz.muni.ics.oauth2.model.ClientDetailsEntity;
 import cz.muni.ics.oidc.models.Facility;
+import cz.muni.ics.oidc.models.PerunAttributeValue;
 import cz.muni.ics.oidc.models.PerunUser;
-import lombok.AllArgsConstructor;
+import cz.muni.ics.oidc.server.adapters.PerunAdapter;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Values shared by all filters processing the request. Attributes of the facility and the user declared by
+ * the filters (see {@link AuthProcFilter#prefetchFacilityAttributes(String...)}) are fetched together on the first
+ * request for any of them, so the filters do not have to call Perun one by one.
+ */
+@Slf4j
 @Getter
-@AllArgsConstructor
 public class AuthProcFilterCommonVars {
 
     private final ClientDetailsEntity client;
     private final Facility facility;
     private final PerunUser user;
 
+    @Getter(AccessLevel.NONE)
+    private final PrefetchedAttributes facilityAttributes;
+    @Getter(AccessLevel.NONE)
+    private final PrefetchedAttributes userAttributes;
+
+    public AuthProcFilterCommonVars(ClientDetailsEntity client, Facility facility, PerunUser user) {
+        this(client, facility, user, null, Collections.emptySet(), Collections.emptySet());
+    }
+
+    public AuthProcFilterCommonVars(ClientDetailsEntity client, Facility facility, PerunUser user,
+                                    PerunAdapter perunAdapter, Set<String> facilityAttrsToPrefetch,
+                                    Set<String> userAttrsToPrefetch)
+    {
+        this.client = client;
+        this.facility = facility;
+        this.user = user;
+        this.facilityAttributes = (perunAdapter != null && facility != null && facility.getId() != null)
+                ? new PrefetchedAttributes(facilityAttrsToPrefetch,
+                        names -> perunAdapter.getFacilityAttributeValues(facility, names))
+                : null;
+        this.userAttributes = (perunAdapter != null && user != null && user.getId() != null)
+                ? new PrefetchedAttributes(userAttrsToPrefetch,
+                        names -> perunAdapter.getUserAttributeValues(user.getId(), names))
+                : null;
+    }
+
     public String getClientIdentifier() {
         if (client != null) {
             return client.getClientId();
@@ -23,4 +65,90 @@ public class AuthProcFilterCommonVars {
         return null;
     }
 
+    /**
+     * Get attribute values of the facility. Values prefetched for the filters are used, the others are fetched.
+     *
+     * @param attrNames Names of the attributes.
+     * @return Map of attrName:PerunAttributeValue, null if there is no facility or the values cannot be fetched.
+     */
+    public Map<String, PerunAttributeValue> getFacilityAttributeValues(Collection<String> attrNames) {
+        return facilityAttributes != null ? facilityAttributes.get(attrNames) : null;
+    }
+
+    /**
+     * Get attribute value of the facility, see {@link #getFacilityAttributeValues(Collection)}.
+     *
+     * @param attrName Name of the attribute.
+     * @return PerunAttributeValue or null if not found.
+     */
+    public PerunAttributeValue getFacilityAttributeValue(String attrName) {
+        Map<String, PerunAttributeValue> values = getFacilityAttributeValues(Collections.singletonList(attrName));
+        return values != null ? values.get(attrName) : null;
+    }
+
+    /**
+     * Get attribute values of the user. Values prefetched for the filters are used, the others are fetched.
+     *
+     * @param attrNames Names of the attributes.
+     * @return Map of attrName:PerunAttributeValue, null if there is no user or the values cannot be fetched.
+     */
+    public Map<String, PerunAttributeValue> getUserAttributeValues(Collection<String> attrNames) {
+        return userAttributes != null ? userAttributes.get(attrNames) : null;
+    }
+
+    /**
+     * Get attribute value of the user, see {@link #getUserAttributeValues(Collection)}.
+     *
+     * @param attrName Name of the attribute.
+     * @return PerunAttributeValue or null if not found.
+     */
+    public PerunAttributeValue getUserAttributeValue(String attrName) {
+        Map<String, PerunAttributeValue> values = getUserAttributeValues(Collections.singletonList(attrName));
+        return values != null ? values.get(attrName) : null;
+    }
+
+    private static class PrefetchedAttributes {
+
+        private final Set<String> toPrefetch;
+        private final Function<Collection<String>, Map<String, PerunAttributeValue>> fetcher;
+        private final Set<String> fetchedNames = new HashSet<>();
+        private final Map<String, PerunAttributeValue> values = new HashMap<>();
+
+        private PrefetchedAttributes(Set<String> toPrefetch,
+                                     Function<Collection<String>, Map<String, PerunAttributeValue>> fetcher)
+        {
+            this.toPrefetch = toPrefetch;
+            this.fetcher = fetcher;
+        }
+
+        private Map<String, PerunAttributeValue> get(Collection<String> attrNames) {
+            Set<String> missing = attrNames.stream()
+                    .filter(Objects::nonNull)
+                    .filter(name -> !fetchedNames.contains(name))
+                    .collect(Collectors.toSet());
+            if (!missing.isEmpty()) {
+                if (fetchedNames.isEmpty()) {
+                    // first request, fetch the attributes of all filters at once
+                    missing.addAll(toPrefetch);
+                }
+                Map<String, PerunAttributeValue> fetched = fetcher.apply(missing);
+                if (fetched == null) {
+                    return null;
+                }
+                values.putAll(fetched);
+                fetchedNames.addAll(missing);
+                log.trace("fetched attributes '{}'", missing);
+            }
+
+            Map<String, PerunAttributeValue> result = new HashMap<>();
+            for (String name : attrNames) {
+                if (values.containsKey(name)) {
+                    result.put(name, values.get(name));
+                }
+            }
+            return result;
+        }
+
+    }
+
 }
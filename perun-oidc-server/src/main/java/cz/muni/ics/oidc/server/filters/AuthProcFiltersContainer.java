@@ -13,8 +13,10 @@ import cz.muni.ics.oidc.saml.SamlProperties;
 import cz.muni.ics.oidc.server.adapters.PerunAdapter;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import javax.annotation.PostConstruct;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -57,6 +59,8 @@ public class AuthProcFiltersContainer extends GenericFilterBean {
     private final SamlProperties samlProperties;
 
     private List<AuthProcFilter> filters;
+    private Set<String> facilityAttrsToPrefetch = new HashSet<>();
+    private Set<String> userAttrsToPrefetch = new HashSet<>();
 
     @Autowired
     public AuthProcFiltersContainer(@Qualifier("coreProperties")Properties properties,
@@ -77,6 +81,12 @@ public class AuthProcFiltersContainer extends GenericFilterBean {
     @PostConstruct
     public void postConstruct() throws ConfigurationException {
         this.filters = AuthProcFiltersInitializer.initialize(properties, beanUtil);
+        for (AuthProcFilter filter : filters) {
+            facilityAttrsToPrefetch.addAll(filter.getFacilityAttrsToPrefetch());
+            userAttrsToPrefetch.addAll(filter.getUserAttrsToPrefetch());
+        }
+        log.debug("{} - attributes fetched for the filters: facility '{}', user '{}'",
+                AuthProcFiltersContainer.class.getSimpleName(), facilityAttrsToPrefetch, userAttrsToPrefetch);
     }
 
     @Override
@@ -101,7 +111,8 @@ public class AuthProcFiltersContainer extends GenericFilterBean {
                     }
                 }
                 PerunUser user = FiltersUtils.getPerunUser(req, perunAdapter, samlProperties);
-                AuthProcFilterCommonVars params = new AuthProcFilterCommonVars(client, facility, user);
+                AuthProcFilterCommonVars params = new AuthProcFilterCommonVars(client, facility, user, perunAdapter,
+                        facilityAttrsToPrefetch, userAttrsToPrefetch);
                 for (AuthProcFilter filter : filters) {
                     if (!filter.doFilter(req, res, params)) {
                         return;
@@ -112,4 +123,11 @@ public class AuthProcFiltersContainer extends GenericFilterBean {
         filterChain.doFilter(req, res);
     }
 
+    @Override
+    public void destroy() {
+        if (filters != null) {
+            filters.forEach(AuthProcFilter::destroy);
+        }
+    }
+
 }
@@ -6,6 +6,7 @@ import static cz.muni.ics.oidc.server.filters.AuthProcFilterConstants.PARAM_FORC
 import cz.muni.ics.oauth2.model.ClientDetailsEntity;
 import cz.muni.ics.oauth2.model.DeviceCode;
 import cz.muni.ics.oauth2.service.ClientDetailsEntityService;
+import cz.muni.ics.oidc.exceptions.ConfigurationException;
 import cz.muni.ics.oidc.models.Facility;
 import cz.muni.ics.oidc.models.PerunAttributeValue;
 import cz.muni.ics.oidc.models.PerunUser;
@@ -74,6 +75,22 @@ public class FiltersUtils {
 		}
 	}
 
+	public static int fillIntegerPropertyOrDefaultVal(String suffix, AuthProcFilterInitContext ctx, int defaultVal)
+			throws ConfigurationException
+	{
+		String prop = ctx.getProperty(suffix, NO_VALUE);
+		if (!StringUtils.hasText(prop)) {
+			return defaultVal;
+		}
+
+		try {
+			return Integer.parseInt(prop.trim());
+		} catch (NumberFormatException e) {
+			throw new ConfigurationException("Filter '" + ctx.getFilterName() + "' has invalid number in configuration option '"
+					+ suffix + "'", e);
+		}
+	}
+
 	/**
 	 * Create map of request params in format key = name, value = paramValue.
 	 *
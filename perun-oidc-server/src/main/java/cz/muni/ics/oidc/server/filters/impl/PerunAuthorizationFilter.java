@@ -42,6 +42,7 @@ public class PerunAuthorizationFilter extends AuthProcFilter {
 		this.perunAdapter = ctx.getPerunAdapterBean();
 		this.config = ctx.getPerunOidcConfigBean();
 		this.facilityAttrsConfig = ctx.getBeanUtil().getBean(FacilityAttrsConfig.class);
+		prefetchFacilityAttributes(facilityAttrsConfig.getMembershipAttrNames().toArray(new String[0]));
 	}
 
 	@Override
@@ -58,16 +59,16 @@ public class PerunAuthorizationFilter extends AuthProcFilter {
 			return true;
 		}
 
-		return this.decideAccess(facility, user, req, res, params.getClientIdentifier(),
-				perunAdapter, facilityAttrsConfig);
+		return this.decideAccess(facility, user, req, res, params, perunAdapter, facilityAttrsConfig);
 	}
 
 	private boolean decideAccess(Facility facility, PerunUser user, HttpServletRequest request,
-								 HttpServletResponse response, String clientIdentifier, PerunAdapter perunAdapter,
-								 FacilityAttrsConfig facilityAttrsConfig)
+								 HttpServletResponse response, AuthProcFilterCommonVars params,
+								 PerunAdapter perunAdapter, FacilityAttrsConfig facilityAttrsConfig)
 	{
-		Map<String, PerunAttributeValue> facilityAttributes = perunAdapter.getFacilityAttributeValues(
-				facility, facilityAttrsConfig.getMembershipAttrNames());
+		String clientIdentifier = params.getClientIdentifier();
+		Map<String, PerunAttributeValue> facilityAttributes = params.getFacilityAttributeValues(
+				facilityAttrsConfig.getMembershipAttrNames());
 
 		if (!facilityAttributes.get(facilityAttrsConfig.getCheckGroupMembershipAttr()).valueAsBoolean()) {
 			log.debug("{} - skip filter execution: membership check not requested", getFilterName());
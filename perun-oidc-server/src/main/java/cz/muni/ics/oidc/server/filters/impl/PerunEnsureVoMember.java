@@ -57,6 +57,7 @@ public class PerunEnsureVoMember extends AuthProcFilter {
         this.triggerAttr = FiltersUtils.fillStringMandatoryProperty(TRIGGER_ATTR, ctx);
         this.voDefsAttr = FiltersUtils.fillStringMandatoryProperty(VO_DEFS_ATTR, ctx);
         this.loginUrlAttr = FiltersUtils.fillStringPropertyOrDefaultVal(LOGIN_URL_ATTR, ctx, null);
+        prefetchFacilityAttributes(voDefsAttr, triggerAttr, loginUrlAttr);
     }
 
     @Override
@@ -68,7 +69,7 @@ public class PerunEnsureVoMember extends AuthProcFilter {
         }
 
         List<String> attrsToFetch = Arrays.asList(voDefsAttr, triggerAttr, loginUrlAttr);
-        Map<String, PerunAttributeValue> attrs = perunAdapter.getFacilityAttributeValues(facility, attrsToFetch);
+        Map<String, PerunAttributeValue> attrs = params.getFacilityAttributeValues(attrsToFetch);
 
         if (attrs == null) {
             log.debug("{} - skip filter execution: could not fetch attributes '{}' for facility '{}'",
@@ -96,7 +97,7 @@ public class PerunEnsureVoMember extends AuthProcFilter {
             log.debug("{} - user allowed to continue", getFilterName());
             return true;
         } else {
-            redirect(res, getLoginUrl(facility.getId()), voShortName);
+            redirect(res, getLoginUrl(params), voShortName);
             return false;
         }
     }
@@ -113,9 +114,9 @@ public class PerunEnsureVoMember extends AuthProcFilter {
         }
     }
 
-    private PerunAttributeValue getLoginUrl(Long facilityId) {
+    private PerunAttributeValue getLoginUrl(AuthProcFilterCommonVars params) {
         if (loginUrlAttr != null) {
-            return perunAdapter.getFacilityAttributeValue(facilityId, loginUrlAttr);
+            return params.getFacilityAttributeValue(loginUrlAttr);
         }
         return null;
     }
@@ -88,6 +88,8 @@ public class PerunForceAupFilter extends AuthProcFilter {
         this.perunVoAupAttrName = FiltersUtils.fillStringMandatoryProperty(VO_AUP_ATTR_NAME, ctx);
         this.perunFacilityRequestedAupsAttrName = FiltersUtils.fillStringMandatoryProperty(FACILITY_REQUESTED_AUPS_ATTR_NAME, ctx);
         this.perunFacilityVoShortNamesAttrName = FiltersUtils.fillStringMandatoryProperty(VO_SHORT_NAMES_ATTR_NAME, ctx);
+        prefetchFacilityAttributes(perunFacilityRequestedAupsAttrName, perunFacilityVoShortNamesAttrName);
+        prefetchUserAttributes(perunUserAupsAttrName);
     }
 
     @Override
@@ -113,7 +115,7 @@ public class PerunForceAupFilter extends AuthProcFilter {
 
         List<String> attrsToFetch = new ArrayList<>(
                 Arrays.asList(perunFacilityRequestedAupsAttrName, perunFacilityVoShortNamesAttrName));
-        Map<String, PerunAttributeValue> facilityAttributes = perunAdapter.getFacilityAttributeValues(facility, attrsToFetch);
+        Map<String, PerunAttributeValue> facilityAttributes = params.getFacilityAttributeValues(attrsToFetch);
 
         if (facilityAttributes == null) {
             log.debug("{} - skip filter execution: could not fetch attributes '{}' for facility '{}'",
@@ -130,7 +132,7 @@ public class PerunForceAupFilter extends AuthProcFilter {
         Map<String, Aup> newAups;
 
         try {
-            newAups = getAupsToApprove(user, facilityAttributes);
+            newAups = getAupsToApprove(user, params, facilityAttributes);
         } catch (ParseException | IOException e) {
             log.warn("{} - caught parse exception when processing AUPs to approve", getFilterName());
             log.debug("{} - details:", getFilterName(), e);
@@ -162,12 +164,18 @@ public class PerunForceAupFilter extends AuthProcFilter {
         res.sendRedirect(req.getContextPath() + '/' + AupController.URL);
     }
 
-    private Map<String, Aup> getAupsToApprove(PerunUser user, Map<String, PerunAttributeValue> facilityAttributes)
+    private Map<String, Aup> getAupsToApprove(PerunUser user, AuthProcFilterCommonVars params,
+                                              Map<String, PerunAttributeValue> facilityAttributes)
             throws ParseException, IOException
     {
         Map<String, Aup> aupsToApprove= new LinkedHashMap<>();
 
-        PerunAttributeValue userAupsAttr = perunAdapter.getUserAttributeValue(user.getId(), perunUserAupsAttrName);
+        PerunAttributeValue userAupsAttr;
+        if (params.getUser() != null && user.getId().equals(params.getUser().getId())) {
+            userAupsAttr = params.getUserAttributeValue(perunUserAupsAttrName);
+        } else {
+            userAupsAttr = perunAdapter.getUserAttributeValue(user.getId(), perunUserAupsAttrName);
+        }
         if (perunOidcConfig.isFillMissingUserAttrs() && (userAupsAttr == null || userAupsAttr.isNullValue())) {
             userAupsAttr = perunAdapter.getAdapterFallback().getUserAttributeValue(user.getId(), perunUserAupsAttrName);
         }
@@ -6,7 +6,6 @@ import static cz.muni.ics.oidc.web.controllers.IsTestSpController.IS_TEST_SP_APP
 import cz.muni.ics.oidc.exceptions.ConfigurationException;
 import cz.muni.ics.oidc.models.Facility;
 import cz.muni.ics.oidc.models.PerunAttributeValue;
-import cz.muni.ics.oidc.server.adapters.PerunAdapter;
 import cz.muni.ics.oidc.server.configurations.PerunOidcConfig;
 import cz.muni.ics.oidc.server.filters.AuthProcFilter;
 import cz.muni.ics.oidc.server.filters.AuthProcFilterInitContext;
@@ -40,14 +39,13 @@ public class PerunIsTestSpFilter extends AuthProcFilter {
     private static final String IS_TEST_SP_ATTR_NAME = "isTestSpAttr";
 
     private final String isTestSpAttrName;
-    private final PerunAdapter perunAdapter;
     private final PerunOidcConfig config;
 
     public PerunIsTestSpFilter(AuthProcFilterInitContext ctx) throws ConfigurationException {
         super(ctx);
-        this.perunAdapter = ctx.getPerunAdapterBean();
         this.config = ctx.getPerunOidcConfigBean();
         this.isTestSpAttrName = FiltersUtils.fillStringMandatoryProperty(IS_TEST_SP_ATTR_NAME, ctx);
+        prefetchFacilityAttributes(isTestSpAttrName);
     }
 
     @Override
@@ -61,7 +59,7 @@ public class PerunIsTestSpFilter extends AuthProcFilter {
             return true;
         }
 
-        PerunAttributeValue attrValue = perunAdapter.getFacilityAttributeValue(facility.getId(), isTestSpAttrName);
+        PerunAttributeValue attrValue = params.getFacilityAttributeValue(isTestSpAttrName);
         if (attrValue == null) {
             log.debug("{} - skip execution: attribute {} has null value", getFilterName(), isTestSpAttrName);
             return true;
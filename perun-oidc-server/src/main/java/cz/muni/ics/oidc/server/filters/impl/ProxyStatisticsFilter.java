@@ -7,6 +7,7 @@ import cz.muni.ics.oauth2.model.ClientDetailsEntity;
 import cz.muni.ics.oidc.BeanUtil;
 import cz.muni.ics.oidc.exceptions.ConfigurationException;
 import cz.muni.ics.oidc.saml.SamlProperties;
+import cz.muni.ics.oidc.server.AsyncBatchWriter;
 import cz.muni.ics.oidc.server.filters.AuthProcFilterCommonVars;
 import cz.muni.ics.oidc.server.filters.FiltersUtils;
 import cz.muni.ics.oidc.server.filters.AuthProcFilter;
@@ -16,11 +17,21 @@ import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.sql.DataSource;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.saml.SAMLCredential;
 import org.springframework.util.StringUtils;
@@ -29,6 +40,11 @@ import org.springframework.util.StringUtils;
 /**
  * Filter for collecting data about login.
  *
+ * Logins are not written in the request thread. Each login is queued and written by the background writer in
+ * batches - logins of the same user to the same service via the same IdP on the same day are aggregated into a
+ * single row update. IDs of the IdPs and SPs are cached in memory, so the mapping tables are touched only for new
+ * entities or when the name has changed.
+ *
  * Configuration (replace [name] part with the name defined for the filter):
  * @see cz.muni.ics.oidc.server.filters.AuthProcFilter (basic configuration options)
  * <ul>
@@ -45,6 +61,12 @@ import org.springframework.util.StringUtils;
  *     <li><b>filter.[name].ipdIdColumnName</b> - Name for the column which stores IDs of IdPs in statisticsTable</li>
  *     <li><b>filter.[name].spIdColumnName</b> - Name for the column which stores IDs of SPs in statisticsTable</li>
  *     <li><b>filter.[name].usernameColumnName</b> - Name for the column which stores IDs of users in statisticsTable</li>
+ *     <li><b>filter.[name].queueCapacity</b> - Max number of logins waiting to be written, defaults to 10000</li>
+ *     <li><b>filter.[name].batchSize</b> - Max number of logins written at once, defaults to 100</li>
+ *     <li><b>filter.[name].overflowPolicy</b> - What to do when the queue is full: DROP (default) drops the login,
+ *         BLOCK makes the request wait for the free space at most for blockTimeout, then drops the login</li>
+ *     <li><b>filter.[name].blockTimeout</b> - Max wait for the free space in the queue in milliseconds (policy BLOCK),
+ *         defaults to 100</li>
  * </ul>
  *
  * @author Dominik Baránek <baranek@ics.muni.cz>
@@ -62,6 +84,10 @@ public class ProxyStatisticsFilter extends AuthProcFilter {
 	private static final String IDP_ID_COLUMN_NAME = "idpIdColumnName";
 	private static final String SP_ID_COLUMN_NAME = "spIdColumnName";
 	private static final String USERNAME_COLUMN_NAME = "usernameColumnName";
+	private static final String QUEUE_CAPACITY = "queueCapacity";
+	private static final String BATCH_SIZE = "batchSize";
+	private static final String OVERFLOW_POLICY = "overflowPolicy";
+	private static final String BLOCK_TIMEOUT = "blockTimeout";
 
 	private final String idpNameAttributeName;
 	private final String idpEntityIdAttributeName;
@@ -73,8 +99,15 @@ public class ProxyStatisticsFilter extends AuthProcFilter {
 	private final String usernameColumnName;
 	/* END OF CONFIGURATION OPTIONS */
 
+	private static final long SHUTDOWN_TIMEOUT_MS = 10000L;
+
 	private final DataSource mitreIdStats;
 	private final SamlProperties samlProperties;
+	private final AsyncBatchWriter<LoginEvent> writer;
+
+	// accessed only from the writer thread
+	private final Map<String, MapEntry> idpIds = new HashMap<>();
+	private final Map<String, MapEntry> spIds = new HashMap<>();
 
 	public ProxyStatisticsFilter(AuthProcFilterInitContext ctx) throws ConfigurationException {
 		super(ctx);
@@ -92,6 +125,34 @@ public class ProxyStatisticsFilter extends AuthProcFilter {
 		this.idpIdColumnName = FiltersUtils.fillStringPropertyOrDefaultVal(IDP_ID_COLUMN_NAME, ctx, "idpId");
 		this.spIdColumnName = FiltersUtils.fillStringPropertyOrDefaultVal(SP_ID_COLUMN_NAME, ctx, "spId");
 		this.usernameColumnName = FiltersUtils.fillStringPropertyOrDefaultVal(USERNAME_COLUMN_NAME, ctx, "user");
+
+		int queueCapacity = FiltersUtils.fillIntegerPropertyOrDefaultVal(QUEUE_CAPACITY, ctx, 10000);
+		int batchSize = FiltersUtils.fillIntegerPropertyOrDefaultVal(BATCH_SIZE, ctx, 100);
+		int blockTimeout = FiltersUtils.fillIntegerPropertyOrDefaultVal(BLOCK_TIMEOUT, ctx, 100);
+		String overflowPolicyName = FiltersUtils.fillStringPropertyOrDefaultVal(OVERFLOW_POLICY, ctx,
+				AsyncBatchWriter.OverflowPolicy.DROP.name());
+		AsyncBatchWriter.OverflowPolicy overflowPolicy;
+		try {
+			overflowPolicy = AsyncBatchWriter.OverflowPolicy.valueOf(overflowPolicyName.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new ConfigurationException("Filter '" + ctx.getFilterName() + "' has unknown overflow policy '"
+					+ overflowPolicyName + "'", e);
+		}
+		this.writer = new AsyncBatchWriter<>(ctx.getFilterName(), queueCapacity, batchSize, overflowPolicy,
+				blockTimeout, this::writeLogins);
+	}
+
+	@Override
+	public void destroy() {
+		writer.shutdown(SHUTDOWN_TIMEOUT_MS);
+	}
+
+	public int getQueueDepth() {
+		return writer.getQueueDepth();
+	}
+
+	public long getDroppedCount() {
+		return writer.getDroppedCount();
 	}
 
 	@Override
@@ -131,125 +192,234 @@ public class ProxyStatisticsFilter extends AuthProcFilter {
 		String clientId = client.getClientId();
 		String clientName = client.getClientName();
 
-		insertOrUpdateLogin(idpEntityId, idpName, clientId, clientName, userIdentifier);
+		if (!writer.submit(new LoginEvent(LocalDate.now(), idpEntityId, idpName, clientId, clientName, userIdentifier))) {
+			log.warn("{} - login not stored in statistics, queue is full", getFilterName());
+		}
 
 		log.info("{} - User identity: {}, service: {}, serviceName: {}, via IdP: {}",
 				getFilterName(), userIdentifier, client.getClientId(), client.getClientName(), idpEntityId);
 		return true;
 	}
 
-	private void insertOrUpdateLogin(String idpEntityId, String idpName, String spIdentifier, String spName, String userId) {
+	private void writeLogins(List<LoginEvent> logins) {
+		Map<LoginKey, Integer> counts = new LinkedHashMap<>();
 		try (Connection c = mitreIdStats.getConnection()) {
-			insertOrUpdateIdpMap(c, idpEntityId, idpName);
-			insertOrUpdateSpMap(c, spIdentifier, spName);
+			for (LoginEvent login : logins) {
+				Long idpId = resolveId(c, idpIds, login.getIdpEntityId(), login.getIdpName(),
+						identityProvidersMapTableName, idpIdColumnName);
+				Long spId = resolveId(c, spIds, login.getSpIdentifier(), login.getSpName(),
+						serviceProvidersMapTableName, spIdColumnName);
+				if (idpId == null || spId == null) {
+					log.warn("{} - login skipped, could not resolve IDs for SP {} and IdP {}", getFilterName(),
+							login.getSpIdentifier(), login.getIdpEntityId());
+					continue;
+				}
+				counts.merge(new LoginKey(login.getDay(), idpId, spId, login.getUserId()), 1, Integer::sum);
+			}
 
-			Long idpId = extractIdpId(c, idpEntityId);
-			if (idpId == null) {
-				return;
+			if (!counts.isEmpty()) {
+				storeLogins(c, counts);
+				log.debug("{} - {} logins stored in statistics as {} entries", getFilterName(), logins.size(),
+						counts.size());
 			}
-			Long spId = extractSpId(c, spIdentifier);
-			if (spId == null) {
+		} catch (SQLException ex) {
+			throw new IllegalStateException(getFilterName() + " - failed to store logins in statistics", ex);
+		}
+	}
+
+	private Long resolveId(Connection c, Map<String, MapEntry> cache, String identifier, String name, String table,
+						   String idColumnName)
+	{
+		MapEntry cached = cache.get(identifier);
+		if (cached != null && Objects.equals(cached.getName(), name)) {
+			return cached.getId();
+		}
+
+		insertOrUpdateMap(c, identifier, name, table);
+		Long id = extractId(c, identifier, table, idColumnName);
+		if (id != null) {
+			cache.put(identifier, new MapEntry(id, name));
+			log.debug("{} - Extracted ID from {}: {}({})", getFilterName(), table, id, identifier);
+		}
+		return id;
+	}
+
+	private void storeLogins(Connection c, Map<LoginKey, Integer> counts) throws SQLException {
+		List<LoginKey> keys = new ArrayList<>(counts.keySet());
+		List<LoginKey> missing = new ArrayList<>();
+
+		boolean autoCommit = c.getAutoCommit();
+		c.setAutoCommit(false);
+		try {
+			int[] updated;
+			try {
+				updated = updateLogins(c, keys, counts);
+			} catch (SQLException ex) {
+				c.rollback();
+				log.warn("{} - batch update of logins failed, storing one by one", getFilterName());
+				log.debug("{} - details:", getFilterName(), ex);
+				storeLoginsOneByOne(c, keys, counts);
 				return;
 			}
-			log.debug("{} - Extracted IDs for SP and IdP: spId={}({}), idpId={}({})",
-					getFilterName(), spId, spIdentifier, idpId, idpEntityId);
-			insertOrUpdateLogin(c, idpId, spId, userId);
-		} catch (SQLException ex) {
-			log.warn("{} - caught SQLException", getFilterName());
-			log.debug("{} - details:", getFilterName(), ex);
+			for (int i = 0; i < keys.size(); i++) {
+				if (updated[i] == Statement.SUCCESS_NO_INFO) {
+					// driver does not report the updated rows, cannot tell which entries are missing
+					c.rollback();
+					storeLoginsOneByOne(c, keys, counts);
+					return;
+				} else if (updated[i] == 0) {
+					missing.add(keys.get(i));
+				}
+			}
+			c.commit();
+
+			if (!missing.isEmpty()) {
+				try {
+					insertLogins(c, missing, counts);
+					c.commit();
+				} catch (SQLException ex) {
+					// some rows have been inserted in the meantime (i.e. by other node), store them one by one
+					c.rollback();
+					log.debug("{} - batch insert of logins failed, storing one by one", getFilterName(), ex);
+					storeLoginsOneByOne(c, missing, counts);
+				}
+			}
+		} finally {
+			c.setAutoCommit(autoCommit);
 		}
 	}
 
-	private void insertOrUpdateLogin(Connection c, Long idpId, Long spId, String userId) {
-		boolean present = fetchLogin(c, idpId, spId, userId);
-		if (!present) {
-			insertLogin(c, idpId, spId, userId);
-		} else {
-			updateLogin(c, idpId, spId, userId);
+	private void storeLoginsOneByOne(Connection c, List<LoginKey> keys, Map<LoginKey, Integer> counts)
+			throws SQLException
+	{
+		c.setAutoCommit(true);
+		int lost = 0;
+		for (LoginKey key : keys) {
+			if (!insertOrUpdateLogin(c, key, counts.get(key))) {
+				lost += counts.get(key);
+			}
+		}
+		if (lost > 0) {
+			log.warn("{} - {} logins lost, failed to store them in statistics", getFilterName(), lost);
 		}
-		log.info("{} - login info stored in statistics", getFilterName());
 	}
 
-	private boolean fetchLogin(Connection c, Long idpId, Long spId, String userId) {
-		String query = "SELECT COUNT(*) AS res FROM " + statisticsTableName +
-				" WHERE " + idpIdColumnName + " = ?" +
-				" AND " + spIdColumnName + " = ?" +
-				" AND " + usernameColumnName + " = ?" +
-				" AND day = ?";
+	private int[] updateLogins(Connection c, List<LoginKey> keys, Map<LoginKey, Integer> counts) throws SQLException {
+		try (PreparedStatement ps = c.prepareStatement(updateLoginQuery())) {
+			for (LoginKey key : keys) {
+				fillUpdateLogin(ps, key, counts.get(key));
+				ps.addBatch();
+			}
+			return ps.executeBatch();
+		}
+	}
 
-		try (PreparedStatement ps = c.prepareStatement(query)) {
-			ps.setLong(1, idpId);
-			ps.setLong(2, spId);
-			ps.setString(3, userId);
-			ps.setDate(4, Date.valueOf(LocalDate.now()));
-			ResultSet rs = ps.executeQuery();
-			if (rs.next()) {
-				return rs.getInt("res") > 0;
+	private void insertLogins(Connection c, List<LoginKey> keys, Map<LoginKey, Integer> counts) throws SQLException {
+		try (PreparedStatement ps = c.prepareStatement(insertLoginQuery())) {
+			for (LoginKey key : keys) {
+				fillInsertLogin(ps, key, counts.get(key));
+				ps.addBatch();
 			}
-		} catch (SQLException e) {
-			log.warn("{} - caught SQLException when fetching login entry", getFilterName());
-			log.debug("{} - details:", getFilterName(), e);
+			ps.executeBatch();
 		}
-		return false;
 	}
 
-	private Long extractSpId(Connection c, String spIdentifier) throws SQLException {
-		String query = "SELECT " + spIdColumnName + " FROM " + serviceProvidersMapTableName +
-				" WHERE identifier = ? LIMIT 1";
+	private boolean insertOrUpdateLogin(Connection c, LoginKey key, int count) {
+		try {
+			if (!updateLogin(c, key, count) && !insertLogin(c, key, count)) {
+				// inserted by someone else in the meantime
+				return updateLogin(c, key, count);
+			}
+			return true;
+		} catch (SQLException ex) {
+			log.warn("{} - caught SQLException when storing login entry", getFilterName());
+			log.debug("{} - details:", getFilterName(), ex);
+		}
+		return false;
+	}
 
-		try (PreparedStatement ps = c.prepareStatement(query)) {
-			ps.setString(1, spIdentifier);
-			ResultSet rs = ps.executeQuery();
-			if (rs.next()) {
-				return rs.getLong(spIdColumnName);
+	private boolean updateLogin(Connection c, LoginKey key, int count) throws SQLException {
+		try (PreparedStatement ps = c.prepareStatement(updateLoginQuery())) {
+			fillUpdateLogin(ps, key, count);
+			boolean updated = ps.executeUpdate() > 0;
+			if (updated) {
+				log.debug("{} - Updated login count by {} for combination: {}", getFilterName(), count, key);
 			}
-		}  catch (SQLException ex) {
-			log.warn("{} - caught SQLException when extracting SP ID",  getFilterName());
+			return updated;
+		}
+	}
+
+	private boolean insertLogin(Connection c, LoginKey key, int count) {
+		try (PreparedStatement ps = c.prepareStatement(insertLoginQuery())) {
+			fillInsertLogin(ps, key, count);
+			ps.execute();
+			log.debug("{} - Inserted first login for combination: {}", getFilterName(), key);
+			return true;
+		} catch (SQLException ex) {
+			log.debug("{} - login entry failed to insert", getFilterName());
 			log.debug("{} - details:", getFilterName(), ex);
 		}
-		return null;
+		return false;
+	}
+
+	private String updateLoginQuery() {
+		return "UPDATE " + statisticsTableName +
+				" SET logins = logins + ?" +
+				" WHERE day = ?" +
+				" AND " + idpIdColumnName + " = ?" +
+				" AND " + spIdColumnName + " = ?" +
+				" AND " + usernameColumnName + " = ?";
 	}
 
-	private Long extractIdpId(Connection c, String idpEntityId) throws SQLException {
-		String query = "SELECT " + idpIdColumnName + " FROM " + identityProvidersMapTableName +
-				" WHERE identifier = ? LIMIT 1";
+	private String insertLoginQuery() {
+		return "INSERT INTO " + statisticsTableName +
+				"(day, " + idpIdColumnName + ", " + spIdColumnName + ", " + usernameColumnName + ", logins)" +
+				" VALUES(?, ?, ?, ?, ?)";
+	}
+
+	private void fillUpdateLogin(PreparedStatement ps, LoginKey key, int count) throws SQLException {
+		ps.setInt(1, count);
+		ps.setDate(2, Date.valueOf(key.getDay()));
+		ps.setLong(3, key.getIdpId());
+		ps.setLong(4, key.getSpId());
+		ps.setString(5, key.getUserId());
+	}
+
+	private void fillInsertLogin(PreparedStatement ps, LoginKey key, int count) throws SQLException {
+		ps.setDate(1, Date.valueOf(key.getDay()));
+		ps.setLong(2, key.getIdpId());
+		ps.setLong(3, key.getSpId());
+		ps.setString(4, key.getUserId());
+		ps.setInt(5, count);
+	}
+
+	private Long extractId(Connection c, String identifier, String table, String idColumnName) {
+		String query = "SELECT " + idColumnName + " FROM " + table + " WHERE identifier = ? LIMIT 1";
 
 		try (PreparedStatement ps = c.prepareStatement(query)) {
-			ps.setString(1, idpEntityId);
+			ps.setString(1, identifier);
 			ResultSet rs = ps.executeQuery();
 			if (rs.next()) {
-				return rs.getLong(idpIdColumnName);
+				return rs.getLong(idColumnName);
 			}
 		} catch (SQLException ex) {
-			log.warn("{} - caught SQLException when extracting IdP ID", getFilterName());
+			log.warn("{} - caught SQLException when extracting ID from {}", getFilterName(), table);
 			log.debug("{} - details:", getFilterName(), ex);
 		}
 		return null;
 	}
 
-	private void insertOrUpdateIdpMap(Connection c, String idpEntityId, String idpName) throws SQLException {
-		String idpNameInDb = fetchIdpMapEntry(c, idpEntityId);
-		if (!Objects.equals(idpName, idpNameInDb)) {
-			if (idpNameInDb == null) {
-				if (insertIdpMap(c, idpEntityId, idpName)) {
-					log.debug("{} - IdP map entry inserted", getFilterName());
-				}
+	private void insertOrUpdateMap(Connection c, String identifier, String name, String table) {
+		String nameInDb = fetchName(c, identifier, table);
+		if (!Objects.equals(name, nameInDb)) {
+			if (nameInDb == null) {
+				insertIntoMap(c, identifier, name, table);
 			} else {
-				if (updateIdpMap(c, idpEntityId, idpName)) {
-					log.debug("{} - IdP map entry updated", getFilterName());
-				}
+				updateInMap(c, identifier, name, table);
 			}
 		}
 	}
 
-	private String fetchIdpMapEntry(Connection c, String idpEntityId) {
-		return fetchName(c, idpEntityId, identityProvidersMapTableName);
-	}
-
-	private String fetchSpMapEntry(Connection c, String spIdentifier) {
-		return fetchName(c, spIdentifier, serviceProvidersMapTableName);
-	}
-
 	private String fetchName(Connection c, String entityIdentifier, String table) {
 		String query = "SELECT name FROM " + table + " WHERE identifier = ?";
 		try (PreparedStatement ps = c.prepareStatement(query)) {
@@ -265,21 +435,6 @@ public class ProxyStatisticsFilter extends AuthProcFilter {
 		}
 	}
 
-	private void insertOrUpdateSpMap(Connection c, String spIdentifier, String spName) throws SQLException {
-		String spNameInDb = fetchSpMapEntry(c, spIdentifier);
-		if (!Objects.equals(spName, spNameInDb)) {
-			if (spNameInDb == null) {
-				if (insertSpMap(c, spIdentifier, spName)) {
-					log.debug("{} - SP map entry inserted", getFilterName());
-				}
-			} else {
-				if (updateSpMap(c, spIdentifier, spName)) {
-					log.debug("{} - SP map entry updated", getFilterName());
-				}
-			}
-		}
-	}
-
 	private String changeParamEncoding(String original) {
 		if (original != null && !original.isEmpty()) {
 			byte[] sourceBytes = original.getBytes(ISO_8859_1);
@@ -289,55 +444,6 @@ public class ProxyStatisticsFilter extends AuthProcFilter {
 		return null;
 	}
 
-	private void insertLogin(Connection c, Long idpId, Long spId, String userId) {
-		String insertLoginQuery = "INSERT INTO " + statisticsTableName +
-			"(day, " + idpIdColumnName + ", " + spIdColumnName + ", " + usernameColumnName + ", logins)" +
-			" VALUES(?, ?, ?, ?, '1')";
-
-		try (PreparedStatement ps = c.prepareStatement(insertLoginQuery)) {
-			ps.setDate(1, Date.valueOf(LocalDate.now()));
-			ps.setLong(2, idpId);
-			ps.setLong(3, spId);
-			ps.setString(4, userId);
-			ps.execute();
-			log.debug("{} - Inserted first login for combination: idpId={}, spId={}, userId={}",
-					getFilterName(), idpId, spId, userId);
-		} catch (SQLException ex) {
-			log.warn("{} - caught SQLException when inserting login entry",  getFilterName());
-			log.debug("{} - details:", getFilterName(), ex);
-		}
-	}
-
-	private void updateLogin(Connection c, Long idpId, Long spId, String userId) {
-		String updateLoginQuery = "UPDATE " + statisticsTableName +
-				" SET logins = logins + 1" +
-				" WHERE day = ?" +
-				" AND " + idpIdColumnName + " = ?" +
-				" AND " + spIdColumnName + " = ?" +
-				" AND " + usernameColumnName + " = ?";
-
-		try (PreparedStatement ps = c.prepareStatement(updateLoginQuery)){
-			ps.setDate(1, Date.valueOf(LocalDate.now()));
-			ps.setLong(2, idpId);
-			ps.setLong(3, spId);
-			ps.setString(4, userId);
-			ps.execute();
-			log.debug("{} - Updated login count by 1 for combination: idpId={}, spId={}, userId={}",
-					getFilterName(), idpId, spId, userId);
-		} catch (SQLException ex) {
-			log.warn("{} - caught SQLException when updating login entry",  getFilterName());
-			log.debug("{} - details:", getFilterName(), ex);
-		}
-	}
-
-	private boolean insertIdpMap(Connection c, String idpEntityId, String idpName) {
-		return insertIntoMap(c, idpEntityId, idpName, identityProvidersMapTableName);
-	}
-
-	private boolean insertSpMap(Connection c, String spIdentifier, String spName) {
-		return insertIntoMap(c, spIdentifier, spName, serviceProvidersMapTableName);
-	}
-
 	private boolean insertIntoMap(Connection c, String identifier, String name, String table) {
 		String insertIdpMapQuery = "INSERT INTO " + table + " (identifier, name)" +
 				" VALUES (?, ?)";
@@ -356,14 +462,6 @@ public class ProxyStatisticsFilter extends AuthProcFilter {
 		return false;
 	}
 
-	private boolean updateIdpMap(Connection c, String idpEntityId, String idpName) {
-		return updateInMap(c, idpEntityId, idpName, identityProvidersMapTableName);
-	}
-
-	private boolean updateSpMap(Connection c, String spIdentifier, String spName) {
-		return updateInMap(c, spIdentifier, spName, serviceProvidersMapTableName);
-	}
-
 	private boolean updateInMap(Connection c, String identifier, String name, String table) {
 		String updateSpMapQuery = "UPDATE " + table + " SET name = ? WHERE identifier = ?";
 
@@ -380,4 +478,34 @@ public class ProxyStatisticsFilter extends AuthProcFilter {
 		return false;
 	}
 
+	@Getter
+	@ToString
+	@AllArgsConstructor
+	private static class LoginEvent {
+		private final LocalDate day;
+		private final String idpEntityId;
+		private final String idpName;
+		private final String spIdentifier;
+		private final String spName;
+		private final String userId;
+	}
+
+	@Getter
+	@ToString
+	@EqualsAndHashCode
+	@AllArgsConstructor
+	private static class LoginKey {
+		private final LocalDate day;
+		private final long idpId;
+		private final long spId;
+		private final String userId;
+	}
+
+	@Getter
+	@AllArgsConstructor
+	private static class MapEntry {
+		private final long id;
+		private final String name;
+	}
+
 }
@@ -71,6 +71,7 @@ public class ValidUserFilter extends AuthProcFilter {
 		this.perunAdapter = ctx.getPerunAdapterBean();
 		this.config = ctx.getPerunOidcConfigBean();
 		this.facilityAttrsConfig = ctx.getBeanUtil().getBean(FacilityAttrsConfig.class);
+		prefetchFacilityAttributes(facilityAttrsConfig.getTestSpAttr());
 
 		this.allEnvGroups = getIdsFromParam(ctx, ALL_ENV_GROUPS);
 		this.allEnvVos = getIdsFromParam(ctx, ALL_ENV_VOS);
@@ -109,7 +110,7 @@ public class ValidUserFilter extends AuthProcFilter {
 			return false;
 		}
 
-		PerunAttributeValue isTestSpAttrValue = perunAdapter.getFacilityAttributeValue(facility.getId(), facilityAttrsConfig.getTestSpAttr());
+		PerunAttributeValue isTestSpAttrValue = params.getFacilityAttributeValue(facilityAttrsConfig.getTestSpAttr());
 		boolean testService = false;
 		if (isTestSpAttrValue != null) {
 			testService = isTestSpAttrValue.valueAsBoolean();
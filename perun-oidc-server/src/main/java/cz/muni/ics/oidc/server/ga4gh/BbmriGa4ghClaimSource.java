@@ -143,9 +143,7 @@ public class BbmriGa4ghClaimSource extends Ga4ghPassportAndVisaClaimSource {
 			return;
 		}
 		Set<String> linkedIdentities = new HashSet<>();
-		for (Ga4ghClaimRepository repo: CLAIM_REPOSITORIES) {
-			callPermissionsJwtAPI(repo, Collections.singletonMap(BBMRI_ID, pctx.getSub()), passport, linkedIdentities);
-		}
+		callPermissionsJwtAPIs(Collections.singletonMap(BBMRI_ID, pctx.getSub()), passport, linkedIdentities);
 		if (linkedIdentities.isEmpty()) {
 			return;
 		}
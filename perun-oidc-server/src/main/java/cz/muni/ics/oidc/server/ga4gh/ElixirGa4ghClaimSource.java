@@ -149,9 +149,7 @@ public class ElixirGa4ghClaimSource extends Ga4ghPassportAndVisaClaimSource {
 			return;
 		}
 		Set<String> linkedIdentities = new HashSet<>();
-		for (Ga4ghClaimRepository repo: CLAIM_REPOSITORIES) {
-			callPermissionsJwtAPI(repo, Collections.singletonMap(ELIXIR_ID, pctx.getSub()), passport, linkedIdentities);
-		}
+		callPermissionsJwtAPIs(Collections.singletonMap(ELIXIR_ID, pctx.getSub()), passport, linkedIdentities);
 		if (linkedIdentities.isEmpty()) {
 			return;
 		}
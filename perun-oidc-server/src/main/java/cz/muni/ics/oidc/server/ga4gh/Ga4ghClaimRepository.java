@@ -1,5 +1,6 @@
 package cz.muni.ics.oidc.server.ga4gh;
 
+import java.util.concurrent.atomic.AtomicLong;
 import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -15,5 +16,48 @@ public class Ga4ghClaimRepository {
     private final String name;
     private final String actionURL;
     private final RestTemplate restTemplate;
+    private final int timeoutMs;
+
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private final AtomicLong callsCount = new AtomicLong();
+
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private final AtomicLong errorsCount = new AtomicLong();
+
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private final AtomicLong totalLatencyMs = new AtomicLong();
+
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private final AtomicLong maxLatencyMs = new AtomicLong();
+
+    public void recordCall(long latencyMs, boolean error) {
+        callsCount.incrementAndGet();
+        if (error) {
+            errorsCount.incrementAndGet();
+        }
+        totalLatencyMs.addAndGet(latencyMs);
+        maxLatencyMs.accumulateAndGet(latencyMs, Math::max);
+    }
+
+    public long getCallsCount() {
+        return callsCount.get();
+    }
+
+    public long getErrorsCount() {
+        return errorsCount.get();
+    }
+
+    public long getMaxLatencyMs() {
+        return maxLatencyMs.get();
+    }
+
+    public double getAverageLatencyMs() {
+        long calls = callsCount.get();
+        return calls == 0 ? 0 : (double) totalLatencyMs.get() / calls;
+    }
 
 }
@@ -4,14 +4,10 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
-import com.nimbusds.jose.JOSEObjectType;
-import com.nimbusds.jose.JWSAlgorithm;
-import com.nimbusds.jose.JWSHeader;
 import com.nimbusds.jose.jwk.source.RemoteJWKSet;
 import com.nimbusds.jose.proc.SecurityContext;
-import com.nimbusds.jwt.JWTClaimsSet;
-import com.nimbusds.jwt.SignedJWT;
 import cz.muni.ics.jwt.signer.service.JWTSigningAndValidationService;
+import cz.muni.ics.oidc.server.ParallelCallsExecutor;
 import cz.muni.ics.oidc.server.claims.ClaimSource;
 import cz.muni.ics.oidc.server.claims.ClaimSourceInitContext;
 import cz.muni.ics.oidc.server.claims.ClaimSourceProduceContext;
@@ -22,12 +18,12 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.UUID;
+import java.util.function.Function;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
@@ -41,6 +37,14 @@ import org.springframework.web.client.HttpClientErrorException;
  * <ul>
  *     <li><b>custom.claim.[claimName].source.config_file</b> - full path to the configuration file for this claim. See
  *     configuration templates for such a file.</li>
+ *     <li><b>custom.claim.[claimName].source.visaCache.maxSize</b> - max number of signed visas reused for
+ *     the following requests, 0 disables the reuse. Defaults to 100000.</li>
+ *     <li><b>custom.claim.[claimName].source.visaCache.ttl</b> - max time in seconds the signed visa is reused.
+ *     Defaults to 3600.</li>
+ *     <li><b>custom.claim.[claimName].source.visaCache.minRemaining</b> - visa expiring in less than this number of
+ *     seconds is signed again. Defaults to 300.</li>
+ *     <li><b>custom.claim.[claimName].source.signingThreads</b> - number of threads signing the visas of
+ *     the passport, 1 signs in the request thread. Defaults to the number of processors.</li>
  * </ul>
  *
  * @author Martin Kuba <makub@ics.muni.cz>
@@ -60,6 +64,8 @@ public abstract class Ga4ghPassportAndVisaClaimSource extends ClaimSource {
     private final JWTSigningAndValidationService jwtService;
     private final URI jku;
     private final String issuer;
+    private final Ga4ghVisaSigner visaSigner;
+    private final ParallelCallsExecutor repositoriesExecutor;
 
     public Ga4ghPassportAndVisaClaimSource(ClaimSourceInitContext ctx, String implType) throws URISyntaxException {
         super(ctx);
@@ -68,9 +74,11 @@ public abstract class Ga4ghPassportAndVisaClaimSource extends ClaimSource {
         jwtService = ctx.getJwtService();
         issuer = ctx.getPerunOidcConfig().getConfigBean().getIssuer();
         jku = new URI(issuer + JWKSetPublishingEndpoint.URL);
+        visaSigner = createVisaSigner(ctx);
         // load config file
         String configFile = ctx.getProperty("config_file", getDefaultConfigFilePath());
         Ga4ghUtils.parseConfigFile(configFile, CLAIM_REPOSITORIES, REMOTE_JWK_SETS, SIGNERS);
+        repositoriesExecutor = createRepositoriesExecutor();
     }
 
     @Override
@@ -94,6 +102,7 @@ public abstract class Ga4ghPassportAndVisaClaimSource extends ClaimSource {
         addAcceptedTermsAndPolicies(now, pctx, ga4gh_passport_v1);
         addResearcherStatuses(now, pctx, ga4gh_passport_v1, affiliations);
         addControlledAccessGrants(now, pctx, ga4gh_passport_v1);
+        visaSigner.signPending(ga4gh_passport_v1);
         return ga4gh_passport_v1;
     }
 
@@ -103,6 +112,28 @@ public abstract class Ga4ghPassportAndVisaClaimSource extends ClaimSource {
 
     protected abstract String getDefaultConfigFilePath();
 
+    private Ga4ghVisaSigner createVisaSigner(ClaimSourceInitContext ctx) {
+        long cacheMaxSize = ctx.getLongProperty("visaCache.maxSize", 100000L);
+        long cacheTtl = ctx.getLongProperty("visaCache.ttl", 3600L);
+        long minRemaining = ctx.getLongProperty("visaCache.minRemaining", 300L);
+        int signingThreads = ctx.getLongProperty("signingThreads",
+                (long) Runtime.getRuntime().availableProcessors()).intValue();
+        ParallelCallsExecutor executor = signingThreads > 1
+                ? new ParallelCallsExecutor(getClaimName() + "-visa-signing", signingThreads, 10000L, false)
+                : null;
+        return new Ga4ghVisaSigner(jwtService, issuer, jku, cacheMaxSize, cacheTtl, minRemaining, executor);
+    }
+
+    private ParallelCallsExecutor createRepositoriesExecutor() {
+        if (CLAIM_REPOSITORIES.size() < 2) {
+            return null;
+        }
+        // each call is bounded by the connect and read timeouts of the repository, this is just a safety net
+        long maxTimeout = CLAIM_REPOSITORIES.stream().mapToLong(Ga4ghClaimRepository::getTimeoutMs).max().orElse(0L);
+        return new ParallelCallsExecutor(getClaimName() + "-visa-repositories", CLAIM_REPOSITORIES.size(),
+                2 * maxTimeout + 5000L, false);
+    }
+
     protected abstract void addAffiliationAndRoles(long now, ClaimSourceProduceContext pctx,
                                                    ArrayNode passport, List<Affiliation> affiliations);
 
@@ -113,6 +144,10 @@ public abstract class Ga4ghPassportAndVisaClaimSource extends ClaimSource {
 
     protected abstract void addControlledAccessGrants(long now, ClaimSourceProduceContext pctx, ArrayNode passport);
 
+    /**
+     * Create the visa. Returned node has to be added to the passport, the visa is signed (or reused from
+     * the previous requests) after all visas of the passport have been created.
+     */
     protected JsonNode createPassportVisa(String type, ClaimSourceProduceContext pctx, String value, String source,
                                           String by, long asserted, long expires, JsonNode condition)
     {
@@ -130,39 +165,61 @@ public abstract class Ga4ghPassportAndVisaClaimSource extends ClaimSource {
             return null;
         }
 
-        Map<String, Object> passportVisaObject = new HashMap<>();
-        passportVisaObject.put(Ga4ghPassportVisa.TYPE, type);
-        passportVisaObject.put(Ga4ghPassportVisa.ASSERTED, asserted);
-        passportVisaObject.put(Ga4ghPassportVisa.VALUE, value);
-        passportVisaObject.put(Ga4ghPassportVisa.SOURCE, source);
-        passportVisaObject.put(Ga4ghPassportVisa.BY, by);
-        if (condition != null && !condition.isNull() && !condition.isMissingNode()) {
-            passportVisaObject.put(Ga4ghPassportVisa.CONDITION, condition);
-        }
-        JWSHeader jwsHeader = new JWSHeader.Builder(JWSAlgorithm.parse(jwtService.getDefaultSigningAlgorithm().getName()))
-                .keyID(jwtService.getDefaultSignerKeyId())
-                .type(JOSEObjectType.JWT)
-                .jwkURL(jku)
-                .build();
-        JWTClaimsSet jwtClaimsSet = new JWTClaimsSet.Builder()
-                .issuer(issuer)
-                .issueTime(new Date())
-                .expirationTime(new Date(expires * 1000L))
-                .subject(pctx.getSub())
-                .jwtID(UUID.randomUUID().toString())
-                .claim(Ga4ghPassportVisa.GA4GH_VISA_V1, passportVisaObject)
-                .build();
-        SignedJWT myToken = new SignedJWT(jwsHeader, jwtClaimsSet);
-        jwtService.signJwt(myToken);
-        return JsonNodeFactory.instance.textNode(myToken.serialize());
+        return visaSigner.createVisa(pctx.getSub(), type, value, source, by, asserted, expires, condition);
     }
 
-    protected void callPermissionsJwtAPI(Ga4ghClaimRepository repo,
-                                         Map<String, String> uriVariables,
-                                         ArrayNode passport,
-                                         Set<String> linkedIdentities)
+    /**
+     * Call all claim repositories (concurrently when there are more of them) and add the verified visas to
+     * the passport. Visas are added in the order of the repositories.
+     */
+    protected void callPermissionsJwtAPIs(Map<String, String> uriVariables,
+                                          ArrayNode passport,
+                                          Set<String> linkedIdentities)
     {
         log.debug("GA4GH: {}", uriVariables);
+        List<List<Ga4ghPassportVisa>> results = fetchAllVisas(repositoriesExecutor, CLAIM_REPOSITORIES,
+                repo -> fetchVisas(repo, uriVariables));
+        for (List<Ga4ghPassportVisa> visas : results) {
+            addVisas(visas, passport, linkedIdentities);
+        }
+    }
+
+    /**
+     * Fetch visas from all repositories, concurrently when the executor is available. Repository which does not
+     * respond in the call timeout of the executor is omitted, visas from the other repositories are returned.
+     */
+    static List<List<Ga4ghPassportVisa>> fetchAllVisas(ParallelCallsExecutor executor,
+                                                       List<Ga4ghClaimRepository> repositories,
+                                                       Function<Ga4ghClaimRepository, List<Ga4ghPassportVisa>> fetcher)
+    {
+        if (executor != null && repositories.size() > 1) {
+            try {
+                return executor.map(repositories, fetcher, repo -> {
+                    log.warn("Repository '{}' has not responded in time, its visas are omitted", repo.getName());
+                    return Collections.emptyList();
+                });
+            } catch (RuntimeException e) {
+                log.error("Cannot get visas from claim repositories", e);
+                return Collections.emptyList();
+            }
+        }
+        List<List<Ga4ghPassportVisa>> results = new ArrayList<>();
+        for (Ga4ghClaimRepository repo : repositories) {
+            results.add(fetcher.apply(repo));
+        }
+        return results;
+    }
+
+    private void addVisas(List<Ga4ghPassportVisa> visas, ArrayNode passport, Set<String> linkedIdentities) {
+        for (Ga4ghPassportVisa visa : visas) {
+            log.debug("Adding a visa to passport: {}", visa);
+            passport.add(passport.textNode(visa.getJwt()));
+            linkedIdentities.add(visa.getLinkedIdentity());
+        }
+    }
+
+    private static List<Ga4ghPassportVisa> fetchVisas(Ga4ghClaimRepository repo, Map<String, String> uriVariables) {
+        List<Ga4ghPassportVisa> result = new ArrayList<>();
         JsonNode response = callHttpJsonAPI(repo, uriVariables);
         if (response != null) {
             JsonNode visas = response.path(GA4GH_CLAIM);
@@ -171,9 +228,7 @@ public abstract class Ga4ghPassportAndVisaClaimSource extends ClaimSource {
                     if (visaNode.isTextual()) {
                         Ga4ghPassportVisa visa = Ga4ghUtils.parseAndVerifyVisa(visaNode.asText(), SIGNERS, REMOTE_JWK_SETS, MAPPER);
                         if (visa.isVerified()) {
-                            log.debug("Adding a visa to passport: {}", visa);
-                            passport.add(passport.textNode(visa.getJwt()));
-                            linkedIdentities.add(visa.getLinkedIdentity());
+                            result.add(visa);
                         } else {
                             log.warn("Skipping visa: {}", visa);
                         }
@@ -185,11 +240,14 @@ public abstract class Ga4ghPassportAndVisaClaimSource extends ClaimSource {
                 log.warn("{} is not an array in {}", GA4GH_CLAIM, response);
             }
         }
+        return result;
     }
 
     @SuppressWarnings("Duplicates")
     private static JsonNode callHttpJsonAPI(Ga4ghClaimRepository repo, Map<String, String> uriVariables) {
         //get permissions data
+        long start = System.currentTimeMillis();
+        boolean error = true;
         try {
             JsonNode result;
             try {
@@ -205,6 +263,7 @@ public abstract class Ga4ghPassportAndVisaClaimSource extends ClaimSource {
                 if (ex.getRawStatusCode() == 404) {
                     log.warn("Got status 404 from Permissions endpoint {}, ELIXIR AAI user is not linked to user at Permissions API",
                             repo.getActionURL());
+                    error = false;
                     return null;
                 }
                 if ("json".equals(contentType.getSubtype())) {
@@ -219,9 +278,14 @@ public abstract class Ga4ghPassportAndVisaClaimSource extends ClaimSource {
                 return null;
             }
             log.debug("Permissions API response: {}", result);
+            error = false;
             return result;
         } catch (Exception ex) {
             log.error("Cannot get dataset permissions", ex);
+        } finally {
+            repo.recordCall(System.currentTimeMillis() - start, error);
+            log.debug("Repository '{}' - calls: {}, errors: {}, avg latency: {}ms, max latency: {}ms", repo.getName(),
+                    repo.getCallsCount(), repo.getErrorsCount(), repo.getAverageLatencyMs(), repo.getMaxLatencyMs());
         }
         return null;
     }
@@ -39,6 +39,7 @@ public class Ga4ghPassportVisa {
     private String iss;
     private String type;
     private String value;
+    private long exp;
 
     @ToString.Exclude
     private String signer;
@@ -53,6 +54,19 @@ public class Ga4ghPassportVisa {
         this.jwt = jwt;
     }
 
+    public Ga4ghPassportVisa(Ga4ghPassportVisa other) {
+        this.verified = other.verified;
+        this.linkedIdentity = other.linkedIdentity;
+        this.sub = other.sub;
+        this.iss = other.iss;
+        this.type = other.type;
+        this.value = other.value;
+        this.exp = other.exp;
+        this.signer = other.signer;
+        this.jwt = other.jwt;
+        this.prettyPayload = other.prettyPayload;
+    }
+
     public String getPrettyString() {
         return prettyPayload + ", signed by " + signer;
     }
@@ -5,6 +5,8 @@ import static cz.muni.ics.oidc.server.ga4gh.Ga4ghPassportAndVisaClaimSource.GA4G
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.nimbusds.jose.Payload;
 import com.nimbusds.jose.crypto.RSASSAVerifier;
 import com.nimbusds.jose.jwk.JWK;
@@ -16,6 +18,7 @@ import com.nimbusds.jose.proc.SecurityContext;
 import com.nimbusds.jwt.JWTParser;
 import com.nimbusds.jwt.SignedJWT;
 import cz.muni.ics.oidc.server.AddHeaderInterceptor;
+import cz.muni.ics.util.TokenHashUtils;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
@@ -30,9 +33,11 @@ import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.client.InterceptingClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
 @Slf4j
@@ -46,6 +51,15 @@ public class Ga4ghUtils {
     public static final String CONF_KEY_VALUE = "value";
     public static final String CONF_KEY_SIGNERS = "signers";
     public static final String CONF_KEY_JWKS = "jwks";
+    public static final String CONF_KEY_TIMEOUT = "timeout";
+
+    public static final int DEFAULT_REPO_TIMEOUT_MS = 10000;
+
+    // verified visas by the hash of the JWT, each visa is reused at most until its expiration
+    private static final Cache<String, Ga4ghPassportVisa> VERIFIED_VISAS = CacheBuilder.newBuilder()
+            .maximumSize(10000L)
+            .expireAfterWrite(1L, TimeUnit.HOURS)
+            .build();
 
     public static void parseConfigFile(String file,
                                        List<Ga4ghClaimRepository> claimRepositories,
@@ -68,10 +82,37 @@ public class Ga4ghUtils {
         }
     }
 
+    /**
+     * Parse the visa and verify its signature. Successfully verified visas are cached (for at most an hour and
+     * never after their expiration), so the same visa is not parsed and verified again. Cached visa is returned as
+     * a copy, so the caller can modify it.
+     */
     public static Ga4ghPassportVisa parseAndVerifyVisa(String jwtString,
                                                        Map<URI, String> signers,
                                                        Map<URI, RemoteJWKSet<SecurityContext>> remoteJwkSets,
                                                        ObjectMapper mapper)
+    {
+        String hash = TokenHashUtils.hash(jwtString);
+        if (hash != null) {
+            Ga4ghPassportVisa cached = VERIFIED_VISAS.getIfPresent(hash);
+            if (cached != null && cached.getExp() > Instant.now().getEpochSecond()) {
+                return new Ga4ghPassportVisa(cached);
+            } else if (cached != null) {
+                VERIFIED_VISAS.invalidate(hash);
+            }
+        }
+
+        Ga4ghPassportVisa visa = verifyVisa(jwtString, signers, remoteJwkSets, mapper);
+        if (hash != null && visa.isVerified() && visa.getExp() > Instant.now().getEpochSecond()) {
+            VERIFIED_VISAS.put(hash, new Ga4ghPassportVisa(visa));
+        }
+        return visa;
+    }
+
+    private static Ga4ghPassportVisa verifyVisa(String jwtString,
+                                                Map<URI, String> signers,
+                                                Map<URI, RemoteJWKSet<SecurityContext>> remoteJwkSets,
+                                                ObjectMapper mapper)
     {
         Ga4ghPassportVisa visa = new Ga4ghPassportVisa(jwtString);
         try {
@@ -127,6 +168,7 @@ public class Ga4ghUtils {
             visa.setVerified(false);
             return;
         }
+        visa.setExp(exp);
         visa.setLinkedIdentity(URLEncoder.encode(doc.get(Ga4ghPassportVisa.SUB).asText(), "utf-8") +
                 ',' + URLEncoder.encode(doc.get(Ga4ghPassportVisa.ISS).asText(), "utf-8"));
         visa.setPrettyPayload(
@@ -172,16 +214,20 @@ public class Ga4ghUtils {
             log.error("claim repository '{}' not defined with url|auth_header|auth_value", repo);
             return;
         }
+        int timeout = repo.path(CONF_KEY_TIMEOUT).asInt(DEFAULT_REPO_TIMEOUT_MS);
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(timeout);
+        requestFactory.setReadTimeout(timeout);
         RestTemplate restTemplate = new RestTemplate();
         restTemplate.setRequestFactory(
-                new InterceptingClientHttpRequestFactory(restTemplate.getRequestFactory(),
+                new InterceptingClientHttpRequestFactory(requestFactory,
                         headersWithValues.entrySet()
                                 .stream()
                                 .map(e -> new AddHeaderInterceptor(e.getKey(), e.getValue()))
                                 .collect(Collectors.toList()))
         );
-        claimRepositories.add(new Ga4ghClaimRepository(name, actionURL, restTemplate));
-        log.info("GA4GH Claims Repository '{}' configured at '{}'", name, actionURL);
+        claimRepositories.add(new Ga4ghClaimRepository(name, actionURL, restTemplate, timeout));
+        log.info("GA4GH Claims Repository '{}' configured at '{}' with timeout {}ms", name, actionURL, timeout);
     }
 
     private static void checkVisaKey(Ga4ghPassportVisa visa, JsonNode jsonNode, String key) {
@@ -0,0 +1,220 @@
+package cz.muni.ics.oidc.server.ga4gh;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.POJONode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import cz.muni.ics.jwt.signer.service.JWTSigningAndValidationService;
+import cz.muni.ics.oidc.server.ParallelCallsExecutor;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import lombok.EqualsAndHashCode;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Creates signed GA4GH visas. Signing the visa with the private key is the most expensive part of the passport
+ * assembly, so the signed visas are cached and reused for the same user and the same visa content, until the TTL
+ * of the cache passes or the visa gets close to its expiration. Change of the signing key also causes a miss.
+ *
+ * Visas missing in the cache are not signed immediately. {@link #createVisa} returns a placeholder, which is
+ * replaced by the signed visa in {@link #signPending(ArrayNode)}. All visas of the passport are signed there
+ * at once (in parallel when the executor is available).
+ */
+@Slf4j
+public class Ga4ghVisaSigner {
+
+    private final JWTSigningAndValidationService jwtService;
+    private final String issuer;
+    private final URI jku;
+    private final long minRemainingSeconds;
+    private final Cache<VisaKey, SignedVisa> cache;
+    private final ParallelCallsExecutor executor;
+
+    /**
+     * @param jwtService Service used for signing.
+     * @param issuer Issuer of the visas.
+     * @param jku URL of the JWK set with the signing keys.
+     * @param cacheMaxSize Max number of cached visas, 0 disables the cache.
+     * @param cacheTtlSeconds Max time the signed visa is reused.
+     * @param minRemainingSeconds Visa expiring in less than this number of seconds is not reused.
+     * @param executor Executor used for signing in parallel, NULL to sign in the calling thread.
+     */
+    public Ga4ghVisaSigner(JWTSigningAndValidationService jwtService, String issuer, URI jku, long cacheMaxSize,
+                           long cacheTtlSeconds, long minRemainingSeconds, ParallelCallsExecutor executor)
+    {
+        this.jwtService = jwtService;
+        this.issuer = issuer;
+        this.jku = jku;
+        this.minRemainingSeconds = minRemainingSeconds;
+        this.cache = cacheMaxSize > 0
+                ? CacheBuilder.newBuilder()
+                    .maximumSize(cacheMaxSize)
+                    .expireAfterWrite(cacheTtlSeconds, TimeUnit.SECONDS)
+                    .recordStats()
+                    .build()
+                : null;
+        this.executor = executor;
+    }
+
+    /**
+     * Get the visa. Returns either the text node with the cached signed visa, or the placeholder which has to be
+     * replaced by calling {@link #signPending(ArrayNode)} on the passport the placeholder has been added to.
+     */
+    public JsonNode createVisa(String sub, String type, String value, String source, String by, long asserted,
+                               long expires, JsonNode condition)
+    {
+        String conditionValue = (condition != null && !condition.isNull() && !condition.isMissingNode())
+                ? condition.toString() : null;
+        // expiration is not part of the key, visas expiring relative to the current time would never be reused
+        VisaKey key = new VisaKey(jwtService.getDefaultSignerKeyId(), sub, type, value, source, by, asserted,
+                conditionValue);
+
+        if (cache != null) {
+            SignedVisa cached = cache.getIfPresent(key);
+            long now = System.currentTimeMillis() / 1000L;
+            if (cached != null && cached.expires - now > minRemainingSeconds) {
+                return JsonNodeFactory.instance.textNode(cached.jwt);
+            }
+        }
+
+        Map<String, Object> passportVisaObject = new HashMap<>();
+        passportVisaObject.put(Ga4ghPassportVisa.TYPE, type);
+        passportVisaObject.put(Ga4ghPassportVisa.ASSERTED, asserted);
+        passportVisaObject.put(Ga4ghPassportVisa.VALUE, value);
+        passportVisaObject.put(Ga4ghPassportVisa.SOURCE, source);
+        passportVisaObject.put(Ga4ghPassportVisa.BY, by);
+        if (conditionValue != null) {
+            passportVisaObject.put(Ga4ghPassportVisa.CONDITION, condition);
+        }
+        JWSHeader jwsHeader = new JWSHeader.Builder(JWSAlgorithm.parse(jwtService.getDefaultSigningAlgorithm().getName()))
+                .keyID(jwtService.getDefaultSignerKeyId())
+                .type(JOSEObjectType.JWT)
+                .jwkURL(jku)
+                .build();
+        JWTClaimsSet jwtClaimsSet = new JWTClaimsSet.Builder()
+                .issuer(issuer)
+                .issueTime(new Date())
+                .expirationTime(new Date(expires * 1000L))
+                .subject(sub)
+                .jwtID(UUID.randomUUID().toString())
+                .claim(Ga4ghPassportVisa.GA4GH_VISA_V1, passportVisaObject)
+                .build();
+        return new POJONode(new PendingVisa(key, expires, new SignedJWT(jwsHeader, jwtClaimsSet)));
+    }
+
+    /**
+     * Sign all visas of the passport returned as placeholders by {@link #createVisa} and replace the placeholders
+     * by the signed visas.
+     *
+     * @param passport Passport containing the placeholders.
+     */
+    public void signPending(ArrayNode passport) {
+        List<Integer> indexes = new ArrayList<>();
+        List<PendingVisa> pending = new ArrayList<>();
+        for (int i = 0; i < passport.size(); i++) {
+            JsonNode node = passport.get(i);
+            if (node instanceof POJONode && ((POJONode) node).getPojo() instanceof PendingVisa) {
+                indexes.add(i);
+                pending.add((PendingVisa) ((POJONode) node).getPojo());
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<String> signed;
+        if (executor != null) {
+            signed = executor.map(pending, this::sign);
+        } else {
+            signed = new ArrayList<>();
+            for (PendingVisa visa : pending) {
+                signed.add(sign(visa));
+            }
+        }
+        for (int i = 0; i < indexes.size(); i++) {
+            passport.set(indexes.get(i), JsonNodeFactory.instance.textNode(signed.get(i)));
+        }
+        log.debug("Signed {} visas", pending.size());
+    }
+
+    public CacheStats getStats() {
+        return cache != null ? cache.stats() : new CacheStats(0, 0, 0, 0, 0, 0);
+    }
+
+    private String sign(PendingVisa visa) {
+        jwtService.signJwt(visa.jwt);
+        String serialized = visa.jwt.serialize();
+        if (cache != null) {
+            cache.put(visa.key, new SignedVisa(serialized, visa.expires));
+        }
+        return serialized;
+    }
+
+    @EqualsAndHashCode
+    private static class VisaKey {
+
+        private final String keyId;
+        private final String sub;
+        private final String type;
+        private final String value;
+        private final String source;
+        private final String by;
+        private final long asserted;
+        private final String condition;
+
+        private VisaKey(String keyId, String sub, String type, String value, String source, String by,
+                        long asserted, String condition)
+        {
+            this.keyId = keyId;
+            this.sub = sub;
+            this.type = type;
+            this.value = value;
+            this.source = source;
+            this.by = by;
+            this.asserted = asserted;
+            this.condition = condition;
+        }
+
+    }
+
+    private static class SignedVisa {
+
+        private final String jwt;
+        private final long expires;
+
+        private SignedVisa(String jwt, long expires) {
+            this.jwt = jwt;
+            this.expires = expires;
+        }
+
+    }
+
+    private static class PendingVisa {
+
+        private final VisaKey key;
+        private final long expires;
+        private final SignedJWT jwt;
+
+        private PendingVisa(VisaKey key, long expires, SignedJWT jwt) {
+            this.key = key;
+            this.expires = expires;
+            this.jwt = jwt;
+        }
+
+    }
+
+}
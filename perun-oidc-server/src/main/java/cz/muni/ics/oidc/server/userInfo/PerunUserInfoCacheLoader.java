@@ -10,11 +10,14 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.TextNode;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheLoader;
-import cz.muni.ics.oauth2.model.ClientDetailsEntity;
+import cz.muni.ics.oidc.models.Facility;
 import cz.muni.ics.oidc.models.PerunAttributeValue;
 import cz.muni.ics.oidc.models.PerunAttributeValueAwareModel;
+import cz.muni.ics.oidc.server.ParallelCallsExecutor;
 import cz.muni.ics.oidc.server.adapters.PerunAdapter;
+import cz.muni.ics.oidc.server.adapters.impl.MemoizingPerunAdapter;
 import cz.muni.ics.oidc.server.claims.ClaimModifier;
 import cz.muni.ics.oidc.server.claims.ClaimSourceProduceContext;
 import cz.muni.ics.oidc.server.claims.PerunCustomClaimDefinition;
@@ -28,10 +31,17 @@ import cz.muni.ics.openid.connect.model.DefaultAddress;
 import cz.muni.ics.openid.connect.model.UserInfo;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import lombok.Builder;
 import lombok.Setter;
@@ -52,15 +62,68 @@ public class PerunUserInfoCacheLoader extends CacheLoader<UserInfoCacheKey, User
     private List<PerunCustomClaimDefinition> customClaims;
     private boolean fillAttributes;
     private List<ClaimModifier> subModifiers;
+    // userId -> attribute name -> value (empty if the attribute has no value), shared among all keys of the user
+    private Cache<Long, Map<String, Optional<PerunAttributeValue>>> userAttributesCache;
+    // totals of the adapter calls made by the claim sources, optional
+    private MemoizingPerunAdapter.Stats adapterCallStats;
+    // evaluates independent claim sources concurrently, sequential evaluation is used when not set
+    private ParallelCallsExecutor claimSourcesExecutor;
 
     @Override
     public UserInfo load(UserInfoCacheKey key) {
         log.debug("load({}) ... populating cache for the key", key);
-        PerunUserInfo ui = new PerunUserInfo();
         long perunUserId = key.getUserId();
         Set<String> attributes = constructAttributes(key.getScopes());
-        Map<String, PerunAttributeValue> userAttributeValues = fetchUserAttributes(perunUserId, attributes);
+        Map<String, PerunAttributeValue> userAttributeValues = getUserAttributes(perunUserId, attributes);
+        Facility facility = null;
+        if (key.getClient() != null) {
+            facility = perunAdapter.getFacilityByClientId(key.getClient().getClientId());
+        }
+        return buildUserInfo(key, userAttributeValues, facility);
+    }
+
+    @Override
+    public Map<UserInfoCacheKey, UserInfo> loadAll(Iterable<? extends UserInfoCacheKey> keys) {
+        Map<UserInfoCacheKey, Set<String>> keyAttributes = new LinkedHashMap<>();
+        Set<Long> userIds = new HashSet<>();
+        Set<String> allAttributes = new HashSet<>();
+        for (UserInfoCacheKey key : keys) {
+            Set<String> attributes = constructAttributes(key.getScopes());
+            keyAttributes.put(key, attributes);
+            userIds.add(key.getUserId());
+            allAttributes.addAll(attributes);
+        }
+        log.debug("loadAll() ... populating cache for {} keys of {} users", keyAttributes.size(), userIds.size());
+
+        Map<Long, Map<String, PerunAttributeValue>> usersAttributeValues = getUsersAttributes(userIds, allAttributes);
+        Map<String, Facility> facilities = new HashMap<>();
+
+        Map<UserInfoCacheKey, UserInfo> result = new LinkedHashMap<>();
+        for (Map.Entry<UserInfoCacheKey, Set<String>> entry : keyAttributes.entrySet()) {
+            UserInfoCacheKey key = entry.getKey();
+            Map<String, PerunAttributeValue> fetched = usersAttributeValues.getOrDefault(key.getUserId(), new HashMap<>());
+            Map<String, PerunAttributeValue> userAttributeValues = new HashMap<>();
+            for (String attribute : entry.getValue()) {
+                if (fetched.containsKey(attribute)) {
+                    userAttributeValues.put(attribute, fetched.get(attribute));
+                }
+            }
+            Facility facility = null;
+            if (key.getClient() != null) {
+                facility = facilities.computeIfAbsent(key.getClient().getClientId(), perunAdapter::getFacilityByClientId);
+            }
+            result.put(key, buildUserInfo(key, userAttributeValues, facility));
+        }
+        return result;
+    }
+
+    private UserInfo buildUserInfo(UserInfoCacheKey key, Map<String, PerunAttributeValue> userAttributeValues,
+                                   Facility facility) {
+        PerunUserInfo ui = new PerunUserInfo();
+        long perunUserId = key.getUserId();
         String sub = extractSub(userAttributeValues, perunUserId, false);
+        // claim sources often ask for the same data (groups, resources, ...), fetch it only once per user info
+        MemoizingPerunAdapter adapter = new MemoizingPerunAdapter(perunAdapter);
 
         ClaimSourceProduceContext.ClaimSourceProduceContextBuilder builder = ClaimSourceProduceContext.builder()
                 .perunUserId(perunUserId)
@@ -68,18 +131,95 @@ public class PerunUserInfoCacheLoader extends CacheLoader<UserInfoCacheKey, User
                 .attrValues(userAttributeValues)
                 .scopes(key.getScopes())
                 .client(key.getClient())
-                .perunAdapter(perunAdapter)
-                .samlAuthenticationDetails(key.getAuthenticationDetails());
-        if (key.getClient() != null) {
-            builder = builder.facility(perunAdapter.getFacilityByClientId(key.getClient().getClientId()));
-        }
+                .perunAdapter(adapter)
+                .samlAuthenticationDetails(key.getAuthenticationDetails())
+                .facility(facility);
         ClaimSourceProduceContext pctx = builder.build();
 
         processStandardScopes(pctx, ui);
         processCustomScopes(pctx, ui);
+        if (adapterCallStats != null) {
+            adapterCallStats.record(adapter);
+        }
+        log.trace("user info for {} built with {} adapter calls, {} saved", perunUserId,
+                adapter.getCallsCount(), adapter.getSavedCallsCount());
         return ui;
     }
 
+    private Map<String, PerunAttributeValue> getUserAttributes(long perunUserId, Set<String> attributes) {
+        if (userAttributesCache == null) {
+            return fetchUserAttributes(perunUserId, attributes);
+        }
+
+        Map<String, Optional<PerunAttributeValue>> cached = getCachedUserAttributes(perunUserId);
+        Set<String> missing = attributes.stream()
+                .filter(attr -> !cached.containsKey(attr))
+                .collect(Collectors.toSet());
+        if (!missing.isEmpty()) {
+            log.debug("fetching {} of {} attributes for user {}, rest is cached", missing.size(), attributes.size(),
+                    perunUserId);
+            storeUserAttributes(cached, missing, fetchUserAttributes(perunUserId, missing));
+        }
+        return collectUserAttributes(cached, attributes);
+    }
+
+    private Map<Long, Map<String, PerunAttributeValue>> getUsersAttributes(Set<Long> perunUserIds,
+                                                                       Set<String> attributes) {
+        if (userAttributesCache == null) {
+            return fetchUsersAttributes(perunUserIds, attributes);
+        }
+
+        Set<Long> idsToFetch = new HashSet<>();
+        Set<String> missing = new HashSet<>();
+        for (Long perunUserId : perunUserIds) {
+            Map<String, Optional<PerunAttributeValue>> cached = getCachedUserAttributes(perunUserId);
+            for (String attr : attributes) {
+                if (!cached.containsKey(attr)) {
+                    idsToFetch.add(perunUserId);
+                    missing.add(attr);
+                }
+            }
+        }
+
+        Map<Long, Map<String, PerunAttributeValue>> fetched = new HashMap<>();
+        if (!idsToFetch.isEmpty()) {
+            fetched = fetchUsersAttributes(idsToFetch, missing);
+        }
+
+        Map<Long, Map<String, PerunAttributeValue>> result = new HashMap<>();
+        for (Long perunUserId : perunUserIds) {
+            Map<String, Optional<PerunAttributeValue>> cached = getCachedUserAttributes(perunUserId);
+            if (fetched.containsKey(perunUserId)) {
+                storeUserAttributes(cached, missing, fetched.get(perunUserId));
+            }
+            result.put(perunUserId, collectUserAttributes(cached, attributes));
+        }
+        return result;
+    }
+
+    private Map<String, Optional<PerunAttributeValue>> getCachedUserAttributes(long perunUserId) {
+        return userAttributesCache.asMap().computeIfAbsent(perunUserId, id -> new ConcurrentHashMap<>());
+    }
+
+    private void storeUserAttributes(Map<String, Optional<PerunAttributeValue>> cached, Set<String> attributes,
+                                     Map<String, PerunAttributeValue> fetched) {
+        for (String attr : attributes) {
+            cached.put(attr, Optional.ofNullable(fetched.get(attr)));
+        }
+    }
+
+    private Map<String, PerunAttributeValue> collectUserAttributes(Map<String, Optional<PerunAttributeValue>> cached,
+                                                                   Set<String> attributes) {
+        Map<String, PerunAttributeValue> userAttributeValues = new HashMap<>();
+        for (String attr : attributes) {
+            Optional<PerunAttributeValue> value = cached.get(attr);
+            if (value != null && value.isPresent()) {
+                userAttributeValues.put(attr, value.get());
+            }
+        }
+        return userAttributeValues;
+    }
+
     private Map<String, PerunAttributeValue> fetchUserAttributes(long perunUserId, Set<String> attributes) {
         Map<String, PerunAttributeValue> userAttributeValues  =
                 perunAdapter.getUserAttributeValues(perunUserId, attributes);
@@ -97,6 +237,48 @@ public class PerunUserInfoCacheLoader extends CacheLoader<UserInfoCacheKey, User
         return userAttributeValues;
     }
 
+    private Map<Long, Map<String, PerunAttributeValue>> fetchUsersAttributes(Set<Long> perunUserIds,
+                                                                         Set<String> attributes) {
+        Map<Long, Map<String, PerunAttributeValue>> usersAttributeValues =
+                perunAdapter.getUserAttributeValues(perunUserIds, attributes);
+
+        if (fillAttributes) {
+            Set<Long> idsToFill = new HashSet<>();
+            Set<String> attrNames = new HashSet<>();
+            for (Long perunUserId : perunUserIds) {
+                Map<String, PerunAttributeValue> userAttributeValues = usersAttributeValues
+                        .computeIfAbsent(perunUserId, id -> new HashMap<>());
+                if (shouldFillAttrs(userAttributeValues)) {
+                    idsToFill.add(perunUserId);
+                    if (userAttributeValues.isEmpty()) {
+                        attrNames.addAll(attributes);
+                    } else {
+                        userAttributeValues.entrySet()
+                                .stream()
+                                .filter(entry -> (null == entry.getValue() || entry.getValue().isNullValue()))
+                                .map(Map.Entry::getKey)
+                                .forEach(attrNames::add);
+                    }
+                }
+            }
+            if (!idsToFill.isEmpty()) {
+                Map<Long, Map<String, PerunAttributeValue>> missingAttrs = perunAdapter.getAdapterFallback()
+                        .getUserAttributeValues(idsToFill, attrNames);
+                for (Long perunUserId : idsToFill) {
+                    Map<String, PerunAttributeValue> userAttributeValues = usersAttributeValues.get(perunUserId);
+                    Map<String, PerunAttributeValue> missing = missingAttrs.getOrDefault(perunUserId, new HashMap<>());
+                    missing.forEach((attr, value) -> {
+                        PerunAttributeValue original = userAttributeValues.get(attr);
+                        if (original == null || original.isNullValue()) {
+                            userAttributeValues.put(attr, value);
+                        }
+                    });
+                }
+            }
+        }
+        return usersAttributeValues;
+    }
+
     private Set<String> constructAttributes(Set<String> requestedScopes) {
         // always try to fetch sub, as it might be needed in further claims i.e. GA4GH processing
         Set<String> attributes = new HashSet<>(openidMappings.getAttrNames());
@@ -125,33 +307,90 @@ public class PerunUserInfoCacheLoader extends CacheLoader<UserInfoCacheKey, User
 
     private void processCustomScopes(ClaimSourceProduceContext pctx, PerunUserInfo ui) {
         log.debug("processing custom claims");
-        for (PerunCustomClaimDefinition claimDef : customClaims) {
-            if (isScopeRequested(claimDef.getScope(), pctx.getScopes())) {
-                processCustomScope(claimDef, pctx, ui);
+        List<PerunCustomClaimDefinition> requested = customClaims.stream()
+                .filter(claimDef -> isScopeRequested(claimDef.getScope(), pctx.getScopes()))
+                .collect(Collectors.toList());
+        Map<String, JsonNode> produced = new ConcurrentHashMap<>();
+        pctx.setProducedClaims(Collections.unmodifiableMap(produced));
+
+        Map<PerunCustomClaimDefinition, JsonNode> values = new IdentityHashMap<>();
+        for (List<PerunCustomClaimDefinition> wave : dependencyWaves(requested)) {
+            List<JsonNode> waveValues = produceValues(wave, pctx);
+            for (int i = 0; i < wave.size(); i++) {
+                JsonNode value = waveValues.get(i);
+                if (value != null) {
+                    values.put(wave.get(i), value);
+                    produced.put(wave.get(i).getClaim(), value);
+                }
+            }
+        }
+        // added in the order of definitions, so the result does not depend on the order of evaluation
+        for (PerunCustomClaimDefinition claimDef : requested) {
+            if (values.containsKey(claimDef)) {
+                ui.getCustomClaims().put(claimDef.getClaim(), values.get(claimDef));
             }
         }
         log.debug("UserInfo created");
     }
 
-    private void processCustomScope(PerunCustomClaimDefinition claimDef, ClaimSourceProduceContext pctx, PerunUserInfo ui) {
+    /**
+     * Split the claim definitions into groups, where each group depends only on claims from the previous ones.
+     * Dependencies on claims which are not requested are ignored, cyclic dependencies are rejected on startup.
+     */
+    private List<List<PerunCustomClaimDefinition>> dependencyWaves(List<PerunCustomClaimDefinition> requested) {
+        Set<String> requestedClaims = requested.stream()
+                .map(PerunCustomClaimDefinition::getClaim)
+                .collect(Collectors.toSet());
+        Set<String> done = new HashSet<>();
+        List<PerunCustomClaimDefinition> remaining = new ArrayList<>(requested);
+        List<List<PerunCustomClaimDefinition>> waves = new ArrayList<>();
+        while (!remaining.isEmpty()) {
+            List<PerunCustomClaimDefinition> wave = remaining.stream()
+                    .filter(claimDef -> claimDef.getDependsOn().stream()
+                            .allMatch(dependency -> done.contains(dependency) || !requestedClaims.contains(dependency)))
+                    .collect(Collectors.toList());
+            if (wave.isEmpty()) {
+                wave = new ArrayList<>(remaining);
+            }
+            remaining.removeAll(wave);
+            wave.forEach(claimDef -> done.add(claimDef.getClaim()));
+            waves.add(wave);
+        }
+        return waves;
+    }
+
+    private List<JsonNode> produceValues(List<PerunCustomClaimDefinition> claimDefs, ClaimSourceProduceContext pctx) {
+        if (claimSourcesExecutor == null) {
+            List<JsonNode> values = new ArrayList<>();
+            claimDefs.forEach(claimDef -> values.add(produceValue(claimDef, pctx)));
+            return values;
+        }
+        // slow claim source does not fail the whole user info, only its claim is omitted
+        return claimSourcesExecutor.map(claimDefs, claimDef -> produceValue(claimDef, pctx), claimDef -> {
+            log.warn("claim {} has not been produced in time, omitting it", claimDef.getClaim());
+            return null;
+        });
+    }
+
+    private JsonNode produceValue(PerunCustomClaimDefinition claimDef, ClaimSourceProduceContext pctx) {
         log.debug("producing value for custom claim {}", claimDef.getClaim());
         JsonNode claimInJson = claimDef.getClaimSource().produceValue(pctx);
         log.debug("produced value {}={}", claimDef.getClaim(), claimInJson);
         if (claimInJson == null || claimInJson.isNull()) {
             log.debug("claim {} is null", claimDef.getClaim());
-            return;
+            return null;
         } else if (claimInJson.isTextual() && !StringUtils.hasText(claimInJson.asText())) {
             log.debug("claim {} is a string and it is empty or null", claimDef.getClaim());
-            return;
+            return null;
         } else if ((claimInJson.isArray() || claimInJson.isObject()) && claimInJson.size() == 0) {
             log.debug("claim {} is an object or array and it is empty or null", claimDef.getClaim());
-            return;
+            return null;
         }
         List<ClaimModifier> claimModifiers = claimDef.getClaimModifiers();
         if (claimModifiers != null && !claimModifiers.isEmpty()) {
             claimInJson = modifyClaims(claimModifiers, claimInJson);
         }
-        ui.getCustomClaims().put(claimDef.getClaim(), claimInJson);
+        return claimInJson;
     }
 
     private boolean isScopeRequested(String scope, Set<String> scopes) {
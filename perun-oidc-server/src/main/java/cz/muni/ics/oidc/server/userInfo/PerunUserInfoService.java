@@ -1,14 +1,26 @@
 package cz.muni.ics.oidc.server.userInfo;
 
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Iterables;
+import cz.muni.ics.data.DefaultPageCriteria;
 import cz.muni.ics.jwt.signer.service.JWTSigningAndValidationService;
+import cz.muni.ics.oauth2.model.AuthenticationHolderEntity;
 import cz.muni.ics.oauth2.model.ClientDetailsEntity;
+import cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity;
 import cz.muni.ics.oauth2.model.SamlAuthenticationDetails;
 import cz.muni.ics.oauth2.model.SavedUserAuthentication;
+import cz.muni.ics.oauth2.repository.OAuth2TokenRepository;
 import cz.muni.ics.oauth2.service.ClientDetailsEntityService;
+import cz.muni.ics.oidc.models.PerunAttributeValue;
 import cz.muni.ics.oidc.exceptions.ConfigurationException;
+import cz.muni.ics.oidc.server.ParallelCallsExecutor;
 import cz.muni.ics.oidc.server.adapters.PerunAdapter;
+import cz.muni.ics.oidc.server.adapters.impl.MemoizingPerunAdapter;
 import cz.muni.ics.oidc.server.claims.ClaimModifier;
 import cz.muni.ics.oidc.server.claims.PerunCustomClaimDefinition;
 import cz.muni.ics.oidc.server.configurations.PerunOidcConfig;
@@ -22,13 +34,25 @@ import cz.muni.ics.openid.connect.model.UserInfo;
 import cz.muni.ics.openid.connect.service.UserInfoService;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.saml.SAMLCredential;
 import org.springframework.util.StringUtils;
 
@@ -67,8 +91,39 @@ public class PerunUserInfoService implements UserInfoService {
 	@Autowired
 	private PerunAdapter perunAdapter;
 
+	@Autowired
+	private OAuth2TokenRepository tokenRepository;
+
 	private LoadingCache<UserInfoCacheKey, UserInfo> cache;
 
+	private ExecutorService cacheRefreshExecutor;
+
+	private Cache<Long, Map<String, Optional<PerunAttributeValue>>> userAttributesCache;
+
+	private final MemoizingPerunAdapter.Stats adapterCallStats = new MemoizingPerunAdapter.Stats();
+
+	private long userAttributesCacheMaxSize = 1000;
+
+	private long userAttributesCacheExpireAfterWrite = 120;
+
+	private long cacheMaxSize = 100;
+
+	private long cacheExpireAfterAccess = 60;
+
+	private long cacheRefreshAfterWrite = 300;
+
+	private long cacheStaleGrace = 60;
+
+	private int cacheRefreshThreads = 2;
+
+	private int cacheWarmUpSize = 0;
+
+	private int cacheWarmUpBatchSize = 100;
+
+	private ParallelCallsExecutor claimSourcesExecutor;
+
+	private boolean parallelClaimSources = false;
+
 	private Properties properties;
 
 	private Set<String> customClaimNames;
@@ -107,6 +162,62 @@ public class PerunUserInfoService implements UserInfoService {
 		this.perunAdapter = perunAdapter;
 	}
 
+	public void setCacheMaxSize(long cacheMaxSize) {
+		this.cacheMaxSize = cacheMaxSize;
+	}
+
+	public void setCacheExpireAfterAccess(long cacheExpireAfterAccess) {
+		this.cacheExpireAfterAccess = cacheExpireAfterAccess;
+	}
+
+	public void setCacheRefreshAfterWrite(long cacheRefreshAfterWrite) {
+		this.cacheRefreshAfterWrite = cacheRefreshAfterWrite;
+	}
+
+	public void setCacheStaleGrace(long cacheStaleGrace) {
+		this.cacheStaleGrace = cacheStaleGrace;
+	}
+
+	public void setCacheRefreshThreads(int cacheRefreshThreads) {
+		this.cacheRefreshThreads = cacheRefreshThreads;
+	}
+
+	public void setCacheWarmUpSize(int cacheWarmUpSize) {
+		this.cacheWarmUpSize = cacheWarmUpSize;
+	}
+
+	public void setCacheWarmUpBatchSize(int cacheWarmUpBatchSize) {
+		this.cacheWarmUpBatchSize = cacheWarmUpBatchSize;
+	}
+
+	public void setClaimSourcesExecutor(ParallelCallsExecutor claimSourcesExecutor) {
+		this.claimSourcesExecutor = claimSourcesExecutor;
+	}
+
+	public void setParallelClaimSources(boolean parallelClaimSources) {
+		this.parallelClaimSources = parallelClaimSources;
+	}
+
+	public void setUserAttributesCacheMaxSize(long userAttributesCacheMaxSize) {
+		this.userAttributesCacheMaxSize = userAttributesCacheMaxSize;
+	}
+
+	public void setUserAttributesCacheExpireAfterWrite(long userAttributesCacheExpireAfterWrite) {
+		this.userAttributesCacheExpireAfterWrite = userAttributesCacheExpireAfterWrite;
+	}
+
+	public CacheStats getUserAttributesCacheStats() {
+		return userAttributesCache.stats();
+	}
+
+	public MemoizingPerunAdapter.Stats getAdapterCallStats() {
+		return adapterCallStats;
+	}
+
+	public CacheStats getCacheStats() {
+		return cache.stats();
+	}
+
 	// == init ==
 
 	@PostConstruct
@@ -120,6 +231,14 @@ public class PerunUserInfoService implements UserInfoService {
 		List<ClaimModifier> subModifiers = UserInfoUtils.loadClaimValueModifiers(
 				properties, "sub", "attribute.openid.sub");
 
+		// raw attribute values of the user, independent of the client and scopes, so the user info for other
+		// clients does not need to fetch the attributes again
+		this.userAttributesCache = CacheBuilder.newBuilder()
+				.maximumSize(userAttributesCacheMaxSize)
+				.expireAfterWrite(java.time.Duration.ofSeconds(userAttributesCacheExpireAfterWrite))
+				.recordStats()
+				.build();
+
 		PerunUserInfoCacheLoader cacheLoader = PerunUserInfoCacheLoader.builder()
 				.openidMappings(openidMappings)
 				.profileMappings(profileMappings)
@@ -130,13 +249,24 @@ public class PerunUserInfoService implements UserInfoService {
 				.fillAttributes(perunOidcConfig.isFillMissingUserAttrs())
 				.perunAdapter(perunAdapter)
 				.subModifiers(subModifiers)
+				.userAttributesCache(userAttributesCache)
+				.adapterCallStats(adapterCallStats)
+				.claimSourcesExecutor(parallelClaimSources ? claimSourcesExecutor : null)
 				.build();
 
-		this.cache = CacheBuilder.newBuilder()
-				.maximumSize(100)
-				.expireAfterAccess(java.time.Duration.ofSeconds(60))
-				.expireAfterWrite(java.time.Duration.ofSeconds(300))
-				.build(cacheLoader);
+		this.cacheRefreshExecutor = createCacheRefreshExecutor();
+		this.cache = createCache(cacheLoader, cacheRefreshExecutor, Ticker.systemTicker());
+
+		if (cacheWarmUpSize > 0) {
+			cacheRefreshExecutor.execute(this::warmUpCache);
+		}
+	}
+
+	@PreDestroy
+	public void destroy() {
+		if (cacheRefreshExecutor != null) {
+			cacheRefreshExecutor.shutdownNow();
+		}
 	}
 
 	// == public methods ==
@@ -156,8 +286,111 @@ public class PerunUserInfoService implements UserInfoService {
 		return get(username, clientId, scope, new SamlAuthenticationDetails());
 	}
 
+	/**
+	 * Populate the cache for all given keys. Attributes of users not present in the cache yet are fetched
+	 * from Perun in one batched call instead of one call per user.
+	 *
+	 * @param keys Keys to be loaded into the cache
+	 */
+	public void prefetch(Collection<UserInfoCacheKey> keys) {
+		if (keys == null || keys.isEmpty()) {
+			return;
+		}
+		try {
+			cache.getAll(keys);
+		} catch (ExecutionException e) {
+			log.error("cannot prefetch users into cache", e);
+		}
+	}
+
+	/**
+	 * Populate the cache with user infos for the users holding the valid access tokens, so the requests coming
+	 * after a restart do not fetch the attributes from Perun one user at a time.
+	 */
+	public void warmUpCache() {
+		Set<UserInfoCacheKey> keys = new LinkedHashSet<>();
+		try {
+			for (OAuth2AccessTokenEntity token :
+					tokenRepository.getAllValidAccessTokens(new DefaultPageCriteria(0, cacheWarmUpSize))) {
+				UserInfoCacheKey key = createCacheKey(token);
+				if (key != null) {
+					keys.add(key);
+				}
+			}
+			for (List<UserInfoCacheKey> batch : Iterables.partition(keys, Math.max(cacheWarmUpBatchSize, 1))) {
+				prefetch(batch);
+			}
+		} catch (RuntimeException e) {
+			log.warn("UserInfo cache warm-up has failed", e);
+			return;
+		}
+		log.info("UserInfo cache warmed up with {} entries", keys.size());
+	}
+
+	@Scheduled(fixedDelay = 300000L, initialDelay = 300000L)
+	public void logCacheStats() {
+		CacheStats stats = cache.stats();
+		log.info("UserInfo cache - size: {}, hit rate: {}, loads: {}, load failures: {}, "
+						+ "average load time: {}ms, evictions: {}", cache.size(), stats.hitRate(), stats.loadCount(),
+				stats.loadExceptionCount(), TimeUnit.NANOSECONDS.toMillis((long) stats.averageLoadPenalty()),
+				stats.evictionCount());
+		CacheStats attrStats = userAttributesCache.stats();
+		log.info("User attributes cache - size: {}, hit rate: {}, evictions: {}", userAttributesCache.size(),
+				attrStats.hitRate(), attrStats.evictionCount());
+		log.info("Perun adapter calls of claim sources - calls: {}, saved duplicate calls: {}",
+				adapterCallStats.getCalls(), adapterCallStats.getSavedCalls());
+	}
+
 	// == private methods ==
 
+	/**
+	 * Entries older than refreshAfterWrite are reloaded in the background on access, the stale value is served
+	 * until the reload finishes, but not longer than the grace period. When the reload fails, the stale value
+	 * is kept and the reload is tried again on the next access.
+	 */
+	LoadingCache<UserInfoCacheKey, UserInfo> createCache(CacheLoader<UserInfoCacheKey, UserInfo> cacheLoader,
+														 Executor refreshExecutor, Ticker ticker)
+	{
+		return CacheBuilder.newBuilder()
+				.ticker(ticker)
+				.maximumSize(cacheMaxSize)
+				.expireAfterAccess(java.time.Duration.ofSeconds(cacheExpireAfterAccess))
+				.refreshAfterWrite(java.time.Duration.ofSeconds(cacheRefreshAfterWrite))
+				.expireAfterWrite(java.time.Duration.ofSeconds(cacheRefreshAfterWrite + cacheStaleGrace))
+				.recordStats()
+				.build(CacheLoader.asyncReloading(cacheLoader, refreshExecutor));
+	}
+
+	private ExecutorService createCacheRefreshExecutor() {
+		// a refresh must never be dropped, the cache would wait for its result forever, so when the queue is
+		// full the refresh is done by the requesting thread
+		AtomicInteger counter = new AtomicInteger();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(cacheRefreshThreads, cacheRefreshThreads,
+				60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>((int) Math.max(cacheMaxSize, 1)), r -> {
+					Thread t = new Thread(r, "userinfo-cache-refresh-" + counter.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	private UserInfoCacheKey createCacheKey(OAuth2AccessTokenEntity token) {
+		AuthenticationHolderEntity holder = token.getAuthenticationHolder();
+		SavedUserAuthentication userAuth = holder != null ? holder.getUserAuth() : null;
+		if (userAuth == null || token.getClient() == null) {
+			// tokens issued to the clients themselves
+			return null;
+		}
+		try {
+			return new UserInfoCacheKey(userAuth.getName(), token.getClient(), userAuth.getAuthenticationDetails(),
+					holder.getAuthentication().getOAuth2Request().getScope());
+		} catch (NumberFormatException e) {
+			log.debug("skipping token of user '{}' in cache warm-up, not a Perun user id", userAuth.getName());
+			return null;
+		}
+	}
+
 	private UserInfo get(String username, String clientId, Set<String> scope, SamlAuthenticationDetails details) {
 		if (!StringUtils.hasText(clientId)) {
 			log.warn("No client_id provided, cannot get userinfo");
@@ -178,6 +411,7 @@ public class PerunUserInfoService implements UserInfoService {
 			userInfo = (PerunUserInfo) cache.get(cacheKey);
 			if (!checkStandardClaims(userInfo) || !checkCustomClaims(userInfo)) {
 				log.info("Some required claim is null, regenerate userInfo");
+				userAttributesCache.invalidate(cacheKey.getUserId());
 				cache.invalidate(cacheKey);
 				userInfo = (PerunUserInfo) cache.get(cacheKey);
 			}
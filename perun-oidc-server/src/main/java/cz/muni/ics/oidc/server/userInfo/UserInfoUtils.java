@@ -13,8 +13,13 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.StringUtils;
 
@@ -27,6 +32,7 @@ public class UserInfoUtils {
     public static final String NAMES = ".names";
     public static final String MODIFIER = ".modifier";
     public static final String SCOPE = ".scope";
+    public static final String DEPENDS_ON = ".dependsOn";
 
     public static List<PerunCustomClaimDefinition> loadCustomClaims(Collection<String> customClaimNames,
                                                                     Properties properties,
@@ -53,12 +59,53 @@ public class UserInfoUtils {
             //optional claim value modifier
             List<ClaimModifier> claimModifiers = UserInfoUtils.loadClaimValueModifiers(
                     properties, claimName, propertyBase);
+            //optional claims which have to be produced first
+            Set<String> dependsOn = new LinkedHashSet<>();
+            String dependsOnProperty = properties.getProperty(propertyBase + DEPENDS_ON);
+            if (StringUtils.hasText(dependsOnProperty)) {
+                dependsOn.addAll(StringUtils.commaDelimitedListToSet(dependsOnProperty.replaceAll("\\s", "")));
+            }
             //add claim definition
-            customClaims.add(new PerunCustomClaimDefinition(scope, claimName, claimSource, claimModifiers));
+            customClaims.add(new PerunCustomClaimDefinition(scope, claimName, claimSource, claimModifiers, dependsOn));
         }
+        checkClaimDependencies(customClaims);
         return customClaims;
     }
 
+    private static void checkClaimDependencies(List<PerunCustomClaimDefinition> customClaims)
+            throws ConfigurationException
+    {
+        Map<String, PerunCustomClaimDefinition> byName = new HashMap<>();
+        customClaims.forEach(def -> byName.put(def.getClaim(), def));
+        for (PerunCustomClaimDefinition def : customClaims) {
+            for (String dependency : def.getDependsOn()) {
+                if (!byName.containsKey(dependency)) {
+                    log.warn("{} - depends on claim {} which is not configured", def.getClaim(), dependency);
+                }
+            }
+        }
+
+        Set<String> resolved = new HashSet<>();
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (PerunCustomClaimDefinition def : customClaims) {
+                if (!resolved.contains(def.getClaim()) && def.getDependsOn().stream()
+                        .allMatch(d -> resolved.contains(d) || !byName.containsKey(d)))
+                {
+                    resolved.add(def.getClaim());
+                    progress = true;
+                }
+            }
+        }
+        if (resolved.size() < byName.size()) {
+            Set<String> cyclic = new LinkedHashSet<>(byName.keySet());
+            cyclic.removeAll(resolved);
+            log.error("claims {} depend on each other", cyclic);
+            throw new ConfigurationException("Cyclic dependencies among custom claims " + cyclic);
+        }
+    }
+
     public static ClaimSource loadClaimSource(Properties properties,
                                               PerunOidcConfig perunOidcConfig,
                                               JWTSigningAndValidationService jwtService,
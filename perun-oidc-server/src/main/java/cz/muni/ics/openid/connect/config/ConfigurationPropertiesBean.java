@@ -52,6 +52,7 @@ public class ConfigurationPropertiesBean {
 	private boolean dualClient = false;
 	private boolean heartMode = false;
 	private boolean allowCompleteDeviceCodeUri = false;
+	private boolean compactAuthenticationHolders = false; // store new authentication holders in a single column
 
 	public ConfigurationPropertiesBean() { }
 
@@ -188,6 +189,14 @@ public class ConfigurationPropertiesBean {
 		this.allowCompleteDeviceCodeUri = allowCompleteDeviceCodeUri;
 	}
 
+	public boolean isCompactAuthenticationHolders() {
+		return compactAuthenticationHolders;
+	}
+
+	public void setCompactAuthenticationHolders(boolean compactAuthenticationHolders) {
+		this.compactAuthenticationHolders = compactAuthenticationHolders;
+	}
+
 	public String getFavicon() {
 		return favicon;
 	}
@@ -17,12 +17,15 @@
  *******************************************************************************/
 package cz.muni.ics.openid.connect.model;
 
+import static cz.muni.ics.openid.connect.model.ApprovedSite.PARAM_ACCESS_DATE;
 import static cz.muni.ics.openid.connect.model.ApprovedSite.PARAM_CLIENT_ID;
+import static cz.muni.ics.openid.connect.model.ApprovedSite.PARAM_ID;
 import static cz.muni.ics.openid.connect.model.ApprovedSite.PARAM_USER_ID;
 import static cz.muni.ics.openid.connect.model.ApprovedSite.QUERY_ALL;
 import static cz.muni.ics.openid.connect.model.ApprovedSite.QUERY_BY_CLIENT_ID;
 import static cz.muni.ics.openid.connect.model.ApprovedSite.QUERY_BY_CLIENT_ID_AND_USER_ID;
 import static cz.muni.ics.openid.connect.model.ApprovedSite.QUERY_BY_USER_ID;
+import static cz.muni.ics.openid.connect.model.ApprovedSite.QUERY_UPDATE_ACCESS_DATE;
 
 import java.util.Date;
 import java.util.Set;
@@ -69,7 +72,11 @@ import lombok.ToString;
 	@NamedQuery(name = QUERY_BY_CLIENT_ID_AND_USER_ID,
 			query = "SELECT a FROM ApprovedSite a " +
 					"WHERE a.clientId = :" + PARAM_CLIENT_ID + ' ' +
-					"AND a.userId = :" + PARAM_USER_ID)
+					"AND a.userId = :" + PARAM_USER_ID),
+	@NamedQuery(name = QUERY_UPDATE_ACCESS_DATE,
+			query = "UPDATE ApprovedSite a SET a.accessDate = :" + PARAM_ACCESS_DATE + ' ' +
+					"WHERE a.id = :" + PARAM_ID + ' ' +
+					"AND (a.accessDate IS NULL OR a.accessDate < :" + PARAM_ACCESS_DATE + ')')
 })
 public class ApprovedSite {
 
@@ -77,9 +84,12 @@ public class ApprovedSite {
 	public static final String QUERY_BY_CLIENT_ID = "ApprovedSite.getByClientId";
 	public static final String QUERY_BY_USER_ID = "ApprovedSite.getByUserId";
 	public static final String QUERY_ALL = "ApprovedSite.getAll";
+	public static final String QUERY_UPDATE_ACCESS_DATE = "ApprovedSite.updateAccessDate";
 
 	public static final String PARAM_CLIENT_ID = "clientId";
 	public static final String PARAM_USER_ID = "userId";
+	public static final String PARAM_ID = "id";
+	public static final String PARAM_ACCESS_DATE = "accessDate";
 
 	@Id
 	@GeneratedValue(strategy = GenerationType.IDENTITY)
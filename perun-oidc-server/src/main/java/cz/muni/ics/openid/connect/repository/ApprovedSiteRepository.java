@@ -19,6 +19,8 @@ package cz.muni.ics.openid.connect.repository;
 
 import cz.muni.ics.openid.connect.model.ApprovedSite;
 import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
 
 /**
  * ApprovedSite repository interface
@@ -85,4 +87,11 @@ public interface ApprovedSiteRepository {
 	 */
 	Collection<ApprovedSite> getByClientId(String clientId);
 
+	/**
+	 * Update access dates of the approved sites, dates older than the stored ones are ignored.
+	 *
+	 * @param accessDates Access dates by the ids of the approved sites.
+	 */
+	void updateAccessDates(Map<Long, Date> accessDates);
+
 }
@@ -21,8 +21,12 @@ import cz.muni.ics.openid.connect.model.ApprovedSite;
 import cz.muni.ics.openid.connect.repository.ApprovedSiteRepository;
 import cz.muni.ics.util.jpa.JpaUtil;
 import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.TemporalType;
 import javax.persistence.TypedQuery;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
@@ -98,4 +102,16 @@ public class JpaApprovedSiteRepository implements ApprovedSiteRepository {
 
 		return query.getResultList();
 	}
+
+	@Override
+	@Transactional(value="defaultTransactionManager")
+	public void updateAccessDates(Map<Long, Date> accessDates) {
+		Query query = manager.createNamedQuery(ApprovedSite.QUERY_UPDATE_ACCESS_DATE);
+		for (Map.Entry<Long, Date> entry : accessDates.entrySet()) {
+			query.setParameter(ApprovedSite.PARAM_ID, entry.getKey());
+			query.setParameter(ApprovedSite.PARAM_ACCESS_DATE, entry.getValue(), TemporalType.TIMESTAMP);
+			query.executeUpdate();
+		}
+	}
+
 }
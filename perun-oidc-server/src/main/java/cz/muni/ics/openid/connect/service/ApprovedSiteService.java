@@ -60,6 +60,14 @@ public interface ApprovedSiteService {
 	 */
 	ApprovedSite save(ApprovedSite approvedSite);
 
+	/**
+	 * Record the access to the ApprovedSite. The access date might be written asynchronously.
+	 *
+	 * @param approvedSite
+	 *            the accessed ApprovedSite, with the access date set
+	 */
+	void updateAccessDate(ApprovedSite approvedSite);
+
 	/**
 	 * Get ApprovedSite for id
 	 *
@@ -0,0 +1,247 @@
+package cz.muni.ics.openid.connect.service.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import cz.muni.ics.oidc.server.AsyncBatchWriter;
+import cz.muni.ics.oidc.server.cache.SharedCacheTier;
+import cz.muni.ics.openid.connect.model.ApprovedSite;
+import cz.muni.ics.openid.connect.repository.ApprovedSiteRepository;
+import cz.muni.ics.util.TokenHashUtils;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import lombok.EqualsAndHashCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * In-memory cache of the approved sites of the user for the client, so the pre-approval check of the repeated
+ * login does not query the approved_site table. The cache holds a snapshot of the sites (including the empty
+ * result) and each caller gets its own copies.
+ *
+ * Access dates of the approved sites are not written by the request thread. They are queued and written in
+ * batches from the background thread, each site at most once per access date write interval.
+ *
+ * Each change of the approved sites (approval, revocation) is published to the other nodes of the cluster as a new
+ * random marker of the client and user in the shared cache tier, after the transaction of the change has completed.
+ * Sites are cached together with the marker read before loading them, and each hit compares it with the current
+ * marker, so the revoked approval is never used for the pre-approval on any node.
+ */
+@Slf4j
+public class ApprovedSiteCache {
+
+	private static final int ACCESS_QUEUE_CAPACITY = 10000;
+	private static final int ACCESS_BATCH_SIZE = 100;
+	private static final long SHUTDOWN_TIMEOUT_MS = 5000L;
+	private static final String MARKER_KEY_PREFIX = "approved_site:";
+
+	@Autowired
+	private ApprovedSiteRepository repository;
+
+	private final boolean enabled;
+	private final long ttlMillis;
+	private final SharedCacheTier sharedCacheTier;
+	private final Cache<SiteKey, CachedSites> cache;
+	private final Cache<Long, Long> accessWrites;
+	private final AsyncBatchWriter<Map.Entry<Long, Date>> accessWriter;
+
+	// incremented on each invalidation, sites loaded before the invalidation are not cached
+	private final AtomicLong generation = new AtomicLong();
+
+	public ApprovedSiteCache(boolean enabled, long maxSize, long ttlSeconds, long accessDateWriteIntervalSeconds,
+							 SharedCacheTier sharedCacheTier)
+	{
+		if (enabled && sharedCacheTier == null) {
+			throw new IllegalArgumentException("Approved site cache requires shared cache tier");
+		}
+		this.enabled = enabled;
+		this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+		this.sharedCacheTier = sharedCacheTier;
+		this.cache = CacheBuilder.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+				.recordStats()
+				.build();
+		this.accessWrites = CacheBuilder.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfterWrite(accessDateWriteIntervalSeconds, TimeUnit.SECONDS)
+				.build();
+		this.accessWriter = enabled
+				? new AsyncBatchWriter<>("approved-site-access", ACCESS_QUEUE_CAPACITY, ACCESS_BATCH_SIZE,
+						AsyncBatchWriter.OverflowPolicy.DROP, 0L, this::writeAccessDates)
+				: null;
+	}
+
+	public ApprovedSiteCache(boolean enabled, long maxSize, long ttlSeconds, long accessDateWriteIntervalSeconds,
+							 SharedCacheTier sharedCacheTier, ApprovedSiteRepository repository)
+	{
+		this(enabled, maxSize, ttlSeconds, accessDateWriteIntervalSeconds, sharedCacheTier);
+		this.repository = repository;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Get the approved sites of the user for the client, load them by the loader when not cached.
+	 *
+	 * @param clientId Identifier of the client.
+	 * @param userId Identifier of the user.
+	 * @param loader Supplier loading the sites from the database.
+	 * @return Copies of the approved sites.
+	 */
+	public Collection<ApprovedSite> get(String clientId, String userId, Supplier<Collection<ApprovedSite>> loader) {
+		if (!enabled) {
+			return loader.get();
+		}
+
+		SiteKey key = new SiteKey(clientId, userId);
+		String marker = sharedCacheTier.get(key.getMarkerKey());
+		CachedSites cached = cache.getIfPresent(key);
+		if (cached == null || !Objects.equals(cached.marker, marker)) {
+			long loadGeneration = generation.get();
+			Collection<ApprovedSite> loaded = loader.get();
+			List<ApprovedSite> sites = new ArrayList<>();
+			if (loaded != null) {
+				loaded.forEach(site -> sites.add(copyOf(site)));
+			}
+			cached = new CachedSites(marker, sites);
+			if (loadGeneration == generation.get()) {
+				cache.put(key, cached);
+			}
+		}
+
+		List<ApprovedSite> copies = new ArrayList<>(cached.sites.size());
+		cached.sites.forEach(site -> copies.add(copyOf(site)));
+		return copies;
+	}
+
+	/**
+	 * Queue the write of the access date of the approved site. Access dates of the site are written at most once
+	 * per access date write interval, the other accesses in the interval are skipped.
+	 *
+	 * @param site Accessed approved site, with the access date set.
+	 */
+	public void recordAccess(ApprovedSite site) {
+		if (!enabled || site.getId() == null || site.getAccessDate() == null) {
+			return;
+		}
+
+		if (accessWrites.asMap().putIfAbsent(site.getId(), site.getAccessDate().getTime()) == null) {
+			accessWriter.submit(new AbstractMap.SimpleImmutableEntry<>(site.getId(), site.getAccessDate()));
+		}
+	}
+
+	/**
+	 * Remove the approved sites of the user for the client from the cache on all nodes. When called in
+	 * a transaction, the sites are removed once the transaction has completed.
+	 *
+	 * @param clientId Identifier of the client.
+	 * @param userId Identifier of the user.
+	 */
+	public void invalidate(String clientId, String userId) {
+		if (!enabled) {
+			return;
+		}
+
+		SiteKey key = new SiteKey(clientId, userId);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int status) {
+					invalidate(key);
+				}
+			});
+		} else {
+			invalidate(key);
+		}
+	}
+
+	/**
+	 * Write the queued access dates and stop the background writer.
+	 */
+	public void shutdown() {
+		if (accessWriter != null) {
+			accessWriter.shutdown(SHUTDOWN_TIMEOUT_MS);
+		}
+	}
+
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	public long getSize() {
+		return cache.size();
+	}
+
+	public long getDroppedAccessCount() {
+		return accessWriter != null ? accessWriter.getDroppedCount() : 0L;
+	}
+
+	private void invalidate(SiteKey key) {
+		generation.incrementAndGet();
+		cache.invalidate(key);
+		// entries cached on other nodes expire after the TTL, the marker does not need to live longer
+		sharedCacheTier.put(key.getMarkerKey(), UUID.randomUUID().toString(), ttlMillis);
+	}
+
+	private void writeAccessDates(List<Map.Entry<Long, Date>> accesses) {
+		Map<Long, Date> latest = new HashMap<>();
+		for (Map.Entry<Long, Date> access : accesses) {
+			latest.merge(access.getKey(), access.getValue(), (a, b) -> a.after(b) ? a : b);
+		}
+		repository.updateAccessDates(latest);
+		log.debug("Written access dates of {} approved sites", latest.size());
+	}
+
+	private static ApprovedSite copyOf(ApprovedSite site) {
+		return new ApprovedSite(site.getId(), site.getUserId(), site.getClientId(), site.getCreationDate(),
+				site.getAccessDate(), site.getTimeoutDate(),
+				site.getAllowedScopes() != null ? new HashSet<>(site.getAllowedScopes()) : null);
+	}
+
+	@EqualsAndHashCode
+	private static class SiteKey {
+
+		private final String clientId;
+		private final String userId;
+
+		private SiteKey(String clientId, String userId) {
+			this.clientId = clientId;
+			this.userId = userId;
+		}
+
+		private String getMarkerKey() {
+			// client and user identifiers can be long, the key length is limited in the shared tier
+			return MARKER_KEY_PREFIX + TokenHashUtils.hash(clientId + '\n' + userId);
+		}
+
+	}
+
+	private static class CachedSites {
+
+		private final String marker;
+		private final List<ApprovedSite> sites;
+
+		private CachedSites(String marker, List<ApprovedSite> sites) {
+			this.marker = marker;
+			this.sites = sites;
+		}
+
+	}
+
+}
@@ -21,6 +21,7 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
 import cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity;
 import cz.muni.ics.oauth2.repository.OAuth2TokenRepository;
+import cz.muni.ics.oauth2.service.impl.AccessTokenCache;
 import cz.muni.ics.openid.connect.model.ApprovedSite;
 import cz.muni.ics.openid.connect.repository.ApprovedSiteRepository;
 import cz.muni.ics.openid.connect.service.ApprovedSiteService;
@@ -50,6 +51,12 @@ public class DefaultApprovedSiteService implements ApprovedSiteService {
 	@Autowired
 	private OAuth2TokenRepository tokenRepository;
 
+	@Autowired(required = false)
+	private AccessTokenCache accessTokenCache;
+
+	@Autowired(required = false)
+	private ApprovedSiteCache approvedSiteCache;
+
 	@Override
 	public Collection<ApprovedSite> getAll() {
 		return approvedSiteRepository.getAll();
@@ -58,7 +65,18 @@ public class DefaultApprovedSiteService implements ApprovedSiteService {
 	@Override
 	@Transactional(value="defaultTransactionManager")
 	public ApprovedSite save(ApprovedSite approvedSite) {
-		return approvedSiteRepository.save(approvedSite);
+		ApprovedSite saved = approvedSiteRepository.save(approvedSite);
+		invalidateCachedSites(approvedSite);
+		return saved;
+	}
+
+	@Override
+	public void updateAccessDate(ApprovedSite approvedSite) {
+		if (approvedSiteCache != null && approvedSiteCache.isEnabled()) {
+			approvedSiteCache.recordAccess(approvedSite);
+		} else {
+			approvedSiteRepository.save(approvedSite);
+		}
 	}
 
 	@Override
@@ -78,9 +96,13 @@ public class DefaultApprovedSiteService implements ApprovedSiteService {
 				tokenRepository.removeRefreshToken(token.getRefreshToken());
 			}
 			tokenRepository.removeAccessToken(token);
+			if (accessTokenCache != null) {
+				accessTokenCache.invalidate(token.getValue());
+			}
 		}
 
 		approvedSiteRepository.remove(approvedSite);
+		invalidateCachedSites(approvedSite);
 	}
 
 	@Override
@@ -103,6 +125,10 @@ public class DefaultApprovedSiteService implements ApprovedSiteService {
 
 	@Override
 	public Collection<ApprovedSite> getByClientIdAndUserId(String clientId, String userId) {
+		if (approvedSiteCache != null) {
+			return approvedSiteCache.get(clientId, userId,
+					() -> approvedSiteRepository.getByClientIdAndUserId(clientId, userId));
+		}
 
 		return approvedSiteRepository.getByClientIdAndUserId(clientId, userId);
 
@@ -174,4 +200,10 @@ public class DefaultApprovedSiteService implements ApprovedSiteService {
 
 	}
 
+	private void invalidateCachedSites(ApprovedSite approvedSite) {
+		if (approvedSiteCache != null) {
+			approvedSiteCache.invalidate(approvedSite.getClientId(), approvedSite.getUserId());
+		}
+	}
+
 }
@@ -144,7 +144,7 @@ public class TofuUserApprovalHandler implements UserApprovalHandler {
 
 						//We have a match; update the access date on the AP entry and return true.
 						ap.setAccessDate(new Date());
-						approvedSiteService.save(ap);
+						approvedSiteService.updateAccessDate(ap);
 
 						String apId = ap.getId().toString();
 						authorizationRequest.getExtensions().put(ConnectRequestParameters.APPROVED_SITE, apId);
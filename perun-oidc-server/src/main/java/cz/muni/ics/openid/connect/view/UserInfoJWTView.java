@@ -19,13 +19,12 @@
 package cz.muni.ics.openid.connect.view;
 
 import com.google.common.base.Strings;
-import com.google.common.collect.Lists;
-import com.google.gson.JsonObject;
 import com.nimbusds.jose.Algorithm;
 import com.nimbusds.jose.JWEHeader;
 import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWEObject;
 import com.nimbusds.jose.JWSHeader;
-import com.nimbusds.jwt.EncryptedJWT;
+import com.nimbusds.jose.Payload;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
 import cz.muni.ics.jwt.encryption.service.JWTEncryptionAndDecryptionService;
@@ -34,13 +33,16 @@ import cz.muni.ics.jwt.signer.service.impl.ClientKeyCacheService;
 import cz.muni.ics.jwt.signer.service.impl.SymmetricKeyJWTValidatorCacheService;
 import cz.muni.ics.oauth2.model.ClientDetailsEntity;
 import cz.muni.ics.openid.connect.config.ConfigurationPropertiesBean;
+import cz.muni.ics.openid.connect.model.UserInfo;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
-import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Predicate;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
@@ -77,24 +79,23 @@ public class UserInfoJWTView extends UserInfoView {
 	private SymmetricKeyJWTValidatorCacheService symmetricCacheService;
 
 	@Override
-	protected void writeOut(JsonObject json, Map<String, Object> model,
+	protected void writeOut(UserInfo userInfo, Predicate<String> claimFilter, Map<String, Object> model,
 			HttpServletRequest request, HttpServletResponse response) {
 
 		try {
 			ClientDetailsEntity client = (ClientDetailsEntity)model.get(CLIENT);
 
-			// use the parser to import the user claims into the object
-			StringWriter writer = new StringWriter();
-			gson.toJson(json, writer);
+			// serialize the user claims together with the JWT claims, the same way as the plain user info
+			Map<String, Object> jwtClaims = new LinkedHashMap<>();
+			jwtClaims.put("aud", client.getClientId());
+			jwtClaims.put("iss", config.getIssuer());
+			jwtClaims.put("iat", System.currentTimeMillis() / 1000L);
+			jwtClaims.put("jti", UUID.randomUUID().toString()); // set a random NONCE in the middle of it
 
-			response.setContentType(JOSE_MEDIA_TYPE_VALUE);
+			ByteArrayOutputStream payload = new ByteArrayOutputStream();
+			UserInfoJsonWriter.write(payload, userInfo, claimFilter, jwtClaims);
 
-			JWTClaimsSet claims = new JWTClaimsSet.Builder(JWTClaimsSet.parse(writer.toString()))
-					.audience(Lists.newArrayList(client.getClientId()))
-					.issuer(config.getIssuer())
-					.issueTime(new Date())
-					.jwtID(UUID.randomUUID().toString()) // set a random NONCE in the middle of it
-					.build();
+			response.setContentType(JOSE_MEDIA_TYPE_VALUE);
 
 
 			if (client.getUserInfoEncryptedResponseAlg() != null && !client.getUserInfoEncryptedResponseAlg().equals(Algorithm.NONE)
@@ -107,7 +108,8 @@ public class UserInfoJWTView extends UserInfoView {
 
 				if (encrypter != null) {
 
-					EncryptedJWT encrypted = new EncryptedJWT(new JWEHeader(client.getUserInfoEncryptedResponseAlg(), client.getUserInfoEncryptedResponseEnc()), claims);
+					// encryption takes the serialized claims as they are, no need to parse them
+					JWEObject encrypted = new JWEObject(new JWEHeader(client.getUserInfoEncryptedResponseAlg(), client.getUserInfoEncryptedResponseEnc()), new Payload(payload.toByteArray()));
 
 					encrypter.encryptJwt(encrypted);
 
@@ -127,6 +129,7 @@ public class UserInfoJWTView extends UserInfoView {
 				JWSHeader header = new JWSHeader(signingAlg, null, null, null, null, null, null, null, null, null,
 						jwtService.getDefaultSignerKeyId(),
 						null, null);
+				JWTClaimsSet claims = JWTClaimsSet.parse(payload.toString(StandardCharsets.UTF_8.name()));
 				SignedJWT signed = new SignedJWT(header, claims);
 
 				if (signingAlg.equals(JWSAlgorithm.HS256)
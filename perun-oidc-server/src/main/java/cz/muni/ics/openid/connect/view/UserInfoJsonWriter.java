@@ -0,0 +1,223 @@
+package cz.muni.ics.openid.connect.view;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ValueNode;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import cz.muni.ics.oidc.server.userInfo.PerunUserInfo;
+import cz.muni.ics.openid.connect.model.Address;
+import cz.muni.ics.openid.connect.model.UserInfo;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Predicate;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Writes the user info claims straight to the output stream, without building the intermediate JSON tree.
+ * The output is the same as the one of {@link UserInfo#toJson()} serialized by Gson: NULL values of object
+ * members are omitted, custom textual and boolean claims are written as strings and numbers as longs.
+ */
+@Slf4j
+final class UserInfoJsonWriter {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory()
+			.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+	private UserInfoJsonWriter() { }
+
+	/**
+	 * Write the claims of the user info as the UTF-8 encoded JSON object.
+	 *
+	 * @param out Stream to write to, it is flushed but not closed.
+	 * @param userInfo User info to write.
+	 * @param claimFilter Decides which claims are written.
+	 * @param extraClaims Additional claims appended to the object, overriding the user info claims of the same
+	 *                    name. Values can be Strings, Numbers or Collections of Strings.
+	 */
+	static void write(OutputStream out, UserInfo userInfo, Predicate<String> claimFilter,
+					  Map<String, Object> extraClaims) throws IOException
+	{
+		Predicate<String> filter = name -> claimFilter.test(name) && !extraClaims.containsKey(name);
+		try (JsonGenerator gen = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+			gen.writeStartObject();
+			if (userInfo.getSource() == null) {
+				writeClaims(gen, userInfo, filter);
+			} else {
+				writeSource(gen, userInfo.toJson().entrySet(), filter);
+			}
+			for (Map.Entry<String, Object> extra : extraClaims.entrySet()) {
+				writeExtra(gen, extra.getKey(), extra.getValue());
+			}
+			gen.writeEndObject();
+		}
+	}
+
+	static void write(OutputStream out, UserInfo userInfo, Predicate<String> claimFilter) throws IOException {
+		write(out, userInfo, claimFilter, Collections.emptyMap());
+	}
+
+	private static void writeClaims(JsonGenerator gen, UserInfo ui, Predicate<String> filter) throws IOException {
+		Map<String, JsonNode> customClaims = (ui instanceof PerunUserInfo)
+				? ((PerunUserInfo) ui).getCustomClaims() : Collections.emptyMap();
+		// custom claims replace the standard ones of the same name
+		Predicate<String> standardFilter = name -> filter.test(name) && !customClaims.containsKey(name);
+
+		writeString(gen, standardFilter, "sub", ui.getSub());
+		writeString(gen, standardFilter, "name", ui.getName());
+		writeString(gen, standardFilter, "preferred_username", ui.getPreferredUsername());
+		writeString(gen, standardFilter, "given_name", ui.getGivenName());
+		writeString(gen, standardFilter, "family_name", ui.getFamilyName());
+		writeString(gen, standardFilter, "middle_name", ui.getMiddleName());
+		writeString(gen, standardFilter, "nickname", ui.getNickname());
+		writeString(gen, standardFilter, "profile", ui.getProfile());
+		writeString(gen, standardFilter, "picture", ui.getPicture());
+		writeString(gen, standardFilter, "website", ui.getWebsite());
+		writeString(gen, standardFilter, "gender", ui.getGender());
+		writeString(gen, standardFilter, "zoneinfo", ui.getZoneinfo());
+		writeString(gen, standardFilter, "locale", ui.getLocale());
+		writeString(gen, standardFilter, "updated_at", ui.getUpdatedTime());
+		writeString(gen, standardFilter, "birthdate", ui.getBirthdate());
+		writeString(gen, standardFilter, "email", ui.getEmail());
+		writeBoolean(gen, standardFilter, "email_verified", ui.getEmailVerified());
+		writeString(gen, standardFilter, "phone_number", ui.getPhoneNumber());
+		writeBoolean(gen, standardFilter, "phone_number_verified", ui.getPhoneNumberVerified());
+
+		Address address = ui.getAddress();
+		if (address != null && standardFilter.test("address")) {
+			Predicate<String> all = name -> true;
+			gen.writeObjectFieldStart("address");
+			writeString(gen, all, "formatted", address.getFormatted());
+			writeString(gen, all, "street_address", address.getStreetAddress());
+			writeString(gen, all, "locality", address.getLocality());
+			writeString(gen, all, "region", address.getRegion());
+			writeString(gen, all, "postal_code", address.getPostalCode());
+			writeString(gen, all, "country", address.getCountry());
+			gen.writeEndObject();
+		}
+
+		for (Map.Entry<String, JsonNode> entry : customClaims.entrySet()) {
+			String key = entry.getKey();
+			JsonNode value = entry.getValue();
+			if (!filter.test(key) || value == null || value.isNull()) {
+				continue;
+			}
+			if (value.isTextual() || value.isBoolean()) {
+				gen.writeStringField(key, value.asText());
+			} else if (value.isNumber()) {
+				gen.writeNumberField(key, value.asLong());
+			} else if (value.isContainerNode()) {
+				gen.writeFieldName(key);
+				writeNode(gen, value);
+			} else {
+				log.warn("claim {} is of unknown type {}, skipping", key, value.getNodeType());
+			}
+		}
+	}
+
+	private static void writeString(JsonGenerator gen, Predicate<String> filter, String name, String value)
+			throws IOException
+	{
+		if (value != null && filter.test(name)) {
+			gen.writeStringField(name, value);
+		}
+	}
+
+	private static void writeBoolean(JsonGenerator gen, Predicate<String> filter, String name, Boolean value)
+			throws IOException
+	{
+		if (value != null && filter.test(name)) {
+			gen.writeBooleanField(name, value);
+		}
+	}
+
+	private static void writeNode(JsonGenerator gen, JsonNode node) throws IOException {
+		if (node.isObject()) {
+			gen.writeStartObject();
+			Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+			while (fields.hasNext()) {
+				Map.Entry<String, JsonNode> field = fields.next();
+				if (!field.getValue().isNull()) {
+					gen.writeFieldName(field.getKey());
+					writeNode(gen, field.getValue());
+				}
+			}
+			gen.writeEndObject();
+		} else if (node.isArray()) {
+			gen.writeStartArray();
+			for (JsonNode item : node) {
+				writeNode(gen, item);
+			}
+			gen.writeEndArray();
+		} else if (node.isNull()) {
+			gen.writeNull();
+		} else if (node.isTextual()) {
+			gen.writeString(node.textValue());
+		} else if (node.isBoolean()) {
+			gen.writeBoolean(node.booleanValue());
+		} else if (node.isNumber()) {
+			((ValueNode) node).serialize(gen, null);
+		} else {
+			gen.writeString(node.asText());
+		}
+	}
+
+	private static void writeSource(JsonGenerator gen, Collection<Map.Entry<String, JsonElement>> entries,
+									Predicate<String> filter) throws IOException
+	{
+		for (Map.Entry<String, JsonElement> entry : entries) {
+			if (filter == null || filter.test(entry.getKey())) {
+				if (!entry.getValue().isJsonNull()) {
+					gen.writeFieldName(entry.getKey());
+					writeElement(gen, entry.getValue());
+				}
+			}
+		}
+	}
+
+	private static void writeElement(JsonGenerator gen, JsonElement element) throws IOException {
+		if (element.isJsonObject()) {
+			gen.writeStartObject();
+			writeSource(gen, element.getAsJsonObject().entrySet(), null);
+			gen.writeEndObject();
+		} else if (element.isJsonArray()) {
+			gen.writeStartArray();
+			for (JsonElement item : element.getAsJsonArray()) {
+				writeElement(gen, item);
+			}
+			gen.writeEndArray();
+		} else if (element.isJsonNull()) {
+			gen.writeNull();
+		} else {
+			JsonPrimitive primitive = element.getAsJsonPrimitive();
+			if (primitive.isBoolean()) {
+				gen.writeBoolean(primitive.getAsBoolean());
+			} else if (primitive.isNumber()) {
+				gen.writeNumber(primitive.getAsString());
+			} else {
+				gen.writeString(primitive.getAsString());
+			}
+		}
+	}
+
+	private static void writeExtra(JsonGenerator gen, String name, Object value) throws IOException {
+		if (value instanceof Collection) {
+			gen.writeArrayFieldStart(name);
+			for (Object item : (Collection<?>) value) {
+				gen.writeString(String.valueOf(item));
+			}
+			gen.writeEndArray();
+		} else if (value instanceof Number) {
+			gen.writeNumberField(name, ((Number) value).longValue());
+		} else if (value != null) {
+			gen.writeStringField(name, value.toString());
+		}
+	}
+
+}
@@ -17,28 +17,23 @@
  *******************************************************************************/
 package cz.muni.ics.openid.connect.view;
 
-import com.google.gson.ExclusionStrategy;
-import com.google.gson.FieldAttributes;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import cz.muni.ics.openid.connect.model.UserInfo;
 import cz.muni.ics.openid.connect.service.ScopeClaimTranslationService;
 import java.io.IOException;
-import java.io.Writer;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.function.Predicate;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
-import org.springframework.validation.BeanPropertyBindingResult;
 import org.springframework.web.servlet.view.AbstractView;
 
 @Component(UserInfoView.VIEWNAME)
@@ -57,22 +52,6 @@ public class UserInfoView extends AbstractView {
 	@Autowired
 	private ScopeClaimTranslationService translator;
 
-	protected Gson gson = new GsonBuilder().setExclusionStrategies(new ExclusionStrategy() {
-
-		@Override
-		public boolean shouldSkipField(FieldAttributes f) {
-
-			return false;
-		}
-
-		@Override
-		public boolean shouldSkipClass(Class<?> clazz) {
-			// skip the JPA binding wrapper
-			return clazz.equals(BeanPropertyBindingResult.class);
-		}
-
-	}).create();
-
 	/*
 	 * (non-Javadoc)
 	 *
@@ -100,15 +79,21 @@ public class UserInfoView extends AbstractView {
 		if (model.get(REQUESTED_CLAIMS) != null) {
 			requestedClaims = jsonParser.parse((String) model.get(REQUESTED_CLAIMS)).getAsJsonObject();
 		}
-		JsonObject json = toJsonFromRequestObj(userInfo, scope, authorizedClaims, requestedClaims);
+		Predicate<String> claimFilter = claimFilterFromRequestObj(scope, authorizedClaims, requestedClaims);
 
-		writeOut(json, model, request, response);
+		writeOut(userInfo, claimFilter, model, request, response);
 	}
 
-	protected void writeOut(JsonObject json, Map<String, Object> model, HttpServletRequest request, HttpServletResponse response) {
+	/**
+	 * Write the filtered claims of the user info to the response.
+	 *
+	 * @param userInfo the UserInfo to write
+	 * @param claimFilter decides which claims of the UserInfo are written
+	 */
+	protected void writeOut(UserInfo userInfo, Predicate<String> claimFilter, Map<String, Object> model,
+							HttpServletRequest request, HttpServletResponse response) {
 		try {
-			Writer out = response.getWriter();
-			gson.toJson(json, out);
+			UserInfoJsonWriter.write(response.getOutputStream(), userInfo, claimFilter);
 		} catch (IOException e) {
 
 			log.error("IOException in UserInfoView.java: ", e);
@@ -118,44 +103,26 @@ public class UserInfoView extends AbstractView {
 	}
 
 	/**
-	 * Build a JSON response according to the request object received.
+	 * Build a filter of the claims according to the request object received.
 	 *
 	 * Claims requested in requestObj.userinfo.claims are added to any
 	 * claims corresponding to requested scopes, if any.
 	 *
-	 * @param ui the UserInfo to filter
 	 * @param scope the allowed scopes to filter by
 	 * @param authorizedClaims the claims authorized by the client or user
 	 * @param requestedClaims the claims requested in the RequestObject
-	 * @return the filtered JsonObject result
+	 * @return the filter accepting names of the claims to be returned
 	 */
-	private JsonObject toJsonFromRequestObj(UserInfo ui, Set<String> scope, JsonObject authorizedClaims, JsonObject requestedClaims) {
-
-		// get the base object
-		JsonObject obj = ui.toJson();
+	private Predicate<String> claimFilterFromRequestObj(Set<String> scope, JsonObject authorizedClaims, JsonObject requestedClaims) {
 
 		Set<String> allowedByScope = translator.getClaimsForScopeSet(scope);
 		Set<String> authorizedByClaims = extractUserInfoClaimsIntoSet(authorizedClaims);
 		Set<String> requestedByClaims = extractUserInfoClaimsIntoSet(requestedClaims);
 
-		// Filter claims by performing a manual intersection of claims that are allowed by the given scope, requested, and authorized.
-		// We cannot use Sets.intersection() or similar because Entry<> objects will evaluate to being unequal if their values are
-		// different, whereas we are only interested in matching the Entry<>'s key values.
-		JsonObject result = new JsonObject();
-		for (Entry<String, JsonElement> entry : obj.entrySet()) {
-
-			if (allowedByScope.contains(entry.getKey())
-					|| authorizedByClaims.contains(entry.getKey())) {
-				// it's allowed either by scope or by the authorized claims (either way is fine with us)
-
-				if (requestedByClaims.isEmpty() || requestedByClaims.contains(entry.getKey())) {
-					// the requested claims are empty (so we allow all), or they're not empty and this claim was specifically asked for
-					result.add(entry.getKey(), entry.getValue());
-				} // otherwise there were specific claims requested and this wasn't one of them
-			}
-		}
-
-		return result;
+		// the claim has to be allowed either by scope or by the authorized claims (either way is fine with us),
+		// and the requested claims are empty (so we allow all), or they're not empty and this claim was specifically asked for
+		return claim -> (allowedByScope.contains(claim) || authorizedByClaims.contains(claim))
+				&& (requestedByClaims.isEmpty() || requestedByClaims.contains(claim));
 	}
 
 	/**
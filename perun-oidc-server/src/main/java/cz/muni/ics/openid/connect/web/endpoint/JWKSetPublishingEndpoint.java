@@ -18,13 +18,17 @@
 package cz.muni.ics.openid.connect.web.endpoint;
 
 import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
 import cz.muni.ics.jwt.signer.service.JWTSigningAndValidationService;
-import cz.muni.ics.openid.connect.view.JWKSetView;
+import cz.muni.ics.util.PrecomputedJsonResponse;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
-import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.RequestMapping;
 
 @Controller
@@ -35,17 +39,20 @@ public class JWKSetPublishingEndpoint {
 	@Autowired
 	private JWTSigningAndValidationService jwtService;
 
+	private final PrecomputedJsonResponse jwkSet = new PrecomputedJsonResponse();
+
+	/**
+	 * Serve the public keys. The JWK set is serialized once and rebuilt only when the keys change.
+	 */
 	@RequestMapping(value = "/" + URL, produces = MediaType.APPLICATION_JSON_VALUE)
-	public String getJwk(Model m) {
+	public void getJwk(HttpServletRequest request, HttpServletResponse response) throws IOException {
 
 		// map from key id to key
 		Map<String, JWK> keys = jwtService.getAllPublicKeys();
 
 		// TODO: check if keys are empty, return a 404 here or just an empty list?
 
-		m.addAttribute("keys", keys);
-
-		return JWKSetView.VIEWNAME;
+		jwkSet.write(keys, () -> new JWKSet(new ArrayList<>(keys.values())).toString(), request, response);
 	}
 
 	/**
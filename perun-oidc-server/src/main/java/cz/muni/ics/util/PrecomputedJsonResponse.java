@@ -0,0 +1,105 @@
+package cz.muni.ics.util;
+
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
+import org.springframework.web.context.request.ServletWebRequest;
+
+/**
+ * Serialized JSON document which is built once and then served as bytes to all requests. The document is rebuilt
+ * only when the fingerprint of its inputs (compared by equals) changes. Response carries a strong ETag computed
+ * from the body, so clients sending the matching If-None-Match get 304 Not Modified without the body.
+ * With a check interval set, the fingerprint itself is computed at most once per interval and the document
+ * with its ETag is served without touching the inputs in between.
+ */
+public class PrecomputedJsonResponse {
+
+	private final long fingerprintCheckInterval;
+
+	private volatile Body body;
+	private volatile long fingerprintCheckedAt;
+
+	/**
+	 * Document whose fingerprint is compared on every request.
+	 */
+	public PrecomputedJsonResponse() {
+		this(0L);
+	}
+
+	/**
+	 * @param fingerprintCheckInterval Time in milliseconds for which the document is served without computing
+	 *                                 the fingerprint again. Zero or less means on every request.
+	 */
+	public PrecomputedJsonResponse(long fingerprintCheckInterval) {
+		this.fingerprintCheckInterval = fingerprintCheckInterval;
+	}
+
+	/**
+	 * Write the document to the response, or 304 if the client already has the current version.
+	 *
+	 * @param fingerprint Value identifying the inputs of the document, must implement equals.
+	 * @param builder Builds the serialized document, called only when the fingerprint has changed.
+	 */
+	public void write(Object fingerprint, Supplier<String> builder, HttpServletRequest request,
+					  HttpServletResponse response) throws IOException
+	{
+		write(() -> fingerprint, builder, request, response);
+	}
+
+	/**
+	 * Write the document to the response, or 304 if the client already has the current version.
+	 *
+	 * @param fingerprint Computes the value identifying the inputs of the document (must implement equals), called
+	 *                    at most once per the check interval.
+	 * @param builder Builds the serialized document, called only when the fingerprint has changed.
+	 */
+	public void write(Supplier<?> fingerprint, Supplier<String> builder, HttpServletRequest request,
+					  HttpServletResponse response) throws IOException
+	{
+		Body current = get(fingerprint, builder);
+		if (new ServletWebRequest(request, response).checkNotModified(current.etag)) {
+			return;
+		}
+
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		response.setContentLength(current.bytes.length);
+		response.getOutputStream().write(current.bytes);
+	}
+
+	private Body get(Supplier<?> fingerprintSupplier, Supplier<String> builder) {
+		Body current = body;
+		long now = System.currentTimeMillis();
+		if (current != null && now - fingerprintCheckedAt < fingerprintCheckInterval) {
+			return current;
+		}
+
+		Object fingerprint = fingerprintSupplier.get();
+		if (current == null || !current.fingerprint.equals(fingerprint)) {
+			// concurrent rebuilds produce the same body, so the last write can win
+			current = new Body(fingerprint, builder.get().getBytes(StandardCharsets.UTF_8));
+			body = current;
+		}
+		fingerprintCheckedAt = now;
+		return current;
+	}
+
+	private static class Body {
+
+		private final Object fingerprint;
+		private final byte[] bytes;
+		private final String etag;
+
+		private Body(Object fingerprint, byte[] bytes) {
+			this.fingerprint = fingerprint;
+			this.bytes = bytes;
+			this.etag = '"' + Hashing.sha256().hashBytes(bytes).toString() + '"';
+		}
+
+	}
+
+}
@@ -0,0 +1,30 @@
+package cz.muni.ics.util;
+
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Computes fixed-length digests of token values. The digest is stored next to the token and indexed, so the
+ * tokens can be looked up without comparing the whole (possibly several kB long) serialized JWT.
+ *
+ * Digest is a lowercase hex encoded SHA-256 of the UTF-8 bytes of the value, which equals to the output of
+ * {@code SHA2(value, 256)} in MySQL and {@code encode(sha256(convert_to(value, 'UTF8')), 'hex')} in PostgreSQL.
+ */
+public final class TokenHashUtils {
+
+	private TokenHashUtils() { }
+
+	/**
+	 * Compute digest of the token value.
+	 *
+	 * @param tokenValue Serialized token.
+	 * @return Hex encoded SHA-256 digest, NULL if value is NULL.
+	 */
+	public static String hash(String tokenValue) {
+		if (tokenValue == null) {
+			return null;
+		}
+		return Hashing.sha256().hashString(tokenValue, StandardCharsets.UTF_8).toString();
+	}
+
+}
@@ -0,0 +1,132 @@
+package cz.muni.ics.jwt.signer.service.impl;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.springframework.test.web.client.ExpectedCount.once;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+import com.google.common.base.Ticker;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import cz.muni.ics.jwt.signer.service.JWTSigningAndValidationService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+public class TestJWKSetCacheService {
+
+	private static final String JWKS_URI = "https://client.example.com/jwks";
+
+	private final FakeTicker ticker = new FakeTicker();
+
+	private MockRestServiceServer server;
+	private JWKSetCacheService service;
+	private String jwks;
+
+	@Before
+	public void prepare() throws JOSEException {
+		RestTemplate restTemplate = new RestTemplate();
+		server = MockRestServiceServer.bindTo(restTemplate).build();
+		service = new JWKSetCacheService(restTemplate, Runnable::run, ticker);
+		jwks = new JWKSet(new RSAKeyGenerator(2048).keyID("rsa1").generate()).toPublicJWKSet().toString();
+	}
+
+	@Test
+	public void validatorAndEncrypterFromSingleFetch() {
+		server.expect(once(), requestTo(JWKS_URI))
+				.andExpect(method(HttpMethod.GET))
+				.andRespond(withSuccess(jwks, MediaType.APPLICATION_JSON));
+
+		assertThat(service.getValidator(JWKS_URI), is(notNullValue()));
+		assertThat(service.getEncrypter(JWKS_URI), is(notNullValue()));
+		assertThat(service.getValidator(JWKS_URI).getAllPublicKeys().containsKey("rsa1"), is(true));
+
+		server.verify();
+	}
+
+	@Test
+	public void failedFetch_notRepeatedWithinTtl() {
+		server.expect(once(), requestTo(JWKS_URI)).andRespond(withServerError());
+
+		assertThat(service.getValidator(JWKS_URI), is(nullValue()));
+		assertThat(service.getEncrypter(JWKS_URI), is(nullValue()));
+
+		server.verify();
+	}
+
+	@Test
+	public void failedFetch_retriedAfterTtl() {
+		server.expect(once(), requestTo(JWKS_URI)).andRespond(withServerError());
+		server.expect(once(), requestTo(JWKS_URI)).andRespond(withSuccess(jwks, MediaType.APPLICATION_JSON));
+
+		assertThat(service.getValidator(JWKS_URI), is(nullValue()));
+		ticker.advance(JWKSetCacheService.FAILED_FETCH_TTL_MILLIS + 1L);
+
+		assertThat(service.getValidator(JWKS_URI), is(notNullValue()));
+
+		server.verify();
+	}
+
+	@Test
+	public void failedRefresh_lastKeysKept() {
+		server.expect(once(), requestTo(JWKS_URI)).andRespond(withSuccess(jwks, MediaType.APPLICATION_JSON));
+		server.expect(once(), requestTo(JWKS_URI)).andRespond(withServerError());
+		JWTSigningAndValidationService validator = service.getValidator(JWKS_URI);
+
+		ticker.advance(JWKSetCacheService.DEFAULT_REFRESH_MILLIS + 1L);
+
+		// refresh is made (synchronously in this test) and fails
+		assertThat(service.getValidator(JWKS_URI), is(validator));
+		assertThat(service.getValidator(JWKS_URI), is(validator));
+		assertThat(service.getEncrypter(JWKS_URI), is(notNullValue()));
+
+		server.verify();
+	}
+
+	@Test
+	public void refreshMillis() {
+		HttpHeaders headers = new HttpHeaders();
+		assertThat(JWKSetCacheService.getRefreshMillis(headers), is(equalTo(JWKSetCacheService.DEFAULT_REFRESH_MILLIS)));
+
+		headers.setCacheControl("public, max-age=600");
+		assertThat(JWKSetCacheService.getRefreshMillis(headers), is(equalTo(600000L)));
+
+		headers.setCacheControl("max-age=5");
+		assertThat(JWKSetCacheService.getRefreshMillis(headers), is(equalTo(JWKSetCacheService.MIN_REFRESH_MILLIS)));
+
+		headers.setCacheControl("max-age=604800");
+		assertThat(JWKSetCacheService.getRefreshMillis(headers), is(equalTo(JWKSetCacheService.MAX_REFRESH_MILLIS)));
+
+		headers.setCacheControl("no-store");
+		assertThat(JWKSetCacheService.getRefreshMillis(headers), is(equalTo(JWKSetCacheService.MIN_REFRESH_MILLIS)));
+	}
+
+	private static class FakeTicker extends Ticker {
+
+		private final AtomicLong nanos = new AtomicLong();
+
+		@Override
+		public long read() {
+			return nanos.get();
+		}
+
+		void advance(long millis) {
+			nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+		}
+
+	}
+
+}
@@ -0,0 +1,105 @@
+package cz.muni.ics.oauth2.model;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import cz.muni.ics.oauth2.model.convert.OAuth2AuthenticationStringConverter;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+public class AuthenticationHolderEntityTest {
+
+	private OAuth2Authentication authentication;
+
+	@Before
+	public void prepare() {
+		Map<String, Serializable> extensions = new HashMap<>();
+		extensions.put("nonce", "abc");
+		OAuth2Request request = new OAuth2Request(ImmutableMap.of("response_type", "code"), "client",
+				ImmutableSet.<GrantedAuthority>of(new SimpleGrantedAuthority("ROLE_CLIENT")), true,
+				ImmutableSet.of("openid", "profile"), ImmutableSet.of("resource"), "https://client/cb",
+				ImmutableSet.of("code"), extensions);
+
+		SamlAuthenticationDetails details = new SamlAuthenticationDetails("https://idp", "https://sp",
+				ImmutableMap.of("eppn", new String[] { "user@idp" }),
+				Collections.singletonList(new AuthenticationStatement(Collections.singletonList("https://idp"),
+						"urn:acr", "2026-01-01T00:00:00.000Z")));
+		SavedUserAuthentication user = new SavedUserAuthentication();
+		user.setName("user");
+		user.setAuthenticated(true);
+		user.setAuthorities(ImmutableSet.of(new SimpleGrantedAuthority("ROLE_USER")));
+		user.setAcr("urn:acr");
+		user.setAuthTime(1000L);
+		user.setAuthenticationDetails(details);
+
+		authentication = new OAuth2Authentication(request, user);
+	}
+
+	@Test
+	public void compact() {
+		AuthenticationHolderEntity holder = new AuthenticationHolderEntity();
+		holder.setAuthentication(authentication);
+
+		holder.compact();
+
+		assertThat(holder.isCompact(), is(true));
+		assertThat(holder.getScope(), is(nullValue()));
+		assertThat(holder.getClientId(), is(equalTo("client")));
+		assertThat(holder.getUserAuth().getName(), is(equalTo("user")));
+		assertThat(holder.getUserName(), is(equalTo("user")));
+		assertThat(holder.getAuthentication().getOAuth2Request().getScope(),
+				is(equalTo(ImmutableSet.of("openid", "profile"))));
+	}
+
+	@Test
+	public void compactRoundTrip() {
+		AuthenticationHolderEntity holder = new AuthenticationHolderEntity();
+		holder.setAuthentication(authentication);
+		holder.compact();
+		OAuth2AuthenticationStringConverter converter = new OAuth2AuthenticationStringConverter();
+
+		OAuth2Authentication loaded = converter.convertToEntityAttribute(
+				converter.convertToDatabaseColumn(holder.getCompactAuthentication()));
+
+		OAuth2Request request = loaded.getOAuth2Request();
+		assertThat(request.getClientId(), is(equalTo("client")));
+		assertThat(request.isApproved(), is(true));
+		assertThat(request.getRedirectUri(), is(equalTo("https://client/cb")));
+		assertThat(request.getScope(), is(equalTo(ImmutableSet.of("openid", "profile"))));
+		assertThat(request.getResourceIds(), is(equalTo(ImmutableSet.of("resource"))));
+		assertThat(request.getResponseTypes(), is(equalTo(ImmutableSet.of("code"))));
+		assertThat(request.getRequestParameters().get("response_type"), is(equalTo("code")));
+		assertThat(request.getExtensions().get("nonce"), is(equalTo("abc")));
+		assertThat(request.getAuthorities().iterator().next().getAuthority(), is(equalTo("ROLE_CLIENT")));
+
+		SavedUserAuthentication user = (SavedUserAuthentication) loaded.getUserAuthentication();
+		assertThat(user, is(notNullValue()));
+		assertThat(user.getName(), is(equalTo("user")));
+		assertThat(user.isAuthenticated(), is(true));
+		assertThat(user.getAcr(), is(equalTo("urn:acr")));
+		assertThat(user.getAuthTime(), is(equalTo(1000L)));
+		assertThat(user.getAuthorities().iterator().next().getAuthority(), is(equalTo("ROLE_USER")));
+		assertThat(user.getAuthenticationDetails().getRemoteEntityID(), is(equalTo("https://idp")));
+		assertThat(user.getAuthenticationDetails().getAttributes().get("eppn")[0], is(equalTo("user@idp")));
+	}
+
+	@Test
+	public void unsupportedVersion() {
+		assertThat(new OAuth2AuthenticationStringConverter().convertToEntityAttribute("{\"v\":999}"),
+				is(nullValue()));
+	}
+
+}
@@ -0,0 +1,71 @@
+package cz.muni.ics.oauth2.repository.impl;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import cz.muni.ics.oauth2.model.AuthenticationHolderEntity;
+import cz.muni.ics.oauth2.model.AuthorizationCodeEntity;
+import cz.muni.ics.oauth2.model.DeviceCode;
+import cz.muni.ics.oauth2.repository.AuthorizationCodeRepository;
+import java.util.Collections;
+import java.util.Date;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestInMemoryCodeStore {
+
+	private AuthorizationCodeRepository authorizationCodes;
+	private DeviceCodeRepository deviceCodes;
+
+	@Before
+	public void prepare() {
+		InMemoryCodeStore store = new InMemoryCodeStore(true, 100, 60);
+		authorizationCodes = store.getAuthorizationCodeRepository();
+		deviceCodes = store.getDeviceCodeRepository();
+	}
+
+	@Test
+	public void authorizationCode_consumed() {
+		AuthorizationCodeEntity code = new AuthorizationCodeEntity("code", new AuthenticationHolderEntity(),
+				new Date(System.currentTimeMillis() + 60000L));
+		authorizationCodes.save(code);
+
+		AuthorizationCodeEntity found = authorizationCodes.getByCode("code");
+		authorizationCodes.remove(found);
+
+		assertThat(found.getId(), is(notNullValue()));
+		assertThat(authorizationCodes.getByCode("code"), is(nullValue()));
+	}
+
+	@Test
+	public void authorizationCode_expired() {
+		AuthorizationCodeEntity code = new AuthorizationCodeEntity("code", new AuthenticationHolderEntity(),
+				new Date(System.currentTimeMillis() - 1000L));
+		authorizationCodes.save(code);
+
+		assertThat(authorizationCodes.getExpiredCodes().size(), is(equalTo(1)));
+		assertThat(authorizationCodes.getByCode("code"), is(nullValue()));
+	}
+
+	@Test
+	public void deviceCode_lookups() {
+		DeviceCode code = deviceCodes.save(new DeviceCode("device", "USER", Collections.singleton("openid"),
+				"client", Collections.emptyMap()));
+
+		code.setApproved(true);
+		deviceCodes.save(code);
+
+		assertThat(deviceCodes.getByUserCode("USER").isApproved(), is(true));
+		assertThat(deviceCodes.getByDeviceCode("device").getId(), is(equalTo(code.getId())));
+
+		deviceCodes.remove(code);
+
+		assertThat(deviceCodes.getById(code.getId()), is(nullValue()));
+		assertThat(deviceCodes.getByDeviceCode("device"), is(nullValue()));
+		assertThat(deviceCodes.getByUserCode("USER"), is(nullValue()));
+	}
+
+}
@@ -0,0 +1,161 @@
+package cz.muni.ics.oauth2.repository.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import cz.muni.ics.oauth2.model.AuthenticationHolderEntity;
+import cz.muni.ics.oauth2.model.SavedUserAuthentication;
+import cz.muni.ics.openid.connect.config.ConfigurationPropertiesBean;
+import java.io.Serializable;
+import java.util.Collections;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = { TestDatabaseConfiguration.class,
+		TestJpaAuthenticationHolderRepository.HolderRepositoryConfiguration.class })
+@Transactional
+public class TestJpaAuthenticationHolderRepository {
+
+	@Autowired
+	private JpaAuthenticationHolderRepository repository;
+
+	@Autowired
+	private ConfigurationPropertiesBean config;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Before
+	public void setUp() {
+		config.setCompactAuthenticationHolders(false);
+	}
+
+	@Test
+	public void testSave_compactStorage() {
+		config.setCompactAuthenticationHolders(true);
+
+		Long id = repository.save(createHolder("user1")).getId();
+		entityManager.flush();
+		entityManager.clear();
+
+		AuthenticationHolderEntity found = repository.getById(id);
+		assertTrue(found.isCompact());
+		assertEquals("user1", found.getUserName());
+		assertEquals("user1", found.getUserAuth().getName());
+		assertEquals(ImmutableSet.of("openid", "profile"), found.getAuthentication().getOAuth2Request().getScope());
+		assertEquals("code", found.getAuthentication().getOAuth2Request().getRequestParameters().get("response_type"));
+		assertEquals(0L, countRows("authentication_holder_scope", "owner_id", id));
+		assertEquals(0L, countRows("authentication_holder_request_parameter", "owner_id", id));
+		assertEquals(0L, countRows("saved_user_auth", "name", "user1"));
+	}
+
+	@Test
+	public void testSave_separateTables() {
+		Long id = repository.save(createHolder("user1")).getId();
+		entityManager.flush();
+		entityManager.clear();
+
+		AuthenticationHolderEntity found = repository.getById(id);
+		assertFalse(found.isCompact());
+		assertEquals("user1", found.getUserAuth().getName());
+		assertEquals(ImmutableSet.of("openid", "profile"), found.getAuthentication().getOAuth2Request().getScope());
+		assertEquals("code", found.getAuthentication().getOAuth2Request().getRequestParameters().get("response_type"));
+		assertEquals(2L, countRows("authentication_holder_scope", "owner_id", id));
+		assertEquals(1L, countRows("saved_user_auth", "name", "user1"));
+	}
+
+	@Test
+	public void testCompactExistingHolder() {
+		Long id = repository.save(createHolder("user1")).getId();
+		entityManager.flush();
+		entityManager.clear();
+
+		// same steps as the compaction task
+		AuthenticationHolderEntity holder = repository.getById(id);
+		SavedUserAuthentication userAuth = holder.getUserAuth();
+		holder.compact();
+		entityManager.flush();
+		entityManager.remove(userAuth);
+		entityManager.flush();
+		entityManager.clear();
+
+		AuthenticationHolderEntity found = repository.getById(id);
+		assertTrue(found.isCompact());
+		assertEquals("user1", found.getUserAuth().getName());
+		assertEquals("client", found.getClientId());
+		assertEquals(ImmutableSet.of("openid", "profile"), found.getAuthentication().getOAuth2Request().getScope());
+		assertEquals(0L, countRows("authentication_holder_scope", "owner_id", id));
+		assertEquals(0L, countRows("saved_user_auth", "name", "user1"));
+	}
+
+	@Test
+	public void testUpdateCompactHolder() {
+		config.setCompactAuthenticationHolders(true);
+		AuthenticationHolderEntity holder = repository.save(createHolder("user1"));
+
+		holder.setApproved(false);
+		Long id = repository.save(holder).getId();
+		entityManager.flush();
+		entityManager.clear();
+
+		AuthenticationHolderEntity found = repository.getById(id);
+		assertTrue(found.isCompact());
+		assertFalse(found.isApproved());
+		assertNull(found.getScope());
+	}
+
+	private long countRows(String table, String column, Object value) {
+		return ((Number) entityManager.createNativeQuery("SELECT COUNT(*) FROM " + table + " WHERE " + column + " = ?1")
+				.setParameter(1, value).getSingleResult()).longValue();
+	}
+
+	private AuthenticationHolderEntity createHolder(String name) {
+		OAuth2Request request = new OAuth2Request(ImmutableMap.of("response_type", "code"), "client",
+				ImmutableSet.<GrantedAuthority>of(new SimpleGrantedAuthority("ROLE_CLIENT")), true,
+				ImmutableSet.of("openid", "profile"), Collections.emptySet(), "https://client/cb",
+				ImmutableSet.of("code"), Collections.<String, Serializable>emptyMap());
+
+		SavedUserAuthentication user = new SavedUserAuthentication();
+		user.setName(name);
+		user.setAuthenticated(true);
+		user.setAuthorities(ImmutableSet.of(new SimpleGrantedAuthority("ROLE_USER")));
+
+		AuthenticationHolderEntity holder = new AuthenticationHolderEntity();
+		holder.setAuthentication(new OAuth2Authentication(request, user));
+		return holder;
+	}
+
+	public static class HolderRepositoryConfiguration {
+
+		@Bean
+		public JpaAuthenticationHolderRepository holderRepository() {
+			return new JpaAuthenticationHolderRepository();
+		}
+
+		@Bean
+		public ConfigurationPropertiesBean configurationPropertiesBean() {
+			ConfigurationPropertiesBean config = new ConfigurationPropertiesBean();
+			config.setIssuer("https://issuer.example.org/");
+			return config;
+		}
+
+	}
+
+}
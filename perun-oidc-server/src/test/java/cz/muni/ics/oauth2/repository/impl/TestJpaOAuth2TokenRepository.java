@@ -1,12 +1,18 @@
 package cz.muni.ics.oauth2.repository.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.PlainJWT;
 import cz.muni.ics.oauth2.model.AuthenticationHolderEntity;
 import cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity;
 import cz.muni.ics.oauth2.model.OAuth2RefreshTokenEntity;
 import cz.muni.ics.oauth2.model.SavedUserAuthentication;
+import cz.muni.ics.util.TokenHashUtils;
 import java.util.Set;
+import java.util.UUID;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import org.junit.Before;
@@ -68,6 +74,70 @@ public class TestJpaOAuth2TokenRepository {
 		assertEquals(5, tokens.size());
 	}
 	
+	@Test
+	public void testGetAccessTokenByValue() {
+		OAuth2AccessTokenEntity token = new OAuth2AccessTokenEntity();
+		token.setJwtValue(createJwt());
+		token = repository.saveAccessToken(token);
+
+		OAuth2AccessTokenEntity found = repository.getAccessTokenByValue(token.getValue());
+		assertNotNull(found);
+		assertEquals(token.getId(), found.getId());
+		assertNull(repository.getAccessTokenByValue(createJwt().serialize()));
+	}
+
+	@Test
+	public void testGetRefreshTokenByValue() {
+		OAuth2RefreshTokenEntity token = new OAuth2RefreshTokenEntity();
+		token.setJwt(createJwt());
+		token = repository.saveRefreshToken(token);
+
+		OAuth2RefreshTokenEntity found = repository.getRefreshTokenByValue(token.getValue());
+		assertNotNull(found);
+		assertEquals(token.getId(), found.getId());
+		assertNull(repository.getRefreshTokenByValue(createJwt().serialize()));
+	}
+
+	@Test
+	public void testGetAccessTokenByValue_withoutHash() {
+		OAuth2AccessTokenEntity token = new OAuth2AccessTokenEntity();
+		token.setJwtValue(createJwt());
+		// stored without the digest like by a node of the previous version
+		token = entityManager.merge(token);
+		entityManager.flush();
+
+		OAuth2AccessTokenEntity found = repository.getAccessTokenByValue(token.getValue());
+		assertNotNull(found);
+		assertEquals(token.getId(), found.getId());
+
+		entityManager.flush();
+		entityManager.clear();
+		assertEquals(TokenHashUtils.hash(token.getValue()),
+				entityManager.find(OAuth2AccessTokenEntity.class, token.getId()).getTokenHash());
+	}
+
+	@Test
+	public void testGetRefreshTokenByValue_withoutHash() {
+		OAuth2RefreshTokenEntity token = new OAuth2RefreshTokenEntity();
+		token.setJwt(createJwt());
+		// stored without the digest like by a node of the previous version
+		token = entityManager.merge(token);
+		entityManager.flush();
+
+		OAuth2RefreshTokenEntity found = repository.getRefreshTokenByValue(token.getValue());
+		assertNotNull(found);
+		assertEquals(token.getId(), found.getId());
+
+		entityManager.flush();
+		entityManager.clear();
+		assertEquals(TokenHashUtils.hash(token.getValue()),
+				entityManager.find(OAuth2RefreshTokenEntity.class, token.getId()).getTokenHash());
+	}
+
+	private PlainJWT createJwt() {
+		return new PlainJWT(new JWTClaimsSet.Builder().jwtID(UUID.randomUUID().toString()).build());
+	}
+
 	private OAuth2AccessTokenEntity createAccessToken(String name) {
 		SavedUserAuthentication userAuth = new SavedUserAuthentication();
 		userAuth.setName(name);
@@ -0,0 +1,119 @@
+package cz.muni.ics.oauth2.repository.impl;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assume.assumeTrue;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.JWTParser;
+import com.nimbusds.jwt.PlainJWT;
+import cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity;
+import cz.muni.ics.util.TokenHashUtils;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Compares the lookup of access tokens by the digest column with the lookup by the whole token value for
+ * growing number of stored tokens. Runs only when enabled by {@code -Dbenchmark=true}, numbers measured on the
+ * embedded database are only indicative - the difference is more visible on MySQL and PostgreSQL, where the
+ * token value can be indexed only partially (if at all).
+ */
+@Slf4j
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = { TestDatabaseConfiguration.class })
+@Transactional
+public class TestJpaOAuth2TokenRepositoryLookupBenchmark {
+
+	private static final int[] TABLE_SIZES = { 1000, 10000, 50000 };
+	private static final int LOOKUPS = 1000;
+	private static final int WARMUP_LOOKUPS = 200;
+	private static final int FLUSH_SIZE = 1000;
+
+	@Autowired
+	private JpaOAuth2TokenRepository repository;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Before
+	public void setUp() {
+		assumeTrue("Benchmark is not enabled", Boolean.getBoolean("benchmark"));
+		entityManager.createNativeQuery("CREATE INDEX IF NOT EXISTS at_th_idx ON access_token(token_hash)")
+				.executeUpdate();
+	}
+
+	@Test
+	public void benchmarkLookupByValue() throws Exception {
+		Random random = new Random(42);
+		List<String> values = new ArrayList<>();
+		for (int size : TABLE_SIZES) {
+			insertTokens(values, size - values.size());
+
+			lookupByHash(values, random, WARMUP_LOOKUPS);
+			lookupByValue(values, random, WARMUP_LOOKUPS);
+
+			long hashNanos = lookupByHash(values, random, LOOKUPS);
+			long valueNanos = lookupByValue(values, random, LOOKUPS);
+			log.info("{} tokens - lookup by hash: {}us, lookup by value: {}us (average of {} lookups)", size,
+					hashNanos / LOOKUPS / 1000, valueNanos / LOOKUPS / 1000, LOOKUPS);
+		}
+	}
+
+	private void insertTokens(List<String> values, int count) {
+		Date expiration = new Date(System.currentTimeMillis() + 3600000L);
+		for (int i = 0; i < count; i++) {
+			PlainJWT jwt = new PlainJWT(new JWTClaimsSet.Builder().jwtID(UUID.randomUUID().toString())
+					.subject("user" + i).expirationTime(expiration).build());
+			OAuth2AccessTokenEntity token = new OAuth2AccessTokenEntity();
+			token.setJwtValue(jwt);
+			token.setTokenHash(TokenHashUtils.hash(jwt.serialize()));
+			token.setExpiration(expiration);
+			entityManager.persist(token);
+			values.add(jwt.serialize());
+			if (i % FLUSH_SIZE == 0) {
+				entityManager.flush();
+				entityManager.clear();
+			}
+		}
+		entityManager.flush();
+		entityManager.clear();
+	}
+
+	private long lookupByHash(List<String> values, Random random, int lookups) {
+		long start = System.nanoTime();
+		for (int i = 0; i < lookups; i++) {
+			assertNotNull(repository.getAccessTokenByValue(values.get(random.nextInt(values.size()))));
+		}
+		long took = System.nanoTime() - start;
+		entityManager.clear();
+		return took;
+	}
+
+	private long lookupByValue(List<String> values, Random random, int lookups) throws Exception {
+		long start = System.nanoTime();
+		for (int i = 0; i < lookups; i++) {
+			TypedQuery<OAuth2AccessTokenEntity> query = entityManager.createNamedQuery(
+					OAuth2AccessTokenEntity.QUERY_BY_TOKEN_VALUE, OAuth2AccessTokenEntity.class);
+			query.setParameter(OAuth2AccessTokenEntity.PARAM_TOKEN_VALUE,
+					JWTParser.parse(values.get(random.nextInt(values.size()))));
+			assertNotNull(query.getSingleResult());
+		}
+		long took = System.nanoTime() - start;
+		entityManager.clear();
+		return took;
+	}
+
+}
@@ -0,0 +1,102 @@
+package cz.muni.ics.oauth2.service.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import cz.muni.ics.oauth2.model.AuthenticationHolderEntity;
+import cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity;
+import cz.muni.ics.util.TokenHashUtils;
+import java.util.Date;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+public class TestAccessTokenCache {
+
+	private static final String TOKEN_VALUE = "access_token_value";
+
+	private OAuth2AccessTokenEntity token;
+	private OAuth2Authentication authentication;
+	private AccessTokenRevocationList revocationList;
+
+	@Before
+	public void prepare() {
+		authentication = mock(OAuth2Authentication.class);
+		AuthenticationHolderEntity holder = mock(AuthenticationHolderEntity.class);
+		when(holder.getAuthentication()).thenReturn(authentication);
+
+		token = mock(OAuth2AccessTokenEntity.class);
+		when(token.getValue()).thenReturn(TOKEN_VALUE);
+		when(token.getAuthenticationHolder()).thenReturn(holder);
+		when(token.getExpiration()).thenReturn(new Date(System.currentTimeMillis() + 60000L));
+
+		revocationList = mock(AccessTokenRevocationList.class);
+		when(revocationList.isEnabled()).thenReturn(true);
+	}
+
+	@Test
+	public void get_cached() {
+		AccessTokenCache cache = new AccessTokenCache(true, 10, 60, revocationList);
+		cache.put(token);
+
+		AccessTokenCache.CachedAccessToken cached = cache.get(TOKEN_VALUE);
+
+		assertThat(cached, is(notNullValue()));
+		assertThat(cached.getToken(), is(sameInstance(token)));
+		assertThat(cached.getAuthentication(), is(sameInstance(authentication)));
+	}
+
+	@Test
+	public void get_disabled() {
+		AccessTokenCache cache = new AccessTokenCache(false, 10, 60, null);
+		cache.put(token);
+
+		assertThat(cache.get(TOKEN_VALUE), is(nullValue()));
+	}
+
+	@Test
+	public void get_expired() {
+		AccessTokenCache cache = new AccessTokenCache(true, 10, 60, revocationList);
+		when(token.getExpiration()).thenReturn(new Date(System.currentTimeMillis() - 1000L));
+		cache.put(token);
+
+		assertThat(cache.get(TOKEN_VALUE), is(nullValue()));
+	}
+
+	@Test
+	public void get_invalidated() {
+		AccessTokenCache cache = new AccessTokenCache(true, 10, 60, revocationList);
+		cache.put(token);
+		cache.invalidate(TOKEN_VALUE);
+
+		assertThat(cache.get(TOKEN_VALUE), is(nullValue()));
+	}
+
+	@Test
+	public void get_revoked() {
+		AccessTokenCache cache = new AccessTokenCache(true, 10, 60, revocationList);
+		cache.put(token);
+		when(revocationList.isRevokedHash(TokenHashUtils.hash(TOKEN_VALUE))).thenReturn(true);
+
+		assertThat(cache.get(TOKEN_VALUE), is(nullValue()));
+		assertThat(cache.getSize(), is(0L));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void create_withoutRevocationList() {
+		new AccessTokenCache(true, 10, 60, null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void create_withDisabledRevocationList() {
+		when(revocationList.isEnabled()).thenReturn(false);
+
+		new AccessTokenCache(true, 10, 60, revocationList);
+	}
+
+}
@@ -0,0 +1,128 @@
+package cz.muni.ics.oauth2.service.impl;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import cz.muni.ics.oauth2.model.ClientChangeEntity;
+import cz.muni.ics.oauth2.model.ClientDetailsEntity;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.function.Function;
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestClientDetailsCache {
+
+	private static final String CLIENT_ID = "client";
+
+	private EntityManager manager;
+	private TypedQuery<Long> maxIdQuery;
+	private TypedQuery<ClientChangeEntity> changesQuery;
+	private Function<String, ClientDetailsEntity> loader;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void prepare() {
+		manager = mock(EntityManager.class);
+		maxIdQuery = mock(TypedQuery.class);
+		changesQuery = mock(TypedQuery.class);
+		when(manager.createNamedQuery(ClientChangeEntity.QUERY_MAX_ID, Long.class)).thenReturn(maxIdQuery);
+		when(manager.createNamedQuery(ClientChangeEntity.QUERY_AFTER_ID, ClientChangeEntity.class))
+				.thenReturn(changesQuery);
+		when(maxIdQuery.getSingleResult()).thenReturn(10L);
+		when(changesQuery.getResultList()).thenReturn(Collections.emptyList());
+
+		ClientDetailsEntity client = new ClientDetailsEntity();
+		client.setId(1L);
+		client.setClientId(CLIENT_ID);
+		client.setScope(new HashSet<>(Collections.singleton("openid")));
+		loader = mock(Function.class);
+		when(loader.apply(CLIENT_ID)).thenReturn(client);
+	}
+
+	@Test
+	public void get_cached() {
+		ClientDetailsCache cache = new ClientDetailsCache(true, 10, 60, 60, manager);
+
+		ClientDetailsEntity first = cache.get(CLIENT_ID, loader);
+		ClientDetailsEntity second = cache.get(CLIENT_ID, loader);
+
+		verify(loader, times(1)).apply(CLIENT_ID);
+		assertThat(first, is(equalTo(second)));
+		assertThat(first, is(not(sameInstance(second))));
+	}
+
+	@Test
+	public void get_copyModificationNotCached() {
+		ClientDetailsCache cache = new ClientDetailsCache(true, 10, 60, 60, manager);
+
+		cache.get(CLIENT_ID, loader).getScope().add("offline_access");
+
+		assertThat(cache.get(CLIENT_ID, loader).getScope(), is(equalTo(Collections.singleton("openid"))));
+	}
+
+	@Test
+	public void get_notFound() {
+		ClientDetailsCache cache = new ClientDetailsCache(true, 10, 60, 60, manager);
+
+		assertThat(cache.get("unknown", loader), is(nullValue()));
+		assertThat(cache.getSize(), is(0L));
+	}
+
+	@Test
+	public void get_disabled() {
+		ClientDetailsCache cache = new ClientDetailsCache(false, 10, 60, 60, manager);
+
+		cache.get(CLIENT_ID, loader);
+		cache.get(CLIENT_ID, loader);
+
+		verify(loader, times(2)).apply(CLIENT_ID);
+	}
+
+	@Test
+	public void invalidate() {
+		ClientDetailsCache cache = new ClientDetailsCache(true, 10, 60, 60, manager);
+		cache.get(CLIENT_ID, loader);
+
+		cache.invalidate(CLIENT_ID);
+		cache.get(CLIENT_ID, loader);
+
+		verify(loader, times(2)).apply(CLIENT_ID);
+	}
+
+	@Test
+	public void invalidate_changedOnOtherNode() {
+		ClientDetailsCache cache = new ClientDetailsCache(true, 10, 60, 0, manager);
+		cache.get(CLIENT_ID, loader);
+		when(changesQuery.getResultList()).thenReturn(
+				Collections.singletonList(new ClientChangeEntity(11L, CLIENT_ID, new Date())));
+
+		cache.get(CLIENT_ID, loader);
+
+		verify(changesQuery).setParameter(eq(ClientChangeEntity.PARAM_ID), any());
+		verify(loader, times(2)).apply(CLIENT_ID);
+	}
+
+	@Test
+	public void recordChange() {
+		ClientDetailsCache cache = new ClientDetailsCache(true, 10, 60, 60, manager);
+
+		cache.recordChange(CLIENT_ID);
+
+		verify(manager).persist(any(ClientChangeEntity.class));
+	}
+
+}
@@ -16,6 +16,7 @@
 package cz.muni.ics.oauth2.service.impl;
 
 import com.google.common.collect.ImmutableMap;
+import com.nimbusds.jwt.JWTClaimsSet;
 import cz.muni.ics.oauth2.model.OAuth2AccessTokenEntity;
 import cz.muni.ics.oauth2.model.OAuth2RefreshTokenEntity;
 import cz.muni.ics.oauth2.service.IntrospectionResultAssembler;
@@ -26,6 +27,7 @@ import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.OAuth2Request;
 
 import java.text.ParseException;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Map;
 import java.util.Set;
@@ -240,6 +242,56 @@ public class TestDefaultIntrospectionResultAssembler {
 		assertThat(result, is(equalTo(expected)));
 	}
 
+	@Test
+	public void shouldAssembleExpectedResultForAccessTokenClaims() {
+		// given
+		long exp = System.currentTimeMillis() / 1000L + 3600L;
+		JWTClaimsSet claims = new JWTClaimsSet.Builder()
+				.issuer("https://issuer/")
+				.subject("sub")
+				.audience("clientId")
+				.expirationTime(new Date(exp * 1000L))
+				.jwtID("jti")
+				.claim("azp", "clientId")
+				.claim("scope", "foo bar")
+				.build();
+
+		Set<String> authScopes = scopes("foo", "bar", "baz");
+
+		// when
+		Map<String, Object> result = assembler.assembleFrom(claims, authScopes);
+
+		// then `username` and `auth_time` are not available without the database
+		Map<String, Object> expected = new ImmutableMap.Builder<String, Object>()
+				.put("exp", exp)
+				.put("scope", "bar foo")
+				.put("active", Boolean.TRUE)
+				.put("client_id", "clientId")
+				.put("token_type", "Bearer")
+				.put("sub", "sub")
+				.put("aud", Collections.singletonList("clientId"))
+				.put("iss", "https://issuer/")
+				.put("jti", "jti")
+				.build();
+		assertThat(result, is(equalTo(expected)));
+	}
+
+	@Test
+	public void shouldAssembleInactiveResultForExpiredAccessTokenClaims() {
+		// given
+		JWTClaimsSet claims = new JWTClaimsSet.Builder()
+				.expirationTime(new Date(System.currentTimeMillis() - 1000L))
+				.claim("azp", "clientId")
+				.claim("scope", "foo bar")
+				.build();
+
+		// when
+		Map<String, Object> result = assembler.assembleFrom(claims, scopes("foo", "bar"));
+
+		// then
+		assertThat(result, is(equalTo(ImmutableMap.<String, Object>of("active", Boolean.FALSE))));
+	}
+
 	private OAuth2AccessTokenEntity accessToken(Date exp, Set<String> scopes, String tokenType, OAuth2Authentication authentication) {
 		OAuth2AccessTokenEntity accessToken = mock(OAuth2AccessTokenEntity.class, RETURNS_DEEP_STUBS);
 		given(accessToken.getExpiration()).willReturn(exp);
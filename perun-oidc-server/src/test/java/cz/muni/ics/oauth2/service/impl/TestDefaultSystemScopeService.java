@@ -21,6 +21,10 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 import com.google.common.collect.Sets;
 import cz.muni.ics.oauth2.model.SystemScope;
@@ -103,13 +107,6 @@ public class TestDefaultSystemScopeService {
 		allScopesWithValue = Sets.newHashSet(defaultDynScope1, defaultDynScope2, defaultScope1, defaultScope2, dynScope1, restrictedScope1);
 		allScopeStringsWithValue = Sets.newHashSet(defaultDynScope1String, defaultDynScope2String, defaultScope1String, defaultScope2String, dynScope1String, restrictedScope1String);
 
-		Mockito.when(repository.getByValue(defaultDynScope1String)).thenReturn(defaultDynScope1);
-		Mockito.when(repository.getByValue(defaultDynScope2String)).thenReturn(defaultDynScope2);
-		Mockito.when(repository.getByValue(defaultScope1String)).thenReturn(defaultScope1);
-		Mockito.when(repository.getByValue(defaultScope2String)).thenReturn(defaultScope2);
-		Mockito.when(repository.getByValue(dynScope1String)).thenReturn(dynScope1);
-		Mockito.when(repository.getByValue(restrictedScope1String)).thenReturn(restrictedScope1);
-
 		Mockito.when(repository.getAll()).thenReturn(allScopes);
 	}
 
@@ -154,6 +151,44 @@ public class TestDefaultSystemScopeService {
 		assertThat(service.fromStrings(allScopeStringsWithValue), equalTo(allScopesWithValue));
 	}
 
+	@Test
+	public void getByValue_fromRegistry() {
+
+		assertThat(service.getByValue(defaultScope1String), equalTo(defaultScope1));
+		assertThat(service.getByValue(restrictedScope1String), equalTo(restrictedScope1));
+		assertThat(service.getByValue("unknown"), is(nullValue()));
+
+		verify(repository, never()).getByValue(anyString());
+		verify(repository, times(1)).getAll();
+	}
+
+	@Test
+	public void getByValue_returnsCopy() {
+
+		service.getByValue(defaultScope1String).setRestricted(false);
+		service.getDefaults().forEach(scope -> scope.setDescription("modified"));
+
+		assertThat(service.getByValue(defaultScope1String), equalTo(defaultScope1));
+		assertThat(service.getDefaults().contains(defaultScope1), is(true));
+	}
+
+	@Test
+	public void save_reloadsRegistry() {
+
+		SystemScope newScope = new SystemScope("new");
+		newScope.setDefaultScope(true);
+		Mockito.when(repository.save(newScope)).thenReturn(newScope);
+		assertThat(service.getByValue("new"), is(nullValue()));
+
+		Set<SystemScope> withNew = Sets.newHashSet(allScopes);
+		withNew.add(newScope);
+		Mockito.when(repository.getAll()).thenReturn(withNew);
+		service.save(newScope);
+
+		assertThat(service.getByValue("new"), equalTo(newScope));
+		assertThat(service.getDefaults().contains(newScope), is(true));
+	}
+
 	@Test
 	public void toStrings() {
 
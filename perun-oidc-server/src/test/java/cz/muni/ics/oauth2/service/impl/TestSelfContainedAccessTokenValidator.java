@@ -0,0 +1,120 @@
+package cz.muni.ics.oauth2.service.impl;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.PlainJWT;
+import com.nimbusds.jwt.SignedJWT;
+import cz.muni.ics.jwt.signer.service.JWTSigningAndValidationService;
+import cz.muni.ics.openid.connect.config.ConfigurationPropertiesBean;
+import java.util.Date;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+
+public class TestSelfContainedAccessTokenValidator {
+
+	private static final String ISSUER = "https://issuer/";
+	private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes();
+
+	private JWTSigningAndValidationService jwtService;
+	private ConfigurationPropertiesBean configBean;
+	private AccessTokenRevocationList revocationList;
+
+	@Before
+	public void prepare() {
+		jwtService = mock(JWTSigningAndValidationService.class);
+		when(jwtService.validateSignature(any(SignedJWT.class))).thenReturn(true);
+		configBean = mock(ConfigurationPropertiesBean.class);
+		when(configBean.getIssuer()).thenReturn(ISSUER);
+		revocationList = mock(AccessTokenRevocationList.class);
+	}
+
+	@Test
+	public void validate_valid() throws Exception {
+		String token = accessToken(new Date(System.currentTimeMillis() + 60000L), "openid");
+
+		JWTClaimsSet claims = validator(true).validate(token);
+
+		assertThat(claims, is(notNullValue()));
+		assertThat(claims.getJWTID(), is(equalTo("jti")));
+	}
+
+	@Test
+	public void validate_disabled() throws Exception {
+		String token = accessToken(new Date(System.currentTimeMillis() + 60000L), "openid");
+
+		assertThat(validator(false).validate(token), is(nullValue()));
+	}
+
+	@Test
+	public void validate_invalidSignature() throws Exception {
+		when(jwtService.validateSignature(any(SignedJWT.class))).thenReturn(false);
+		String token = accessToken(new Date(System.currentTimeMillis() + 60000L), "openid");
+
+		assertThat(validator(true).validate(token), is(nullValue()));
+	}
+
+	@Test
+	public void validate_notAccessToken() throws Exception {
+		String idToken = sign(new JWTClaimsSet.Builder()
+				.issuer(ISSUER)
+				.jwtID("jti")
+				.audience("clientId")
+				.expirationTime(new Date(System.currentTimeMillis() + 60000L))
+				.build());
+		String plain = new PlainJWT(new JWTClaimsSet.Builder().issuer(ISSUER).build()).serialize();
+
+		assertThat(validator(true).validate(idToken), is(nullValue()));
+		assertThat(validator(true).validate(plain), is(nullValue()));
+		assertThat(validator(true).validate("not a token"), is(nullValue()));
+	}
+
+	@Test(expected = InvalidTokenException.class)
+	public void validate_expired() throws Exception {
+		String token = accessToken(new Date(System.currentTimeMillis() - 1000L), "openid");
+
+		validator(true).validate(token);
+	}
+
+	@Test(expected = InvalidTokenException.class)
+	public void validate_revoked() throws Exception {
+		String token = accessToken(new Date(System.currentTimeMillis() + 60000L), "openid");
+		when(revocationList.isRevoked(token)).thenReturn(true);
+
+		validator(true).validate(token);
+	}
+
+	private SelfContainedAccessTokenValidator validator(boolean enabled) {
+		return new SelfContainedAccessTokenValidator(enabled, jwtService, configBean, revocationList);
+	}
+
+	private String accessToken(Date expiration, String scope) throws JOSEException {
+		return sign(new JWTClaimsSet.Builder()
+				.issuer(ISSUER)
+				.subject("sub")
+				.jwtID("jti")
+				.expirationTime(expiration)
+				.claim("azp", "clientId")
+				.claim("scope", scope)
+				.build());
+	}
+
+	private String sign(JWTClaimsSet claims) throws JOSEException {
+		SignedJWT jwt = new SignedJWT(new JWSHeader(JWSAlgorithm.HS256), claims);
+		jwt.sign(new MACSigner(SECRET));
+		return jwt.serialize();
+	}
+
+}
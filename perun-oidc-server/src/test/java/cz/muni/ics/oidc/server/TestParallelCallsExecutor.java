@@ -0,0 +1,170 @@
+package cz.muni.ics.oidc.server;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestParallelCallsExecutor {
+
+	private ParallelCallsExecutor executor;
+
+	@Before
+	public void prepare() {
+		executor = new ParallelCallsExecutor("test", 4, 500L, false);
+	}
+
+	@After
+	public void destroy() {
+		executor.destroy();
+	}
+
+	@Test
+	public void results_inOrderOfItems() {
+		List<Integer> results = executor.map(Arrays.asList(40, 0, 20, 10), delay -> {
+			sleep(delay);
+			return delay * 2;
+		});
+
+		assertThat(results, is(equalTo(Arrays.asList(80, 0, 40, 20))));
+		assertThat(executor.getFanOutsCount(), is(equalTo(1L)));
+		assertThat(executor.getTasksCount(), is(equalTo(4L)));
+	}
+
+	@Test
+	public void nestedCalls_executedInWorkerThread() {
+		String caller = Thread.currentThread().getName();
+
+		List<List<String>> results = executor.map(Arrays.asList(1, 2), item -> {
+			String worker = Thread.currentThread().getName();
+			List<String> nested = executor.map(Arrays.asList(1, 2, 3), i -> Thread.currentThread().getName());
+			nested.forEach(thread -> assertThat(thread, is(equalTo(worker))));
+			return nested;
+		});
+
+		results.forEach(threads -> assertThat(threads.get(0), is(not(equalTo(caller)))));
+		// only the outer call has been fanned out
+		assertThat(executor.getFanOutsCount(), is(equalTo(1L)));
+	}
+
+	@Test
+	public void nestedCallsOfOtherExecutor_fannedOut() {
+		ParallelCallsExecutor other = new ParallelCallsExecutor("other", 4, 500L, false);
+		try {
+			executor.map(Arrays.asList(1, 2), item -> other.map(Arrays.asList(1, 2, 3), i -> i));
+
+			assertThat(executor.getFanOutsCount(), is(equalTo(1L)));
+			assertThat(other.getFanOutsCount(), is(equalTo(2L)));
+		} finally {
+			other.destroy();
+		}
+	}
+
+	@Test
+	public void timeout_failsAndCancelsCalls() throws InterruptedException {
+		CountDownLatch interrupted = new CountDownLatch(1);
+
+		try {
+			executor.map(Arrays.asList(0L, 5000L), delay -> {
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException e) {
+					interrupted.countDown();
+				}
+				return delay;
+			});
+			fail("RuntimeException expected");
+		} catch (RuntimeException e) {
+			assertThat(e.getCause().getClass().getSimpleName(), is(equalTo("TimeoutException")));
+		}
+
+		assertTrue("slow call has not been cancelled", interrupted.await(1, TimeUnit.SECONDS));
+		assertThat(executor.getTimeoutsCount(), is(equalTo(1L)));
+	}
+
+	@Test
+	public void callTimeout_onlySlowCallReplaced() throws InterruptedException {
+		CountDownLatch interrupted = new CountDownLatch(1);
+
+		List<Long> results = executor.map(Arrays.asList(0L, 5000L, 100L), delay -> {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+			}
+			return delay;
+		}, delay -> -1L);
+
+		assertThat(results, is(equalTo(Arrays.asList(0L, -1L, 100L))));
+		assertTrue("slow call has not been cancelled", interrupted.await(1, TimeUnit.SECONDS));
+		assertThat(executor.getTimeoutsCount(), is(equalTo(1L)));
+	}
+
+	@Test
+	public void callTimeout_singleCallReplaced() {
+		List<Long> results = executor.map(Collections.singletonList(5000L), delay -> {
+			sleep(delay);
+			return delay;
+		}, delay -> -1L);
+
+		assertThat(results, is(equalTo(Collections.singletonList(-1L))));
+		assertThat(executor.getTimeoutsCount(), is(equalTo(1L)));
+	}
+
+	@Test
+	public void callTimeout_measuredFromStartOfCall() {
+		ParallelCallsExecutor single = new ParallelCallsExecutor("single", 2, 300L, false);
+		try {
+			// the last call waits for a permit longer than the call timeout, but finishes in time itself
+			List<Long> results = single.map(Arrays.asList(200L, 200L, 200L, 200L), delay -> {
+				sleep(delay);
+				return delay;
+			}, delay -> -1L);
+
+			assertThat(results, is(equalTo(Arrays.asList(200L, 200L, 200L, 200L))));
+			assertThat(single.getTimeoutsCount(), is(equalTo(0L)));
+		} finally {
+			single.destroy();
+		}
+	}
+
+	@Test
+	public void failedCall_originalExceptionThrown() {
+		IllegalStateException expected = new IllegalStateException("failed");
+		AtomicReference<Throwable> thrown = new AtomicReference<>();
+
+		try {
+			executor.map(Arrays.asList(1, 2), item -> {
+				if (item == 2) {
+					throw expected;
+				}
+				return item;
+			});
+		} catch (RuntimeException e) {
+			thrown.set(e);
+		}
+
+		assertThat(thrown.get(), is(expected));
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
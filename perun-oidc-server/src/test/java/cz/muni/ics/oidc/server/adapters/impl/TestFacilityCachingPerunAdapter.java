@@ -0,0 +1,167 @@
+package cz.muni.ics.oidc.server.adapters.impl;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import cz.muni.ics.oidc.models.Facility;
+import cz.muni.ics.oidc.models.PerunAttributeValue;
+import cz.muni.ics.oidc.server.adapters.PerunAdapterMethods;
+import cz.muni.ics.oidc.server.cache.SharedCacheTier;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestFacilityCachingPerunAdapter {
+
+	private static final String CLIENT_ID = "client";
+	private static final Long FACILITY_ID = 1L;
+
+	private final Facility facility = new Facility(FACILITY_ID, "facility", "description");
+	private final PerunAttributeValue attrA = new PerunAttributeValue("a", "java.lang.String",
+			JsonNodeFactory.instance.textNode("A"));
+
+	private InMemorySharedCacheTier sharedCacheTier;
+	private PerunAdapterMethods primary;
+	private FacilityCachingPerunAdapter adapter;
+
+	@Before
+	public void prepare() {
+		sharedCacheTier = new InMemorySharedCacheTier();
+		primary = mockPrimary();
+		adapter = createAdapter(primary);
+	}
+
+	@Test
+	public void facility_cachedAfterMiss() {
+		assertThat(adapter.getFacilityByClientId(CLIENT_ID), is(equalTo(facility)));
+		assertThat(adapter.getFacilityByClientId(CLIENT_ID), is(equalTo(facility)));
+
+		verify(primary, times(1)).getFacilityByClientId(CLIENT_ID);
+		assertThat(adapter.getFacilitiesCacheStats().hitCount(), is(equalTo(1L)));
+		assertThat(adapter.getSharedMisses(), is(equalTo(1L)));
+	}
+
+	@Test
+	public void unknownFacility_notCached() {
+		assertThat(adapter.getFacilityByClientId("unknown"), is(nullValue()));
+		assertThat(adapter.getFacilityByClientId("unknown"), is(nullValue()));
+
+		verify(primary, times(2)).getFacilityByClientId("unknown");
+		assertThat(sharedCacheTier.entries.isEmpty(), is(true));
+	}
+
+	@Test
+	public void facility_fromSharedTierOfOtherNode() {
+		adapter.getFacilityByClientId(CLIENT_ID);
+
+		PerunAdapterMethods otherPrimary = mockPrimary();
+		FacilityCachingPerunAdapter otherNode = createAdapter(otherPrimary);
+
+		assertThat(otherNode.getFacilityByClientId(CLIENT_ID), is(equalTo(facility)));
+		verify(otherPrimary, never()).getFacilityByClientId(any());
+		assertThat(otherNode.getSharedHits(), is(equalTo(1L)));
+	}
+
+	@Test
+	public void facilityAttributes_onlyMissingFetched() {
+		adapter.getFacilityAttributeValues(FACILITY_ID, Collections.singletonList("a"));
+		Map<String, PerunAttributeValue> values = adapter.getFacilityAttributeValues(FACILITY_ID, Arrays.asList("a", "b"));
+
+		assertThat(values, is(equalTo(Collections.singletonMap("a", attrA))));
+		verify(primary).getFacilityAttributeValues(FACILITY_ID, new HashSet<>(Collections.singletonList("a")));
+		verify(primary).getFacilityAttributeValues(FACILITY_ID, new HashSet<>(Collections.singletonList("b")));
+
+		// value missing in Perun is cached too
+		adapter.getFacilityAttributeValues(FACILITY_ID, Arrays.asList("a", "b"));
+		verify(primary, times(2)).getFacilityAttributeValues(anyLong(), anyCollection());
+	}
+
+	@Test
+	public void facilityAttributes_fromSharedTierOfOtherNode() {
+		adapter.getFacilityAttributeValues(FACILITY_ID, Arrays.asList("a", "b"));
+
+		PerunAdapterMethods otherPrimary = mockPrimary();
+		FacilityCachingPerunAdapter otherNode = createAdapter(otherPrimary);
+
+		assertThat(otherNode.getFacilityAttributeValue(FACILITY_ID, "a"), is(equalTo(attrA)));
+		assertThat(otherNode.getFacilityAttributeValue(FACILITY_ID, "b"), is(nullValue()));
+		verify(otherPrimary, never()).getFacilityAttributeValues(anyLong(), anyCollection());
+	}
+
+	@Test
+	public void withoutSharedTier_cachedLocally() {
+		FacilityCachingPerunAdapter localOnly = new FacilityCachingPerunAdapter(60L, 100L);
+		localOnly.setAdapterPrimary(primary);
+
+		localOnly.getFacilityByClientId(CLIENT_ID);
+		localOnly.getFacilityByClientId(CLIENT_ID);
+
+		verify(primary, times(1)).getFacilityByClientId(CLIENT_ID);
+		assertThat(localOnly.getSharedMisses(), is(equalTo(0L)));
+	}
+
+	private FacilityCachingPerunAdapter createAdapter(PerunAdapterMethods adapterPrimary) {
+		FacilityCachingPerunAdapter created = new FacilityCachingPerunAdapter(60L, 100L);
+		created.setSharedCacheTier(sharedCacheTier);
+		created.setAdapterPrimary(adapterPrimary);
+		return created;
+	}
+
+	private PerunAdapterMethods mockPrimary() {
+		PerunAdapterMethods methods = mock(PerunAdapterMethods.class);
+		when(methods.getFacilityByClientId(CLIENT_ID)).thenReturn(facility);
+		when(methods.getFacilityAttributeValues(eq(FACILITY_ID), anyCollection())).thenAnswer(invocation -> {
+			Collection<String> names = invocation.getArgument(1);
+			Map<String, PerunAttributeValue> values = new HashMap<>();
+			if (names.contains("a")) {
+				values.put("a", attrA);
+			}
+			return values;
+		});
+		return methods;
+	}
+
+	private static class InMemorySharedCacheTier implements SharedCacheTier {
+
+		private final Map<String, String> entries = new HashMap<>();
+
+		@Override
+		public String get(String key) {
+			return entries.get(key);
+		}
+
+		@Override
+		public void put(String key, String value, long ttlMillis) {
+			entries.put(key, value);
+		}
+
+		@Override
+		public void invalidate(String key) {
+			entries.remove(key);
+		}
+
+		@Override
+		public void invalidateByPrefix(String keyPrefix) {
+			entries.keySet().removeIf(key -> key.startsWith(keyPrefix));
+		}
+
+	}
+
+}
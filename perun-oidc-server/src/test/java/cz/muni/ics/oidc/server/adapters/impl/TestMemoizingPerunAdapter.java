@@ -0,0 +1,95 @@
+package cz.muni.ics.oidc.server.adapters.impl;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import cz.muni.ics.oidc.models.Group;
+import cz.muni.ics.oidc.server.adapters.PerunAdapter;
+import cz.muni.ics.oidc.server.adapters.PerunAdapterMethods;
+import cz.muni.ics.oidc.server.adapters.PerunAdapterMethodsRpc;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMemoizingPerunAdapter {
+
+	private PerunAdapter delegate;
+	private PerunAdapterMethodsRpc rpc;
+	private MemoizingPerunAdapter adapter;
+
+	@Before
+	public void prepare() {
+		delegate = mock(PerunAdapter.class);
+		rpc = mock(PerunAdapterMethodsRpc.class);
+		when(delegate.getAdapterRpc()).thenReturn(rpc);
+		adapter = new MemoizingPerunAdapter(delegate);
+	}
+
+	@Test
+	public void sameCall_executedOnce() {
+		Group group = new Group();
+		when(delegate.getGroupsWhereUserIsActiveWithUniqueNames(1L, 2L)).thenReturn(new HashSet<>(Collections.singleton(group)));
+
+		Set<Group> first = adapter.getGroupsWhereUserIsActiveWithUniqueNames(1L, 2L);
+		first.clear();
+		Set<Group> second = adapter.getGroupsWhereUserIsActiveWithUniqueNames(1L, 2L);
+
+		verify(delegate, times(1)).getGroupsWhereUserIsActiveWithUniqueNames(1L, 2L);
+		assertThat(second.size(), is(equalTo(1)));
+		assertThat(adapter.getCallsCount(), is(equalTo(2L)));
+		assertThat(adapter.getSavedCallsCount(), is(equalTo(1L)));
+	}
+
+	@Test
+	public void differentArgs_executedSeparately() {
+		adapter.getGroupsWhereUserIsActiveWithUniqueNames(1L, 2L);
+		adapter.getGroupsWhereUserIsActiveWithUniqueNames(1L, 3L);
+
+		verify(delegate, times(2)).getGroupsWhereUserIsActiveWithUniqueNames(any(), any());
+		assertThat(adapter.getSavedCallsCount(), is(equalTo(0L)));
+	}
+
+	@Test
+	public void failedCall_notRemembered() {
+		when(delegate.getUserGroupsIds(1L, 2L))
+				.thenThrow(new IllegalStateException())
+				.thenReturn(Collections.singleton(5L));
+
+		try {
+			adapter.getUserGroupsIds(1L, 2L);
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		assertThat(adapter.getUserGroupsIds(1L, 2L), is(equalTo(Collections.singleton(5L))));
+	}
+
+	@Test
+	public void rpcWrites_notRemembered() {
+		adapter.getAdapterRpc().setUserAttribute(1L, null);
+		adapter.getAdapterRpc().setUserAttribute(1L, null);
+
+		verify(rpc, times(2)).setUserAttribute(1L, null);
+	}
+
+	@Test
+	public void fallbackCalls_remembered() {
+		PerunAdapterMethods fallback = mock(PerunAdapterMethods.class);
+		when(delegate.getAdapterFallback()).thenReturn(fallback);
+
+		MemoizingPerunAdapter withFallback = new MemoizingPerunAdapter(delegate);
+		withFallback.getAdapterFallback().getUserGroupsIds(1L, 2L);
+		withFallback.getAdapterFallback().getUserGroupsIds(1L, 2L);
+
+		verify(fallback, times(1)).getUserGroupsIds(1L, 2L);
+	}
+
+}
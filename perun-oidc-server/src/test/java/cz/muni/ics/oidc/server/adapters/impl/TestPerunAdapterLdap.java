@@ -0,0 +1,137 @@
+package cz.muni.ics.oidc.server.adapters.impl;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import cz.muni.ics.oidc.models.PerunAttributeValue;
+import cz.muni.ics.oidc.server.AttributeMappingsService;
+import cz.muni.ics.oidc.server.connectors.PerunConnectorLdap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.ldap.client.api.search.FilterBuilder;
+import org.apache.directory.ldap.client.template.EntryMapper;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPerunAdapterLdap {
+
+	private static final String ATTR = "groupAffiliations";
+	private static final String LDAP_ATTR = "groupAffiliations";
+
+	private final List<Entry> entries = new ArrayList<>();
+	private final List<String> filters = new ArrayList<>();
+
+	private PerunConnectorLdap connectorLdap;
+	private PerunAdapterLdap adapter;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void prepare() {
+		Properties mappings = new Properties();
+		mappings.setProperty(ATTR + ".mapping.ldap", LDAP_ATTR);
+		mappings.setProperty(ATTR + ".type", "string");
+
+		connectorLdap = mock(PerunConnectorLdap.class);
+		when(connectorLdap.search(any(), any(FilterBuilder.class), any(SearchScope.class), any(String[].class),
+				any(EntryMapper.class))).thenAnswer(invocation -> {
+					FilterBuilder filter = invocation.getArgument(1);
+					filters.add(filter.toString());
+					EntryMapper<Object> mapper = invocation.getArgument(4);
+					List<Object> result = new ArrayList<>();
+					for (Entry entry : entries) {
+						result.add(mapper.map(entry));
+					}
+					return result;
+				});
+
+		adapter = new PerunAdapterLdap();
+		adapter.setConnectorLdap(connectorLdap);
+		adapter.setGroupAttributesMappingService(new AttributeMappingsService(new String[] { ATTR }, null, mappings));
+	}
+
+	@Test
+	public void groupAttributeValues_singleSearchWithOrFilter() throws LdapException {
+		entries.add(group(1L, "value-1"));
+		entries.add(group(3L, "value-3"));
+
+		adapter.getGroupAttributeValues(Arrays.asList(1L, 3L, 1L), Collections.singletonList(ATTR));
+
+		assertThat(filters, is(equalTo(Collections.singletonList(
+				"(&(objectClass=perunGroup)(|(perunGroupId=1)(perunGroupId=3)))"))));
+	}
+
+	@Test
+	public void groupAttributeValues_mixedResults() throws LdapException {
+		entries.add(group(1L, "value-1"));
+		entries.add(group(2L, null));
+		// entry without the group id is skipped
+		entries.add(new DefaultEntry("cn=unknown,dc=perun", "objectClass: perunGroup"));
+
+		Map<Long, Map<String, PerunAttributeValue>> values = adapter.getGroupAttributeValues(
+				Arrays.asList(1L, 2L, 3L), Collections.singletonList(ATTR));
+
+		assertThat(values.size(), is(equalTo(2)));
+		assertThat(values.get(1L).get(ATTR).valueAsString(), is(equalTo("value-1")));
+		assertThat(values.get(2L).get(ATTR).isNullValue(), is(true));
+		// group not found in LDAP
+		assertThat(values.get(3L), is(nullValue()));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void groupAttributeValues_emptyInput() {
+		assertThat(adapter.getGroupAttributeValues(Collections.emptyList(), Collections.singletonList(ATTR)).isEmpty(),
+				is(true));
+		assertThat(adapter.getGroupAttributeValues((List<Long>) null, Collections.singletonList(ATTR)).isEmpty(),
+				is(true));
+		verify(connectorLdap, never()).search(any(), any(FilterBuilder.class), any(SearchScope.class),
+				any(String[].class), any(EntryMapper.class));
+	}
+
+	@Test
+	public void groupAttributeValues_unknownAttribute_noSearch() {
+		Map<Long, Map<String, PerunAttributeValue>> values = adapter.getGroupAttributeValues(Arrays.asList(1L, 2L),
+				Collections.singletonList("unknown"));
+
+		assertThat(values.keySet(), is(equalTo(new HashSet<>(Arrays.asList(1L, 2L)))));
+		assertThat(values.get(1L).isEmpty(), is(true));
+		assertThat(filters.isEmpty(), is(true));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	@SuppressWarnings("unchecked")
+	public void groupAttributeValues_failedSearchPropagated() {
+		doThrow(new IllegalStateException("LDAP is not available")).when(connectorLdap).search(any(),
+				any(FilterBuilder.class), any(SearchScope.class), any(String[].class), any(EntryMapper.class));
+
+		adapter.getGroupAttributeValues(Arrays.asList(1L, 2L), Collections.singletonList(ATTR));
+	}
+
+	private static Entry group(Long id, String value) throws LdapException {
+		DefaultEntry entry = new DefaultEntry("perunGroupId=" + id + ",dc=perun",
+				"objectClass: perunGroup",
+				"perunGroupId: " + id);
+		if (value != null) {
+			entry.add(LDAP_ATTR, value);
+		}
+		return entry;
+	}
+
+}
@@ -0,0 +1,316 @@
+package cz.muni.ics.oidc.server.adapters.impl;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import cz.muni.ics.oidc.exceptions.BackendUnavailableException;
+import cz.muni.ics.oidc.server.adapters.PerunAdapterMethods;
+import cz.muni.ics.oidc.server.adapters.impl.PerunAdapterResilience.BackendGuard;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+public class TestPerunAdapterResilience {
+
+	private PerunAdapterMethods primary;
+	private PerunAdapterMethods fallback;
+	private PerunAdapterResilience resilience;
+
+	@Before
+	public void prepare() {
+		primary = mock(PerunAdapterMethods.class);
+		fallback = mock(PerunAdapterMethods.class);
+		resilience = new PerunAdapterResilience(true, 2, 60000L, 10, 100L, false, 10, 20L, 100);
+	}
+
+	@After
+	public void destroy() {
+		resilience.destroy();
+	}
+
+	@Test
+	public void failingPrimary_routedToFallback_breakerOpened() {
+		when(primary.getUserGroupsIds(1L, 2L)).thenThrow(new ResourceAccessException("connection refused"));
+		when(fallback.getUserGroupsIds(1L, 2L)).thenReturn(Collections.singleton(5L));
+		PerunAdapterMethods routed = resilience.routed(primary, fallback);
+
+		for (int i = 0; i < 3; i++) {
+			assertThat(routed.getUserGroupsIds(1L, 2L), is(equalTo(Collections.singleton(5L))));
+		}
+
+		// the third call is not made, the breaker is open after two failures
+		verify(primary, times(2)).getUserGroupsIds(1L, 2L);
+		verify(fallback, times(3)).getUserGroupsIds(1L, 2L);
+		BackendGuard primaryGuard = resilience.getGuards().stream()
+				.filter(guard -> guard.getRefused() > 0)
+				.findFirst()
+				.orElseThrow();
+		assertThat(primaryGuard.getState(), is(equalTo(BackendGuard.State.OPEN)));
+	}
+
+	@Test
+	public void unsupportedOperation_notCountedNorRouted() {
+		when(primary.getUserGroupsIds(1L, 2L)).thenThrow(new UnsupportedOperationException());
+		PerunAdapterMethods routed = resilience.routed(primary, fallback);
+
+		for (int i = 0; i < 3; i++) {
+			try {
+				routed.getUserGroupsIds(1L, 2L);
+				fail("UnsupportedOperationException expected");
+			} catch (UnsupportedOperationException e) {
+				// expected, handled by the adapter itself
+			}
+		}
+
+		verify(primary, times(3)).getUserGroupsIds(1L, 2L);
+		verify(fallback, times(0)).getUserGroupsIds(1L, 2L);
+	}
+
+	@Test
+	public void requestError_notCountedNorRouted() {
+		when(primary.getUserGroupsIds(1L, 2L)).thenThrow(new IllegalStateException("unexpected response"));
+		PerunAdapterMethods routed = resilience.routed(primary, fallback);
+
+		for (int i = 0; i < 3; i++) {
+			try {
+				routed.getUserGroupsIds(1L, 2L);
+				fail("IllegalStateException expected");
+			} catch (IllegalStateException e) {
+				// expected, not caused by the backend being unavailable
+			}
+		}
+
+		verify(primary, times(3)).getUserGroupsIds(1L, 2L);
+		verify(fallback, times(0)).getUserGroupsIds(1L, 2L);
+	}
+
+	@Test
+	public void isBackendFailure_onlyTransportErrors() {
+		assertThat(PerunAdapterResilience.isBackendFailure(new ResourceAccessException("timeout")), is(true));
+		assertThat(PerunAdapterResilience.isBackendFailure(
+				new RuntimeException("wrapped", new HttpServerErrorException(HttpStatus.BAD_GATEWAY))), is(true));
+		assertThat(PerunAdapterResilience.isBackendFailure(new BackendUnavailableException("open")), is(true));
+		assertThat(PerunAdapterResilience.isBackendFailure(
+				new RuntimeException("wrapped", new HttpClientErrorException(HttpStatus.NOT_FOUND))), is(false));
+		assertThat(PerunAdapterResilience.isBackendFailure(new NullPointerException()), is(false));
+	}
+
+	@Test(expected = BackendUnavailableException.class)
+	public void openBreakerWithoutFallback_callRefused() {
+		when(primary.getUserGroupsIds(1L, 2L)).thenThrow(new ResourceAccessException("connection refused"));
+		PerunAdapterMethods guarded = resilience.guarded(primary, PerunAdapterMethods.class);
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				guarded.getUserGroupsIds(1L, 2L);
+			} catch (IllegalStateException e) {
+				// expected
+			}
+		}
+
+		guarded.getUserGroupsIds(1L, 2L);
+	}
+
+	@Test
+	public void halfOpen_successfulTrialClosesBreaker() throws InterruptedException {
+		resilience = new PerunAdapterResilience(true, 2, 50L, 10, 100L, false, 10, 20L, 100);
+		PerunAdapterMethods guarded = openBreaker();
+		BackendGuard guard = resilience.getGuards().get(0);
+		assertThat(guard.getState(), is(equalTo(BackendGuard.State.OPEN)));
+
+		Thread.sleep(100L);
+		assertThat(guard.getState(), is(equalTo(BackendGuard.State.HALF_OPEN)));
+		doAnswer(invocation -> Collections.singleton(5L)).when(primary).getUserGroupsIds(1L, 2L);
+
+		assertThat(guarded.getUserGroupsIds(1L, 2L), is(equalTo(Collections.singleton(5L))));
+		assertThat(guard.getState(), is(equalTo(BackendGuard.State.CLOSED)));
+	}
+
+	@Test
+	public void halfOpen_failedTrialOpensBreakerAgain() throws InterruptedException {
+		resilience = new PerunAdapterResilience(true, 2, 50L, 10, 100L, false, 10, 20L, 100);
+		PerunAdapterMethods guarded = openBreaker();
+		BackendGuard guard = resilience.getGuards().get(0);
+
+		Thread.sleep(100L);
+		try {
+			guarded.getUserGroupsIds(1L, 2L);
+			fail("ResourceAccessException expected");
+		} catch (ResourceAccessException e) {
+			// expected, the trial call has failed
+		}
+
+		// a single failed trial is enough
+		assertThat(guard.getState(), is(equalTo(BackendGuard.State.OPEN)));
+		verify(primary, times(3)).getUserGroupsIds(1L, 2L);
+	}
+
+	@Test
+	public void halfOpen_onlySingleTrialCall() throws Exception {
+		resilience = new PerunAdapterResilience(true, 2, 50L, 10, 100L, false, 10, 20L, 100);
+		PerunAdapterMethods guarded = openBreaker();
+		Thread.sleep(100L);
+
+		CountDownLatch trialStarted = new CountDownLatch(1);
+		CountDownLatch trialRelease = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			trialStarted.countDown();
+			trialRelease.await(1, TimeUnit.SECONDS);
+			return Collections.singleton(5L);
+		}).when(primary).getUserGroupsIds(1L, 2L);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Set<Long>> trial = executor.submit(() -> guarded.getUserGroupsIds(1L, 2L));
+			assertTrue(trialStarted.await(1, TimeUnit.SECONDS));
+			try {
+				guarded.getUserGroupsIds(1L, 2L);
+				fail("BackendUnavailableException expected");
+			} catch (BackendUnavailableException e) {
+				// expected, waiting for the trial
+			}
+			trialRelease.countDown();
+			assertThat(trial.get(1, TimeUnit.SECONDS), is(equalTo(Collections.singleton(5L))));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void hedging_slowPrimary_fallbackResultUsed() {
+		resilience = new PerunAdapterResilience(true, 2, 60000L, 10, 100L, true, 5, 20L, 100);
+		when(primary.getUserGroupsIds(1L, 2L)).thenReturn(Collections.singleton(1L));
+		when(fallback.getUserGroupsIds(1L, 2L)).thenReturn(Collections.singleton(5L));
+		PerunAdapterMethods routed = resilience.routed(primary, fallback);
+		for (int i = 0; i < 5; i++) {
+			routed.getUserGroupsIds(1L, 2L);
+		}
+		doAnswer(invocation -> {
+			Thread.sleep(1000L);
+			return Collections.singleton(1L);
+		}).when(primary).getUserGroupsIds(1L, 2L);
+
+		assertThat(routed.getUserGroupsIds(1L, 2L), is(equalTo(Collections.singleton(5L))));
+		assertThat(resilience.getHedgedCalls(), is(equalTo(1L)));
+	}
+
+	@Test
+	public void hedging_fastPrimary_notHedged() {
+		resilience = new PerunAdapterResilience(true, 2, 60000L, 10, 100L, true, 5, 20L, 100);
+		when(primary.getUserGroupsIds(1L, 2L)).thenReturn(Collections.singleton(1L));
+		PerunAdapterMethods routed = resilience.routed(primary, fallback);
+
+		for (int i = 0; i < 50; i++) {
+			assertThat(routed.getUserGroupsIds(1L, 2L), is(equalTo(Collections.singleton(1L))));
+		}
+
+		// sub-millisecond latencies do not cause hedging thanks to the min delay
+		assertThat(resilience.getHedgedCalls(), is(equalTo(0L)));
+		verify(fallback, times(0)).getUserGroupsIds(1L, 2L);
+	}
+
+	@Test
+	public void hedging_bothFailed_fallbackNotCalledAgain() {
+		resilience = new PerunAdapterResilience(true, 5, 60000L, 10, 100L, true, 5, 20L, 100);
+		when(primary.getUserGroupsIds(1L, 2L)).thenReturn(Collections.singleton(1L));
+		PerunAdapterMethods routed = resilience.routed(primary, fallback);
+		for (int i = 0; i < 5; i++) {
+			routed.getUserGroupsIds(1L, 2L);
+		}
+		doAnswer(invocation -> {
+			Thread.sleep(200L);
+			throw new ResourceAccessException("read timeout");
+		}).when(primary).getUserGroupsIds(1L, 2L);
+		doAnswer(invocation -> {
+			throw new ResourceAccessException("connection refused");
+		}).when(fallback).getUserGroupsIds(1L, 2L);
+
+		try {
+			routed.getUserGroupsIds(1L, 2L);
+			fail("ResourceAccessException expected");
+		} catch (ResourceAccessException e) {
+			// expected
+		}
+
+		assertThat(resilience.getHedgedCalls(), is(equalTo(1L)));
+		verify(fallback, times(1)).getUserGroupsIds(1L, 2L);
+	}
+
+	@Test
+	public void hedging_busyThreads_callNotHedged() throws Exception {
+		// one concurrent call allowed, so there are two hedging threads
+		resilience = new PerunAdapterResilience(true, 2, 60000L, 1, 5000L, true, 5, 20L, 100);
+		when(primary.getUserGroupsIds(1L, 2L)).thenReturn(Collections.singleton(1L));
+		PerunAdapterMethods routed = resilience.routed(primary, fallback);
+		for (int i = 0; i < 5; i++) {
+			routed.getUserGroupsIds(1L, 2L);
+		}
+		CountDownLatch released = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			released.await(5, TimeUnit.SECONDS);
+			return Collections.singleton(1L);
+		}).when(primary).getUserGroupsIds(1L, 2L);
+		doAnswer(invocation -> {
+			released.await(5, TimeUnit.SECONDS);
+			return Collections.singleton(5L);
+		}).when(fallback).getUserGroupsIds(1L, 2L);
+
+		ExecutorService callers = Executors.newFixedThreadPool(2);
+		try {
+			Future<Set<Long>> hedged = callers.submit(() -> routed.getUserGroupsIds(1L, 2L));
+			waitFor(() -> resilience.getHedgedCalls() == 1L);
+			// both hedging threads are busy
+			Future<Set<Long>> notHedged = callers.submit(() -> routed.getUserGroupsIds(1L, 2L));
+			waitFor(() -> resilience.getHedgingSkipped() == 1L);
+			released.countDown();
+
+			assertThat(hedged.get(5, TimeUnit.SECONDS).isEmpty(), is(false));
+			assertThat(notHedged.get(5, TimeUnit.SECONDS), is(equalTo(Collections.singleton(1L))));
+			assertThat(resilience.getHedgedCalls(), is(equalTo(1L)));
+		} finally {
+			released.countDown();
+			callers.shutdownNow();
+		}
+	}
+
+	private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000L;
+		while (!condition.getAsBoolean()) {
+			assertTrue("condition not met in time", System.currentTimeMillis() < deadline);
+			Thread.sleep(5L);
+		}
+	}
+
+	private PerunAdapterMethods openBreaker() {
+		when(primary.getUserGroupsIds(1L, 2L)).thenThrow(new ResourceAccessException("connection refused"));
+		PerunAdapterMethods guarded = resilience.guarded(primary, PerunAdapterMethods.class);
+		for (int i = 0; i < 2; i++) {
+			try {
+				guarded.getUserGroupsIds(1L, 2L);
+			} catch (ResourceAccessException e) {
+				// expected
+			}
+		}
+		return guarded;
+	}
+
+}
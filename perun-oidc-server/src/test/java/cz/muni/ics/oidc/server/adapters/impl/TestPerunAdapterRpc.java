@@ -0,0 +1,134 @@
+package cz.muni.ics.oidc.server.adapters.impl;
+
+import static cz.muni.ics.oidc.server.connectors.PerunConnectorRpc.ATTRIBUTES_MANAGER;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import cz.muni.ics.oidc.models.PerunAttributeValue;
+import cz.muni.ics.oidc.server.AttributeMappingsService;
+import cz.muni.ics.oidc.server.ParallelCallsExecutor;
+import cz.muni.ics.oidc.server.connectors.PerunConnectorRpc;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPerunAdapterRpc {
+
+	private static final String ATTR = "groupAffiliations";
+	private static final String NAMESPACE = "urn:perun:group:attribute-def:def";
+	private static final String FRIENDLY_NAME = "groupAffiliations";
+
+	private PerunConnectorRpc connectorRpc;
+	private ParallelCallsExecutor executor;
+	private PerunAdapterRpc adapter;
+
+	@Before
+	public void prepare() {
+		Properties mappings = new Properties();
+		mappings.setProperty(ATTR + ".mapping.rpc", NAMESPACE + ':' + FRIENDLY_NAME);
+		mappings.setProperty(ATTR + ".type", "string");
+
+		connectorRpc = mock(PerunConnectorRpc.class);
+		when(connectorRpc.isEnabled()).thenReturn(true);
+		when(connectorRpc.post(eq(ATTRIBUTES_MANAGER), eq("getAttributes"), anyMap())).thenAnswer(invocation -> {
+			Map<String, Object> params = invocation.getArgument(2);
+			return groupAttributes((Long) params.get("group"));
+		});
+		executor = new ParallelCallsExecutor("test-rpc", 4, 5000L, false);
+
+		adapter = new PerunAdapterRpc();
+		adapter.setConnectorRpc(connectorRpc);
+		adapter.setParallelCallsExecutor(executor);
+		adapter.setGroupAttributesMappingService(new AttributeMappingsService(new String[] { ATTR }, null, mappings));
+	}
+
+	@After
+	public void destroy() {
+		executor.destroy();
+	}
+
+	@Test
+	public void groupAttributeValues_mixedResults() {
+		Map<Long, Map<String, PerunAttributeValue>> values = adapter.getGroupAttributeValues(
+				Arrays.asList(1L, 2L, 3L), Collections.singletonList(ATTR));
+
+		assertThat(values.keySet(), is(equalTo(new LinkedHashSet<>(Arrays.asList(1L, 2L, 3L)))));
+		assertThat(values.get(1L).get(ATTR).valueAsString(), is(equalTo("value-1")));
+		assertThat(values.get(2L).get(ATTR), is(nullValue()));
+		assertThat(values.get(3L).get(ATTR).valueAsString(), is(equalTo("value-3")));
+	}
+
+	@Test
+	public void groupAttributeValues_duplicateIdsFetchedOnce() {
+		Map<Long, Map<String, PerunAttributeValue>> values = adapter.getGroupAttributeValues(
+				Arrays.asList(1L, 1L, 3L), Collections.singletonList(ATTR));
+
+		assertThat(values.size(), is(equalTo(2)));
+		verify(connectorRpc, times(2)).post(eq(ATTRIBUTES_MANAGER), eq("getAttributes"), anyMap());
+	}
+
+	@Test
+	public void groupAttributeValues_emptyInput() {
+		assertThat(adapter.getGroupAttributeValues(Collections.emptyList(), Collections.singletonList(ATTR)).isEmpty(),
+				is(true));
+		assertThat(adapter.getGroupAttributeValues((List<Long>) null, Collections.singletonList(ATTR)).isEmpty(),
+				is(true));
+		verify(connectorRpc, never()).post(anyString(), anyString(), anyMap());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void groupAttributeValues_failedCallPropagated() {
+		doAnswer(invocation -> {
+			Map<String, Object> params = invocation.getArgument(2);
+			Long groupId = (Long) params.get("group");
+			if (groupId == 2L) {
+				throw new IllegalStateException("Perun is not available");
+			}
+			return groupAttributes(groupId);
+		}).when(connectorRpc).post(eq(ATTRIBUTES_MANAGER), eq("getAttributes"), anyMap());
+
+		// partial result would look like groups without the attribute, so the whole call fails
+		adapter.getGroupAttributeValues(Arrays.asList(1L, 2L, 3L), Collections.singletonList(ATTR));
+	}
+
+	private static JsonNode groupAttributes(Long groupId) {
+		ArrayNode attributes = JsonNodeFactory.instance.arrayNode();
+		if (groupId % 2 == 0) {
+			// the group has no value set
+			return attributes;
+		}
+		ObjectNode attribute = attributes.addObject();
+		attribute.put("id", 10L);
+		attribute.put("friendlyName", FRIENDLY_NAME);
+		attribute.put("namespace", NAMESPACE);
+		attribute.put("type", "java.lang.String");
+		attribute.put("displayName", "Group affiliations");
+		attribute.put("writable", true);
+		attribute.put("unique", false);
+		attribute.put("entity", "group");
+		attribute.put("value", "value-" + groupId);
+		return attributes;
+	}
+
+}
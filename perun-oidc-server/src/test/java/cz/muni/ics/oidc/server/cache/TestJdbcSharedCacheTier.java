@@ -0,0 +1,112 @@
+package cz.muni.ics.oidc.server.cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class TestJdbcSharedCacheTier {
+
+	private EmbeddedDatabase database;
+	private JdbcSharedCacheTier tier;
+
+	@Before
+	public void prepare() {
+		database = new EmbeddedDatabaseBuilder(new DefaultResourceLoader() {
+			@Override
+			public Resource getResource(String location) {
+				String sql;
+				try {
+					sql = new String(Files.readAllBytes(Paths.get("..", "perun-oidc-server-webapp", "src", "main",
+							"resources", "db", "hsql", location)), UTF_8);
+				} catch (IOException e) {
+					throw new RuntimeException("Failed to read sql-script " + location, e);
+				}
+
+				return new ByteArrayResource(sql.getBytes(UTF_8));
+			}
+		}).generateUniqueName(true).setScriptEncoding(UTF_8.name()).setType(EmbeddedDatabaseType.HSQL)
+				.addScripts("hsql_database_tables.sql").build();
+		tier = new JdbcSharedCacheTier(database);
+		tier.setBatchSize(2);
+	}
+
+	@After
+	public void destroy() {
+		database.shutdown();
+	}
+
+	@Test
+	public void put_storedAndOverwritten() {
+		tier.put("key", "value", 60000L);
+		assertThat(tier.get("key"), is(equalTo("value")));
+
+		tier.put("key", "other", 60000L);
+		assertThat(tier.get("key"), is(equalTo("other")));
+	}
+
+	@Test
+	public void expiredEntry_notReturned() {
+		tier.put("key", "value", -1000L);
+
+		assertThat(tier.get("key"), is(nullValue()));
+	}
+
+	@Test
+	public void invalidateByPrefix_removesMatchingEntries() {
+		tier.put("facility:1", "a", 60000L);
+		tier.put("facility:2", "b", 60000L);
+		tier.put("facility_attrs:1", "c", 60000L);
+
+		tier.invalidateByPrefix("facility:");
+
+		assertThat(tier.get("facility:1"), is(nullValue()));
+		assertThat(tier.get("facility:2"), is(nullValue()));
+		assertThat(tier.get("facility_attrs:1"), is(equalTo("c")));
+	}
+
+	@Test
+	public void invalidateByPrefix_wildcardsMatchedLiterally() {
+		tier.put("a_b%:1", "a", 60000L);
+		tier.put("axb%:1", "b", 60000L);
+		tier.put("a_b!:1", "c", 60000L);
+
+		tier.invalidateByPrefix("a_b%");
+
+		assertThat(tier.get("a_b%:1"), is(nullValue()));
+		assertThat(tier.get("axb%:1"), is(equalTo("b")));
+		assertThat(tier.get("a_b!:1"), is(equalTo("c")));
+	}
+
+	@Test
+	public void clearExpired_deletesOnlyExpiredEntries() {
+		for (int i = 0; i < 5; i++) {
+			tier.put("expired" + i, "value", -1000L);
+		}
+		tier.put("valid", "value", 60000L);
+
+		assertThat(tier.clearExpired(0L), is(equalTo(5)));
+		assertThat(countEntries(), is(equalTo(1)));
+		assertThat(tier.get("valid"), is(equalTo("value")));
+	}
+
+	private int countEntries() {
+		return new JdbcTemplate(database).queryForObject("SELECT COUNT(*) FROM shared_cache", Integer.class);
+	}
+
+}
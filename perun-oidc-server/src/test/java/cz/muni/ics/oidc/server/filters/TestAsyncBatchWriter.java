@@ -0,0 +1,142 @@
+package cz.muni.ics.oidc.server.filters;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import cz.muni.ics.oidc.server.AsyncBatchWriter;
+import cz.muni.ics.oidc.server.AsyncBatchWriter.OverflowPolicy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Test;
+
+public class TestAsyncBatchWriter {
+
+	private final List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+	private final CountDownLatch released = new CountDownLatch(1);
+
+	private AsyncBatchWriter<Integer> writer;
+
+	@After
+	public void destroy() {
+		released.countDown();
+		if (writer != null) {
+			writer.shutdown(1000L);
+		}
+	}
+
+	@Test
+	public void queuedItems_writtenInBatches() {
+		writer = new AsyncBatchWriter<>("test", 100, 3, OverflowPolicy.DROP, 0L, batch -> {
+			await(released);
+			batches.add(new ArrayList<>(batch));
+		});
+
+		for (int i = 0; i < 7; i++) {
+			assertThat(writer.submit(i), is(true));
+		}
+		released.countDown();
+		writer.shutdown(5000L);
+
+		// the first batch may be taken before all items are queued, the rest is drained by the batch size
+		assertThat(batches.size(), is(equalTo(3)));
+		batches.forEach(batch -> assertTrue("batch too large: " + batch, batch.size() <= 3));
+		assertThat(written(), is(equalTo(Arrays.asList(0, 1, 2, 3, 4, 5, 6))));
+		assertThat(writer.getWrittenCount(), is(equalTo(7L)));
+		assertThat(writer.getBatchesCount(), is(equalTo(3L)));
+	}
+
+	@Test
+	public void shutdown_queuedItemsFlushed() {
+		writer = new AsyncBatchWriter<>("test", 100, 2, OverflowPolicy.DROP, 0L, batch -> {
+			sleep(20L);
+			batches.add(new ArrayList<>(batch));
+		});
+
+		for (int i = 0; i < 10; i++) {
+			writer.submit(i);
+		}
+		writer.shutdown(5000L);
+
+		assertThat(written(), is(equalTo(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9))));
+		assertThat(writer.getQueueDepth(), is(equalTo(0)));
+		// not accepted after the shutdown
+		assertThat(writer.submit(10), is(false));
+		assertThat(writer.getDroppedCount(), is(equalTo(1L)));
+	}
+
+	@Test
+	public void queueFull_itemDropped() {
+		writer = new AsyncBatchWriter<>("test", 2, 1, OverflowPolicy.DROP, 0L, batch -> {
+			await(released);
+			batches.add(new ArrayList<>(batch));
+		});
+
+		writer.submit(0);
+		waitFor(() -> writer.getQueueDepth() == 0);
+		assertThat(writer.submit(1), is(true));
+		assertThat(writer.submit(2), is(true));
+		assertThat(writer.submit(3), is(false));
+		released.countDown();
+		writer.shutdown(5000L);
+
+		assertThat(written(), is(equalTo(Arrays.asList(0, 1, 2))));
+		assertThat(writer.getDroppedCount(), is(equalTo(1L)));
+	}
+
+	@Test
+	public void failedBatch_countedAndNextBatchWritten() {
+		writer = new AsyncBatchWriter<>("test", 100, 10, OverflowPolicy.DROP, 0L, batch -> {
+			if (batch.contains(0)) {
+				throw new IllegalStateException("failed");
+			}
+			batches.add(new ArrayList<>(batch));
+		});
+
+		writer.submit(0);
+		waitFor(() -> writer.getBatchesCount() == 1);
+		writer.submit(1);
+		writer.shutdown(5000L);
+
+		assertThat(written(), is(equalTo(Collections.singletonList(1))));
+		assertThat(writer.getFailedCount(), is(equalTo(1L)));
+		assertThat(writer.getWrittenCount(), is(equalTo(1L)));
+	}
+
+	private List<Integer> written() {
+		return batches.stream().flatMap(List::stream).collect(Collectors.toList());
+	}
+
+	private static void waitFor(BooleanSupplier condition) {
+		long deadline = System.currentTimeMillis() + 5000L;
+		while (!condition.getAsBoolean()) {
+			assertTrue("condition not met in time", System.currentTimeMillis() < deadline);
+			sleep(5L);
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
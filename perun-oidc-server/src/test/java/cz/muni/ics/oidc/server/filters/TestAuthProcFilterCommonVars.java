@@ -0,0 +1,74 @@
+package cz.muni.ics.oidc.server.filters;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import cz.muni.ics.oidc.models.Facility;
+import cz.muni.ics.oidc.models.PerunAttributeValue;
+import cz.muni.ics.oidc.server.adapters.PerunAdapter;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class TestAuthProcFilterCommonVars {
+
+	private final Facility facility = new Facility(1L, "facility", "");
+
+	private PerunAdapter perunAdapter;
+	private AuthProcFilterCommonVars params;
+
+	@Before
+	public void prepare() {
+		perunAdapter = mock(PerunAdapter.class);
+		when(perunAdapter.getFacilityAttributeValues(eq(facility), anyCollection())).thenAnswer(invocation -> {
+			Map<String, PerunAttributeValue> values = new HashMap<>();
+			for (Object name : invocation.getArgument(1, Collection.class)) {
+				values.put((String) name, new PerunAttributeValue((String) name, "java.lang.Boolean", BooleanNode.TRUE));
+			}
+			return values;
+		});
+		params = new AuthProcFilterCommonVars(null, facility, null, perunAdapter,
+				new HashSet<>(Arrays.asList("isTestSp", "checkMembership")), Collections.emptySet());
+	}
+
+	@Test
+	public void declaredAttributes_fetchedOnce() {
+		assertThat(params.getFacilityAttributeValue("isTestSp").valueAsBoolean(), is(true));
+		assertThat(params.getFacilityAttributeValues(Collections.singletonList("checkMembership")).size(), is(equalTo(1)));
+
+		ArgumentCaptor<Collection<String>> names = ArgumentCaptor.forClass(Collection.class);
+		verify(perunAdapter, times(1)).getFacilityAttributeValues(eq(facility), names.capture());
+		assertThat(new HashSet<>(names.getValue()), is(equalTo(Set.of("isTestSp", "checkMembership"))));
+	}
+
+	@Test
+	public void undeclaredAttribute_fetchedSeparately() {
+		params.getFacilityAttributeValue("isTestSp");
+		params.getFacilityAttributeValue("loginUrl");
+
+		verify(perunAdapter, times(2)).getFacilityAttributeValues(eq(facility), any());
+	}
+
+	@Test
+	public void noUser_noValues() {
+		assertThat(params.getUserAttributeValue("aups"), is(nullValue()));
+	}
+
+}
@@ -0,0 +1,166 @@
+package cz.muni.ics.oidc.server.filters.impl;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import cz.muni.ics.oauth2.model.ClientDetailsEntity;
+import cz.muni.ics.oidc.BeanUtil;
+import cz.muni.ics.oidc.exceptions.ConfigurationException;
+import cz.muni.ics.oidc.saml.SamlProperties;
+import cz.muni.ics.oidc.server.filters.AuthProcFilterCommonVars;
+import cz.muni.ics.oidc.server.filters.AuthProcFilterConstants;
+import cz.muni.ics.oidc.server.filters.AuthProcFilterInitContext;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Properties;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.providers.ExpiringUsernameAuthenticationToken;
+import org.springframework.security.saml.SAMLCredential;
+
+public class TestProxyStatisticsFilter {
+
+	private static final String FILTER_NAME = "stats";
+	private static final String PROPERTY_PREFIX = "filter." + FILTER_NAME;
+
+	private Properties properties;
+	private BeanUtil beanUtil;
+	private Connection connection;
+	private PreparedStatement updateLogins;
+	private PreparedStatement insertLogins;
+
+	@Before
+	public void prepare() throws SQLException {
+		updateLogins = mock(PreparedStatement.class);
+		insertLogins = mock(PreparedStatement.class);
+		connection = mock(Connection.class);
+		when(connection.getAutoCommit()).thenReturn(true);
+		when(connection.prepareStatement(anyString())).thenAnswer(invocation -> prepareStatement(invocation.getArgument(0)));
+
+		DataSource dataSource = mock(DataSource.class);
+		when(dataSource.getConnection()).thenReturn(connection);
+		SamlProperties samlProperties = mock(SamlProperties.class);
+		when(samlProperties.getUserIdentifierAttribute()).thenReturn("eppn");
+		beanUtil = mock(BeanUtil.class);
+		when(beanUtil.getBean("mitreIdStats", DataSource.class)).thenReturn(dataSource);
+		when(beanUtil.getBean(SamlProperties.class)).thenReturn(samlProperties);
+
+		properties = new Properties();
+		properties.setProperty(PROPERTY_PREFIX + ".batchSize", "10");
+	}
+
+	@Test
+	public void newLogins_insertedInBatch() throws Exception {
+		when(updateLogins.executeBatch()).thenReturn(new int[] { 0, 0 });
+		ProxyStatisticsFilter filter = createFilter();
+
+		login(filter, "user1");
+		login(filter, "user2");
+		filter.destroy();
+
+		verify(insertLogins, atLeastOnce()).executeBatch();
+		verify(updateLogins, never()).executeUpdate();
+		assertThat(filter.getQueueDepth(), is(equalTo(0)));
+	}
+
+	@Test
+	public void failedBatchUpdate_loginsStoredOneByOne() throws Exception {
+		when(updateLogins.executeBatch()).thenThrow(new SQLException("batch update failed"));
+		when(updateLogins.executeUpdate()).thenReturn(1);
+		ProxyStatisticsFilter filter = createFilter();
+
+		login(filter, "user1");
+		login(filter, "user2");
+		filter.destroy();
+
+		verify(updateLogins, times(2)).executeUpdate();
+		verify(insertLogins, never()).executeBatch();
+	}
+
+	@Test
+	public void failedBatchInsert_loginsStoredOneByOne() throws Exception {
+		when(updateLogins.executeBatch()).thenReturn(new int[] { 0, 0 });
+		when(updateLogins.executeUpdate()).thenReturn(0);
+		when(insertLogins.executeBatch()).thenThrow(new SQLException("batch insert failed"));
+		ProxyStatisticsFilter filter = createFilter();
+
+		login(filter, "user1");
+		filter.destroy();
+
+		verify(insertLogins).execute();
+		verify(connection, atLeastOnce()).rollback();
+	}
+
+	@Test
+	public void failedLogin_lostWithoutStoppingWriter() throws Exception {
+		when(updateLogins.executeBatch()).thenThrow(new SQLException("batch update failed"));
+		when(updateLogins.executeUpdate()).thenThrow(new SQLException("update failed"));
+		ProxyStatisticsFilter filter = createFilter();
+
+		login(filter, "user1");
+		login(filter, "user2");
+		filter.destroy();
+
+		verify(updateLogins, times(2)).executeUpdate();
+		assertThat(filter.getQueueDepth(), is(equalTo(0)));
+	}
+
+	@Test(expected = ConfigurationException.class)
+	public void invalidNumber_rejected() throws ConfigurationException {
+		properties.setProperty(PROPERTY_PREFIX + ".batchSize", "ten");
+
+		createFilter();
+	}
+
+	private ProxyStatisticsFilter createFilter() throws ConfigurationException {
+		return new ProxyStatisticsFilter(new AuthProcFilterInitContext(FILTER_NAME, PROPERTY_PREFIX, properties, beanUtil));
+	}
+
+	private void login(ProxyStatisticsFilter filter, String userId) {
+		SAMLCredential credential = mock(SAMLCredential.class);
+		when(credential.getAttributeAsString(anyString())).thenReturn("https://idp.example.org");
+		when(credential.getAttributeAsString(AuthProcFilterConstants.SAML_EPPN)).thenReturn(userId);
+		HttpServletRequest req = mock(HttpServletRequest.class);
+		when(req.getUserPrincipal()).thenReturn(
+				new ExpiringUsernameAuthenticationToken(null, userId, credential, Collections.emptyList()));
+
+		ClientDetailsEntity client = new ClientDetailsEntity();
+		client.setClientId("client");
+		client.setClientName("Client");
+		filter.process(req, mock(HttpServletResponse.class), new AuthProcFilterCommonVars(client, null, null));
+	}
+
+	private PreparedStatement prepareStatement(String sql) throws SQLException {
+		if (sql.startsWith("UPDATE statistics_per_user")) {
+			return updateLogins;
+		} else if (sql.startsWith("INSERT INTO statistics_per_user")) {
+			return insertLogins;
+		}
+		// mapping tables of IdPs and SPs, the entities are new and get ID 1
+		ResultSet rs = mock(ResultSet.class);
+		if (sql.startsWith("SELECT name")) {
+			when(rs.next()).thenReturn(false);
+		} else if (sql.startsWith("SELECT")) {
+			when(rs.next()).thenReturn(true);
+			when(rs.getLong(anyString())).thenReturn(1L);
+		}
+		PreparedStatement ps = mock(PreparedStatement.class);
+		when(ps.executeQuery()).thenReturn(rs);
+		return ps;
+	}
+
+}
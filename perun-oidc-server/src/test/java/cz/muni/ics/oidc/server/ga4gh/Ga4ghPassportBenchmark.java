@@ -0,0 +1,105 @@
+package cz.muni.ics.oidc.server.ga4gh;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import cz.muni.ics.jwt.signer.service.impl.DefaultJWTSigningAndValidationService;
+import cz.muni.ics.oidc.server.ParallelCallsExecutor;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Benchmark of the GA4GH passport assembly (creating and signing the visas of one passport).
+ *
+ * Not executed by the tests, run it by the main method with the test classpath, i.e.
+ * <pre>
+ * mvn -pl perun-oidc-server test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=cz.muni.ics.oidc.server.ga4gh.Ga4ghPassportBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Ga4ghPassportBenchmark {
+
+	private static final String KEY_ID = "rsa1";
+
+	@Param({"1", "10", "100"})
+	public int visas;
+
+	@Param({"0", "100000"})
+	public long cacheMaxSize;
+
+	@Param({"1", "4"})
+	public int signingThreads;
+
+	private ParallelCallsExecutor executor;
+	private Ga4ghVisaSigner signer;
+	private long asserted;
+	private long expires;
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(Ga4ghPassportBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws JOSEException {
+		JWK key = new RSAKeyGenerator(2048).keyID(KEY_ID).generate();
+		Map<String, JWK> keys = Collections.singletonMap(KEY_ID, key);
+		DefaultJWTSigningAndValidationService jwtService = new DefaultJWTSigningAndValidationService(keys);
+		jwtService.setDefaultSignerKeyId(KEY_ID);
+		jwtService.setDefaultSigningAlgorithmName("RS256");
+
+		executor = signingThreads > 1
+				? new ParallelCallsExecutor("benchmark-visa-signing", signingThreads, 10000L, false)
+				: null;
+		signer = new Ga4ghVisaSigner(jwtService, "https://issuer/", URI.create("https://issuer/jwk"),
+				cacheMaxSize, 3600L, 300L, executor);
+
+		long now = System.currentTimeMillis() / 1000L;
+		asserted = now - 3600L;
+		expires = now + 86400L;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if (executor != null) {
+			executor.destroy();
+		}
+	}
+
+	@Benchmark
+	public ArrayNode assemblePassport() {
+		ArrayNode passport = JsonNodeFactory.instance.arrayNode();
+		for (int i = 0; i < visas; i++) {
+			passport.add(signer.createVisa("sub", "ControlledAccessGrants", "https://dataset/" + i,
+					"https://source", "dac", asserted, expires, null));
+		}
+		signer.signPending(passport);
+		return passport;
+	}
+
+}
@@ -0,0 +1,86 @@
+package cz.muni.ics.oidc.server.ga4gh;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import cz.muni.ics.oidc.server.ParallelCallsExecutor;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestGa4ghPassportAndVisaClaimSource {
+
+	private final Ga4ghClaimRepository repoA = new Ga4ghClaimRepository("a", "https://a/{sub}", null, 100);
+	private final Ga4ghClaimRepository repoB = new Ga4ghClaimRepository("b", "https://b/{sub}", null, 100);
+	private final Ga4ghClaimRepository slowRepo = new Ga4ghClaimRepository("slow", "https://slow/{sub}", null, 100);
+
+	private ParallelCallsExecutor executor;
+
+	@Before
+	public void prepare() {
+		executor = new ParallelCallsExecutor("test-visa-repositories", 3, 500L, false);
+	}
+
+	@After
+	public void destroy() {
+		executor.destroy();
+	}
+
+	@Test
+	public void parallelAndSequential_sameResults() {
+		List<Ga4ghClaimRepository> repositories = Arrays.asList(repoA, repoB);
+
+		List<List<Ga4ghPassportVisa>> parallel = Ga4ghPassportAndVisaClaimSource.fetchAllVisas(executor,
+				repositories, this::fetch);
+		List<List<Ga4ghPassportVisa>> sequential = Ga4ghPassportAndVisaClaimSource.fetchAllVisas(null,
+				repositories, this::fetch);
+
+		assertThat(parallel, is(equalTo(Arrays.asList(visas("a"), visas("b")))));
+		assertThat(sequential, is(equalTo(parallel)));
+	}
+
+	@Test
+	public void slowRepository_onlyItsVisasOmitted() {
+		List<List<Ga4ghPassportVisa>> results = Ga4ghPassportAndVisaClaimSource.fetchAllVisas(executor,
+				Arrays.asList(repoA, slowRepo, repoB), this::fetch);
+
+		assertThat(results, is(equalTo(Arrays.asList(visas("a"), Collections.emptyList(), visas("b")))));
+		assertThat(executor.getTimeoutsCount(), is(equalTo(1L)));
+	}
+
+	@Test
+	public void failedRepository_noVisas() {
+		Function<Ga4ghClaimRepository, List<Ga4ghPassportVisa>> failing = repo -> {
+			throw new IllegalStateException("failed");
+		};
+
+		List<List<Ga4ghPassportVisa>> results = Ga4ghPassportAndVisaClaimSource.fetchAllVisas(executor,
+				Arrays.asList(repoA, repoB), failing);
+
+		assertThat(results.isEmpty(), is(true));
+	}
+
+	private List<Ga4ghPassportVisa> fetch(Ga4ghClaimRepository repo) {
+		if (repo == slowRepo) {
+			try {
+				Thread.sleep(5000L);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return visas(repo.getName());
+	}
+
+	private static List<Ga4ghPassportVisa> visas(String repoName) {
+		Ga4ghPassportVisa visa = new Ga4ghPassportVisa("jwt-" + repoName);
+		visa.setVerified(true);
+		visa.setValue("https://dataset/" + repoName);
+		return Collections.singletonList(visa);
+	}
+
+}
@@ -0,0 +1,143 @@
+package cz.muni.ics.oidc.server.ga4gh;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jose.jwk.source.RemoteJWKSet;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import java.net.URI;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestGa4ghUtils {
+
+	private static final URI JKU = URI.create("https://signer.example.org/jwk");
+	private static final String KEY_ID = "signer";
+
+	private static RSAKey key;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private RemoteJWKSet<SecurityContext> remoteJwkSet;
+	private Map<URI, RemoteJWKSet<SecurityContext>> remoteJwkSets;
+	private Map<URI, String> signers;
+
+	@BeforeClass
+	public static void generateKey() throws JOSEException {
+		key = new RSAKeyGenerator(2048).keyID(KEY_ID).generate();
+	}
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void prepare() throws Exception {
+		remoteJwkSet = mock(RemoteJWKSet.class);
+		when(remoteJwkSet.get(any(), any())).thenReturn(Collections.singletonList((JWK) key.toPublicJWK()));
+		remoteJwkSets = new HashMap<>();
+		remoteJwkSets.put(JKU, remoteJwkSet);
+		signers = new HashMap<>();
+		signers.put(JKU, "Signer");
+	}
+
+	@Test
+	public void verifiedVisa_reusedFromCache() throws Exception {
+		String jwt = createVisa(Instant.now().getEpochSecond() + 3600L);
+
+		Ga4ghPassportVisa first = parseAndVerify(jwt);
+		Ga4ghPassportVisa second = parseAndVerify(jwt);
+
+		assertThat(first.isVerified(), is(true));
+		assertThat(second, is(equalTo(first)));
+		verify(remoteJwkSet, times(1)).get(any(), any());
+	}
+
+	@Test
+	public void cachedVisa_returnedAsCopy() throws Exception {
+		String jwt = createVisa(Instant.now().getEpochSecond() + 3600L);
+		Ga4ghPassportVisa first = parseAndVerify(jwt);
+		String value = first.getValue();
+
+		first.setValue("modified");
+		first.setVerified(false);
+		Ga4ghPassportVisa second = parseAndVerify(jwt);
+
+		assertThat(second, is(not(sameInstance(first))));
+		assertThat(second.getValue(), is(equalTo(value)));
+		assertThat(second.isVerified(), is(true));
+	}
+
+	@Test
+	public void expiredCachedVisa_verifiedAgain() throws Exception {
+		String jwt = createVisa(Instant.now().getEpochSecond() + 1L);
+		assertThat(parseAndVerify(jwt).isVerified(), is(true));
+
+		Thread.sleep(2000L);
+		Ga4ghPassportVisa expired = parseAndVerify(jwt);
+
+		assertThat(expired.isVerified(), is(false));
+		verify(remoteJwkSet, times(2)).get(any(), any());
+	}
+
+	@Test
+	public void unverifiedVisa_notCached() throws Exception {
+		remoteJwkSets.clear();
+		String jwt = createVisa(Instant.now().getEpochSecond() + 3600L);
+		assertThat(parseAndVerify(jwt).isVerified(), is(false));
+
+		remoteJwkSets.put(JKU, remoteJwkSet);
+
+		assertThat(parseAndVerify(jwt).isVerified(), is(true));
+	}
+
+	private Ga4ghPassportVisa parseAndVerify(String jwt) {
+		return Ga4ghUtils.parseAndVerifyVisa(jwt, signers, remoteJwkSets, mapper);
+	}
+
+	private static String createVisa(long exp) throws JOSEException {
+		long now = Instant.now().getEpochSecond();
+		Map<String, Object> content = new LinkedHashMap<>();
+		content.put(Ga4ghPassportVisa.TYPE, "ControlledAccessGrants");
+		content.put(Ga4ghPassportVisa.ASSERTED, now - 3600L);
+		// unique value, the cache of verified visas is shared by all tests
+		content.put(Ga4ghPassportVisa.VALUE, "https://dataset/" + UUID.randomUUID());
+		content.put(Ga4ghPassportVisa.SOURCE, "https://source");
+		content.put(Ga4ghPassportVisa.BY, Ga4ghPassportVisa.BY_SO);
+		JWTClaimsSet claims = new JWTClaimsSet.Builder()
+				.subject("user@example.org")
+				.issuer("https://signer.example.org/")
+				.issueTime(new Date(now * 1000L))
+				.expirationTime(new Date(exp * 1000L))
+				.claim(Ga4ghPassportVisa.GA4GH_VISA_V1, content)
+				.build();
+		SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(KEY_ID).jwkURL(JKU).build(),
+				claims);
+		jwt.sign(new RSASSASigner(key));
+		return jwt.serialize();
+	}
+
+}
@@ -0,0 +1,167 @@
+package cz.muni.ics.oidc.server.ga4gh;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.POJONode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.SignedJWT;
+import cz.muni.ics.jwt.signer.service.impl.DefaultJWTSigningAndValidationService;
+import cz.muni.ics.oidc.server.ParallelCallsExecutor;
+import java.net.URI;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestGa4ghVisaSigner {
+
+	private static final String KEY_ID = "rsa1";
+	private static final String ROTATED_KEY_ID = "rsa2";
+	private static final long MIN_REMAINING_SECONDS = 300L;
+
+	private static Map<String, JWK> keys;
+
+	private DefaultJWTSigningAndValidationService jwtService;
+	private ParallelCallsExecutor executor;
+	private Ga4ghVisaSigner signer;
+	private long asserted;
+	private long expires;
+
+	@BeforeClass
+	public static void generateKeys() throws JOSEException {
+		keys = new HashMap<>();
+		keys.put(KEY_ID, new RSAKeyGenerator(2048).keyID(KEY_ID).generate());
+		keys.put(ROTATED_KEY_ID, new RSAKeyGenerator(2048).keyID(ROTATED_KEY_ID).generate());
+	}
+
+	@Before
+	public void prepare() {
+		jwtService = new DefaultJWTSigningAndValidationService(keys);
+		jwtService.setDefaultSignerKeyId(KEY_ID);
+		jwtService.setDefaultSigningAlgorithmName("RS256");
+		executor = new ParallelCallsExecutor("test-visa-signing", 4, 5000L, false);
+		signer = new Ga4ghVisaSigner(jwtService, "https://issuer/", URI.create("https://issuer/jwk"), 100L, 3600L,
+				MIN_REMAINING_SECONDS, executor);
+
+		long now = System.currentTimeMillis() / 1000L;
+		asserted = now - 3600L;
+		expires = now + 86400L;
+	}
+
+	@After
+	public void destroy() {
+		executor.destroy();
+	}
+
+	@Test
+	public void signedVisa_reusedFromCache() {
+		String first = signVisa("https://dataset/1", expires);
+
+		JsonNode second = createVisa("https://dataset/1", expires);
+
+		assertThat(second, is(instanceOf(TextNode.class)));
+		assertThat(second.asText(), is(equalTo(first)));
+		assertThat(signer.getStats().hitCount(), is(equalTo(1L)));
+	}
+
+	@Test
+	public void differentContent_signedSeparately() {
+		signVisa("https://dataset/1", expires);
+
+		assertThat(createVisa("https://dataset/2", expires), is(instanceOf(POJONode.class)));
+	}
+
+	@Test
+	public void visaCloseToExpiration_signedAgain() throws ParseException {
+		long soonExpires = System.currentTimeMillis() / 1000L + MIN_REMAINING_SECONDS / 2;
+		String first = signVisa("https://dataset/1", soonExpires);
+
+		JsonNode second = createVisa("https://dataset/1", soonExpires);
+
+		assertThat(second, is(instanceOf(POJONode.class)));
+		String resigned = sign(second);
+		assertThat(resigned, is(not(equalTo(first))));
+		assertThat(SignedJWT.parse(resigned).getJWTClaimsSet().getJWTID(),
+				is(not(equalTo(SignedJWT.parse(first).getJWTClaimsSet().getJWTID()))));
+	}
+
+	@Test
+	public void rotatedKey_signedWithNewKey() throws ParseException {
+		signVisa("https://dataset/1", expires);
+		jwtService.setDefaultSignerKeyId(ROTATED_KEY_ID);
+
+		JsonNode visa = createVisa("https://dataset/1", expires);
+
+		assertThat(visa, is(instanceOf(POJONode.class)));
+		assertThat(SignedJWT.parse(sign(visa)).getHeader().getKeyID(), is(equalTo(ROTATED_KEY_ID)));
+	}
+
+	@Test
+	public void signPending_allPlaceholdersReplaced() throws ParseException {
+		String cached = signVisa("https://dataset/0", expires);
+		ArrayNode passport = JsonNodeFactory.instance.arrayNode();
+		for (int i = 0; i < 5; i++) {
+			passport.add(createVisa("https://dataset/" + i, expires));
+		}
+		passport.add("not a visa");
+
+		signer.signPending(passport);
+
+		assertThat(passport.size(), is(equalTo(6)));
+		assertThat(passport.get(0).asText(), is(equalTo(cached)));
+		for (int i = 0; i < 5; i++) {
+			JsonNode visa = passport.get(i);
+			assertThat(visa, is(instanceOf(TextNode.class)));
+			SignedJWT jwt = SignedJWT.parse(visa.asText());
+			assertThat(jwtService.validateSignature(jwt), is(true));
+			Map<String, Object> content = jwt.getJWTClaimsSet().getJSONObjectClaim(Ga4ghPassportVisa.GA4GH_VISA_V1);
+			assertThat(content.get(Ga4ghPassportVisa.VALUE), is(equalTo("https://dataset/" + i)));
+		}
+		assertThat(passport.get(5).asText(), is(equalTo("not a visa")));
+	}
+
+	@Test
+	public void disabledCache_alwaysSigned() {
+		Ga4ghVisaSigner uncached = new Ga4ghVisaSigner(jwtService, "https://issuer/", URI.create("https://issuer/jwk"),
+				0L, 3600L, MIN_REMAINING_SECONDS, null);
+		ArrayNode passport = JsonNodeFactory.instance.arrayNode();
+		passport.add(uncached.createVisa("sub", "ControlledAccessGrants", "https://dataset/1", "https://source", "dac",
+				asserted, expires, null));
+		uncached.signPending(passport);
+
+		JsonNode second = uncached.createVisa("sub", "ControlledAccessGrants", "https://dataset/1", "https://source",
+				"dac", asserted, expires, null);
+
+		assertThat(second, is(instanceOf(POJONode.class)));
+	}
+
+	private JsonNode createVisa(String value, long visaExpires) {
+		return signer.createVisa("sub", "ControlledAccessGrants", value, "https://source", "dac", asserted,
+				visaExpires, null);
+	}
+
+	private String signVisa(String value, long visaExpires) {
+		return sign(createVisa(value, visaExpires));
+	}
+
+	private String sign(JsonNode visa) {
+		ArrayNode passport = JsonNodeFactory.instance.arrayNode();
+		passport.add(visa);
+		signer.signPending(passport);
+		return passport.get(0).asText();
+	}
+
+}
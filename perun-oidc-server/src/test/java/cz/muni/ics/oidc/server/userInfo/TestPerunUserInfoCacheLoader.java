@@ -0,0 +1,259 @@
+package cz.muni.ics.oidc.server.userInfo;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import cz.muni.ics.oauth2.model.ClientDetailsEntity;
+import cz.muni.ics.oidc.models.PerunAttributeValue;
+import cz.muni.ics.oidc.server.ParallelCallsExecutor;
+import cz.muni.ics.oidc.server.adapters.PerunAdapter;
+import cz.muni.ics.oidc.server.claims.ClaimSource;
+import cz.muni.ics.oidc.server.claims.ClaimSourceInitContext;
+import cz.muni.ics.oidc.server.claims.ClaimSourceProduceContext;
+import cz.muni.ics.oidc.server.claims.PerunCustomClaimDefinition;
+import cz.muni.ics.oidc.server.userInfo.mappings.OpenidMappings;
+import cz.muni.ics.openid.connect.model.UserInfo;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.Function;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPerunUserInfoCacheLoader {
+
+	private static final String SCOPE = "custom";
+	private static final String SUB_ATTR = "urn:sub";
+	private static final String CUSTOM_ATTR = "urn:custom";
+
+	private ParallelCallsExecutor executor;
+	private List<PerunCustomClaimDefinition> customClaims;
+
+	@Before
+	public void prepare() {
+		executor = new ParallelCallsExecutor("test", 4, 500L, false);
+		customClaims = new ArrayList<>();
+		customClaims.add(claim("a", Collections.emptySet(), pctx -> text("A")));
+		customClaims.add(claim("b", Collections.singleton("a"),
+				pctx -> text(pctx.getProducedClaims().get("a").asText() + "B")));
+		customClaims.add(claim("c", Collections.emptySet(), pctx -> {
+			sleep(50L);
+			return text("C");
+		}));
+		customClaims.add(claim("empty", Collections.emptySet(), pctx -> null));
+		customClaims.add(claim("d", new HashSet<>(Arrays.asList("b", "c")),
+				pctx -> text(pctx.getProducedClaims().get("b").asText() + pctx.getProducedClaims().get("c").asText())));
+	}
+
+	@After
+	public void destroy() {
+		executor.destroy();
+	}
+
+	@Test
+	public void parallelAndSequential_sameResults() {
+		Map<String, JsonNode> sequential = loadCustomClaims(null);
+		Map<String, JsonNode> parallel = loadCustomClaims(executor);
+
+		assertThat(new ArrayList<>(parallel.keySet()), is(equalTo(Arrays.asList("a", "b", "c", "d"))));
+		assertThat(new ArrayList<>(parallel.entrySet()), is(equalTo(new ArrayList<>(sequential.entrySet()))));
+	}
+
+	@Test
+	public void dependsOn_producedClaimsAvailable() {
+		Map<String, JsonNode> claims = loadCustomClaims(executor);
+
+		assertThat(claims.get("b").asText(), is(equalTo("AB")));
+		assertThat(claims.get("d").asText(), is(equalTo("ABC")));
+	}
+
+	@Test
+	public void slowClaim_onlyThisClaimOmitted() {
+		customClaims.add(claim("slow", Collections.emptySet(), pctx -> {
+			sleep(5000L);
+			return text("slow");
+		}));
+
+		Map<String, JsonNode> claims = loadCustomClaims(executor);
+
+		assertThat(claims.containsKey("slow"), is(false));
+		assertThat(claims.get("a").asText(), is(equalTo("A")));
+		assertThat(claims.get("c").asText(), is(equalTo("C")));
+		assertThat(executor.getTimeoutsCount(), is(equalTo(1L)));
+	}
+
+	@Test
+	public void slowClaimAloneInWave_omitted() {
+		customClaims.add(claim("slow", Collections.singleton("d"), pctx -> {
+			sleep(5000L);
+			return text("slow");
+		}));
+
+		Map<String, JsonNode> claims = loadCustomClaims(executor);
+
+		assertThat(claims.containsKey("slow"), is(false));
+		assertThat(claims.get("d").asText(), is(equalTo("ABC")));
+		assertThat(executor.getTimeoutsCount(), is(equalTo(1L)));
+	}
+
+	@Test
+	public void userAttributes_sharedByClients() {
+		PerunAdapter perunAdapter = mockAdapter();
+		PerunUserInfoCacheLoader loader = createLoader(perunAdapter, createUserAttributesCache());
+
+		UserInfo first = loader.load(new UserInfoCacheKey("1", client("a"), null, Collections.singleton("openid")));
+		UserInfo second = loader.load(new UserInfoCacheKey("1", client("b"), null, Collections.singleton("openid")));
+
+		assertThat(first.getSub(), is(equalTo("sub1")));
+		assertThat(second.getSub(), is(equalTo("sub1")));
+		verify(perunAdapter, times(1)).getUserAttributeValues(eq(1L), anyCollection());
+	}
+
+	@Test
+	public void userAttributes_onlyMissingFetched() {
+		customClaims = Collections.singletonList(claim("custom", Collections.singleton(CUSTOM_ATTR),
+				Collections.emptySet(), pctx -> pctx.getAttrValues().get(CUSTOM_ATTR).valueAsJson()));
+		PerunAdapter perunAdapter = mockAdapter();
+		PerunUserInfoCacheLoader loader = createLoader(perunAdapter, createUserAttributesCache());
+
+		loader.load(new UserInfoCacheKey("1", null, null, Collections.singleton("openid")));
+		PerunUserInfo userInfo = (PerunUserInfo) loader.load(
+				new UserInfoCacheKey("1", null, null, new HashSet<>(Arrays.asList("openid", SCOPE))));
+
+		assertThat(userInfo.getCustomClaims().get("custom").asText(), is(equalTo("value1")));
+		verify(perunAdapter).getUserAttributeValues(1L, Collections.singleton(SUB_ATTR));
+		verify(perunAdapter).getUserAttributeValues(1L, Collections.singleton(CUSTOM_ATTR));
+	}
+
+	@Test
+	public void failedFetch_userAttributesNotCached() {
+		PerunAdapter perunAdapter = mockAdapter();
+		when(perunAdapter.getUserAttributeValues(eq(2L), anyCollection()))
+				.thenThrow(new IllegalStateException("Perun is not available"))
+				.thenReturn(userAttributes(2L));
+		Cache<Long, Map<String, Optional<PerunAttributeValue>>> userAttributesCache = createUserAttributesCache();
+		PerunUserInfoCacheLoader loader = createLoader(perunAdapter, userAttributesCache);
+		UserInfoCacheKey key = new UserInfoCacheKey("2", null, null, Collections.singleton("openid"));
+
+		try {
+			loader.load(key);
+		} catch (IllegalStateException e) {
+			// expected, the value is not cached and the next load fetches it again
+		}
+		assertThat(loader.load(key).getSub(), is(equalTo("sub2")));
+		verify(perunAdapter, times(2)).getUserAttributeValues(eq(2L), anyCollection());
+	}
+
+	private Map<String, JsonNode> loadCustomClaims(ParallelCallsExecutor claimSourcesExecutor) {
+		OpenidMappings openidMappings = new OpenidMappings();
+		openidMappings.setSub(SUB_ATTR);
+		PerunUserInfoCacheLoader loader = PerunUserInfoCacheLoader.builder()
+				.openidMappings(openidMappings)
+				.perunAdapter(mock(PerunAdapter.class))
+				.customClaims(customClaims)
+				.claimSourcesExecutor(claimSourcesExecutor)
+				.build();
+
+		PerunUserInfo userInfo = (PerunUserInfo) loader.load(
+				new UserInfoCacheKey("1", null, null, Collections.singleton(SCOPE)));
+		return userInfo.getCustomClaims();
+	}
+
+	private PerunUserInfoCacheLoader createLoader(PerunAdapter perunAdapter,
+												  Cache<Long, Map<String, Optional<PerunAttributeValue>>> cache)
+	{
+		OpenidMappings openidMappings = new OpenidMappings();
+		openidMappings.setSub(SUB_ATTR);
+		return PerunUserInfoCacheLoader.builder()
+				.openidMappings(openidMappings)
+				.perunAdapter(perunAdapter)
+				.customClaims(customClaims)
+				.userAttributesCache(cache)
+				.build();
+	}
+
+	private static Cache<Long, Map<String, Optional<PerunAttributeValue>>> createUserAttributesCache() {
+		return CacheBuilder.newBuilder().maximumSize(100L).build();
+	}
+
+	private static PerunAdapter mockAdapter() {
+		PerunAdapter perunAdapter = mock(PerunAdapter.class);
+		when(perunAdapter.getUserAttributeValues(eq(1L), anyCollection())).thenAnswer(invocation -> {
+			Collection<String> names = invocation.getArgument(1);
+			Map<String, PerunAttributeValue> values = userAttributes(1L);
+			values.keySet().retainAll(names);
+			return values;
+		});
+		return perunAdapter;
+	}
+
+	private static Map<String, PerunAttributeValue> userAttributes(long userId) {
+		Map<String, PerunAttributeValue> values = new HashMap<>();
+		values.put(SUB_ATTR, new PerunAttributeValue(SUB_ATTR, "java.lang.String", text("sub" + userId)));
+		values.put(CUSTOM_ATTR, new PerunAttributeValue(CUSTOM_ATTR, "java.lang.String", text("value" + userId)));
+		return values;
+	}
+
+	private static ClientDetailsEntity client(String clientId) {
+		ClientDetailsEntity client = new ClientDetailsEntity();
+		client.setClientId(clientId);
+		return client;
+	}
+
+	private static PerunCustomClaimDefinition claim(String name, Set<String> dependsOn,
+													Function<ClaimSourceProduceContext, JsonNode> producer)
+	{
+		return claim(name, Collections.emptySet(), dependsOn, producer);
+	}
+
+	private static PerunCustomClaimDefinition claim(String name, Set<String> attrIdentifiers, Set<String> dependsOn,
+													Function<ClaimSourceProduceContext, JsonNode> producer)
+	{
+		ClaimSource source = new ClaimSource(new ClaimSourceInitContext(null, null, "custom.claim." + name + ".source",
+				new Properties(), name)) {
+			@Override
+			public Set<String> getAttrIdentifiers() {
+				return attrIdentifiers;
+			}
+
+			@Override
+			public JsonNode produceValue(ClaimSourceProduceContext pctx) {
+				return producer.apply(pctx);
+			}
+		};
+		return new PerunCustomClaimDefinition(SCOPE, name, source, Collections.emptyList(), dependsOn);
+	}
+
+	private static JsonNode text(String value) {
+		return JsonNodeFactory.instance.textNode(value);
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+package cz.muni.ics.oidc.server.userInfo;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import cz.muni.ics.openid.connect.model.UserInfo;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPerunUserInfoService {
+
+	private static final long REFRESH_AFTER_WRITE = 300L;
+	private static final long STALE_GRACE = 60L;
+
+	private final UserInfoCacheKey key = new UserInfoCacheKey("1", null, null, Collections.singleton("openid"));
+	private final FakeTicker ticker = new FakeTicker();
+	private final AtomicInteger loads = new AtomicInteger();
+	private final AtomicInteger reloads = new AtomicInteger();
+	private final CountDownLatch reloadReleased = new CountDownLatch(1);
+
+	private PerunUserInfoService service;
+	private ExecutorService refreshExecutor;
+
+	@Before
+	public void prepare() {
+		service = new PerunUserInfoService();
+		service.setCacheMaxSize(100L);
+		service.setCacheExpireAfterAccess(3600L);
+		service.setCacheRefreshAfterWrite(REFRESH_AFTER_WRITE);
+		service.setCacheStaleGrace(STALE_GRACE);
+		refreshExecutor = Executors.newSingleThreadExecutor();
+	}
+
+	@After
+	public void destroy() {
+		reloadReleased.countDown();
+		refreshExecutor.shutdownNow();
+	}
+
+	@Test
+	public void staleValue_servedDuringReload() throws Exception {
+		LoadingCache<UserInfoCacheKey, UserInfo> cache = service.createCache(loader(false, true), refreshExecutor,
+				ticker);
+		assertThat(cache.get(key).getSub(), is(equalTo("1")));
+
+		ticker.advance(REFRESH_AFTER_WRITE + 1L);
+
+		// reload is blocked, the stale value is returned without waiting
+		assertThat(cache.get(key).getSub(), is(equalTo("1")));
+		assertThat(cache.get(key).getSub(), is(equalTo("1")));
+		reloadReleased.countDown();
+		waitFor(() -> "2".equals(cache.getUnchecked(key).getSub()));
+		assertThat(reloads.get(), is(equalTo(1)));
+	}
+
+	@Test
+	public void staleValue_expiredAfterGracePeriod() throws Exception {
+		LoadingCache<UserInfoCacheKey, UserInfo> cache = service.createCache(loader(false, false),
+				MoreExecutors.directExecutor(), ticker);
+		cache.get(key);
+
+		ticker.advance(REFRESH_AFTER_WRITE + STALE_GRACE + 1L);
+
+		// entry is expired, so it is loaded again in the requesting thread instead of being reloaded
+		assertThat(cache.get(key).getSub(), is(equalTo("2")));
+		assertThat(reloads.get(), is(equalTo(0)));
+	}
+
+	@Test
+	public void failedReload_staleValueKept() throws Exception {
+		LoadingCache<UserInfoCacheKey, UserInfo> cache = service.createCache(loader(true, false),
+				MoreExecutors.directExecutor(), ticker);
+		cache.get(key);
+
+		ticker.advance(REFRESH_AFTER_WRITE + 1L);
+
+		assertThat(cache.get(key).getSub(), is(equalTo("1")));
+		assertThat(cache.stats().loadExceptionCount(), is(equalTo(1L)));
+		// reload is tried again on the next access
+		assertThat(cache.get(key).getSub(), is(equalTo("1")));
+		assertThat(cache.stats().loadExceptionCount(), is(equalTo(2L)));
+	}
+
+	private CacheLoader<UserInfoCacheKey, UserInfo> loader(boolean failReload, boolean blockReload) {
+		return new CacheLoader<UserInfoCacheKey, UserInfo>() {
+			@Override
+			public UserInfo load(UserInfoCacheKey cacheKey) throws InterruptedException {
+				int load = loads.incrementAndGet();
+				if (load > 1 && failReload) {
+					throw new IllegalStateException("Perun is not available");
+				} else if (load > 1 && blockReload) {
+					reloadReleased.await(5, TimeUnit.SECONDS);
+				}
+				PerunUserInfo userInfo = new PerunUserInfo();
+				userInfo.setSub(String.valueOf(load));
+				return userInfo;
+			}
+
+			@Override
+			public ListenableFuture<UserInfo> reload(UserInfoCacheKey cacheKey, UserInfo oldValue) throws Exception {
+				reloads.incrementAndGet();
+				return super.reload(cacheKey, oldValue);
+			}
+		};
+	}
+
+	private static void waitFor(BooleanSupplier condition) {
+		long deadline = System.currentTimeMillis() + 5000L;
+		while (!condition.getAsBoolean()) {
+			assertTrue("condition not met in time", System.currentTimeMillis() < deadline);
+			try {
+				Thread.sleep(5L);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static class FakeTicker extends Ticker {
+
+		private final AtomicLong nanos = new AtomicLong();
+
+		@Override
+		public long read() {
+			return nanos.get();
+		}
+
+		void advance(long seconds) {
+			nanos.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+		}
+
+	}
+
+}
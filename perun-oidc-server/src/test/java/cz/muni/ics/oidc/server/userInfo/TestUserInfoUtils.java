@@ -0,0 +1,69 @@
+package cz.muni.ics.oidc.server.userInfo;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import cz.muni.ics.oidc.exceptions.ConfigurationException;
+import cz.muni.ics.oidc.server.claims.PerunCustomClaimDefinition;
+import cz.muni.ics.oidc.server.claims.sources.StaticValueClaimSource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestUserInfoUtils {
+
+	private Properties properties;
+
+	@Before
+	public void prepare() {
+		properties = new Properties();
+		for (String claim : Arrays.asList("a", "b", "c")) {
+			properties.setProperty("custom.claim." + claim + ".scope", "custom");
+			properties.setProperty("custom.claim." + claim + ".source.class", StaticValueClaimSource.class.getName());
+			properties.setProperty("custom.claim." + claim + ".source.value", claim);
+		}
+	}
+
+	@Test
+	public void dependsOn_loaded() throws ConfigurationException {
+		properties.setProperty("custom.claim.b.dependsOn", "a, c");
+
+		List<PerunCustomClaimDefinition> claims = UserInfoUtils.loadCustomClaims(Arrays.asList("a", "b", "c"),
+				properties, null, null);
+
+		assertThat(claims.size(), is(equalTo(3)));
+		assertThat(claims.get(0).getDependsOn().isEmpty(), is(true));
+		assertThat(Arrays.asList(claims.get(1).getDependsOn().toArray()), is(equalTo(Arrays.asList("a", "c"))));
+	}
+
+	@Test
+	public void dependencyOnUnknownClaim_ignored() throws ConfigurationException {
+		properties.setProperty("custom.claim.a.dependsOn", "unknown");
+
+		List<PerunCustomClaimDefinition> claims = UserInfoUtils.loadCustomClaims(Collections.singletonList("a"),
+				properties, null, null);
+
+		assertThat(claims.size(), is(equalTo(1)));
+	}
+
+	@Test(expected = ConfigurationException.class)
+	public void cyclicDependencies_rejected() throws ConfigurationException {
+		properties.setProperty("custom.claim.a.dependsOn", "c");
+		properties.setProperty("custom.claim.b.dependsOn", "a");
+		properties.setProperty("custom.claim.c.dependsOn", "b");
+
+		UserInfoUtils.loadCustomClaims(Arrays.asList("a", "b", "c"), properties, null, null);
+	}
+
+	@Test(expected = ConfigurationException.class)
+	public void selfDependency_rejected() throws ConfigurationException {
+		properties.setProperty("custom.claim.a.dependsOn", "a");
+
+		UserInfoUtils.loadCustomClaims(Collections.singletonList("a"), properties, null, null);
+	}
+
+}
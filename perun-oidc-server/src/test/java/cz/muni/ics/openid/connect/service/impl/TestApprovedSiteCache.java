@@ -0,0 +1,142 @@
+package cz.muni.ics.openid.connect.service.impl;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import cz.muni.ics.oidc.server.cache.SharedCacheTier;
+import cz.muni.ics.openid.connect.model.ApprovedSite;
+import cz.muni.ics.openid.connect.repository.ApprovedSiteRepository;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestApprovedSiteCache {
+
+	private static final String CLIENT_ID = "client";
+	private static final String USER_ID = "user";
+
+	private ApprovedSiteRepository repository;
+	private SharedCacheTier sharedCacheTier;
+	private Supplier<Collection<ApprovedSite>> loader;
+	private ApprovedSiteCache cache;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void prepare() {
+		repository = mock(ApprovedSiteRepository.class);
+
+		ApprovedSite site = new ApprovedSite();
+		site.setId(1L);
+		site.setClientId(CLIENT_ID);
+		site.setUserId(USER_ID);
+		site.setAllowedScopes(new HashSet<>(Collections.singleton("openid")));
+		loader = mock(Supplier.class);
+		when(loader.get()).thenReturn(Collections.singletonList(site));
+
+		sharedCacheTier = new InMemorySharedCacheTier();
+		cache = new ApprovedSiteCache(true, 10, 60, 60, sharedCacheTier, repository);
+	}
+
+	@After
+	public void cleanup() {
+		cache.shutdown();
+	}
+
+	@Test
+	public void get_cached() {
+		cache.get(CLIENT_ID, USER_ID, loader);
+		cache.get(CLIENT_ID, USER_ID, loader).iterator().next().getAllowedScopes().add("email");
+
+		Collection<ApprovedSite> sites = cache.get(CLIENT_ID, USER_ID, loader);
+
+		verify(loader, times(1)).get();
+		assertThat(sites.iterator().next().getAllowedScopes(), is(equalTo(Collections.singleton("openid"))));
+	}
+
+	@Test
+	public void get_invalidated() {
+		cache.get(CLIENT_ID, USER_ID, loader);
+
+		cache.invalidate(CLIENT_ID, USER_ID);
+		cache.get(CLIENT_ID, USER_ID, loader);
+
+		verify(loader, times(2)).get();
+	}
+
+	@Test
+	public void get_invalidatedOnOtherNode() {
+		ApprovedSiteCache otherNode = new ApprovedSiteCache(true, 10, 60, 60, sharedCacheTier, repository);
+		try {
+			cache.get(CLIENT_ID, USER_ID, loader);
+			cache.get(CLIENT_ID, USER_ID, loader);
+			verify(loader, times(1)).get();
+
+			otherNode.invalidate(CLIENT_ID, USER_ID);
+			cache.get(CLIENT_ID, USER_ID, loader);
+			cache.get(CLIENT_ID, USER_ID, loader);
+
+			verify(loader, times(2)).get();
+		} finally {
+			otherNode.shutdown();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void create_withoutSharedCacheTier() {
+		new ApprovedSiteCache(true, 10, 60, 60, null, repository);
+	}
+
+	@Test
+	public void recordAccess_coalesced() {
+		ApprovedSite site = cache.get(CLIENT_ID, USER_ID, loader).iterator().next();
+
+		site.setAccessDate(new Date());
+		cache.recordAccess(site);
+		site.setAccessDate(new Date());
+		cache.recordAccess(site);
+		cache.shutdown();
+
+		verify(repository, timeout(5000).times(1)).updateAccessDates(anyMap());
+	}
+
+	private static class InMemorySharedCacheTier implements SharedCacheTier {
+
+		private final Map<String, String> entries = new HashMap<>();
+
+		@Override
+		public String get(String key) {
+			return entries.get(key);
+		}
+
+		@Override
+		public void put(String key, String value, long ttlMillis) {
+			entries.put(key, value);
+		}
+
+		@Override
+		public void invalidate(String key) {
+			entries.remove(key);
+		}
+
+		@Override
+		public void invalidateByPrefix(String keyPrefix) {
+			entries.keySet().removeIf(key -> key.startsWith(keyPrefix));
+		}
+
+	}
+
+}
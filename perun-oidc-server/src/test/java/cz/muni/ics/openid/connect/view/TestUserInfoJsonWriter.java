@@ -0,0 +1,88 @@
+package cz.muni.ics.openid.connect.view;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import cz.muni.ics.oidc.server.userInfo.PerunUserInfo;
+import cz.muni.ics.openid.connect.model.DefaultAddress;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Predicate;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestUserInfoJsonWriter {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private PerunUserInfo userInfo;
+
+	@Before
+	public void prepare() throws Exception {
+		userInfo = new PerunUserInfo();
+		userInfo.setSub("user@example.org");
+		userInfo.setName("John Doe");
+		userInfo.setEmail("john@example.org");
+		userInfo.setEmailVerified(true);
+		DefaultAddress address = new DefaultAddress();
+		address.setCountry("CZ");
+		userInfo.setAddress(address);
+
+		userInfo.getCustomClaims().put("eduperson_entitlement", mapper.readTree("[\"a\",\"b\"]"));
+		userInfo.getCustomClaims().put("ga4gh_passport_v1", mapper.readTree("{\"visas\":[\"x\"],\"missing\":null}"));
+		userInfo.getCustomClaims().put("affiliation_count", mapper.readTree("2"));
+		userInfo.getCustomClaims().put("is_member", mapper.readTree("true"));
+		userInfo.getCustomClaims().put("empty", mapper.readTree("null"));
+	}
+
+	@Test
+	public void write_sameAsGson() throws Exception {
+		Predicate<String> filter = claim -> true;
+
+		assertThat(write(filter, Collections.emptyMap()), is(equalTo(viaGson(filter))));
+	}
+
+	@Test
+	public void write_filtered() throws Exception {
+		Predicate<String> filter = claim -> claim.equals("sub") || claim.equals("eduperson_entitlement");
+
+		JsonObject json = write(filter, Collections.emptyMap());
+
+		assertThat(json, is(equalTo(viaGson(filter))));
+		assertThat(json.size(), is(equalTo(2)));
+	}
+
+	@Test
+	public void write_extraClaimsOverride() throws Exception {
+		JsonObject json = write(claim -> true, Collections.singletonMap("sub", "other"));
+
+		assertThat(json.get("sub").getAsString(), is(equalTo("other")));
+	}
+
+	private JsonObject write(Predicate<String> filter, Map<String, Object> extra) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		UserInfoJsonWriter.write(out, userInfo, filter, extra);
+		return JsonParser.parseString(out.toString(StandardCharsets.UTF_8.name())).getAsJsonObject();
+	}
+
+	private JsonObject viaGson(Predicate<String> filter) {
+		JsonObject filtered = new JsonObject();
+		for (Map.Entry<String, JsonElement> entry : userInfo.toJson().entrySet()) {
+			if (filter.test(entry.getKey())) {
+				filtered.add(entry.getKey(), entry.getValue());
+			}
+		}
+		// serialize and parse again to drop the nulls the same way as the original view did
+		return JsonParser.parseString(new Gson().toJson(filtered)).getAsJsonObject();
+	}
+
+}
@@ -0,0 +1,100 @@
+package cz.muni.ics.util;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.function.Supplier;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class TestPrecomputedJsonResponse {
+
+	private PrecomputedJsonResponse precomputed;
+	private Supplier<String> builder;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void prepare() {
+		precomputed = new PrecomputedJsonResponse();
+		builder = mock(Supplier.class);
+		when(builder.get()).thenReturn("{\"a\":1}", "{\"a\":2}");
+	}
+
+	@Test
+	public void write_builtOnce() throws Exception {
+		MockHttpServletResponse first = write("v1", null);
+		MockHttpServletResponse second = write("v1", null);
+
+		verify(builder, times(1)).get();
+		assertThat(second.getContentAsString(), is(equalTo("{\"a\":1}")));
+		assertThat(second.getHeader(HttpHeaders.ETAG), is(equalTo(first.getHeader(HttpHeaders.ETAG))));
+	}
+
+	@Test
+	public void write_notModified() throws Exception {
+		String etag = write("v1", null).getHeader(HttpHeaders.ETAG);
+
+		MockHttpServletResponse response = write("v1", etag);
+
+		assertThat(response.getStatus(), is(equalTo(HttpStatus.NOT_MODIFIED.value())));
+		assertThat(response.getContentAsByteArray().length, is(equalTo(0)));
+	}
+
+	@Test
+	public void write_rebuiltOnFingerprintChange() throws Exception {
+		String etag = write("v1", null).getHeader(HttpHeaders.ETAG);
+
+		MockHttpServletResponse response = write("v2", etag);
+
+		verify(builder, times(2)).get();
+		assertThat(response.getStatus(), is(equalTo(HttpStatus.OK.value())));
+		assertThat(response.getContentAsString(), is(equalTo("{\"a\":2}")));
+		assertThat(response.getHeader(HttpHeaders.ETAG), is(not(equalTo(etag))));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void write_fingerprintCheckedOncePerInterval() throws Exception {
+		precomputed = new PrecomputedJsonResponse(50L);
+		Supplier<Object> fingerprint = mock(Supplier.class);
+		when(fingerprint.get()).thenReturn("v1", "v2");
+
+		String etag = write(fingerprint, null).getHeader(HttpHeaders.ETAG);
+		MockHttpServletResponse cached = write(fingerprint, etag);
+
+		verify(fingerprint, times(1)).get();
+		assertThat(cached.getStatus(), is(equalTo(HttpStatus.NOT_MODIFIED.value())));
+
+		Thread.sleep(100L);
+		MockHttpServletResponse rebuilt = write(fingerprint, etag);
+
+		verify(fingerprint, times(2)).get();
+		verify(builder, times(2)).get();
+		assertThat(rebuilt.getContentAsString(), is(equalTo("{\"a\":2}")));
+	}
+
+	private MockHttpServletResponse write(Object fingerprint, String ifNoneMatch) throws Exception {
+		return write(() -> fingerprint, ifNoneMatch);
+	}
+
+	private MockHttpServletResponse write(Supplier<?> fingerprint, String ifNoneMatch) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/jwk");
+		if (ifNoneMatch != null) {
+			request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+		}
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		precomputed.write(fingerprint, builder, request, response);
+		return response;
+	}
+
+}